@@ -0,0 +1,384 @@
+package benchmark;
+
+import controller.*;
+import model.*;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.*;
+import java.util.regex.Pattern;
+
+/**
+ * Benchmark suite for the HealthcareManagementSys module.
+ *
+ * Covers CSV loading at several file sizes, the controller lookups the GUI uses,
+ * saving through FileWriterUtil, and document generation. Results are written as JSON
+ * (ResultsJson) under results/ so runs from different releases can be compared. This is
+ * a small harness of its own, not JMH; README.md says what that leaves out.
+ *
+ * Usage (options follow JMH's names):
+ *   java benchmark.BenchmarkRunner [regex...] [-f 2] [-p size=1000,10000] [-wi 5] [-i 5] [-r 1000]
+ *                                  [-rff results/out.json] [-baseline results/old.json]
+ *
+ * As with JMH, the regexes select the benchmarks to run (all of them if none is given)
+ * and -f is the number of forks: each benchmark and size runs in that many fresh JVMs
+ * in turn. Every measurement comes from a fork, and the forks together must measure at
+ * least MIN_MEASUREMENTS iterations, so the error has enough iterations behind it.
+ *
+ * The fixture files are generated by DatasetGenerator into a temporary directory on
+ * every run with a fixed seed, so results do not depend on what is in data/.
+ */
+public class BenchmarkRunner {
+
+    private static final DateTimeFormatter RUN_NAME = DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss");
+
+    // Internal option: the file a forked run writes its iterations to, instead of a report
+    private static final String FORK_OUTPUT = "-forkOutput";
+
+    private static final int MIN_MEASUREMENTS = 10;
+
+    /**
+     * One benchmark of the suite; sized benchmarks run once per size.
+     */
+    private interface Definition {
+        Harness.Operation prepare(Fixture fixture) throws IOException;
+    }
+
+    private static final Map<String, Definition> SIZED = new LinkedHashMap<>();
+    private static final Map<String, Definition> UNSIZED = new LinkedHashMap<>();
+
+    static {
+        // --- Loading ---
+        SIZED.put("DataLoader.loadPatients", f -> () -> new DataLoader().loadPatients(f.patientsFile));
+        SIZED.put("DataLoader.loadClinicians", f -> () -> new DataLoader().loadClinicians(f.cliniciansFile));
+        SIZED.put("DataLoader.loadAppointments", f -> () -> new DataLoader().loadAppointments(f.appointmentsFile));
+        SIZED.put("DataLoader.loadPrescriptions", f -> () -> new DataLoader().loadPrescriptions(f.prescriptionsFile));
+        SIZED.put("DataLoader.loadReferrals", f -> () -> new DataLoader().loadReferrals(f.referralsFile));
+
+        // --- Lookups (last ID: the worst case for a list scan) ---
+        SIZED.put("PatientController.getPatient", f -> {
+            PatientController controller = new PatientController();
+            controller.loadPatientsFromData(f.patients);
+            String id = f.patients.get(f.patients.size() - 1).getUserId();
+            return () -> controller.getPatient(id);
+        });
+        SIZED.put("AppointmentController.getAppointmentsByClinician", f -> {
+            AppointmentController controller = new AppointmentController();
+            controller.loadAppointmentsFromData(f.appointments);
+            String id = f.clinicians.get(f.clinicians.size() / 2).getUserId();
+            return () -> controller.getAppointmentsByClinician(id);
+        });
+        SIZED.put("ReferralController.getUrgentReferrals", f -> {
+            ReferralController controller = new ReferralController();
+            controller.loadReferralsFromData(f.referrals);
+            return controller::getUrgentReferrals;
+        });
+
+        // --- Saving ---
+        SIZED.put("FileWriterUtil.writePatientsToFile", f -> () -> {
+            FileWriterUtil.writePatientsToFile(f.patients, f.scratch("patients.csv"));
+            return f;
+        });
+        SIZED.put("FileWriterUtil.writeAppointmentsToFile", f -> () -> {
+            FileWriterUtil.writeAppointmentsToFile(f.appointments, f.scratch("appointments.csv"));
+            return f;
+        });
+        SIZED.put("FileWriterUtil.writePrescriptionsToFile", f -> () -> {
+            FileWriterUtil.writePrescriptionsToFile(f.prescriptions, f.scratch("prescriptions.csv"));
+            return f;
+        });
+        SIZED.put("FileWriterUtil.writeReferralsToFile", f -> () -> {
+            FileWriterUtil.writeReferralsToFile(f.referrals, f.scratch("referrals.csv"));
+            return f;
+        });
+
+        // --- Documents (one document per call, size does not matter) ---
+        UNSIZED.put("FileWriterUtil.generateReferralLetter", f -> {
+            Referral referral = f.referrals.get(0);
+            String path = f.scratch("Referral_" + referral.getReferralId() + ".txt");
+            return () -> {
+                FileWriterUtil.generateReferralLetter(referral, path);
+                return path;
+            };
+        });
+        UNSIZED.put("FileWriterUtil.generatePrescriptionSlip", f -> {
+            Prescription prescription = f.prescriptions.get(0);
+            String path = f.scratch("Prescription_" + prescription.getPrescriptionId() + ".txt");
+            return () -> {
+                FileWriterUtil.generatePrescriptionSlip(prescription, path);
+                return path;
+            };
+        });
+    }
+
+    public static void main(String[] args) throws Exception {
+        List<Pattern> includes = new ArrayList<>();
+        List<Integer> sizes = List.of(1_000, 10_000, 100_000);
+        int forks = 2;
+        int warmup = 5;
+        int measurement = 5;
+        long iterationMillis = 1_000;
+        Path output = Paths.get("results", LocalDateTime.now().format(RUN_NAME) + ".json");
+        Path baseline = null;
+        Path forkOutput = null;
+
+        for (int i = 0; i < args.length; i++) {
+            String value = i + 1 < args.length ? args[i + 1] : null;
+            switch (args[i]) {
+                case "-f": forks = Integer.parseInt(value); i++; break;
+                case "-p": sizes = parseSizes(value); i++; break;
+                case "-wi": warmup = Integer.parseInt(value); i++; break;
+                case "-i": measurement = Integer.parseInt(value); i++; break;
+                case "-r": iterationMillis = Long.parseLong(value); i++; break;
+                case "-rff": output = Paths.get(value); i++; break;
+                case "-baseline": baseline = Paths.get(value); i++; break;
+                case FORK_OUTPUT: forkOutput = Paths.get(value); i++; break;
+                default:
+                    if (args[i].startsWith("-")) {
+                        System.err.println("Unknown option: " + args[i]);
+                        System.exit(1);
+                    }
+                    includes.add(Pattern.compile(args[i]));
+            }
+        }
+
+        // A fork (-f 0 with FORK_OUTPUT) measures in its own JVM and reports to its parent
+        if (forkOutput == null && forks < 1) {
+            System.err.println("At least one fork (-f 1) is needed: measurements in the runner's own JVM depend on what ran before");
+            System.exit(1);
+        }
+        if (forkOutput == null && forks * measurement < MIN_MEASUREMENTS) {
+            System.err.println("Only " + forks * measurement + " measurement iterations (-f " + forks + " x -i " + measurement
+                    + "), at least " + MIN_MEASUREMENTS + " are needed for an error estimate");
+            System.exit(1);
+        }
+
+        Harness harness = new Harness(warmup, measurement, iterationMillis);
+        List<Harness.Result> results = new ArrayList<>();
+        Path workDir = Files.createTempDirectory("healthcare-bench");
+        try {
+            for (int size : sizes) {
+                Fixture fixture = null;
+                for (Map.Entry<String, Definition> bench : SIZED.entrySet()) {
+                    if (!included(includes, bench.getKey())) {
+                        continue;
+                    }
+                    Map<String, String> params = Map.of("size", String.valueOf(size));
+                    Harness.Result result;
+                    if (forks > 0) {
+                        result = fork(harness, forks, bench.getKey(), params);
+                    } else {
+                        if (fixture == null) {
+                            fixture = new Fixture(workDir.resolve("size-" + size), size);
+                        }
+                        result = run(harness, bench.getKey(), params, bench.getValue(), fixture);
+                    }
+                    if (bench.getKey().startsWith("DataLoader.") || bench.getKey().startsWith("FileWriterUtil.write")) {
+                        result.rowsPerOp = size;
+                        System.out.println(String.format(Locale.ROOT, "%-55s %-14s %14.0f rows/s", "", "", result.rowsPerSecond()));
+                    }
+                    results.add(result);
+                }
+            }
+            Fixture small = null;
+            for (Map.Entry<String, Definition> bench : UNSIZED.entrySet()) {
+                if (!included(includes, bench.getKey())) {
+                    continue;
+                }
+                if (forks > 0) {
+                    results.add(fork(harness, forks, bench.getKey(), Map.of()));
+                    continue;
+                }
+                if (small == null) {
+                    small = new Fixture(workDir.resolve("documents"), 10);
+                }
+                results.add(run(harness, bench.getKey(), Map.of(), bench.getValue(), small));
+            }
+        } finally {
+            deleteTree(workDir);
+        }
+
+        if (forkOutput != null) {
+            writeForkOutput(forkOutput, results);
+            return;
+        }
+        ResultsJson.write(output, harness, results);
+        System.out.println("\nResults written to " + output);
+        if (baseline != null) {
+            compare(ResultsJson.readScores(baseline), results);
+        }
+    }
+
+    // Like JMH, no pattern runs everything and several patterns run what any of them finds
+    private static boolean included(List<Pattern> includes, String benchmark) {
+        return includes.isEmpty() || includes.stream().anyMatch(p -> p.matcher(benchmark).find());
+    }
+
+    /**
+     * Run one benchmark in a fresh JVM per fork, as JMH does, so JIT decisions and heap
+     * state from the benchmarks before it do not carry over. Each fork is this runner
+     * with -f 0, the same JVM options and class path, and one benchmark and size; it
+     * hands its measurement iterations back through a file.
+     */
+    private static Harness.Result fork(Harness harness, int forks, String name, Map<String, String> params)
+            throws IOException, InterruptedException {
+        double[][] rawData = new double[forks][];
+        Path iterations = Files.createTempFile("healthcare-bench-fork", ".txt");
+        try {
+            for (int f = 0; f < forks; f++) {
+                System.out.println("# Fork " + (f + 1) + " of " + forks + ": " + name
+                        + (params.isEmpty() ? "" : " size=" + params.get("size")));
+                List<String> command = new ArrayList<>();
+                command.add(Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+                command.addAll(ManagementFactory.getRuntimeMXBean().getInputArguments());
+                command.addAll(List.of("-cp", System.getProperty("java.class.path"), BenchmarkRunner.class.getName(),
+                        "-f", "0",
+                        "-wi", String.valueOf(harness.getWarmupIterations()),
+                        "-i", String.valueOf(harness.getMeasurementIterations()),
+                        "-r", String.valueOf(harness.getIterationMillis()),
+                        FORK_OUTPUT, iterations.toString()));
+                if (!params.isEmpty()) {
+                    command.addAll(List.of("-p", params.get("size")));
+                }
+                command.add("^" + Pattern.quote(name) + "$");
+
+                int exit = new ProcessBuilder(command).inheritIO().start().waitFor();
+                List<String> lines = Files.readAllLines(iterations, StandardCharsets.UTF_8);
+                if (exit != 0 || lines.isEmpty()) {
+                    throw new IOException("Fork " + (f + 1) + " of " + name + " failed (exit code " + exit + ")");
+                }
+                rawData[f] = Arrays.stream(lines.get(0).trim().split(" ")).mapToDouble(Double::parseDouble).toArray();
+            }
+        } finally {
+            Files.deleteIfExists(iterations);
+        }
+        Harness.Result result = new Harness.Result(name, params, forks, rawData);
+        print(result);
+        return result;
+    }
+
+    // A fork's answer to fork(): the measurement iterations of its one result, space-separated
+    private static void writeForkOutput(Path file, List<Harness.Result> results) throws IOException {
+        StringBuilder line = new StringBuilder();
+        for (Harness.Result result : results) {
+            for (double iteration : result.rawData[0]) {
+                line.append(line.length() == 0 ? "" : " ").append(Double.toString(iteration));
+            }
+        }
+        Files.writeString(file, line + "\n", StandardCharsets.UTF_8);
+    }
+
+    private static Harness.Result run(Harness harness, String name, Map<String, String> params,
+                                      Definition definition, Fixture fixture) throws Exception {
+        Harness.Result result = harness.run(name, params, quietly(() -> definition.prepare(fixture)));
+        print(result);
+        return result;
+    }
+
+    private static void print(Harness.Result result) {
+        System.out.println(String.format(Locale.ROOT, "%-55s %-14s %14.3f +- %10.3f us/op", result.benchmark,
+                result.params.isEmpty() ? "" : "size=" + result.params.get("size"), result.score, result.error));
+    }
+
+    // Print how far each score moved since the baseline run (positive = slower)
+    private static void compare(Map<String, Double> baseline, List<Harness.Result> results) {
+        System.out.println("\nChange against baseline:");
+        for (Harness.Result result : results) {
+            String key = ResultsJson.key(result.benchmark, result.params);
+            Double before = baseline.get(key);
+            if (before == null || before.isNaN() || before == 0) {
+                System.out.println(String.format(Locale.ROOT, "%-70s %10s", key, "new"));
+            } else {
+                System.out.println(String.format(Locale.ROOT, "%-70s %+9.1f%%", key, (result.score - before) / before * 100));
+            }
+        }
+    }
+
+    private static List<Integer> parseSizes(String value) {
+        String list = value.startsWith("size=") ? value.substring("size=".length()) : value;
+        List<Integer> sizes = new ArrayList<>();
+        for (String part : list.split(",")) {
+            sizes.add(Integer.parseInt(part.trim()));
+        }
+        return sizes;
+    }
+
+    // Setup prints as much as the code under test; keep it off the report
+    private static Harness.Operation quietly(Setup setup) throws IOException {
+        PrintStream console = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        try {
+            return setup.prepare();
+        } finally {
+            System.setOut(console);
+        }
+    }
+
+    private interface Setup {
+        Harness.Operation prepare() throws IOException;
+    }
+
+    private static void deleteTree(Path root) throws IOException {
+        if (!Files.exists(root)) {
+            return;
+        }
+        try (var paths = Files.walk(root)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+        }
+    }
+
+    /**
+     * CSV files for one dataset size (from DatasetGenerator) and the records loaded from them.
+     */
+    private static final class Fixture {
+        final Path dir;
+        final String patientsFile;
+        final String cliniciansFile;
+        final String appointmentsFile;
+        final String prescriptionsFile;
+        final String referralsFile;
+        final List<Patient> patients;
+        final List<Clinician> clinicians;
+        final List<Appointment> appointments;
+        final List<Prescription> prescriptions;
+        final List<Referral> referrals;
+
+        Fixture(Path dir, int size) throws IOException {
+            this.dir = Files.createDirectories(dir);
+            // "size" rows in each of the benchmarked files
+            int clinicianCount = Math.max(13, size / 50);
+            int facilityCount = Math.max(6, clinicianCount / 8);
+            new DatasetGenerator(42, size, clinicianCount, facilityCount, size, size, size,
+                    facilityCount * 4, LocalDate.of(2025, 10, 1)).writeAll(dir);
+
+            patientsFile = scratch("patients.csv.crdownload");
+            cliniciansFile = scratch("clinicians.csv.crdownload");
+            appointmentsFile = scratch("appointments.csv.crdownload");
+            prescriptionsFile = scratch("prescriptions.csv.crdownload");
+            referralsFile = scratch("referrals.csv.crdownload");
+
+            PrintStream console = System.out;
+            System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+            try {
+                DataLoader loader = new DataLoader();
+                patients = loader.loadPatients(patientsFile);
+                clinicians = loader.loadClinicians(cliniciansFile);
+                appointments = loader.loadAppointments(appointmentsFile);
+                prescriptions = loader.loadPrescriptions(prescriptionsFile);
+                referrals = loader.loadReferrals(referralsFile);
+            } finally {
+                System.setOut(console);
+            }
+        }
+
+        String scratch(String name) {
+            return dir.resolve(name).toString();
+        }
+    }
+}
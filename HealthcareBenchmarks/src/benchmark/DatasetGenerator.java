@@ -0,0 +1,596 @@
+package benchmark;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.util.SplittableRandom;
+
+/**
+ * DatasetGenerator writes a synthetic NHS dataset in the seven CSV formats DataLoader
+ * reads, at any size.
+ *
+ * - Deterministic: the same seed and sizes always give byte-identical files, and each
+ *   file has its own random stream, so changing one size does not change the others.
+ * - Referentially consistent: IDs are sequential, so a foreign key is just a random
+ *   index into the referenced range. Clinicians 1..G are GPs, G+1..G+S consultants and
+ *   the rest nurses; facilities 1..H are hospitals and the rest GP surgeries. Names are
+ *   a pure function of the ID, so e.g. a facility's manager is the same person in
+ *   staff.csv and facilities.csv.
+ * - Streaming: every row is written as soon as it is made and nothing is kept per row,
+ *   so tens of millions of rows need no more heap than ten.
+ *
+ * Usage:
+ *   java benchmark.DatasetGenerator --out data-large --patients 1000000 [--seed 42]
+ *        [--clinicians N] [--facilities N] [--appointments N] [--prescriptions N]
+ *        [--referrals N] [--staff N] [--today 2025-10-01]
+ */
+public class DatasetGenerator {
+
+    private static final String[] FIRST_NAMES = {
+            "Oliver", "Amelia", "George", "Isla", "Harry", "Ava", "Noah", "Mia", "Jack", "Ivy",
+            "Leo", "Lily", "Arthur", "Isabella", "Muhammad", "Rosie", "Oscar", "Sophia", "Charlie", "Grace",
+            "Jacob", "Freya", "Thomas", "Emily", "Henry", "Olivia", "William", "Poppy", "James", "Ella",
+            "Aisha", "Priya", "Mohammed", "Fatima", "David", "Sarah", "Michael", "Helen", "John", "Emma"
+    };
+    private static final String[] LAST_NAMES = {
+            "Smith", "Jones", "Williams", "Taylor", "Brown", "Davies", "Evans", "Wilson", "Thomas", "Johnson",
+            "Roberts", "Robinson", "Thompson", "Wright", "Walker", "White", "Edwards", "Hughes", "Green", "Hall",
+            "Lewis", "Harris", "Clarke", "Patel", "Jackson", "Wood", "Turner", "Martin", "Cooper", "Hill",
+            "Ward", "Morris", "Moore", "Clark", "Lee", "King", "Baker", "Harrison", "Morgan", "Khan"
+    };
+    private static final String[] TOWNS = {
+            "Birmingham", "Solihull", "Coventry", "Wolverhampton", "Walsall", "Dudley", "Sutton Coldfield",
+            "Redditch", "Tamworth", "Lichfield", "Nuneaton", "Bromsgrove", "Kidderminster", "West Bromwich"
+    };
+    private static final String[] STREETS = {
+            "High Street", "Station Road", "Church Lane", "Park Road", "Victoria Road", "Green Lane",
+            "Manor Road", "Queens Road", "New Road", "Mill Lane"
+    };
+    private static final String[] SPECIALITIES = {
+            "Cardiology", "Neurology", "Orthopaedics", "Dermatology", "Gastroenterology", "Nephrology",
+            "Respiratory Medicine", "Endocrinology", "Rheumatology", "Ophthalmology"
+    };
+    // Referral reasons, one row per entry of SPECIALITIES
+    private static final String[][] REFERRAL_REASONS = {
+            {"Heart murmur investigation", "Chest pain on exertion", "Palpitations"},
+            {"Persistent headaches", "Recurrent dizziness", "Numbness in hands"},
+            {"Chronic knee pain", "Suspected hip osteoarthritis", "Lower back pain"},
+            {"Suspicious mole", "Severe eczema", "Psoriasis not responding to treatment"},
+            {"Persistent reflux", "Change in bowel habit", "Abnormal liver function tests"},
+            {"Declining kidney function", "Protein in urine", "Recurrent kidney stones"},
+            {"Persistent cough", "Suspected asthma", "Breathlessness"},
+            {"Poorly controlled diabetes", "Thyroid nodule", "Suspected adrenal disorder"},
+            {"Joint swelling", "Suspected rheumatoid arthritis", "Chronic widespread pain"},
+            {"Cataract assessment", "Raised eye pressure", "Sudden vision changes"}
+    };
+    private static final String[] APPOINTMENT_REASONS = {
+            "Annual check-up", "Follow-up", "Blood test review", "Medication review", "Chest infection",
+            "Back pain", "Skin rash", "Blood pressure check", "Vaccination", "Diabetes review",
+            "Asthma review", "Headache", "Ear infection", "Sore throat", "Mental health review"
+    };
+    private static final int[] APPOINTMENT_REASON_WEIGHTS = {8, 20, 10, 10, 6, 6, 5, 8, 7, 6, 5, 4, 3, 4, 5};
+    private static final String[] MEDICATIONS = {
+            "Atorvastatin", "Amlodipine", "Omeprazole", "Levothyroxine", "Metformin", "Ramipril",
+            "Lansoprazole", "Salbutamol", "Simvastatin", "Paracetamol", "Amoxicillin", "Sertraline",
+            "Bisoprolol", "Citalopram", "Ibuprofen"
+    };
+    private static final String[][] DOSAGES = {
+            {"10mg", "20mg", "40mg", "80mg"}, {"5mg", "10mg"}, {"20mg", "40mg"}, {"25mcg", "50mcg", "100mcg"},
+            {"500mg", "850mg", "1000mg"}, {"2.5mg", "5mg", "10mg"}, {"15mg", "30mg"}, {"100mcg"},
+            {"20mg", "40mg"}, {"500mg", "1g"}, {"250mg", "500mg"}, {"50mg", "100mg"},
+            {"1.25mg", "2.5mg", "5mg"}, {"10mg", "20mg"}, {"200mg", "400mg"}
+    };
+    // Roughly the shape of NHS primary care prescribing: statins and PPIs dominate
+    private static final int[] MEDICATION_WEIGHTS = {14, 12, 12, 10, 9, 8, 7, 7, 5, 5, 4, 4, 4, 3, 3};
+
+    private final long seed;
+    private final int patients;
+    private final int clinicians;
+    private final int facilities;
+    private final int appointments;
+    private final int prescriptions;
+    private final int referrals;
+    private final int staff;
+    private final LocalDate today;
+
+    // Derived ranges
+    private final int gps;
+    private final int consultants;
+    private final int hospitals;
+
+    public DatasetGenerator(long seed, int patients, int clinicians, int facilities, int appointments,
+                            int prescriptions, int referrals, int staff, LocalDate today) {
+        if (patients < 1 || clinicians < 3 || facilities < 2) {
+            throw new IllegalArgumentException("Need at least 1 patient, 3 clinicians and 2 facilities");
+        }
+        this.seed = seed;
+        this.patients = patients;
+        this.clinicians = clinicians;
+        this.facilities = facilities;
+        this.appointments = appointments;
+        this.prescriptions = prescriptions;
+        this.referrals = referrals;
+        this.staff = staff;
+        this.today = today;
+        this.gps = Math.max(1, clinicians / 2);
+        this.consultants = Math.max(1, clinicians * 3 / 10);
+        this.hospitals = Math.max(1, facilities / 6);
+    }
+
+    /**
+     * Sizes in the proportions of a typical practice population: one GP per ~2,000
+     * patients, five appointments, three prescriptions and 0.1 referrals per patient.
+     */
+    public static DatasetGenerator forPatients(long seed, int patients) {
+        int clinicians = Math.max(13, patients / 1_000);
+        int facilities = Math.max(6, clinicians / 8);
+        return new DatasetGenerator(seed, patients, clinicians, facilities, patients * 5,
+                patients * 3, Math.max(1, patients / 10), facilities * 4, LocalDate.of(2025, 10, 1));
+    }
+
+    public static void main(String[] args) throws IOException {
+        Path out = Paths.get("data-generated");
+        long seed = 42;
+        Integer patients = null, clinicians = null, facilities = null, appointments = null;
+        Integer prescriptions = null, referrals = null, staff = null;
+        LocalDate today = null;
+
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            String value = args[i + 1];
+            switch (args[i]) {
+                case "--out": out = Paths.get(value); break;
+                case "--seed": seed = Long.parseLong(value); break;
+                case "--patients": patients = Integer.parseInt(value); break;
+                case "--clinicians": clinicians = Integer.parseInt(value); break;
+                case "--facilities": facilities = Integer.parseInt(value); break;
+                case "--appointments": appointments = Integer.parseInt(value); break;
+                case "--prescriptions": prescriptions = Integer.parseInt(value); break;
+                case "--referrals": referrals = Integer.parseInt(value); break;
+                case "--staff": staff = Integer.parseInt(value); break;
+                case "--today": today = LocalDate.parse(value); break;
+                default:
+                    System.err.println("Unknown option: " + args[i]);
+                    System.exit(1);
+            }
+        }
+
+        DatasetGenerator defaults = forPatients(seed, patients != null ? patients : 10_000);
+        DatasetGenerator generator = new DatasetGenerator(seed, defaults.patients,
+                clinicians != null ? clinicians : defaults.clinicians,
+                facilities != null ? facilities : defaults.facilities,
+                appointments != null ? appointments : defaults.appointments,
+                prescriptions != null ? prescriptions : defaults.prescriptions,
+                referrals != null ? referrals : defaults.referrals,
+                staff != null ? staff : defaults.staff,
+                today != null ? today : defaults.today);
+
+        long start = System.nanoTime();
+        generator.writeAll(out);
+        System.out.println("Dataset written to " + out + " in " + (System.nanoTime() - start) / 1_000_000 + " ms");
+    }
+
+    /**
+     * Write all seven files, named as in data/.
+     *
+     * @param dir Output directory (created if missing)
+     * @throws IOException If a file cannot be written
+     */
+    public void writeAll(Path dir) throws IOException {
+        Files.createDirectories(dir);
+        writePatients(dir.resolve("patients.csv.crdownload"));
+        writeClinicians(dir.resolve("clinicians.csv.crdownload"));
+        writeFacilities(dir.resolve("facilities.csv.crdownload"));
+        writeStaff(dir.resolve("staff.csv.crdownload"));
+        writeAppointments(dir.resolve("appointments.csv.crdownload"));
+        writePrescriptions(dir.resolve("prescriptions.csv.crdownload"));
+        writeReferrals(dir.resolve("referrals.csv.crdownload"));
+    }
+
+    public void writePatients(Path file) throws IOException {
+        SplittableRandom random = random(1);
+        int width = width(patients);
+        try (Rows rows = new Rows(file, "userId,name,nhsNumber,email,phone")) {
+            for (int i = 1; i <= patients; i++) {
+                String first = firstName(1, i);
+                String last = lastName(1, i);
+                rows.id("P", i, width).field(first + " " + last).field(nhsNumber(random))
+                        .field(email(first, last, i, "email.com")).field(mobile(random)).end();
+            }
+        }
+    }
+
+    public void writeClinicians(Path file) throws IOException {
+        SplittableRandom random = random(2);
+        int width = width(clinicians);
+        try (Rows rows = new Rows(file, "clinician_id,first_name,last_name,title,speciality,gmc_number,"
+                + "phone_number,email,workplace_id,workplace_type,employment_status,start_date")) {
+            for (int i = 1; i <= clinicians; i++) {
+                String first = firstName(2, i);
+                String last = lastName(2, i);
+                String title;
+                String speciality;
+                int workplace;
+                if (isGp(i)) {
+                    title = "GP";
+                    speciality = "General Practice";
+                    workplace = surgery(random);
+                } else if (isConsultant(i)) {
+                    title = "Consultant";
+                    speciality = speciality(i);
+                    workplace = 1 + random.nextInt(hospitals);
+                } else {
+                    title = pick(random, "Practice Nurse", "Practice Nurse", "Senior Nurse", "Staff Nurse");
+                    speciality = title.equals("Staff Nurse") ? "General Nursing" : "Practice Nursing";
+                    workplace = title.equals("Staff Nurse") ? 1 + random.nextInt(hospitals) : surgery(random);
+                }
+                rows.id("C", i, width).field((title.endsWith("Nurse") ? "" : "Dr. ") + first).field(last)
+                        .field(title).field(speciality).field(String.valueOf(7_000_000 + i))
+                        .field(mobile(random)).field(email(first, last, i, "nhs.uk"))
+                        .field(facilityId(workplace)).field(facilityType(workplace))
+                        .field(random.nextInt(10) < 7 ? "Full-time" : "Part-time").field(pastDate(random, 25)).end();
+            }
+        }
+    }
+
+    public void writeFacilities(Path file) throws IOException {
+        SplittableRandom random = random(3);
+        try (Rows rows = new Rows(file, "facility_id,facility_name,facility_type,address,postcode,"
+                + "phone_number,email,opening_hours,manager_name,capacity,specialities_offered")) {
+            for (int f = 1; f <= facilities; f++) {
+                boolean hospital = f <= hospitals;
+                String town = TOWNS[(int) (mix(3, f) % TOWNS.length)];
+                String name = hospital
+                        ? town + (f > TOWNS.length ? " " + f : "") + " General Hospital"
+                        : town + " " + pick(random, "Central", "Family", "Park", "Health Centre", "Medical") + " GP Surgery";
+                rows.field(facilityId(f)).field(name).field(facilityType(f))
+                        .field((1 + random.nextInt(400)) + " " + STREETS[random.nextInt(STREETS.length)] + ", " + town)
+                        .field(postcode(random)).field(landline(random))
+                        .field("contact@" + slug(name) + f + ".nhs.uk")
+                        .field(hospital ? "24 hours" : "Mon-Fri: 8:00-18:30, Sat: 9:00-12:00")
+                        .field(firstName(4, f) + " " + lastName(4, f))  // staff member f manages facility f
+                        .field(String.valueOf(hospital ? 200 + random.nextInt(1_000) : 800 + random.nextInt(2_200)))
+                        .field(hospital
+                                ? SPECIALITIES[random.nextInt(SPECIALITIES.length)] + "|" + SPECIALITIES[random.nextInt(SPECIALITIES.length)] + "|Emergency"
+                                : "General Practice|Vaccinations" + (random.nextBoolean() ? "|Minor Surgery" : "|Travel Clinic"))
+                        .end();
+            }
+        }
+    }
+
+    public void writeStaff(Path file) throws IOException {
+        SplittableRandom random = random(4);
+        int width = Math.max(3, width(staff));
+        try (Rows rows = new Rows(file, "staff_id,first_name,last_name,role,department,facility_id,"
+                + "phone_number,email,employment_status,start_date,line_manager,access_level")) {
+            for (int i = 1; i <= staff; i++) {
+                // Round robin over facilities: the first member at each facility is its manager
+                int facility = 1 + (i - 1) % facilities;
+                boolean manager = i <= facilities;
+                boolean hospital = facility <= hospitals;
+                String role;
+                String department;
+                String access;
+                if (manager) {
+                    role = hospital ? "Hospital Administrator" : "Practice Manager";
+                    department = "Administration";
+                    access = "Manager";
+                } else {
+                    int r = random.nextInt(10);
+                    role = r < 4 ? "Receptionist" : r < 6 ? "Medical Secretary" : r < 8 ? "Healthcare Assistant"
+                            : hospital ? "Ward Clerk" : "Medical Records Clerk";
+                    department = role.equals("Receptionist") ? "Front Desk"
+                            : role.equals("Healthcare Assistant") ? "Clinical Support" : "Administration";
+                    access = role.equals("Receptionist") ? "Basic" : "Standard";
+                }
+                String first = firstName(4, i);
+                String last = lastName(4, i);
+                rows.id("ST", i, width).field(first).field(last).field(role).field(department)
+                        .field(facilityId(facility)).field(mobile(random))
+                        .field(email(first, last, i, "nhs.uk"))
+                        .field(random.nextInt(10) < 6 ? "Full-time" : "Part-time").field(pastDate(random, 15))
+                        .field(manager ? "" : firstName(4, facility) + " " + lastName(4, facility))
+                        .field(access).end();
+            }
+        }
+    }
+
+    public void writeAppointments(Path file) throws IOException {
+        SplittableRandom random = random(5);
+        int width = width(appointments);
+        int patientWidth = width(patients);
+        int clinicianWidth = width(clinicians);
+        // A year back and three months ahead of "today", weekdays only
+        LocalDate first = today.minusDays(365);
+        String[] days = new String[455];
+        int dayCount = 0;
+        int todayIndex = 0;
+        for (int d = 0; d < days.length; d++) {
+            LocalDate date = first.plusDays(d);
+            if (date.equals(today)) {
+                todayIndex = dayCount;
+            }
+            if (date.getDayOfWeek() != DayOfWeek.SATURDAY && date.getDayOfWeek() != DayOfWeek.SUNDAY) {
+                days[dayCount++] = date.toString();
+            }
+        }
+        String[] slots = new String[60];  // 08:00 to 17:50 in 10 minute slots
+        for (int s = 0; s < slots.length; s++) {
+            slots[s] = pad(8 + s / 6, 2) + ":" + (s % 6) + "0";
+        }
+
+        try (Rows rows = new Rows(file, "appointmentId,patientId,clinicianId,dateTime,status,reason")) {
+            for (int i = 1; i <= appointments; i++) {
+                int day = random.nextInt(dayCount);
+                // Mornings are busier than afternoons
+                int slot = Math.min(slots.length - 1, (int) (slots.length * Math.pow(random.nextDouble(), 1.3)));
+                int c = random.nextInt(100);
+                int clinician = c < 85 ? 1 + random.nextInt(gps)
+                        : c < 95 && clinicians > gps + consultants ? gps + consultants + 1 + random.nextInt(clinicians - gps - consultants)
+                        : gps + 1 + random.nextInt(consultants);
+                String status = day < todayIndex
+                        ? (random.nextInt(100) < 90 ? "Completed" : "Cancelled")
+                        : (random.nextInt(100) < 93 ? "Scheduled" : "Cancelled");
+                rows.id("A", i, width).id("P", skewedPatient(random), patientWidth).id("C", clinician, clinicianWidth)
+                        .field(days[day] + " " + slots[slot]).field(status)
+                        .field(random.nextInt(100) < 20 ? "null" : weighted(random, APPOINTMENT_REASONS, APPOINTMENT_REASON_WEIGHTS))
+                        .end();
+            }
+        }
+    }
+
+    public void writePrescriptions(Path file) throws IOException {
+        SplittableRandom random = random(6);
+        int width = Math.max(3, width(prescriptions));
+        int patientWidth = width(patients);
+        int clinicianWidth = width(clinicians);
+        int total = 0;
+        for (int w : MEDICATION_WEIGHTS) {
+            total += w;
+        }
+        // The clinicianId column is optional for DataLoader; it keeps prescribers consistent
+        try (Rows rows = new Rows(file, "prescriptionId,patientId,medication,dosage,status,clinicianId")) {
+            for (int i = 1; i <= prescriptions; i++) {
+                int m = weightedIndex(random, MEDICATION_WEIGHTS, total);
+                int s = random.nextInt(100);
+                String status = s < 40 ? "Issued" : s < 85 ? "Collected" : s < 95 ? "Pending" : "Expired";
+                rows.id("RX", i, width).id("P", skewedPatient(random), patientWidth).field(MEDICATIONS[m])
+                        .field(DOSAGES[m][random.nextInt(DOSAGES[m].length)]).field(status)
+                        .id("C", 1 + random.nextInt(gps), clinicianWidth).end();
+            }
+        }
+    }
+
+    public void writeReferrals(Path file) throws IOException {
+        SplittableRandom random = random(7);
+        int width = width(referrals);
+        int patientWidth = width(patients);
+        int clinicianWidth = width(clinicians);
+        try (Rows rows = new Rows(file, "referralId,patientId,fromGP,toSpecialist,reason,status,urgency")) {
+            for (int i = 1; i <= referrals; i++) {
+                int specialist = gps + 1 + random.nextInt(consultants);
+                String[] reasons = REFERRAL_REASONS[specialityIndex(specialist)];
+                int s = random.nextInt(100);
+                String status = s < 15 ? "New" : s < 45 ? "Pending" : s < 60 ? "In Progress" : s < 95 ? "Completed" : "Rejected";
+                int u = random.nextInt(100);
+                String urgency = u < 70 ? "Routine" : u < 80 ? "Non-urgent" : u < 97 ? "Urgent" : "Emergency";
+                rows.id("R", i, width).id("P", 1 + random.nextInt(patients), patientWidth)
+                        .id("C", 1 + random.nextInt(gps), clinicianWidth).id("C", specialist, clinicianWidth)
+                        .field(reasons[random.nextInt(reasons.length)]).field(status).field(urgency).end();
+            }
+        }
+    }
+
+    // ===== Reference rules =====
+
+    private boolean isGp(int clinician) {
+        return clinician <= gps;
+    }
+
+    private boolean isConsultant(int clinician) {
+        return clinician > gps && clinician <= gps + consultants;
+    }
+
+    private int specialityIndex(int clinician) {
+        return (clinician - gps - 1) % SPECIALITIES.length;
+    }
+
+    private String speciality(int clinician) {
+        return SPECIALITIES[specialityIndex(clinician)];
+    }
+
+    private int surgery(SplittableRandom random) {
+        return hospitals + 1 + random.nextInt(facilities - hospitals);
+    }
+
+    private String facilityId(int facility) {
+        int hospitalWidth = Math.max(3, width(hospitals));
+        int surgeryWidth = Math.max(3, width(facilities - hospitals));
+        return facility <= hospitals
+                ? "H" + pad(facility, hospitalWidth)
+                : "S" + pad(facility - hospitals, surgeryWidth);
+    }
+
+    private String facilityType(int facility) {
+        return facility <= hospitals ? "Hospital" : "GP Surgery";
+    }
+
+    // A few patients have many appointments, most have a handful
+    private int skewedPatient(SplittableRandom random) {
+        return 1 + (int) (patients * Math.pow(random.nextDouble(), 2.0));
+    }
+
+    // ===== Values =====
+
+    private SplittableRandom random(int file) {
+        return new SplittableRandom(seed * 1_000_003L + file);
+    }
+
+    // Stable per-entity hash, so a name can be recomputed from the ID anywhere
+    private long mix(int kind, int index) {
+        long z = seed + kind * 0x9E3779B97F4A7C15L + index * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return (z ^ (z >>> 31)) >>> 1;
+    }
+
+    private String firstName(int kind, int index) {
+        return FIRST_NAMES[(int) (mix(kind, index) % FIRST_NAMES.length)];
+    }
+
+    private String lastName(int kind, int index) {
+        return LAST_NAMES[(int) ((mix(kind, index) / FIRST_NAMES.length) % LAST_NAMES.length)];
+    }
+
+    private static String email(String first, String last, int index, String domain) {
+        return first.toLowerCase() + "." + last.toLowerCase() + index + "@" + domain;
+    }
+
+    // 9 random digits plus the modulus 11 check digit
+    private static String nhsNumber(SplittableRandom random) {
+        while (true) {
+            int[] digits = new int[10];
+            digits[0] = 4 + random.nextInt(4);
+            int sum = digits[0] * 10;
+            for (int d = 1; d < 9; d++) {
+                digits[d] = random.nextInt(10);
+                sum += digits[d] * (10 - d);
+            }
+            int check = 11 - sum % 11;
+            if (check == 10) {
+                continue;
+            }
+            digits[9] = check == 11 ? 0 : check;
+            StringBuilder sb = new StringBuilder(10);
+            for (int d : digits) {
+                sb.append(d);
+            }
+            return sb.toString();
+        }
+    }
+
+    private static String mobile(SplittableRandom random) {
+        return "07" + pad(random.nextInt(1_000_000_000), 9);
+    }
+
+    private static String landline(SplittableRandom random) {
+        return "0121-" + pad(random.nextInt(1_000), 3) + "-" + pad(random.nextInt(10_000), 4);
+    }
+
+    private static String postcode(SplittableRandom random) {
+        String letters = "ABDEFGHJLNPQRSTUWXYZ";
+        return "B" + (1 + random.nextInt(98)) + " " + random.nextInt(10)
+                + letters.charAt(random.nextInt(letters.length())) + letters.charAt(random.nextInt(letters.length()));
+    }
+
+    private static String pastDate(SplittableRandom random, int years) {
+        return LocalDate.of(2025, 1, 1).minusDays(random.nextInt(years * 365)).toString();
+    }
+
+    private static String slug(String name) {
+        StringBuilder sb = new StringBuilder();
+        for (char c : name.toLowerCase().toCharArray()) {
+            if (Character.isLetterOrDigit(c)) {
+                sb.append(c);
+            }
+        }
+        return sb.toString();
+    }
+
+    @SafeVarargs
+    private static <T> T pick(SplittableRandom random, T... values) {
+        return values[random.nextInt(values.length)];
+    }
+
+    private static String weighted(SplittableRandom random, String[] values, int[] weights) {
+        int total = 0;
+        for (int w : weights) {
+            total += w;
+        }
+        return values[weightedIndex(random, weights, total)];
+    }
+
+    private static int weightedIndex(SplittableRandom random, int[] weights, int total) {
+        int r = random.nextInt(total);
+        for (int i = 0; i < weights.length; i++) {
+            r -= weights[i];
+            if (r < 0) {
+                return i;
+            }
+        }
+        return weights.length - 1;
+    }
+
+    private static int width(int count) {
+        return Math.max(3, String.valueOf(count).length());
+    }
+
+    private static String pad(int value, int width) {
+        String digits = String.valueOf(value);
+        if (digits.length() >= width) {
+            return digits;
+        }
+        StringBuilder sb = new StringBuilder(width);
+        for (int i = digits.length(); i < width; i++) {
+            sb.append('0');
+        }
+        return sb.append(digits).toString();
+    }
+
+    /**
+     * Buffered CSV row writer; quotes a field only when it needs it (RFC 4180).
+     */
+    private static final class Rows implements AutoCloseable {
+        private final Writer out;
+        private final StringBuilder row = new StringBuilder(256);
+
+        Rows(Path file, String header) throws IOException {
+            out = new BufferedWriter(new OutputStreamWriter(Files.newOutputStream(file), StandardCharsets.UTF_8), 1 << 20);
+            out.write(header);
+            out.write('\n');
+        }
+
+        Rows id(String prefix, int value, int width) {
+            separator();
+            row.append(prefix);
+            for (int digits = String.valueOf(value).length(); digits < width; digits++) {
+                row.append('0');
+            }
+            row.append(value);
+            return this;
+        }
+
+        Rows field(String value) {
+            separator();
+            if (value.indexOf(',') >= 0 || value.indexOf('"') >= 0 || value.indexOf('\n') >= 0) {
+                row.append('"').append(value.replace("\"", "\"\"")).append('"');
+            } else {
+                row.append(value);
+            }
+            return this;
+        }
+
+        void end() throws IOException {
+            row.append('\n');
+            out.append(row);
+            row.setLength(0);
+        }
+
+        private void separator() {
+            if (row.length() > 0) {
+                row.append(',');
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            out.close();
+        }
+    }
+}
@@ -0,0 +1,161 @@
+package benchmark;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.*;
+
+/**
+ * Harness runs one benchmark in the manner of JMH's "average time" mode, without being
+ * JMH: a few warmup iterations, then timed measurement iterations, each of which calls
+ * the operation in a loop for a fixed wall-clock time.
+ *
+ * Every operation's return value goes to a volatile sink, which keeps the JIT from
+ * dropping a call whose result is otherwise unused; unlike JMH's Blackhole it does not
+ * stop the JIT from skipping work inside the call that does not reach the result.
+ * System.out is silenced while an operation runs: the loaders and writers print a line
+ * per call, and timing the console would only add noise.
+ */
+final class Harness {
+
+    /**
+     * One benchmarked call. The result is consumed so the work cannot be optimised away.
+     */
+    @FunctionalInterface
+    interface Operation {
+        Object run() throws Exception;
+    }
+
+    /**
+     * Scores of one benchmark with one set of parameters, in microseconds per operation.
+     * The score and error cover the measurement iterations of every fork together.
+     */
+    static final class Result {
+        final String benchmark;
+        final Map<String, String> params;
+        final int forks;             // JVMs the iterations ran in; 0 if they ran in this one
+        final double[][] rawData;    // measurement iterations, one row per fork
+        final double score;
+        final double error;
+        long rowsPerOp;  // set for benchmarks that read or write whole files, 0 otherwise
+
+        Result(String benchmark, Map<String, String> params, int forks, double[][] rawData) {
+            this.benchmark = benchmark;
+            this.params = params;
+            this.forks = forks;
+            this.rawData = rawData;
+            double[] iterations = Arrays.stream(rawData).flatMapToDouble(Arrays::stream).toArray();
+            this.score = mean(iterations);
+            this.error = confidenceError(iterations, score);
+        }
+
+        double rowsPerSecond() {
+            return rowsPerOp * 1_000_000.0 / score;
+        }
+    }
+
+    // Two-sided 99.9% Student t quantiles for 1..20 degrees of freedom, then for the
+    // degrees of freedom in T_999_BEYOND
+    private static final double[] T_999 = {
+            636.619, 31.599, 12.924, 8.610, 6.869, 5.959, 5.408, 5.041, 4.781, 4.587,
+            4.437, 4.318, 4.221, 4.140, 4.073, 4.015, 3.965, 3.922, 3.883, 3.850
+    };
+    private static final int[] DF_BEYOND = {25, 30, 40, 60, 120};
+    private static final double[] T_999_BEYOND = {3.725, 3.646, 3.551, 3.460, 3.373};
+
+    private static volatile Object sink;
+
+    private final int warmupIterations;
+    private final int measurementIterations;
+    private final long iterationNanos;
+
+    Harness(int warmupIterations, int measurementIterations, long iterationMillis) {
+        this.warmupIterations = warmupIterations;
+        this.measurementIterations = measurementIterations;
+        this.iterationNanos = iterationMillis * 1_000_000L;
+    }
+
+    int getWarmupIterations() {
+        return warmupIterations;
+    }
+
+    int getMeasurementIterations() {
+        return measurementIterations;
+    }
+
+    long getIterationMillis() {
+        return iterationNanos / 1_000_000L;
+    }
+
+    /**
+     * Warm up and measure one operation.
+     *
+     * @param benchmark Benchmark name (e.g. "DataLoader.loadAppointments")
+     * @param params Parameter values for this run (e.g. size=10000)
+     * @param operation The call to time
+     * @return Per-iteration scores in us/op, measured in this JVM
+     * @throws Exception If the operation fails
+     */
+    Result run(String benchmark, Map<String, String> params, Operation operation) throws Exception {
+        PrintStream console = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        try {
+            for (int i = 0; i < warmupIterations; i++) {
+                iteration(operation);
+            }
+            double[] scores = new double[measurementIterations];
+            for (int i = 0; i < measurementIterations; i++) {
+                scores[i] = iteration(operation);
+            }
+            return new Result(benchmark, params, 0, new double[][]{scores});
+        } finally {
+            System.setOut(console);
+        }
+    }
+
+    // Call the operation until the iteration time is used up; at least once
+    private double iteration(Operation operation) throws Exception {
+        long ops = 0;
+        long start = System.nanoTime();
+        long elapsed;
+        do {
+            sink = operation.run();
+            ops++;
+            elapsed = System.nanoTime() - start;
+        } while (elapsed < iterationNanos);
+        return elapsed / 1_000.0 / ops;
+    }
+
+    private static double mean(double[] values) {
+        double sum = 0;
+        for (double v : values) {
+            sum += v;
+        }
+        return sum / values.length;
+    }
+
+    private static double confidenceError(double[] values, double mean) {
+        int n = values.length;
+        if (n < 2) {
+            return Double.NaN;
+        }
+        double squares = 0;
+        for (double v : values) {
+            squares += (v - mean) * (v - mean);
+        }
+        double stdDev = Math.sqrt(squares / (n - 1));
+        return t999(n - 1) * stdDev / Math.sqrt(n);
+    }
+
+    // Between table entries the quantile of the next lower degrees of freedom, which is
+    // the larger one, so the interval is never narrower than it should be
+    private static double t999(int degrees) {
+        if (degrees <= T_999.length) {
+            return T_999[degrees - 1];
+        }
+        double t = T_999[T_999.length - 1];
+        for (int i = 0; i < DF_BEYOND.length && DF_BEYOND[i] <= degrees; i++) {
+            t = T_999_BEYOND[i];
+        }
+        return t;
+    }
+}
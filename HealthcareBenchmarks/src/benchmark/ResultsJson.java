@@ -0,0 +1,108 @@
+package benchmark;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Reads and writes benchmark results as JSON: the run's settings once, then one entry
+ * per benchmark and size with every measurement iteration of every fork. The layout is
+ * this harness's own and deliberately not JMH's, so no JMH tool mistakes these numbers
+ * for JMH measurements (see README.md for what the harness does not do).
+ */
+final class ResultsJson {
+
+    private static final int FORMAT = 1;
+
+    // Enough of the layout written below to pull the scores back out of an older file
+    private static final Pattern RESULT = Pattern.compile(
+            "\"benchmark\"\\s*:\\s*\"([^\"]*)\".*?\"params\"\\s*:\\s*\\{([^}]*)\\}.*?\"score\"\\s*:\\s*([-0-9.eE+]+|\"NaN\")",
+            Pattern.DOTALL);
+    private static final Pattern PARAM = Pattern.compile("\"([^\"]*)\"\\s*:\\s*\"([^\"]*)\"");
+
+    private ResultsJson() {
+    }
+
+    static void write(Path file, Harness harness, List<Harness.Result> results) throws IOException {
+        if (file.getParent() != null) {
+            Files.createDirectories(file.getParent());
+        }
+        try (BufferedWriter out = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            out.write("{\n");
+            out.write("    \"harness\" : \"HealthcareBenchmarks\",\n");
+            out.write("    \"format\" : " + FORMAT + ",\n");
+            out.write("    \"jvm\" : \"" + escape(System.getProperty("java.home")) + "\",\n");
+            out.write("    \"jdkVersion\" : \"" + escape(System.getProperty("java.version")) + "\",\n");
+            out.write("    \"warmupIterations\" : " + harness.getWarmupIterations() + ",\n");
+            out.write("    \"measurementIterations\" : " + harness.getMeasurementIterations() + ",\n");
+            out.write("    \"iterationMillis\" : " + harness.getIterationMillis() + ",\n");
+            out.write("    \"results\" : [\n");
+            for (int r = 0; r < results.size(); r++) {
+                Harness.Result result = results.get(r);
+                out.write("        {\n");
+                out.write("            \"benchmark\" : \"" + escape(result.benchmark) + "\",\n");
+                out.write("            \"params\" : {");
+                int p = 0;
+                for (Map.Entry<String, String> param : result.params.entrySet()) {
+                    out.write((p++ == 0 ? " " : ", ") + "\"" + escape(param.getKey()) + "\" : \"" + escape(param.getValue()) + "\"");
+                }
+                out.write(p == 0 ? "},\n" : " },\n");
+                out.write("            \"forks\" : " + result.forks + ",\n");
+                out.write("            \"score\" : " + number(result.score) + ",\n");
+                out.write("            \"error\" : " + number(result.error) + ",\n");
+                out.write("            \"unit\" : \"us/op\",\n");
+                if (result.rowsPerOp > 0) {
+                    out.write("            \"rowsPerSecond\" : " + number(result.rowsPerSecond()) + ",\n");
+                }
+                out.write("            \"iterations\" : [ ");
+                for (int f = 0; f < result.rawData.length; f++) {
+                    out.write(f == 0 ? "[ " : ", [ ");
+                    for (int i = 0; i < result.rawData[f].length; i++) {
+                        out.write((i == 0 ? "" : ", ") + number(result.rawData[f][i]));
+                    }
+                    out.write(" ]");
+                }
+                out.write(" ]\n");
+                out.write(r == results.size() - 1 ? "        }\n" : "        },\n");
+            }
+            out.write("    ]\n");
+            out.write("}\n");
+        }
+    }
+
+    /**
+     * Scores from an earlier results file, keyed like key() below.
+     */
+    static Map<String, Double> readScores(Path file) throws IOException {
+        String json = Files.readString(file, StandardCharsets.UTF_8);
+        Map<String, Double> scores = new LinkedHashMap<>();
+        Matcher m = RESULT.matcher(json);
+        while (m.find()) {
+            Map<String, String> params = new LinkedHashMap<>();
+            Matcher pm = PARAM.matcher(m.group(2));
+            while (pm.find()) {
+                params.put(pm.group(1), pm.group(2));
+            }
+            String score = m.group(3);
+            scores.put(key(m.group(1), params), score.startsWith("\"") ? Double.NaN : Double.parseDouble(score));
+        }
+        return scores;
+    }
+
+    static String key(String benchmark, Map<String, String> params) {
+        return params.isEmpty() ? benchmark : benchmark + " " + params;
+    }
+
+    private static String number(double value) {
+        return Double.isNaN(value) ? "\"NaN\"" : String.format(Locale.ROOT, "%.3f", value);
+    }
+
+    private static String escape(String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"");
+    }
+}
@@ -1,7 +1,12 @@
 package controller;
 
 import model.Appointment;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
 import java.util.*;
+import java.util.function.Function;
+import java.util.stream.Stream;
 
 /**
  * AppointmentController manages all Appointment operations (CRUD).
@@ -11,11 +16,33 @@ import java.util.*;
  */
 public class AppointmentController {
 
-    private List<Appointment> appointments;
+    // Secondary index keys (see Repository.index)
+    private static final Function<Appointment, String> BY_PATIENT = Appointment::getPatientId;
+    private static final Function<Appointment, String> BY_CLINICIAN = Appointment::getClinicianId;
+    // Sorted index keys: the time, and the clinician with the time (see timeKey)
+    private static final Function<Appointment, String> BY_TIME = a -> timeKey(AppointmentStore.minutes(a.getDateTime()));
+    private static final Function<Appointment, String> BY_CLINICIAN_TIME = a -> a.getClinicianId() == null ? null
+            : clinicianTimeKey(a.getClinicianId(), BY_TIME.apply(a));
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private final Repository<Appointment> appointments;
+    private final ChangeTracker changes = new ChangeTracker();
 
     // Constructor
     public AppointmentController() {
-        this.appointments = new ArrayList<>();
+        this(Repositories.create(DataLoadOrchestrator.DataSet.APPOINTMENTS, CsvSchemas.APPOINTMENTS, Appointment::getAppointmentId));
+    }
+
+    /**
+     * @param appointments Where the appointments are kept (see Repositories)
+     */
+    public AppointmentController(Repository<Appointment> appointments) {
+        this.appointments = appointments;
+        appointments.index(BY_PATIENT);
+        appointments.index(BY_CLINICIAN);
+        appointments.indexSorted(BY_TIME);
+        appointments.indexSorted(BY_CLINICIAN_TIME);
     }
 
     /**
@@ -31,6 +58,7 @@ public class AppointmentController {
         }
 
         appointments.add(appointment);
+        changes.changed(appointment.getAppointmentId(), appointment);
 
         // Appointment.java provides getDateTime(), not getAppointmentDate().
         System.out.println(" Appointment added: " + appointment.getAppointmentId()
@@ -47,10 +75,7 @@ public class AppointmentController {
      * @return Appointment object if found, otherwise null
      */
     public Appointment getAppointment(String appointmentId) {
-        return appointments.stream()
-                .filter(apt -> apt.getAppointmentId().equals(appointmentId))
-                .findFirst()
-                .orElse(null);
+        return appointments.get(appointmentId);
     }
 
     /**
@@ -60,9 +85,7 @@ public class AppointmentController {
      * @return List of appointments for that patient
      */
     public List<Appointment> getAppointmentsByPatient(String patientId) {
-        return appointments.stream()
-                .filter(apt -> apt.getPatientId().equals(patientId))
-                .toList();
+        return appointments.findBy(BY_PATIENT, patientId);
     }
 
     /**
@@ -74,9 +97,51 @@ public class AppointmentController {
      * @return List of appointments for that clinician
      */
     public List<Appointment> getAppointmentsByClinician(String clinicianId) {
-        return appointments.stream()
-                .filter(apt -> apt.getClinicianId().equals(clinicianId))
-                .toList();
+        return appointments.findBy(BY_CLINICIAN, clinicianId);
+    }
+
+    /**
+     * READ: Get the appointments in a time range, in time order.
+     *
+     * Answered from the repository's sorted time index, not by parsing every
+     * appointment. Appointments whose dateTime is not "YYYY-MM-DD HH:MM" are not in any
+     * range; appointments at the same minute come in list order.
+     *
+     * @param from Start of the range (inclusive)
+     * @param to End of the range (exclusive)
+     * @return Appointments from 'from' up to 'to'
+     */
+    public List<Appointment> getAppointmentsBetween(LocalDateTime from, LocalDateTime to) {
+        return getAppointmentsBetween(null, from, to);
+    }
+
+    /**
+     * READ: Get one clinician's appointments in a time range, in time order.
+     *
+     * @param clinicianId Clinician ID, or null for every clinician
+     * @param from Start of the range (inclusive)
+     * @param to End of the range (exclusive)
+     * @return The clinician's appointments from 'from' up to 'to'
+     */
+    public List<Appointment> getAppointmentsBetween(String clinicianId, LocalDateTime from, LocalDateTime to) {
+        String start = timeKey(minutes(from));
+        String end = timeKey(minutes(to));
+        if (clinicianId == null) {
+            return appointments.findRange(BY_TIME, start, end);
+        }
+        return appointments.findRange(BY_CLINICIAN_TIME, clinicianTimeKey(clinicianId, start),
+                clinicianTimeKey(clinicianId, end));
+    }
+
+    /**
+     * READ: Get a clinician's day list, in time order.
+     *
+     * @param clinicianId Clinician ID
+     * @param date The day
+     * @return The clinician's appointments on that day
+     */
+    public List<Appointment> getClinicianDay(String clinicianId, LocalDate date) {
+        return getAppointmentsBetween(clinicianId, date.atStartOfDay(), date.plusDays(1).atStartOfDay());
     }
 
     /**
@@ -122,10 +187,27 @@ public class AppointmentController {
             existing.setReason(newReason);
         }
 
+        appointments.update(existing);
+        changes.changed(appointmentId, existing);
         System.out.println(" Appointment updated: " + appointmentId);
         return true;
     }
 
+    /**
+     * UPDATE: Put a new appointment object in place of the stored one with the same ID,
+     * keeping its position (e.g. a row changed in the file by another program).
+     *
+     * @param appointment The new appointment
+     * @return true if replaced, false if not found
+     */
+    public boolean replaceAppointment(Appointment appointment) {
+        if (!appointments.update(appointment)) {
+            return false;
+        }
+        changes.changed(appointment.getAppointmentId(), appointment);
+        return true;
+    }
+
     /**
      * Remove an appointment from the system.
      *
@@ -133,9 +215,10 @@ public class AppointmentController {
      * @return true if deleted, false if not found
      */
     public boolean deleteAppointment(String appointmentId) {
-        boolean removed = appointments.removeIf(apt -> apt.getAppointmentId().equals(appointmentId));
+        boolean removed = appointments.remove(appointmentId);
 
         if (removed) {
+            changes.deleted(appointmentId);
             System.out.println(" Appointment deleted: " + appointmentId);
         } else {
             System.err.println("ERROR: Appointment " + appointmentId + " not found");
@@ -150,7 +233,41 @@ public class AppointmentController {
      * @return Copy of all appointments
      */
     public List<Appointment> getAllAppointments() {
-        return new ArrayList<>(appointments);
+        return appointments.list();
+    }
+
+    /**
+     * READ: All appointments as a read-only view, without copying the list.
+     *
+     * The view follows later changes, so it suits one pass on the thread that owns the
+     * controller (filling a table, encoding a snapshot). Use getAllAppointments() for a copy.
+     *
+     * @return Unmodifiable view of the appointments
+     */
+    public List<Appointment> getAppointmentsView() {
+        return appointments.view();
+    }
+
+    /**
+     * READ: One screenful of appointments, in the same order as getAllAppointments().
+     *
+     * @param offset Appointments to skip
+     * @param limit Most appointments to return
+     * @return Up to limit appointments from position offset on
+     */
+    public List<Appointment> getAppointmentsPage(int offset, int limit) {
+        return appointments.page(offset, limit);
+    }
+
+    /**
+     * READ: The appointments for a background save, taken on the thread that owns the controller.
+     * In memory this is a copy of the list; a disk repository streams from its file
+     * during the save instead of copying (see Repository.toSave()).
+     *
+     * @return The appointments, in the same order as getAppointmentsView()
+     */
+    public Iterable<Appointment> getAppointmentsToSave() {
+        return appointments.toSave();
     }
 
     /**
@@ -168,12 +285,63 @@ public class AppointmentController {
      * @param loadedAppointments Appointments loaded from CSV
      */
     public void loadAppointmentsFromData(List<Appointment> loadedAppointments) {
-        appointments.clear();
+        appointments.load(loadedAppointments != null ? loadedAppointments.stream() : Stream.empty());
+        changes.loaded();
 
-        if (loadedAppointments != null) {
-            appointments.addAll(loadedAppointments);
-        }
+        System.out.println(" Loaded " + appointments.size() + " appointments into controller");
+    }
 
+    /**
+     * POPULATE FROM CSV DATA (streaming)
+     *
+     * Rows are added as they are parsed, so no intermediate list of the whole file is built.
+     *
+     * @param loadedAppointments Stream of appointments, e.g. from DataLoader.streamAppointments
+     */
+    public void loadAppointmentsFromStream(Stream<Appointment> loadedAppointments) {
+        appointments.load(loadedAppointments);
+        changes.loaded();
         System.out.println(" Loaded " + appointments.size() + " appointments into controller");
     }
+
+    // Minutes since 1970 as eight hex digits, sign bit flipped so that String order is
+    // time order; null for an appointment whose dateTime does not parse
+    private static String timeKey(int minutes) {
+        if (minutes == AppointmentStore.NO_TIME) {
+            return null;
+        }
+        char[] key = new char[8];
+        int value = minutes ^ Integer.MIN_VALUE;
+        for (int i = key.length - 1; i >= 0; i--) {
+            key[i] = HEX[value & 0xF];
+            value >>>= 4;
+        }
+        return new String(key);
+    }
+
+    // The clinician's ID, then a character that sorts before any other, then the time,
+    // so one clinician's appointments form one range of keys in time order
+    private static String clinicianTimeKey(String clinicianId, String timeKey) {
+        return timeKey == null ? null : clinicianId + '\0' + timeKey;
+    }
+
+    // Clamped into the range of the stored minutes, past NO_TIME
+    private static int minutes(LocalDateTime time) {
+        long minutes = Math.floorDiv(time.toEpochSecond(ZoneOffset.UTC), 60);
+        return (int) Math.max(Integer.MIN_VALUE + 1L, Math.min(Integer.MAX_VALUE, minutes));
+    }
+
+    /**
+     * Changes since the last load or save (Save All skips this file when clean)
+     *
+     * @return The change tracker of this collection
+     */
+    public ChangeTracker getChangeTracker() {
+        return changes;
+    }
+
+    // The loader and the compactor reopen and commit a disk repository through this
+    Repository<Appointment> getRepository() {
+        return appointments;
+    }
 }
@@ -0,0 +1,682 @@
+package controller;
+
+import model.Appointment;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.DateTimeException;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.time.format.ResolverStyle;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+/**
+ * AppointmentStore keeps appointments in a memory-mapped file of fixed-width records, so
+ * a change to one appointment is written in place at a known offset instead of rewriting
+ * a whole file. Checking a patient in sets one status byte; moving an appointment
+ * overwrites one int.
+ *
+ * Two files: <name>.store holds a header and one record per appointment, <name>.heap the
+ * strings the records point to (int byte length + UTF-8 bytes, only ever appended).
+ *
+ * Record layout, slot n at HEADER_SIZE + n * RECORD_SIZE (32 bytes, so no record
+ * straddles a 64-byte cache line):
+ *   0  int  appointment ID (heap offset)
+ *   4  int  patient ID (heap offset, shared by the records with that patient)
+ *   8  int  clinician ID (heap offset, shared)
+ *   12 int  location (heap offset, shared)
+ *   16 int  reason (heap offset, NONE if there is none)
+ *   20 int  date and time in minutes since 1970-01-01 00:00, or NO_TIME
+ *   24 int  date and time as text (heap offset), only if it is not "yyyy-MM-dd HH:mm"
+ *   28 byte status code, an index into the status table in the header (0 = deleted)
+ *
+ * Lookups by ID go through an open-addressing table of slot numbers, rebuilt from the
+ * file on open; nothing else about the records is held on the heap. Records come back
+ * in the order they were added and are new objects on every read, so a changed
+ * appointment must be written back with update(). A changed string field is appended to
+ * the heap file and the old copy stays there until load() starts both files over.
+ * Duplicate IDs behave as they do in InMemoryRepository: add() keeps both records, the
+ * table points at the first (used by get() and update()), and remove() also takes out
+ * the later ones, with a scan of the records once there are any.
+ *
+ * Like PageFileRepository the files survive restarts but the CSV file (with the
+ * journal) stays the primary copy. commit() records the size and modification time of
+ * the CSV file the store matches and forces both files out, marked clean; the first
+ * change after that forces the header out marked unclean, and close() marks it clean
+ * again. The next run reopens the files if isLoadedFrom() says the CSV file is the same,
+ * and otherwise load() starts them over from the freshly parsed data. Between those
+ * points the mapped pages reach the disk whenever the operating system writes them.
+ */
+public class AppointmentStore implements Repository<Appointment> {
+
+    static final int RECORD_SIZE = 32;
+    static final int HEADER_SIZE = 4096;
+
+    private static final int MAGIC = 0x4E485341; // "NHSA"
+    private static final int VERSION = 1;
+
+    // Header layout
+    private static final int H_MAGIC = 0;
+    private static final int H_VERSION = 4;
+    private static final int H_RECORD_SIZE = 8;
+    private static final int H_COUNT = 12;
+    private static final int H_LIVE = 16;
+    private static final int H_HEAP_END = 20;
+    private static final int H_STATUS_COUNT = 24;
+    private static final int H_DUPLICATES = 28;
+    private static final int H_SOURCE_SIZE = 32;
+    private static final int H_SOURCE_MODIFIED = 40;
+    private static final int H_CLEAN = 48;
+    private static final int H_STATUSES = 64;
+    private static final int MAX_STATUSES = 256;
+
+    // Record layout
+    private static final int R_ID = 0;
+    private static final int R_PATIENT = 4;
+    private static final int R_CLINICIAN = 8;
+    private static final int R_LOCATION = 12;
+    private static final int R_REASON = 16;
+    private static final int R_MINUTES = 20;
+    private static final int R_TIME_TEXT = 24;
+    private static final int R_STATUS = 28;
+
+    private static final int NONE = -1;
+    static final int NO_TIME = Integer.MIN_VALUE;
+    private static final byte DELETED = 0;
+
+    // Status codes 1, 2 and 3 in every new store; others get the next free code
+    private static final String[] KNOWN_STATUSES = {"Scheduled", "Completed", "Cancelled"};
+
+    private static final DateTimeFormatter FORMAT = DateTimeFormatter.ofPattern("uuuu-MM-dd HH:mm")
+            .withResolverStyle(ResolverStyle.STRICT);
+
+    private static final int MIN_RECORDS = 1024;
+    private static final int MIN_HEAP = 1 << 20;
+
+    private final Path path;
+    private final FileChannel records;
+    private final FileChannel heap;
+    private MappedByteBuffer recordMap;
+    private MappedByteBuffer heapMap;
+
+    private int count; // slots used, deleted ones included
+    private int live;
+    private int heapEnd;
+
+    // Status by code; code 0 (deleted) has no entry of its own
+    private final List<String> statuses = new ArrayList<>();
+
+    // Heap offsets of the shared strings written since open, reused instead of appended again
+    private final Map<String, Integer> shared = new HashMap<>();
+    // Shared strings already decoded, so reading many records does not copy them each time
+    private final Map<Integer, String> decoded = new HashMap<>();
+
+    // Slot + 1 per entry, 0 for empty; linear probing on the hash of the ID's bytes
+    private int[] index = new int[2 * MIN_RECORDS];
+    private int indexed;
+
+    private AppointmentStore(Path path, FileChannel records, FileChannel heap) {
+        this.path = path;
+        this.records = records;
+        this.heap = heap;
+    }
+
+    /**
+     * Open (or create) a store: base.store and base.heap.
+     *
+     * @param base The files' path without extension, e.g. data/appointments
+     * @return The store, with whatever the files already hold
+     * @throws IOException If the files cannot be opened or are not an appointment store
+     */
+    public static AppointmentStore open(Path base) throws IOException {
+        Path storePath = base.resolveSibling(base.getFileName() + ".store");
+        Path heapPath = base.resolveSibling(base.getFileName() + ".heap");
+        FileChannel records = FileChannel.open(storePath, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        FileChannel heap = null;
+        try {
+            heap = FileChannel.open(heapPath, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE);
+            AppointmentStore store = new AppointmentStore(storePath, records, heap);
+            if (records.size() == 0) {
+                store.format();
+            } else {
+                store.readHeader();
+            }
+            return store;
+        } catch (IOException | RuntimeException e) {
+            records.close();
+            if (heap != null) {
+                heap.close();
+            }
+            throw e;
+        }
+    }
+
+    @Override
+    public synchronized Appointment get(String id) {
+        if (id == null) {
+            return null;
+        }
+        int slot = find(key(id));
+        return slot < 0 ? null : decode(position(slot));
+    }
+
+    /**
+     * Add an appointment at the end; one with an ID already present stays where it is,
+     * ahead of the new one.
+     */
+    @Override
+    public synchronized void add(Appointment item) {
+        byte[] key = key(item.getAppointmentId());
+        try {
+            changing();
+            int first = find(key);
+            int slot = count;
+            ensureRecords(slot + 1);
+            int pos = position(slot);
+            recordMap.putInt(pos + R_ID, append(item.getAppointmentId()));
+            recordMap.putInt(pos + R_PATIENT, appendShared(item.getPatientId()));
+            recordMap.putInt(pos + R_CLINICIAN, appendShared(item.getClinicianId()));
+            recordMap.putInt(pos + R_LOCATION, appendShared(item.getLocation()));
+            recordMap.putInt(pos + R_REASON, append(item.getReason()));
+            int minutes = minutes(item.getDateTime());
+            recordMap.putInt(pos + R_MINUTES, minutes);
+            recordMap.putInt(pos + R_TIME_TEXT, minutes == NO_TIME ? append(item.getDateTime()) : NONE);
+            recordMap.put(pos + R_STATUS, statusCode(item.getStatus()));
+            count++;
+            live++;
+            writeCounts();
+            if (first < 0) {
+                insert(slot, hash(key));
+            } else {
+                recordMap.putInt(H_DUPLICATES, 1);
+            }
+        } catch (IOException e) {
+            throw failed(e);
+        }
+    }
+
+    /**
+     * Write the fields of an appointment that changed over its stored record. A status
+     * or date change is a single store into the mapped record.
+     */
+    @Override
+    public synchronized boolean update(Appointment item) {
+        int slot = find(key(item.getAppointmentId()));
+        if (slot < 0) {
+            return false;
+        }
+        try {
+            changing();
+            change(position(slot), item);
+        } catch (IOException e) {
+            throw failed(e);
+        }
+        return true;
+    }
+
+    @Override
+    public synchronized boolean remove(String id) {
+        byte[] key = id == null ? null : key(id);
+        int slot = key == null ? -1 : find(key);
+        if (slot < 0) {
+            return false;
+        }
+        try {
+            changing();
+        } catch (IOException e) {
+            throw failed(e);
+        }
+        unindex(slot);
+        recordMap.put(position(slot) + R_STATUS, DELETED);
+        live--;
+        if (recordMap.getInt(H_DUPLICATES) != 0) {
+            // The others with the ID all come after the first, and are not in the table
+            for (int later = slot + 1; later < count; later++) {
+                int pos = position(later);
+                if (recordMap.get(pos + R_STATUS) != DELETED && equalsAt(recordMap.getInt(pos + R_ID), key)) {
+                    recordMap.put(pos + R_STATUS, DELETED);
+                    live--;
+                }
+            }
+        }
+        writeCounts();
+        return true;
+    }
+
+    @Override
+    public synchronized void load(Stream<? extends Appointment> items) {
+        try {
+            changing();
+            format();
+            Iterator<? extends Appointment> it = items.iterator();
+            while (it.hasNext()) {
+                add(it.next());
+            }
+            flush();
+        } catch (IOException e) {
+            throw failed(e);
+        }
+    }
+
+    @Override
+    public synchronized int size() {
+        return live;
+    }
+
+    /**
+     * Appointments in the order they were added, each read when the stream gets to it.
+     * Appointments added after the stream was created are not in it.
+     */
+    @Override
+    public Stream<Appointment> stream() {
+        int end;
+        synchronized (this) {
+            end = count;
+        }
+        return IntStream.range(0, end).mapToObj(this::read).filter(Objects::nonNull);
+    }
+
+    /**
+     * Skips to the offset on the status bytes alone, decoding only the records returned.
+     */
+    @Override
+    public synchronized List<Appointment> page(int offset, int limit) {
+        if (offset < 0 || limit < 0) {
+            throw new IllegalArgumentException("Negative offset or limit: " + offset + ", " + limit);
+        }
+        int slot = offset;
+        if (live < count) {
+            slot = 0;
+            for (int skipped = 0; slot < count && skipped < offset; slot++) {
+                if (recordMap.get(position(slot) + R_STATUS) != DELETED) {
+                    skipped++;
+                }
+            }
+        }
+        List<Appointment> page = new ArrayList<>(Math.min(limit, Math.max(0, live - offset)));
+        for (; slot < count && page.size() < limit; slot++) {
+            if (recordMap.get(position(slot) + R_STATUS) != DELETED) {
+                page.add(decode(position(slot)));
+            }
+        }
+        return page;
+    }
+
+    /**
+     * The stream itself: each record is read under the store's lock, so a background
+     * save can go through the mapped file without a copy of every appointment.
+     */
+    @Override
+    public Iterable<Appointment> toSave() {
+        return () -> stream().iterator();
+    }
+
+    /**
+     * Write the mapped pages of both files to disk.
+     */
+    @Override
+    public synchronized void flush() throws IOException {
+        recordMap.force();
+        heapMap.force();
+    }
+
+    /**
+     * True if the files were left clean after holding the appointments of the source
+     * file as it is now, with the changes made since.
+     */
+    @Override
+    public synchronized boolean isLoadedFrom(long size, long modified) {
+        return recordMap.getInt(H_CLEAN) != 0 && recordMap.getLong(H_SOURCE_MODIFIED) != 0
+                && recordMap.getLong(H_SOURCE_SIZE) == size && recordMap.getLong(H_SOURCE_MODIFIED) == modified;
+    }
+
+    @Override
+    public synchronized void commit(long size, long modified) throws IOException {
+        recordMap.putLong(H_SOURCE_SIZE, size);
+        recordMap.putLong(H_SOURCE_MODIFIED, modified);
+        markClean();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        try {
+            markClean();
+        } finally {
+            records.close();
+            heap.close();
+        }
+    }
+
+    /**
+     * @return Bytes of the heap file in use, superseded strings included
+     */
+    public synchronized int getHeapSize() {
+        return heapEnd;
+    }
+
+    // Both files out first, then the clean mark, so a clean store is whole on disk
+    private void markClean() throws IOException {
+        flush();
+        recordMap.putInt(H_CLEAN, 1);
+        recordMap.force(0, HEADER_SIZE);
+    }
+
+    // Before the first change after a commit: the header on disk stops being clean before
+    // the operating system can write any page of the change
+    private void changing() throws IOException {
+        if (recordMap.getInt(H_CLEAN) != 0) {
+            recordMap.putInt(H_CLEAN, 0);
+            recordMap.force(0, HEADER_SIZE);
+        }
+    }
+
+    // Start over with an empty store, keeping the files' current size
+    private void format() throws IOException {
+        recordMap = map(records, Math.max(records.size(), HEADER_SIZE + (long) MIN_RECORDS * RECORD_SIZE));
+        heapMap = map(heap, Math.max(heap.size(), MIN_HEAP));
+        for (int i = 0; i < HEADER_SIZE; i += 4) {
+            recordMap.putInt(i, 0);
+        }
+        recordMap.putInt(H_MAGIC, MAGIC);
+        recordMap.putInt(H_VERSION, VERSION);
+        recordMap.putInt(H_RECORD_SIZE, RECORD_SIZE);
+        count = 0;
+        live = 0;
+        heapEnd = 0;
+        shared.clear();
+        decoded.clear();
+        index = new int[2 * MIN_RECORDS];
+        indexed = 0;
+        statuses.clear();
+        statuses.add(null);
+        for (String status : KNOWN_STATUSES) {
+            statusCode(status);
+        }
+        writeCounts();
+    }
+
+    private void readHeader() throws IOException {
+        recordMap = map(records, records.size());
+        if (records.size() < HEADER_SIZE || recordMap.getInt(H_MAGIC) != MAGIC
+                || recordMap.getInt(H_VERSION) != VERSION || recordMap.getInt(H_RECORD_SIZE) != RECORD_SIZE) {
+            throw new IOException(path + " is not a version " + VERSION + " appointment store");
+        }
+        count = recordMap.getInt(H_COUNT);
+        live = recordMap.getInt(H_LIVE);
+        heapEnd = recordMap.getInt(H_HEAP_END);
+        if (HEADER_SIZE + (long) count * RECORD_SIZE > records.size() || heapEnd > heap.size()) {
+            throw new IOException(path + " is cut short");
+        }
+        heapMap = map(heap, Math.max(heap.size(), MIN_HEAP));
+        statuses.add(null);
+        int statusCount = recordMap.getInt(H_STATUS_COUNT);
+        for (int code = 1; code < statusCount; code++) {
+            String status = string(recordMap.getInt(H_STATUSES + code * 4));
+            statuses.add(status != null ? status.intern() : null);
+        }
+        index = new int[Integer.highestOneBit(Math.max(MIN_RECORDS, live) * 2) * 2];
+        // Only the first record with an ID goes in the table
+        boolean duplicates = recordMap.getInt(H_DUPLICATES) != 0;
+        for (int slot = 0; slot < count; slot++) {
+            int pos = position(slot);
+            if (recordMap.get(pos + R_STATUS) != DELETED
+                    && (!duplicates || find(key(string(recordMap.getInt(pos + R_ID)))) < 0)) {
+                insert(slot, hashAt(slot));
+            }
+        }
+    }
+
+    private void change(int pos, Appointment item) throws IOException {
+        byte status = statusCode(item.getStatus());
+        if (recordMap.get(pos + R_STATUS) != status) {
+            recordMap.put(pos + R_STATUS, status);
+        }
+        int minutes = minutes(item.getDateTime());
+        if (recordMap.getInt(pos + R_MINUTES) != minutes) {
+            recordMap.putInt(pos + R_MINUTES, minutes);
+        }
+        if (minutes == NO_TIME) {
+            replace(pos + R_TIME_TEXT, item.getDateTime(), false);
+        } else if (recordMap.getInt(pos + R_TIME_TEXT) != NONE) {
+            recordMap.putInt(pos + R_TIME_TEXT, NONE);
+        }
+        replace(pos + R_PATIENT, item.getPatientId(), true);
+        replace(pos + R_CLINICIAN, item.getClinicianId(), true);
+        replace(pos + R_LOCATION, item.getLocation(), true);
+        replace(pos + R_REASON, item.getReason(), false);
+    }
+
+    // Point a record field at a new string, unless it already holds an equal one
+    private void replace(int field, String value, boolean sharedValue) throws IOException {
+        int offset = recordMap.getInt(field);
+        if (value == null ? offset == NONE : offset != NONE && equalsAt(offset, key(value))) {
+            return;
+        }
+        recordMap.putInt(field, sharedValue ? appendShared(value) : append(value));
+    }
+
+    private Appointment read(int slot) {
+        synchronized (this) {
+            if (slot >= count || recordMap.get(position(slot) + R_STATUS) == DELETED) {
+                return null; // removed, or the store was reloaded since the stream started
+            }
+            return decode(position(slot));
+        }
+    }
+
+    private Appointment decode(int pos) {
+        int minutes = recordMap.getInt(pos + R_MINUTES);
+        String dateTime = minutes == NO_TIME ? string(recordMap.getInt(pos + R_TIME_TEXT)) : format(minutes);
+        Appointment appointment = new Appointment(string(recordMap.getInt(pos + R_ID)),
+                sharedString(recordMap.getInt(pos + R_PATIENT)),
+                sharedString(recordMap.getInt(pos + R_CLINICIAN)),
+                dateTime,
+                sharedString(recordMap.getInt(pos + R_LOCATION)));
+        appointment.setStatus(statuses.get(recordMap.get(pos + R_STATUS) & 0xFF));
+        appointment.setReason(string(recordMap.getInt(pos + R_REASON)));
+        return appointment;
+    }
+
+    // The code of a status, adding it to the table in the header the first time it is seen
+    private byte statusCode(String status) throws IOException {
+        for (int code = 1; code < statuses.size(); code++) {
+            if (Objects.equals(statuses.get(code), status)) {
+                return (byte) code;
+            }
+        }
+        int code = statuses.size();
+        if (code == MAX_STATUSES) {
+            throw new IOException("More than " + (MAX_STATUSES - 1) + " different appointment statuses");
+        }
+        recordMap.putInt(H_STATUSES + code * 4, append(status));
+        statuses.add(status != null ? status.intern() : null);
+        recordMap.putInt(H_STATUS_COUNT, statuses.size());
+        return (byte) code;
+    }
+
+    private int appendShared(String value) throws IOException {
+        if (value == null) {
+            return NONE;
+        }
+        Integer offset = shared.get(value);
+        if (offset == null) {
+            offset = append(value);
+            shared.put(value, offset);
+        }
+        return offset;
+    }
+
+    private int append(String value) throws IOException {
+        if (value == null) {
+            return NONE;
+        }
+        byte[] bytes = key(value);
+        long end = (long) heapEnd + 4 + bytes.length;
+        if (end > heapMap.capacity()) {
+            heapMap = map(heap, Math.max(end, 2L * heapMap.capacity()));
+        }
+        int offset = heapEnd;
+        heapMap.putInt(offset, bytes.length);
+        heapMap.put(offset + 4, bytes);
+        heapEnd = (int) end;
+        recordMap.putInt(H_HEAP_END, heapEnd);
+        return offset;
+    }
+
+    private String string(int offset) {
+        if (offset == NONE) {
+            return null;
+        }
+        byte[] bytes = new byte[heapMap.getInt(offset)];
+        heapMap.get(offset + 4, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private String sharedString(int offset) {
+        return offset == NONE ? null : decoded.computeIfAbsent(offset, this::string);
+    }
+
+    private boolean equalsAt(int offset, byte[] bytes) {
+        if (heapMap.getInt(offset) != bytes.length) {
+            return false;
+        }
+        for (int i = 0; i < bytes.length; i++) {
+            if (heapMap.get(offset + 4 + i) != bytes[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void ensureRecords(int slots) throws IOException {
+        long needed = HEADER_SIZE + (long) slots * RECORD_SIZE;
+        if (needed > recordMap.capacity()) {
+            recordMap = map(records, Math.max(needed, 2L * recordMap.capacity()));
+        }
+    }
+
+    private void writeCounts() {
+        recordMap.putInt(H_COUNT, count);
+        recordMap.putInt(H_LIVE, live);
+    }
+
+    // Slot of the live record with this ID, or -1
+    private int find(byte[] key) {
+        int mask = index.length - 1;
+        for (int i = hash(key) & mask; index[i] != 0; i = (i + 1) & mask) {
+            int slot = index[i] - 1;
+            if (equalsAt(recordMap.getInt(position(slot) + R_ID), key)) {
+                return slot;
+            }
+        }
+        return -1;
+    }
+
+    private void insert(int slot, int hash) {
+        if ((indexed + 1) * 2 > index.length) {
+            int[] old = index;
+            index = new int[old.length * 2];
+            indexed = 0;
+            for (int entry : old) {
+                if (entry != 0) {
+                    insert(entry - 1, hashAt(entry - 1));
+                }
+            }
+        }
+        int mask = index.length - 1;
+        int i = hash & mask;
+        while (index[i] != 0) {
+            i = (i + 1) & mask;
+        }
+        index[i] = slot + 1;
+        indexed++;
+    }
+
+    // Remove a slot from the table, moving later entries of its run back into the gap
+    // so that no lookup stops at an empty entry before reaching them
+    private void unindex(int slot) {
+        int mask = index.length - 1;
+        int gap = hashAt(slot) & mask;
+        while (index[gap] != slot + 1) {
+            gap = (gap + 1) & mask;
+        }
+        for (int j = (gap + 1) & mask; index[j] != 0; j = (j + 1) & mask) {
+            int home = hashAt(index[j] - 1) & mask;
+            if (((j - home) & mask) >= ((j - gap) & mask)) {
+                index[gap] = index[j];
+                gap = j;
+            }
+        }
+        index[gap] = 0;
+        indexed--;
+    }
+
+    private int hashAt(int slot) {
+        int offset = recordMap.getInt(position(slot) + R_ID);
+        int length = heapMap.getInt(offset);
+        int h = 0;
+        for (int i = 0; i < length; i++) {
+            h = 31 * h + heapMap.get(offset + 4 + i);
+        }
+        return h ^ (h >>> 16);
+    }
+
+    private static int hash(byte[] key) {
+        int h = 0;
+        for (byte b : key) {
+            h = 31 * h + b;
+        }
+        return h ^ (h >>> 16);
+    }
+
+    private static int position(int slot) {
+        return HEADER_SIZE + slot * RECORD_SIZE;
+    }
+
+    // Minutes since 1970 for "yyyy-MM-dd HH:mm", NO_TIME for anything else (kept as text)
+    static int minutes(String dateTime) {
+        if (dateTime == null || dateTime.length() != 16) {
+            return NO_TIME;
+        }
+        try {
+            LocalDateTime time = LocalDateTime.parse(dateTime, FORMAT);
+            long minutes = time.toEpochSecond(ZoneOffset.UTC) / 60;
+            return minutes > NO_TIME && minutes <= Integer.MAX_VALUE ? (int) minutes : NO_TIME;
+        } catch (DateTimeException e) {
+            return NO_TIME;
+        }
+    }
+
+    static String format(int minutes) {
+        return FORMAT.format(LocalDateTime.ofEpochSecond(minutes * 60L, 0, ZoneOffset.UTC));
+    }
+
+    private static MappedByteBuffer map(FileChannel channel, long size) throws IOException {
+        if (size > Integer.MAX_VALUE) {
+            throw new IOException("Appointment store file would pass 2 GB");
+        }
+        return channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+    }
+
+    private static byte[] key(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private UncheckedIOException failed(IOException e) {
+        return new UncheckedIOException("Appointment store " + path + ": " + e.getMessage(), e);
+    }
+}
@@ -0,0 +1,573 @@
+package controller;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * BPlusTree maps byte-string keys to byte-string values inside a PageFile.
+ *
+ * Leaves hold the keys in order with their values and are chained left to right for
+ * scans; internal pages hold separator keys and child pointers. Keys compare as
+ * unsigned bytes, which for the UTF-8 record IDs is the same as String order.
+ *
+ * A tree keeps its root page and entry count in two consecutive header slots of the
+ * PageFile, so one file can hold several trees side by side.
+ *
+ * Page layouts (after the PageFile header page):
+ *
+ *   byte type | short count | long link | int used | entries from offset 16
+ *
+ *   leaf:      link = next leaf (0 = last); entry = short keyLength, key,
+ *              int valueLength, value bytes  (or, for a value too big to keep inline,
+ *              int -length, long first overflow page)
+ *   internal:  link = leftmost child;  entry = short keyLength, key, long child,
+ *              where child holds the keys >= key
+ *   overflow:  link = next overflow page, used = bytes of value in this page
+ *
+ * Lookups search pages in place. An inline value that fits in its leaf is inserted or
+ * replaced in place too; anything else decodes the page into a Node, changes it and
+ * encodes it back, splitting a node that no longer fits in two. When a key goes to the
+ * very end of the rightmost leaf (IDs loaded in ascending order), the split leaves the
+ * old page full instead of half full, so a sorted load packs the leaves. Removing only
+ * deletes the entry: pages are not merged, and an emptied leaf stays in the chain until
+ * a load rebuilds the file.
+ */
+final class BPlusTree {
+
+    static final int MAX_KEY = 512;
+
+    private static final byte LEAF = 1;
+    private static final byte INTERNAL = 2;
+    private static final byte OVERFLOW = 3;
+
+    private static final int TYPE = 0;
+    private static final int COUNT = 1;
+    private static final int LINK = 3;
+    private static final int USED = 11;
+    private static final int ENTRIES = 16;
+    private static final int CAPACITY = PageFile.PAGE_SIZE - ENTRIES;
+
+    // Values bigger than this go to overflow pages, so a leaf always holds several entries
+    private static final int MAX_INLINE = CAPACITY / 8;
+
+    // Header slots a tree uses in the PageFile
+    static final int SLOTS = 2;
+
+    private final PageFile file;
+    private final int rootSlot;
+    private final int sizeSlot;
+
+    /**
+     * One decoded page. For a leaf, values[i] is the inline value, or null with
+     * refs[i] = {first overflow page, length}; for an internal node refs[i] = {child}.
+     * Nodes are copies: write() puts one back, so no page buffer is held between
+     * page accesses and pins only need to last for one access.
+     */
+    private static final class Node {
+        final long page;
+        final boolean leaf;
+        long link;
+        final List<byte[]> keys = new ArrayList<>();
+        final List<byte[]> values = new ArrayList<>();
+        final List<long[]> refs = new ArrayList<>();
+
+        Node(long page, boolean leaf) {
+            this.page = page;
+            this.leaf = leaf;
+        }
+
+        int size() {
+            int size = 0;
+            for (int i = 0; i < keys.size(); i++) {
+                size += entrySize(i);
+            }
+            return size;
+        }
+
+        int entrySize(int i) {
+            if (!leaf) {
+                return 2 + keys.get(i).length + 8;
+            }
+            return 2 + keys.get(i).length + 4 + (values.get(i) != null ? values.get(i).length : 8);
+        }
+    }
+
+    /**
+     * @param file The page file
+     * @param firstSlot First of the SLOTS header slots holding this tree; an empty tree
+     *                  is created if they are unset
+     */
+    BPlusTree(PageFile file, int firstSlot) throws IOException {
+        this.file = file;
+        this.rootSlot = firstSlot;
+        this.sizeSlot = firstSlot + 1;
+        if (file.getSlot(rootSlot) == 0) {
+            create();
+        }
+    }
+
+    /**
+     * Start over with an empty tree. The old tree's pages are not freed, so format the
+     * file first when every tree in it is rebuilt (as PageFileRepository.load() does).
+     */
+    void create() throws IOException {
+        try {
+            long root = file.allocate();
+            write(new Node(root, true));
+            file.setSlot(rootSlot, root);
+            file.setSlot(sizeSlot, 0);
+        } finally {
+            file.release();
+        }
+    }
+
+    long size() {
+        return file.getSlot(sizeSlot);
+    }
+
+    /**
+     * @return The value stored under the key, or null
+     */
+    byte[] get(byte[] key) throws IOException {
+        try {
+            ByteBuffer buffer = file.page(findLeaf(key, null));
+            int pos = find(buffer, key);
+            if (pos < 0) {
+                return null;
+            }
+            int length = buffer.getInt(pos);
+            if (length >= 0) {
+                byte[] value = new byte[length];
+                buffer.get(pos + 4, value);
+                return value;
+            }
+            return overflow(buffer.getLong(pos + 4), -length);
+        } finally {
+            file.release();
+        }
+    }
+
+    /**
+     * Store a value under a key, replacing any value already there.
+     *
+     * @return true if the key was new
+     */
+    boolean put(byte[] key, byte[] value) throws IOException {
+        if (key.length > MAX_KEY) {
+            throw new IllegalArgumentException("Key of " + key.length + " bytes is longer than " + MAX_KEY);
+        }
+        try {
+            if (value.length <= MAX_INLINE) {
+                long page = findLeaf(key, null);
+                int result = putInPlace(file.page(page), key, value);
+                if (result >= 0) {
+                    file.dirty(page);
+                    if (result == 1) {
+                        file.setSlot(sizeSlot, size() + 1);
+                    }
+                    return result == 1;
+                }
+            }
+
+            // Splits and overflow values go through a decoded node
+            List<Long> path = new ArrayList<>();
+            Node leaf = read(findLeaf(key, path));
+            int i = search(leaf.keys, key);
+            boolean added = i < 0;
+            if (added) {
+                i = -i - 1;
+                leaf.keys.add(i, key);
+                leaf.values.add(i, null);
+                leaf.refs.add(i, null);
+                file.setSlot(sizeSlot, size() + 1);
+            } else if (leaf.refs.get(i) != null) {
+                freeOverflow(leaf.refs.get(i)[0]);
+            }
+            if (value.length > MAX_INLINE) {
+                leaf.values.set(i, null);
+                leaf.refs.set(i, new long[]{writeOverflow(value), value.length});
+            } else {
+                leaf.values.set(i, value);
+                leaf.refs.set(i, null);
+            }
+            boolean appended = added && i == leaf.keys.size() - 1 && leaf.link == 0;
+            store(leaf, path, appended);
+            return added;
+        } finally {
+            file.release();
+        }
+    }
+
+    /**
+     * @return true if the key was there
+     */
+    boolean remove(byte[] key) throws IOException {
+        try {
+            Node leaf = read(findLeaf(key, null));
+            int i = search(leaf.keys, key);
+            if (i < 0) {
+                return false;
+            }
+            if (leaf.refs.get(i) != null) {
+                freeOverflow(leaf.refs.get(i)[0]);
+            }
+            leaf.keys.remove(i);
+            leaf.values.remove(i);
+            leaf.refs.remove(i);
+            write(leaf);
+            file.setSlot(sizeSlot, size() - 1);
+            return true;
+        } finally {
+            file.release();
+        }
+    }
+
+    /**
+     * Read the entries in key order that come after a key.
+     *
+     * Scans resume by key rather than by position, so a scan carried on after the tree
+     * changed still returns each remaining key once.
+     *
+     * @param after Exclusive start key, or null to start at the first key
+     * @param max Most entries to return
+     * @param keys Receives the keys
+     * @param values Receives the values
+     */
+    void scan(byte[] after, int max, List<byte[]> keys, List<byte[]> values) throws IOException {
+        try {
+            long page = findLeaf(after != null ? after : new byte[0], null);
+            while (page != 0 && keys.size() < max) {
+                Node leaf = read(page);
+                int i = 0;
+                if (after != null) {
+                    i = search(leaf.keys, after);
+                    i = i >= 0 ? i + 1 : -i - 1;
+                }
+                for (; i < leaf.keys.size() && keys.size() < max; i++) {
+                    keys.add(leaf.keys.get(i));
+                    values.add(value(leaf, i));
+                }
+                page = leaf.link;
+                file.release(); // a long scan must not pin its way through the cache
+            }
+        } finally {
+            file.release();
+        }
+    }
+
+    // ================= NODES =================
+
+    // Walk from the root to the leaf that holds (or would hold) the key. Internal pages are
+    // searched in place; path receives their page numbers, root first.
+    private long findLeaf(byte[] key, List<Long> path) throws IOException {
+        long page = file.getSlot(rootSlot);
+        while (true) {
+            ByteBuffer buffer = file.page(page);
+            if (buffer.get(TYPE) == LEAF) {
+                return page;
+            }
+            if (path != null) {
+                path.add(page);
+            }
+            page = child(buffer, key);
+        }
+    }
+
+    // The child of an internal page for a key: the one after the last separator <= key
+    private static long child(ByteBuffer buffer, byte[] key) {
+        long child = buffer.getLong(LINK);
+        int count = buffer.getShort(COUNT) & 0xFFFF;
+        int pos = ENTRIES;
+        for (int i = 0; i < count; i++) {
+            int length = buffer.getShort(pos) & 0xFFFF;
+            if (compare(buffer, pos + 2, length, key) > 0) {
+                break;
+            }
+            pos += 2 + length;
+            child = buffer.getLong(pos);
+            pos += 8;
+        }
+        return child;
+    }
+
+    // Insert or replace an inline value by moving the bytes after it within the leaf page.
+    // Returns 1 if the key was added, 0 if replaced, -1 if it needs the slow path
+    // (no room, or the old value is in overflow pages).
+    private static int putInPlace(ByteBuffer buffer, byte[] key, byte[] value) {
+        byte[] page = buffer.array();
+        int count = buffer.getShort(COUNT) & 0xFFFF;
+        int used = buffer.getInt(USED);
+        int pos = ENTRIES;
+        for (int i = 0; i < count; i++) {
+            int length = buffer.getShort(pos) & 0xFFFF;
+            int c = compare(buffer, pos + 2, length, key);
+            if (c > 0) {
+                break;
+            }
+            int valuePos = pos + 2 + length;
+            int oldLength = buffer.getInt(valuePos);
+            if (c == 0) {
+                int delta = value.length - oldLength;
+                if (oldLength < 0 || used + delta > PageFile.PAGE_SIZE) {
+                    return -1;
+                }
+                int tail = valuePos + 4 + oldLength;
+                System.arraycopy(page, tail, page, tail + delta, used - tail);
+                buffer.putInt(valuePos, value.length);
+                buffer.put(valuePos + 4, value);
+                buffer.putInt(USED, used + delta);
+                return 0;
+            }
+            pos = valuePos + 4 + (oldLength >= 0 ? oldLength : 8);
+        }
+        int entry = 2 + key.length + 4 + value.length;
+        if (used + entry > PageFile.PAGE_SIZE) {
+            return -1;
+        }
+        System.arraycopy(page, pos, page, pos + entry, used - pos);
+        buffer.putShort(pos, (short) key.length);
+        buffer.put(pos + 2, key);
+        buffer.putInt(pos + 2 + key.length, value.length);
+        buffer.put(pos + 6 + key.length, value);
+        buffer.putShort(COUNT, (short) (count + 1));
+        buffer.putInt(USED, used + entry);
+        return 1;
+    }
+
+    // Find a key in a leaf page in place: offset of its value length field, or -1
+    private static int find(ByteBuffer buffer, byte[] key) {
+        int count = buffer.getShort(COUNT) & 0xFFFF;
+        int pos = ENTRIES;
+        for (int i = 0; i < count; i++) {
+            int length = buffer.getShort(pos) & 0xFFFF;
+            int c = compare(buffer, pos + 2, length, key);
+            pos += 2 + length;
+            if (c == 0) {
+                return pos;
+            }
+            if (c > 0) {
+                return -1;
+            }
+            int valueLength = buffer.getInt(pos);
+            pos += 4 + (valueLength >= 0 ? valueLength : 8);
+        }
+        return -1;
+    }
+
+    // Unsigned comparison of a key stored in a page with a key
+    private static int compare(ByteBuffer buffer, int pos, int length, byte[] key) {
+        int n = Math.min(length, key.length);
+        for (int i = 0; i < n; i++) {
+            int c = (buffer.get(pos + i) & 0xFF) - (key[i] & 0xFF);
+            if (c != 0) {
+                return c;
+            }
+        }
+        return length - key.length;
+    }
+
+    // Write a changed node back, splitting it (and its parents) if it no longer fits
+    private void store(Node node, List<Long> path, boolean appended) throws IOException {
+        if (node.size() <= CAPACITY) {
+            write(node);
+            return;
+        }
+        int split = appended ? node.keys.size() - 1 : splitPoint(node);
+        Node right = new Node(file.allocate(), node.leaf);
+        byte[] separator = node.keys.get(split);
+        int from = node.leaf ? split : split + 1;       // an internal node's separator moves up
+        if (!node.leaf) {
+            right.link = node.refs.get(split)[0];
+        }
+        right.keys.addAll(node.keys.subList(from, node.keys.size()));
+        right.values.addAll(node.values.subList(from, node.values.size()));
+        right.refs.addAll(node.refs.subList(from, node.refs.size()));
+        node.keys.subList(split, node.keys.size()).clear();
+        node.values.subList(split, node.values.size()).clear();
+        node.refs.subList(split, node.refs.size()).clear();
+        if (node.leaf) {
+            right.link = node.link;
+            node.link = right.page;
+        }
+        write(node);
+        write(right);
+
+        if (path.isEmpty()) {
+            Node root = new Node(file.allocate(), false);
+            root.link = node.page;
+            root.keys.add(separator);
+            root.values.add(null);
+            root.refs.add(new long[]{right.page});
+            write(root);
+            file.setSlot(rootSlot, root.page);
+            return;
+        }
+        Node parent = read(path.remove(path.size() - 1));
+        int i = -search(parent.keys, separator) - 1;
+        parent.keys.add(i, separator);
+        parent.values.add(i, null);
+        parent.refs.add(i, new long[]{right.page});
+        store(parent, path, appended && i == parent.keys.size() - 1);
+    }
+
+    // First entry of the right half: about half the bytes on each side
+    private static int splitPoint(Node node) {
+        int half = node.size() / 2;
+        int size = 0;
+        for (int i = 0; i < node.keys.size(); i++) {
+            size += node.entrySize(i);
+            if (size >= half) {
+                return Math.max(1, Math.min(i + 1, node.keys.size() - 1));
+            }
+        }
+        return node.keys.size() / 2;
+    }
+
+    private Node read(long page) throws IOException {
+        ByteBuffer buffer = file.page(page);
+        byte type = buffer.get(TYPE);
+        if (type != LEAF && type != INTERNAL) {
+            throw new IOException("Page " + page + " is not a tree page (type " + type + ")");
+        }
+        Node node = new Node(page, type == LEAF);
+        node.link = buffer.getLong(LINK);
+        int count = buffer.getShort(COUNT) & 0xFFFF;
+        int pos = ENTRIES;
+        for (int i = 0; i < count; i++) {
+            byte[] key = new byte[buffer.getShort(pos) & 0xFFFF];
+            buffer.get(pos + 2, key);
+            pos += 2 + key.length;
+            node.keys.add(key);
+            if (!node.leaf) {
+                node.values.add(null);
+                node.refs.add(new long[]{buffer.getLong(pos)});
+                pos += 8;
+                continue;
+            }
+            int length = buffer.getInt(pos);
+            pos += 4;
+            if (length >= 0) {
+                byte[] value = new byte[length];
+                buffer.get(pos, value);
+                pos += length;
+                node.values.add(value);
+                node.refs.add(null);
+            } else {
+                node.values.add(null);
+                node.refs.add(new long[]{buffer.getLong(pos), -length});
+                pos += 8;
+            }
+        }
+        return node;
+    }
+
+    private void write(Node node) throws IOException {
+        ByteBuffer buffer = file.page(node.page);
+        buffer.put(TYPE, node.leaf ? LEAF : INTERNAL);
+        buffer.putShort(COUNT, (short) node.keys.size());
+        buffer.putLong(LINK, node.link);
+        int pos = ENTRIES;
+        for (int i = 0; i < node.keys.size(); i++) {
+            byte[] key = node.keys.get(i);
+            buffer.putShort(pos, (short) key.length);
+            buffer.put(pos + 2, key);
+            pos += 2 + key.length;
+            long[] ref = node.refs.get(i);
+            if (!node.leaf) {
+                buffer.putLong(pos, ref[0]);
+                pos += 8;
+            } else if (ref == null) {
+                byte[] value = node.values.get(i);
+                buffer.putInt(pos, value.length);
+                buffer.put(pos + 4, value);
+                pos += 4 + value.length;
+            } else {
+                buffer.putInt(pos, (int) -ref[1]);
+                buffer.putLong(pos + 4, ref[0]);
+                pos += 12;
+            }
+        }
+        buffer.putInt(USED, pos);
+        file.dirty(node.page);
+    }
+
+    // ================= OVERFLOW =================
+
+    private byte[] value(Node leaf, int i) throws IOException {
+        if (leaf.values.get(i) != null) {
+            return leaf.values.get(i);
+        }
+        long[] ref = leaf.refs.get(i);
+        return overflow(ref[0], (int) ref[1]);
+    }
+
+    // Pages are unpinned as soon as they are copied, so a value may span more pages than the cache holds
+    private byte[] overflow(long first, int length) throws IOException {
+        byte[] value = new byte[length];
+        int pos = 0;
+        for (long page = first; page != 0 && pos < length; ) {
+            ByteBuffer buffer = file.page(page);
+            int used = buffer.getInt(USED);
+            buffer.get(ENTRIES, value, pos, used);
+            pos += used;
+            page = buffer.getLong(LINK);
+            file.release();
+        }
+        if (pos != length) {
+            throw new IOException("Overflow chain at page " + first + " is cut short");
+        }
+        return value;
+    }
+
+    private long writeOverflow(byte[] value) throws IOException {
+        long first = 0;
+        long previous = 0;
+        for (int pos = 0; pos < value.length; pos += CAPACITY) {
+            long page = file.allocate();
+            ByteBuffer buffer = file.page(page);
+            int used = Math.min(CAPACITY, value.length - pos);
+            buffer.put(TYPE, OVERFLOW);
+            buffer.putInt(USED, used);
+            buffer.put(ENTRIES, value, pos, used);
+            if (previous == 0) {
+                first = page;
+            } else {
+                file.page(previous).putLong(LINK, page);
+                file.dirty(previous);
+            }
+            previous = page;
+            file.release();
+        }
+        return first;
+    }
+
+    private void freeOverflow(long page) throws IOException {
+        while (page != 0) {
+            long next = file.page(page).getLong(LINK);
+            file.free(page);
+            file.release();
+            page = next;
+        }
+    }
+
+    // Binary search: index of the key, or -(insertion point) - 1
+    private static int search(List<byte[]> keys, byte[] key) {
+        int low = 0;
+        int high = keys.size() - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int c = Arrays.compareUnsigned(keys.get(mid), key);
+            if (c < 0) {
+                low = mid + 1;
+            } else if (c > 0) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -low - 1;
+    }
+}
@@ -0,0 +1,106 @@
+package controller;
+
+import java.util.*;
+
+/**
+ * ChangeTracker records what changed in one controller's collection since it was
+ * last loaded or saved, so Save All only rewrites files that actually changed.
+ *
+ * - version: goes up by one on every add/update/delete
+ * - changed IDs: each with the version of its latest change
+ *
+ * A save takes getVersion() together with its copy of the data and reports it back
+ * through markSaved(). Changes made while the file was being written have a higher
+ * version, so they stay pending for the next save.
+ *
+ * A listener (the mutation journal) can be told about every change as it happens.
+ *
+ * Methods are synchronized so a save running off the EDT can read the state safely.
+ */
+public class ChangeTracker {
+
+    /**
+     * Told about each change on the thread that made it, after it was recorded.
+     */
+    public interface Listener {
+        /**
+         * @param id ID of the record changed
+         * @param row The record as it is now, or null if it was deleted
+         */
+        void onChange(String id, Object row);
+    }
+
+    private long version;
+    private long savedVersion;
+    private final Map<String, Long> changedIds = new LinkedHashMap<>();
+    private volatile Listener listener;
+
+    /**
+     * Record that a record was added or updated.
+     *
+     * @param id ID of the record
+     * @param row The record after the change
+     */
+    public void changed(String id, Object row) {
+        record(id);
+        Listener l = listener;
+        if (l != null) {
+            l.onChange(id, row);
+        }
+    }
+
+    /**
+     * Record that a record was deleted.
+     *
+     * @param id ID of the deleted record
+     */
+    public void deleted(String id) {
+        changed(id, null);
+    }
+
+    public void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    private synchronized void record(String id) {
+        version++;
+        changedIds.put(id, version);
+    }
+
+    /**
+     * The collection was just (re)loaded from its file: nothing is pending.
+     */
+    public synchronized void loaded() {
+        version++;
+        savedVersion = version;
+        changedIds.clear();
+    }
+
+    /**
+     * The state as of version was written to disk.
+     *
+     * @param saved The getVersion() value taken when the data to write was copied
+     */
+    public synchronized void markSaved(long saved) {
+        savedVersion = Math.max(savedVersion, saved);
+        changedIds.values().removeIf(v -> v <= saved);
+    }
+
+    public synchronized long getVersion() {
+        return version;
+    }
+
+    /**
+     * @return true if there are changes not yet written to disk
+     */
+    public synchronized boolean isDirty() {
+        return version != savedVersion;
+    }
+
+    /**
+     * @return IDs changed since the last save, oldest change first
+     */
+    public synchronized Set<String> getChangedIds() {
+        return new LinkedHashSet<>(changedIds.keySet());
+    }
+}
@@ -2,6 +2,7 @@ package controller;
 
 import model.Clinician;
 import java.util.*;
+import java.util.stream.Stream;
 
 /**
  * ClinicianController manages all Clinician operations (CRUD).
@@ -12,24 +13,27 @@ import java.util.*;
  */
 public class ClinicianController {
 
-    private List<Clinician> clinicians;
+    private final Repository<Clinician> clinicians;
+    private final ChangeTracker changes = new ChangeTracker();
 
     public ClinicianController() {
-        this.clinicians = new ArrayList<>();
+        this(Repositories.create(DataLoadOrchestrator.DataSet.CLINICIANS, CsvSchemas.CLINICIANS, Clinician::getUserId));
+    }
+
+    public ClinicianController(Repository<Clinician> clinicians) {
+        this.clinicians = clinicians;
     }
 
     public boolean addClinician(Clinician clinician) {
         if (clinician == null) return false;
         clinicians.add(clinician);
+        changes.changed(clinician.getUserId(), clinician);
         System.out.println("Clinician added: " + clinician.getName());
         return true;
     }
 
     public Clinician getClinician(String clinicianId) {
-        return clinicians.stream()
-                .filter(c -> c.getUserId().equals(clinicianId))
-                .findFirst()
-                .orElse(null);
+        return clinicians.get(clinicianId);
     }
 
     public List<Clinician> getCliniciansBySpecialty(String specialty) {
@@ -41,30 +45,74 @@ public class ClinicianController {
     public boolean updateClinician(Clinician clinician) {
         Clinician existing = getClinician(clinician.getUserId());
         if (existing != null) {
+            existing.setFirstName(clinician.getFirstName());
+            existing.setLastName(clinician.getLastName());
             existing.setName(clinician.getName());
             existing.setEmail(clinician.getEmail());
             existing.setSpeciality(clinician.getSpeciality());
+            existing.setPhone(clinician.getPhone());
+            existing.setEmploymentStatus(clinician.getEmploymentStatus());
+            clinicians.update(existing);
+            changes.changed(existing.getUserId(), existing);
             return true;
         }
         return false;
     }
 
+    // Put a new clinician in place of the stored one with the same ID, keeping its position
+    public boolean replaceClinician(Clinician clinician) {
+        if (!clinicians.update(clinician)) {
+            return false;
+        }
+        changes.changed(clinician.getUserId(), clinician);
+        return true;
+    }
+
     public boolean deleteClinician(String clinicianId) {
-        return clinicians.removeIf(c -> c.getUserId().equals(clinicianId));
+        boolean removed = clinicians.remove(clinicianId);
+        if (removed) {
+            changes.deleted(clinicianId);
+        }
+        return removed;
     }
 
     public List<Clinician> getAllClinicians() {
-        return new ArrayList<>(clinicians);
+        return clinicians.list();
+    }
+
+    public List<Clinician> getCliniciansView() {
+        return clinicians.view();
+    }
+
+    public List<Clinician> getCliniciansPage(int offset, int limit) {
+        return clinicians.page(offset, limit);
+    }
+
+    public Iterable<Clinician> getCliniciansToSave() {
+        return clinicians.toSave();
     }
 
     public void loadCliniciansFromData(List<Clinician> loadedClinicians) {
-        clinicians.clear();
-        if (loadedClinicians != null) {
-            clinicians.addAll(loadedClinicians);
-        }
+        clinicians.load(loadedClinicians != null ? loadedClinicians.stream() : Stream.empty());
+        changes.loaded();
         System.out.println("Loaded " + clinicians.size() + " clinicians into controller");
     }
 
+    public void loadCliniciansFromStream(Stream<Clinician> loadedClinicians) {
+        clinicians.load(loadedClinicians);
+        changes.loaded();
+        System.out.println("Loaded " + clinicians.size() + " clinicians into controller");
+    }
+
+    public ChangeTracker getChangeTracker() {
+        return changes;
+    }
+
+    // The loader and the compactor reopen and commit a disk repository through this
+    Repository<Clinician> getRepository() {
+        return clinicians;
+    }
+
     public int getClinicianCount() {
         return clinicians.size();
     }
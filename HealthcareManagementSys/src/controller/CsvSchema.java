@@ -0,0 +1,258 @@
+package controller;
+
+import java.util.*;
+import java.util.function.BiConsumer;
+
+/**
+ * CsvSchema describes how one CSV file binds to a model class.
+ *
+ * Columns are declared by header name, in a fixed "slot" order. When a file is opened,
+ * compile() reads its header ONCE and turns the names into an index array
+ * (slot -> column position). After that every row is bound with plain array lookups:
+ * - the factory builds the object from the slot values (constructor arguments)
+ * - the setter table applies optional columns that have a value
+ *
+ * Header names are matched ignoring case, '_' and spaces, so "clinician_id" and
+ * "clinicianId" are the same column. Columns may appear in any order and unknown
+ * columns are ignored, so adding a column to a file needs no code change.
+ *
+ * @param <T> The model class built from each row
+ */
+public final class CsvSchema<T> {
+
+    /**
+     * Builds an object from the slot values (null for an absent optional column).
+     */
+    public interface Factory<T> {
+        T create(String[] fields);
+    }
+
+    private final String entity;
+    private final String[] names;
+    private final boolean[] required;
+    private final boolean[] symbol;
+    private final List<BiConsumer<T, String>> setters;
+    private final Factory<T> factory;
+
+    private CsvSchema(Builder<T> b) {
+        this.entity = b.entity;
+        this.names = b.names.toArray(new String[0]);
+        this.required = toArray(b.required);
+        this.symbol = toArray(b.symbol);
+        this.setters = new ArrayList<>(b.setters);
+        this.factory = b.factory;
+    }
+
+    public static <T> Builder<T> builder(String entity) {
+        return new Builder<>(entity);
+    }
+
+    /**
+     * @return Number of slots (declared columns)
+     */
+    public int size() {
+        return names.length;
+    }
+
+    /**
+     * @param slot Slot index
+     * @return The canonical header name of that slot
+     */
+    public String name(int slot) {
+        return names[slot];
+    }
+
+    /**
+     * @param slot Slot index
+     * @return true if that slot's values are shared through the SymbolTable
+     */
+    public boolean isSymbol(int slot) {
+        return symbol[slot];
+    }
+
+    /**
+     * Build one object from values already in slot order (e.g. from a snapshot).
+     *
+     * @param fields One value per slot, null where absent
+     * @return The bound object
+     */
+    public T bind(String[] fields) {
+        T row = factory.create(fields);
+        for (int slot = 0; slot < fields.length; slot++) {
+            BiConsumer<T, String> setter = setters.get(slot);
+            if (setter != null && fields[slot] != null) {
+                setter.accept(row, fields[slot]);
+            }
+        }
+        return row;
+    }
+
+    /**
+     * Compile the column mapping for one file.
+     *
+     * If a required column is missing from the header, the declared order is used
+     * instead (the layout the hand-written loaders always assumed).
+     *
+     * @param header The header line of the file (null if the file is empty)
+     * @return A row parser bound to this file's column order
+     */
+    public Compiled compile(String header) {
+        int[] index = new int[names.length];
+        Arrays.fill(index, -1);
+
+        if (header != null) {
+            CsvTokenizer csv = new CsvTokenizer();
+            int n = csv.tokenize(header);
+            Map<String, Integer> positions = new HashMap<>();
+            for (int i = 0; i < n; i++) {
+                positions.putIfAbsent(normalise(csv.field(i)), i);
+            }
+            for (int slot = 0; slot < names.length; slot++) {
+                Integer pos = positions.get(normalise(names[slot]));
+                index[slot] = pos == null ? -1 : pos;
+            }
+        }
+
+        for (int slot = 0; slot < names.length; slot++) {
+            if (required[slot] && index[slot] < 0) {
+                System.err.println("WARNING: " + entity + " header has no '" + names[slot]
+                        + "' column, using the default column order");
+                for (int s = 0; s < names.length; s++) {
+                    index[s] = s;
+                }
+                break;
+            }
+        }
+        return new Compiled(index);
+    }
+
+    private static String normalise(String name) {
+        StringBuilder sb = new StringBuilder(name.length());
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            if (c != '_' && c != ' ' && c != '\uFEFF') {
+                sb.append(Character.toLowerCase(c));
+            }
+        }
+        return sb.toString();
+    }
+
+    private static boolean[] toArray(List<Boolean> values) {
+        boolean[] result = new boolean[values.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = values.get(i);
+        }
+        return result;
+    }
+
+    /**
+     * A schema bound to one file's header. Reuses its slot buffer between rows,
+     * so use one instance per thread.
+     */
+    public final class Compiled implements DataLoader.RowParser<T> {
+        private final int[] index;
+        private final int minFields;
+        private final String[] fields;
+
+        private Compiled(int[] index) {
+            this.index = index;
+            int min = 0;
+            for (int slot = 0; slot < index.length; slot++) {
+                if (required[slot]) {
+                    min = Math.max(min, index[slot] + 1);
+                }
+            }
+            this.minFields = min;
+            this.fields = new String[index.length];
+        }
+
+        /**
+         * Parse one row.
+         *
+         * @return The bound object, or null if the row is missing a required column
+         */
+        @Override
+        public T parse(CsvTokenizer csv, SymbolTable symbols, String line) {
+            int n = csv.tokenize(line);
+            if (n < minFields) {
+                return null;
+            }
+            for (int slot = 0; slot < index.length; slot++) {
+                int col = index[slot];
+                String value = null;
+                if (col >= 0 && col < n) {
+                    value = csv.field(col).trim();
+                    if (symbol[slot]) {
+                        value = symbols.intern(value);
+                    }
+                }
+                fields[slot] = value;
+            }
+            return bind(fields);
+        }
+
+        /**
+         * @param slot Slot index
+         * @return Column position of that slot in this file, or -1 if absent
+         */
+        public int column(int slot) {
+            return index[slot];
+        }
+
+        /**
+         * Copy with its own slot buffer, for use on another thread.
+         */
+        public Compiled copy() {
+            return new Compiled(index);
+        }
+    }
+
+    /**
+     * Declares the columns of a schema in slot order.
+     */
+    public static final class Builder<T> {
+        private final String entity;
+        private final List<String> names = new ArrayList<>();
+        private final List<Boolean> required = new ArrayList<>();
+        private final List<Boolean> symbol = new ArrayList<>();
+        private final List<BiConsumer<T, String>> setters = new ArrayList<>();
+        private Factory<T> factory;
+
+        private Builder(String entity) {
+            this.entity = entity;
+        }
+
+        // Required column, kept as its own string
+        public Builder<T> column(String name) {
+            return add(name, true, false, null);
+        }
+
+        // Required low-cardinality column, shared through the SymbolTable
+        public Builder<T> symbol(String name) {
+            return add(name, true, true, null);
+        }
+
+        // Optional column: passed to the factory as null when the file does not have it
+        public Builder<T> optional(String name, boolean isSymbol) {
+            return add(name, false, isSymbol, null);
+        }
+
+        // Optional column applied through a setter after the object is built
+        public Builder<T> optional(String name, boolean isSymbol, BiConsumer<T, String> setter) {
+            return add(name, false, isSymbol, setter);
+        }
+
+        public CsvSchema<T> build(Factory<T> factory) {
+            this.factory = factory;
+            return new CsvSchema<>(this);
+        }
+
+        private Builder<T> add(String name, boolean isRequired, boolean isSymbol, BiConsumer<T, String> setter) {
+            names.add(name);
+            required.add(isRequired);
+            symbol.add(isSymbol);
+            setters.add(setter);
+            return this;
+        }
+    }
+}
@@ -0,0 +1,125 @@
+package controller;
+
+import model.*;
+
+/**
+ * Column schemas for the seven data files.
+ *
+ * Slot order matches the header each file is written with, and the defaults match
+ * what the hand-written loaders used ("Surgery" location, "C001" prescriber), so
+ * existing files load exactly as before. Optional columns that the files do not have
+ * yet (appointment location, prescription clinician) are picked up automatically
+ * if a header ever gains them.
+ */
+public final class CsvSchemas {
+
+    private CsvSchemas() {
+    }
+
+    // userId,name,nhsNumber,email,phone
+    public static final CsvSchema<Patient> PATIENTS = CsvSchema.<Patient>builder("patients")
+            .column("userId")
+            .column("name")
+            .column("nhsNumber")
+            .column("email")
+            .column("phone")
+            .build(f -> new Patient(f[0], f[1], f[3], f[4], f[2]));
+
+    // clinician_id,first_name,last_name,title,speciality,gmc_number,phone_number,email,workplace_id,workplace_type,employment_status,start_date
+    public static final CsvSchema<Clinician> CLINICIANS = CsvSchema.<Clinician>builder("clinicians")
+            .column("clinician_id")
+            .column("first_name")
+            .column("last_name")
+            .symbol("title")
+            .symbol("speciality")
+            .column("gmc_number")
+            .column("phone_number")
+            .column("email")
+            .symbol("workplace_id")
+            .symbol("workplace_type")
+            .symbol("employment_status")
+            .column("start_date")
+            .build(f -> new Clinician(f[0], f[1], f[2], f[3], f[4], f[5], f[6], f[7], f[8], f[9], f[10], f[11]));
+
+    // appointmentId,patientId,clinicianId,dateTime,status,reason (+ optional location)
+    public static final CsvSchema<Appointment> APPOINTMENTS = CsvSchema.<Appointment>builder("appointments")
+            .column("appointmentId")
+            .symbol("patientId")
+            .symbol("clinicianId")
+            .column("dateTime")
+            .symbol("status")
+            .optional("reason", false, (a, v) -> {
+                if (!v.equals("null")) {
+                    a.setReason(v);
+                }
+            })
+            .optional("location", true)
+            .build(f -> {
+                Appointment app = new Appointment(f[0], f[1], f[2], f[3],
+                        f[6] != null ? f[6] : "Surgery");  // location (not in CSV, use default)
+                app.setStatus(f[4]);
+                return app;
+            });
+
+    // prescriptionId,patientId,medication,dosage,status (+ optional clinicianId)
+    public static final CsvSchema<Prescription> PRESCRIPTIONS = CsvSchema.<Prescription>builder("prescriptions")
+            .column("prescriptionId")
+            .symbol("patientId")
+            .symbol("medication")
+            .symbol("dosage")
+            .optional("status", true, Prescription::setStatus)
+            .optional("clinicianId", true)
+            .build(f -> new Prescription(f[0], f[1],
+                    f[5] != null ? f[5] : "C001",  // clinicianId (not in CSV, use default)
+                    f[2], f[3]));
+
+    // referralId,patientId,fromGP,toSpecialist,reason,status,urgency
+    public static final CsvSchema<Referral> REFERRALS = CsvSchema.<Referral>builder("referrals")
+            .column("referralId")
+            .symbol("patientId")
+            .symbol("fromGP")
+            .symbol("toSpecialist")
+            .column("reason")
+            .optional("status", true, Referral::setStatus)
+            .optional("urgency", true, Referral::setUrgencyLevel)
+            .build(f -> new Referral(f[0], f[1], f[2], f[3], f[4]));
+
+    // staff_id,first_name,last_name,role,department,facility_id,phone_number,email,employment_status,start_date,line_manager,access_level
+    public static final CsvSchema<Staff> STAFF = CsvSchema.<Staff>builder("staff")
+            .column("staff_id")
+            .column("first_name")
+            .column("last_name")
+            .symbol("role")
+            .symbol("department")
+            .symbol("facility_id")
+            .column("phone_number")
+            .column("email")
+            .symbol("employment_status")
+            .column("start_date")
+            .optional("line_manager", true)
+            .optional("access_level", true)
+            .build(f -> new Staff(f[0], f[1], f[2], f[3], f[4], f[5], f[6], f[7], f[8], f[9], f[10], f[11]));
+
+    // facility_id,facility_name,facility_type,address,postcode,phone_number,email,opening_hours,manager_name,capacity,specialities_offered
+    public static final CsvSchema<Facility> FACILITIES = CsvSchema.<Facility>builder("facilities")
+            .column("facility_id")
+            .column("facility_name")
+            .symbol("facility_type")
+            .column("address")
+            .column("postcode")
+            .optional("phone_number", false, Facility::setPhone)
+            .optional("email", false, Facility::setEmail)
+            .optional("opening_hours", true, Facility::setOpeningHours)
+            .optional("manager_name", false, Facility::setManagerName)
+            .optional("capacity", false, (fac, v) -> fac.setCapacity(parseCapacity(v)))
+            .optional("specialities_offered", false, Facility::setSpecialitiesOffered)
+            .build(f -> new Facility(f[0], f[1], f[2], f[3], f[4]));
+
+    private static int parseCapacity(String value) {
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package controller;
+
+/**
+ * Single-pass RFC 4180 tokenizer for one CSV record.
+ *
+ * Replaces the old lookahead regex split, which rescanned the rest of the line
+ * at every comma. Each character is visited exactly once:
+ * - unquoted fields are cut straight out of the line with substring()
+ * - quoted fields may contain commas, and "" inside quotes becomes a single "
+ *
+ * The field array and the quote buffer are reused from row to row, so a
+ * tokenizer should be created once per file and NOT shared between threads.
+ */
+public class CsvTokenizer {
+
+    private static final char SEPARATOR = ',';
+    private static final char QUOTE = '"';
+
+    private final StringBuilder quoted = new StringBuilder(64);
+    private String[] fields = new String[16];
+    private int count;
+
+    /**
+     * Split one CSV line into fields.
+     *
+     * @param line The raw line (without the line terminator)
+     * @return Number of fields found (always at least 1)
+     */
+    public int tokenize(String line) {
+        count = 0;
+        int len = line.length();
+        int i = 0;
+
+        while (true) {
+            if (i < len && line.charAt(i) == QUOTE) {
+                i = readQuoted(line, i + 1, len);
+            } else {
+                int start = i;
+                while (i < len && line.charAt(i) != SEPARATOR) {
+                    i++;
+                }
+                add(line.substring(start, i));
+            }
+
+            if (i >= len) {
+                break;
+            }
+            i++; // skip separator
+            if (i == len) {
+                add(""); // trailing comma means one more empty field
+                break;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Get a field from the last tokenized line.
+     *
+     * @param index Zero based column index
+     * @return The field value
+     */
+    public String field(int index) {
+        if (index < 0 || index >= count) {
+            throw new IndexOutOfBoundsException("Field " + index + " of " + count);
+        }
+        return fields[index];
+    }
+
+    /**
+     * @return Number of fields in the last tokenized line
+     */
+    public int size() {
+        return count;
+    }
+
+    // Reads a quoted field starting just after the opening quote.
+    // Returns the index of the separator (or end of line) that follows it.
+    private int readQuoted(String line, int i, int len) {
+        quoted.setLength(0);
+        while (i < len) {
+            char c = line.charAt(i);
+            if (c == QUOTE) {
+                if (i + 1 < len && line.charAt(i + 1) == QUOTE) {
+                    quoted.append(QUOTE); // escaped quote
+                    i += 2;
+                    continue;
+                }
+                i++; // closing quote
+                break;
+            }
+            quoted.append(c);
+            i++;
+        }
+        // Tolerate stray characters between the closing quote and the separator
+        while (i < len && line.charAt(i) != SEPARATOR) {
+            quoted.append(line.charAt(i));
+            i++;
+        }
+        add(quoted.toString());
+        return i;
+    }
+
+    private void add(String value) {
+        if (count == fields.length) {
+            String[] grown = new String[fields.length * 2];
+            System.arraycopy(fields, 0, grown, 0, count);
+            fields = grown;
+        }
+        fields[count++] = value;
+    }
+}
@@ -0,0 +1,230 @@
+package controller;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.Arrays;
+
+/**
+ * Streaming RFC 4180 CSV writer, the counterpart of CsvTokenizer.
+ *
+ * Fields are encoded straight into one reused byte buffer (quoted only when they contain
+ * a comma, quote or line break) and written with a FileChannel, so a row costs no String
+ * concatenation and, for ASCII text, no allocation at all.
+ *
+ * Rows go to "<target>.tmp". Only commit() swaps that file in for the target, with an
+ * atomic move, so a crash or exception mid-save leaves the previous file untouched.
+ * close() without commit() throws the temp file away. Typical use:
+ *
+ *   try (CsvWriter csv = CsvWriter.open(path, "id,name")) {
+ *       for (...) { csv.field(id).field(name).endRow(); }
+ *       csv.commit();
+ *   }
+ */
+public class CsvWriter implements Closeable {
+
+    private static final byte SEPARATOR = ',';
+    private static final byte QUOTE = '"';
+    private static final int BUFFER_SIZE = 256 * 1024;
+
+    private static final Charset CHARSET = DataLoader.CHARSET;
+
+    // ASCII characters can be copied byte for byte unless the charset is e.g. UTF-16
+    private static final boolean ASCII_COMPATIBLE = Arrays.equals(
+            "azAZ09,\"\n\r .-@:".getBytes(CHARSET), "azAZ09,\"\n\r .-@:".getBytes(StandardCharsets.US_ASCII));
+
+    private final Path target;
+    private final Path temp;
+    private final FileChannel channel;
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+    private final ByteBuffer view = ByteBuffer.wrap(buffer);
+    private final long startNanos = System.nanoTime();
+
+    private int position;
+    private boolean rowStarted;
+    private long rows;
+    private boolean committed;
+    private boolean closed;
+
+    private CsvWriter(Path target) throws IOException {
+        this.target = target;
+        this.temp = target.resolveSibling(target.getFileName() + ".tmp");
+        this.channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+    }
+
+    /**
+     * Start writing a CSV file (to a temp file next to it).
+     *
+     * @param filepath The file that commit() will replace
+     * @param header Header line, written as is (without line terminator)
+     * @return The writer, positioned after the header
+     * @throws IOException If the temp file cannot be created
+     */
+    public static CsvWriter open(String filepath, String header) throws IOException {
+        CsvWriter writer = new CsvWriter(Paths.get(filepath));
+        try {
+            writer.text(header, false);
+            writer.put((byte) '\n');
+        } catch (IOException e) {
+            writer.close();
+            throw e;
+        }
+        return writer;
+    }
+
+    /**
+     * Append one field to the current row. null is written as "null", like the
+     * string concatenation it replaces (DataLoader reads it back the same way).
+     */
+    public CsvWriter field(String value) throws IOException {
+        if (rowStarted) {
+            put(SEPARATOR);
+        }
+        rowStarted = true;
+        String s = value == null ? "null" : value;
+        int len = s.length();
+
+        // Fast path, one pass: plain ASCII needing no quotes is copied as it is checked
+        if (ASCII_COMPATIBLE && len <= buffer.length) {
+            if (buffer.length - position < len) {
+                flush();
+            }
+            byte[] buf = buffer;
+            int pos = position;
+            int i = 0;
+            for (; i < len; i++) {
+                char c = s.charAt(i);
+                if (c >= 0x80 || (c <= ',' && (c == ',' || c == '"' || c == '\n' || c == '\r'))) {
+                    break;
+                }
+                buf[pos++] = (byte) c;
+            }
+            if (i == len) {
+                position = pos;
+                return this;
+            }
+            // Otherwise the partial copy is simply overwritten below
+        }
+
+        if (needsQuotes(s)) {
+            put(QUOTE);
+            text(s, true);
+            put(QUOTE);
+        } else {
+            text(s, false);
+        }
+        return this;
+    }
+
+    public CsvWriter field(int value) throws IOException {
+        return field(Integer.toString(value));
+    }
+
+    /**
+     * Finish the current row.
+     */
+    public void endRow() throws IOException {
+        put((byte) '\n');
+        rowStarted = false;
+        rows++;
+    }
+
+    /**
+     * @return Rows written so far (header not counted)
+     */
+    public long getRowCount() {
+        return rows;
+    }
+
+    /**
+     * @return Rows per second since open(), for save logging
+     */
+    public long getRowsPerSecond() {
+        long nanos = Math.max(1, System.nanoTime() - startNanos);
+        return rows * 1_000_000_000L / nanos;
+    }
+
+    /**
+     * Flush everything to disk and atomically replace the target with the new file.
+     *
+     * @throws IOException If flushing or the move fails (the target is then unchanged)
+     */
+    public void commit() throws IOException {
+        flush();
+        channel.force(false);
+        channel.close();
+        try {
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+        committed = true;
+    }
+
+    /**
+     * Release the file. Without a prior commit() the temp file is deleted and the
+     * target is left as it was.
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        if (!committed) {
+            try {
+                channel.close();
+            } finally {
+                Files.deleteIfExists(temp);
+            }
+        }
+    }
+
+    private static boolean needsQuotes(String s) {
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c == ',' || c == '"' || c == '\n' || c == '\r') {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Encode s into the buffer through the charset, doubling quotes if asked
+    private void text(String s, boolean escapeQuotes) throws IOException {
+        byte[] encoded = (escapeQuotes ? s.replace("\"", "\"\"") : s).getBytes(CHARSET);
+        for (int offset = 0; offset < encoded.length; ) {
+            if (position == buffer.length) {
+                flush();
+            }
+            int n = Math.min(buffer.length - position, encoded.length - offset);
+            System.arraycopy(encoded, offset, buffer, position, n);
+            position += n;
+            offset += n;
+        }
+    }
+
+    private void put(byte b) throws IOException {
+        if (!ASCII_COMPATIBLE) {
+            text(String.valueOf((char) b), false);
+            return;
+        }
+        if (position == buffer.length) {
+            flush();
+        }
+        buffer[position++] = b;
+    }
+
+    private void flush() throws IOException {
+        view.clear().limit(position);
+        while (view.hasRemaining()) {
+            channel.write(view);
+        }
+        position = 0;
+    }
+}
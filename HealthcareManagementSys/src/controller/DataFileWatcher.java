@@ -0,0 +1,629 @@
+package controller;
+
+import model.*;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+import java.util.zip.CRC32C;
+
+/**
+ * DataFileWatcher picks up changes other programs make to the data files while the
+ * GUI is running (e.g. an overnight feed appending appointments) and applies them
+ * to the controllers, without reloading anything else.
+ *
+ * For every file it remembers:
+ * - the byte offset up to which rows have been read (always just after a newline)
+ * - a checksum of the 4 KB before that offset
+ * - one fingerprint per row: hash of the ID -> hash of the whole line
+ *
+ * When a file changes and those 4 KB are untouched, only the bytes after the offset
+ * are read, so an append costs time proportional to the appended rows. Anything else
+ * (truncation, an edit in the middle) falls back to re-reading the file, but only rows
+ * whose fingerprint changed are parsed and sent to the controller.
+ *
+ * Files are read on one background thread; controllers are only changed on the
+ * executor given to the constructor (the Swing EDT in the GUI). Saves from inside the
+ * application must be wrapped in beginSave()/endSave() so they are not read back in
+ * as external changes.
+ */
+public class DataFileWatcher implements Closeable {
+
+    /**
+     * Notified on the apply executor after a batch has been applied to its controller.
+     */
+    public interface Listener {
+        void onChanges(Changes changes);
+    }
+
+    /**
+     * The rows of one data file that were added, changed or removed by one change.
+     */
+    public static final class Changes {
+        private final DataLoadOrchestrator.DataSet set;
+        private final List<Object> added = new ArrayList<>();
+        private final List<Object> updated = new ArrayList<>();
+        private final List<String> deleted = new ArrayList<>();
+        private RowFingerprints deletedKeys;  // resolved to IDs when applied
+
+        private Changes(DataLoadOrchestrator.DataSet set) {
+            this.set = set;
+        }
+
+        public DataLoadOrchestrator.DataSet getDataSet() {
+            return set;
+        }
+
+        public List<Object> getAdded() {
+            return added;
+        }
+
+        public List<Object> getUpdated() {
+            return updated;
+        }
+
+        public List<String> getDeleted() {
+            return deleted;
+        }
+
+        private boolean isEmpty() {
+            return added.isEmpty() && updated.isEmpty() && (deletedKeys == null || deletedKeys.size() == 0);
+        }
+    }
+
+    private static final int TAIL_CHECK = 4096;
+    private static final long SETTLE_MILLIS = 250;  // let a burst of writes finish first
+    private static final int READ_BUFFER = 64 * 1024;
+    private static final Charset CHARSET = DataLoader.CHARSET;
+
+    private final String pathPrefix;
+    private final Executor applyOn;
+    private final Listener listener;
+    private final Map<DataLoadOrchestrator.DataSet, Target> targets = new EnumMap<>(DataLoadOrchestrator.DataSet.class);
+
+    // Only touched on the worker thread
+    private final Map<DataLoadOrchestrator.DataSet, FileState> states = new EnumMap<>(DataLoadOrchestrator.DataSet.class);
+    private final SymbolTable symbols = new SymbolTable();
+    private final CsvTokenizer csv = new CsvTokenizer();
+
+    private final ScheduledExecutorService worker = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "data-watcher");
+        t.setDaemon(true);
+        return t;
+    });
+    private final Set<DataLoadOrchestrator.DataSet> pending = ConcurrentHashMap.newKeySet();
+    private volatile boolean saving;
+    private WatchService watchService;
+
+    /**
+     * @param sets The data sets to watch: those that loaded. A file whose set failed to
+     *             load is left alone, so its rows are not added on top of nothing.
+     */
+    public DataFileWatcher(String pathPrefix, Executor applyOn, Listener listener,
+                           Set<DataLoadOrchestrator.DataSet> sets,
+                           PatientController patientController,
+                           ClinicianController clinicianController,
+                           AppointmentController appointmentController,
+                           PrescriptionController prescriptionController,
+                           ReferralController referralController,
+                           StaffController staffController,
+                           FacilityController facilityController) {
+        this.pathPrefix = pathPrefix;
+        this.applyOn = applyOn;
+        this.listener = listener;
+
+        targets.put(DataLoadOrchestrator.DataSet.PATIENTS, new Target(CsvSchemas.PATIENTS,
+                o -> ((Patient) o).getUserId(), o -> patientController.addPatient((Patient) o),
+                patientController::deletePatient, o -> patientController.replacePatient((Patient) o),
+                patientController::getPatientsView, patientController.getChangeTracker()));
+        targets.put(DataLoadOrchestrator.DataSet.CLINICIANS, new Target(CsvSchemas.CLINICIANS,
+                o -> ((Clinician) o).getUserId(), o -> clinicianController.addClinician((Clinician) o),
+                clinicianController::deleteClinician, o -> clinicianController.replaceClinician((Clinician) o),
+                clinicianController::getCliniciansView, clinicianController.getChangeTracker()));
+        targets.put(DataLoadOrchestrator.DataSet.APPOINTMENTS, new Target(CsvSchemas.APPOINTMENTS,
+                o -> ((Appointment) o).getAppointmentId(), o -> appointmentController.addAppointment((Appointment) o),
+                appointmentController::deleteAppointment, o -> appointmentController.replaceAppointment((Appointment) o),
+                appointmentController::getAppointmentsView, appointmentController.getChangeTracker()));
+        targets.put(DataLoadOrchestrator.DataSet.PRESCRIPTIONS, new Target(CsvSchemas.PRESCRIPTIONS,
+                o -> ((Prescription) o).getPrescriptionId(), o -> prescriptionController.addPrescription((Prescription) o),
+                prescriptionController::deletePrescription,
+                o -> prescriptionController.replacePrescription((Prescription) o),
+                prescriptionController::getPrescriptionsView, prescriptionController.getChangeTracker()));
+        // Referrals are updated field by field so their entry in the ReferralManager queue stays valid
+        targets.put(DataLoadOrchestrator.DataSet.REFERRALS, new Target(CsvSchemas.REFERRALS,
+                o -> ((Referral) o).getReferralId(), o -> referralController.createReferral((Referral) o),
+                referralController::deleteReferral, o -> referralController.updateReferral((Referral) o),
+                referralController::getReferralsView, referralController.getChangeTracker()));
+        targets.put(DataLoadOrchestrator.DataSet.STAFF, new Target(CsvSchemas.STAFF,
+                o -> ((Staff) o).getStaffId(), o -> staffController.addStaff((Staff) o),
+                staffController::deleteStaff, o -> staffController.replaceStaff((Staff) o),
+                staffController::getStaffView, staffController.getChangeTracker()));
+        targets.put(DataLoadOrchestrator.DataSet.FACILITIES, new Target(CsvSchemas.FACILITIES,
+                o -> ((Facility) o).getFacilityId(), o -> facilityController.addFacility((Facility) o),
+                facilityController::deleteFacility, o -> facilityController.replaceFacility((Facility) o),
+                facilityController::getFacilitiesView, facilityController.getChangeTracker()));
+        targets.keySet().retainAll(sets);
+    }
+
+    /**
+     * Record the current state of every file and start watching the data directory.
+     * Call once the controllers hold what is on disk.
+     *
+     * @throws IOException If the directory cannot be watched
+     */
+    public void start() throws IOException {
+        watchService = FileSystems.getDefault().newWatchService();
+        Paths.get(pathPrefix).register(watchService,
+                StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+        worker.execute(this::baselineAll);
+
+        Thread thread = new Thread(this::watchLoop, "data-watch-events");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Stop reacting to file events until endSave(). Waits for a change that is
+     * currently being read to finish.
+     */
+    public void beginSave() {
+        saving = true;
+        try {
+            worker.submit(() -> { }).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException | RejectedExecutionException e) {
+            // Watcher already closed, nothing to wait for
+        }
+    }
+
+    /**
+     * Take the files just written as the new baseline and resume watching. Only those
+     * files are re-read (on the watcher thread); the others are just checked for a
+     * change that came in during the save.
+     *
+     * @param written The data sets whose files the save wrote
+     */
+    public void endSave(Collection<DataLoadOrchestrator.DataSet> written) {
+        try {
+            worker.execute(() -> {
+                for (DataLoadOrchestrator.DataSet set : targets.keySet()) {
+                    if (written.contains(set)) {
+                        baseline(set);
+                    } else {
+                        refresh(set);
+                    }
+                }
+                saving = false;
+            });
+        } catch (RejectedExecutionException e) {
+            saving = false;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        worker.shutdownNow();
+        if (watchService != null) {
+            watchService.close();
+        }
+    }
+
+    private void watchLoop() {
+        while (true) {
+            WatchKey key;
+            try {
+                key = watchService.take();
+            } catch (InterruptedException | ClosedWatchServiceException e) {
+                return;
+            }
+            for (WatchEvent<?> event : key.pollEvents()) {
+                if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                    for (DataLoadOrchestrator.DataSet set : DataLoadOrchestrator.DataSet.values()) {
+                        schedule(set);
+                    }
+                    continue;
+                }
+                String name = event.context().toString();
+                for (DataLoadOrchestrator.DataSet set : DataLoadOrchestrator.DataSet.values()) {
+                    if (set.getFileName().equals(name)) {
+                        schedule(set);
+                    }
+                }
+            }
+            if (!key.reset()) {
+                return;
+            }
+        }
+    }
+
+    // Editors and feeds fire several events per write; one refresh covers them all
+    private void schedule(DataLoadOrchestrator.DataSet set) {
+        if (!targets.containsKey(set) || !pending.add(set)) {
+            return;
+        }
+        try {
+            worker.schedule(() -> {
+                pending.remove(set);
+                if (!saving) {
+                    refresh(set);
+                }
+            }, SETTLE_MILLIS, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            pending.remove(set);
+        }
+    }
+
+    private void baselineAll() {
+        for (DataLoadOrchestrator.DataSet set : targets.keySet()) {
+            baseline(set);
+        }
+    }
+
+    private void baseline(DataLoadOrchestrator.DataSet set) {
+        try {
+            FileState state = new FileState();
+            rescan(set, state, null);
+            states.put(set, state);
+        } catch (IOException e) {
+            states.remove(set);
+        }
+    }
+
+    private void refresh(DataLoadOrchestrator.DataSet set) {
+        File file = new File(pathPrefix + set.getFileName());
+        FileState state = states.get(set);
+        try {
+            if (state != null && file.length() == state.size && file.lastModified() == state.modified) {
+                return;
+            }
+            if (file.length() == 0) {
+                // Truncated by a writer that has not written the header yet; its next event follows
+                return;
+            }
+            Changes changes = new Changes(set);
+            if (state == null) {
+                // File appeared after start: every row is new
+                state = new FileState();
+                rescan(set, state, changes);
+                states.put(set, state);
+            } else if (!readAppended(set, state, changes)) {
+                rescan(set, state, changes);
+            }
+            if (!changes.isEmpty()) {
+                System.out.println("Data file changed: " + set.getFileName() + " (+" + changes.added.size()
+                        + " ~" + changes.updated.size() + " -"
+                        + (changes.deletedKeys == null ? 0 : changes.deletedKeys.size()) + ")");
+                applyOn.execute(() -> apply(changes));
+            }
+        } catch (IOException e) {
+            System.err.println("Could not read changed file " + file + ": " + e.getMessage());
+        }
+    }
+
+    // Fast path: the file only grew. Returns false if earlier bytes changed.
+    private boolean readAppended(DataLoadOrchestrator.DataSet set, FileState state, Changes changes) throws IOException {
+        Path path = Paths.get(pathPrefix + set.getFileName());
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < state.offset || state.offset == 0 || tailChecksum(channel, state.offset) != state.tailChecksum) {
+                return false;
+            }
+            long modified = Files.getLastModifiedTime(path).toMillis();
+            // A half-written last line is left for the next event
+            state.offset = readLines(channel, state.offset, size, false, line -> {
+                long key = rowKey(state, line);
+                if (key == 0) {
+                    return;
+                }
+                int fingerprint = fingerprint(line);
+                int previous = state.rows.get(key);
+                if (previous == fingerprint) {
+                    return;
+                }
+                Object row = state.parser.parse(csv, symbols, line);
+                if (row == null) {
+                    return;
+                }
+                state.rows.put(key, fingerprint);
+                (previous == RowFingerprints.MISSING ? changes.added : changes.updated).add(row);
+            });
+            state.tailChecksum = tailChecksum(channel, state.offset);
+            state.size = size;
+            state.modified = modified;
+            return true;
+        }
+    }
+
+    // Slow path: re-read the whole file, but only parse rows that differ from last time.
+    // With changes == null this just records the baseline.
+    private void rescan(DataLoadOrchestrator.DataSet set, FileState state, Changes changes) throws IOException {
+        Path path = Paths.get(pathPrefix + set.getFileName());
+        Target target = targets.get(set);
+        RowFingerprints previous = state.rows;
+        RowFingerprints current = new RowFingerprints(Math.max(16, previous.size()));
+
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            long modified = Files.getLastModifiedTime(path).toMillis();
+            state.parser = null;
+            state.offset = readLines(channel, 0, size, true, line -> {
+                if (state.parser == null) {
+                    state.parser = target.schema.compile(line);
+                    state.idColumn = state.parser.column(0);
+                    return;
+                }
+                long key = rowKey(state, line);
+                if (key == 0) {
+                    return;
+                }
+                int fingerprint = fingerprint(line);
+                current.put(key, fingerprint);
+                if (changes == null) {
+                    return;
+                }
+                int before = previous.get(key);
+                if (before != fingerprint) {
+                    Object row = state.parser.parse(csv, symbols, line);
+                    if (row != null) {
+                        (before == RowFingerprints.MISSING ? changes.added : changes.updated).add(row);
+                    }
+                }
+            });
+            if (state.parser == null) {
+                state.parser = target.schema.compile(null);
+                state.idColumn = state.parser.column(0);
+            }
+            state.tailChecksum = tailChecksum(channel, state.offset);
+            state.size = size;
+            state.modified = modified;
+        }
+
+        if (changes != null) {
+            RowFingerprints gone = new RowFingerprints(16);
+            previous.forEachKey(key -> {
+                if (current.get(key) == RowFingerprints.MISSING) {
+                    gone.put(key, 0);
+                }
+            });
+            changes.deletedKeys = gone;
+        }
+        state.rows = current;
+    }
+
+    // Runs on the apply executor: the only place the controllers are changed
+    private void apply(Changes changes) {
+        Target target = targets.get(changes.set);
+        // Rows picked up from the file are already on disk: they must not make a clean file dirty
+        boolean wasClean = !target.changes.isDirty();
+        // Changed rows replace their record where it is, so table order and paging stay put
+        for (Object row : changes.updated) {
+            if (!target.replace.test(row)) {
+                target.add.accept(row);
+            }
+        }
+        for (Object row : changes.added) {
+            target.add.accept(row);
+        }
+        if (changes.deletedKeys != null && changes.deletedKeys.size() > 0) {
+            // Deletions only come from a full re-read, so one pass over the controller is fine.
+            // The IDs are collected first: the view must not change while it is read.
+            Set<String> gone = new LinkedHashSet<>();
+            for (Object row : target.all.get()) {
+                String id = target.id.apply(row);
+                if (changes.deletedKeys.get(idKey(id)) != RowFingerprints.MISSING) {
+                    gone.add(id);
+                }
+            }
+            for (String id : gone) {
+                target.delete.test(id);
+                changes.deleted.add(id);
+            }
+        }
+        if (wasClean) {
+            target.changes.markSaved(target.changes.getVersion());
+        }
+        if (listener != null) {
+            listener.onChanges(changes);
+        }
+    }
+
+    // Hash of the row's ID column, 0 if the row has none
+    private long rowKey(FileState state, String line) {
+        if (line.isBlank() || state.idColumn < 0) {
+            return 0;
+        }
+        int n = csv.tokenize(line);
+        if (state.idColumn >= n) {
+            return 0;
+        }
+        return idKey(csv.field(state.idColumn).trim());
+    }
+
+    // 64-bit FNV-1a: wide enough that two IDs in one file never share a key in practice
+    private static long idKey(String id) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < id.length(); i++) {
+            h ^= id.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        return h == 0 ? 1 : h;
+    }
+
+    private static int fingerprint(String line) {
+        long h = idKey(line);
+        int fingerprint = (int) (h ^ (h >>> 32));
+        return fingerprint == RowFingerprints.MISSING ? fingerprint + 1 : fingerprint;
+    }
+
+    private static long tailChecksum(FileChannel channel, long end) throws IOException {
+        long start = Math.max(0, end - TAIL_CHECK);
+        ByteBuffer buffer = ByteBuffer.allocate((int) (end - start));
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, start + buffer.position()) < 0) {
+                return -1;
+            }
+        }
+        CRC32C crc = new CRC32C();
+        buffer.flip();
+        crc.update(buffer);
+        return crc.getValue();
+    }
+
+    // Pass every line in [from, to) to sink. Returns the offset just after the last
+    // line passed on; an unterminated last line is only passed on if takeTail is set.
+    private static long readLines(FileChannel channel, long from, long to, boolean takeTail,
+                                  Consumer<String> sink) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(READ_BUFFER);
+        ByteArrayOutputStream line = new ByteArrayOutputStream(256);
+        long position = from;
+        long consumed = from;
+        while (position < to) {
+            buffer.clear();
+            buffer.limit((int) Math.min(buffer.capacity(), to - position));
+            int n = channel.read(buffer, position);
+            if (n <= 0) {
+                break;
+            }
+            byte[] bytes = buffer.array();
+            int start = 0;
+            for (int i = 0; i < n; i++) {
+                if (bytes[i] == '\n') {
+                    line.write(bytes, start, i - start);
+                    sink.accept(decode(line));
+                    line.reset();
+                    start = i + 1;
+                    consumed = position + start;
+                }
+            }
+            line.write(bytes, start, n - start);
+            position += n;
+        }
+        if (takeTail && line.size() > 0) {
+            sink.accept(decode(line));
+            consumed = position;
+        }
+        return consumed;
+    }
+
+    private static String decode(ByteArrayOutputStream bytes) {
+        String line = bytes.toString(CHARSET);
+        return line.endsWith("\r") ? line.substring(0, line.length() - 1) : line;
+    }
+
+    private static final class FileState {
+        long offset;
+        long size;
+        long modified;
+        long tailChecksum;
+        CsvSchema<?>.Compiled parser;
+        int idColumn;
+        RowFingerprints rows = new RowFingerprints(16);
+    }
+
+    // How changes are applied to one controller
+    private static final class Target {
+        final CsvSchema<?> schema;
+        final Function<Object, String> id;
+        final Consumer<Object> add;
+        final Predicate<String> delete;
+        final Predicate<Object> replace;  // false if there is no record with the ID
+        final Supplier<? extends List<?>> all;  // read-only view, not a copy
+        final ChangeTracker changes;
+
+        Target(CsvSchema<?> schema, Function<Object, String> id, Consumer<Object> add,
+               Predicate<String> delete, Predicate<Object> replace, Supplier<? extends List<?>> all,
+               ChangeTracker changes) {
+            this.schema = schema;
+            this.id = id;
+            this.add = add;
+            this.delete = delete;
+            this.replace = replace;
+            this.all = all;
+            this.changes = changes;
+        }
+    }
+
+    /**
+     * Open-addressing map from ID key to line fingerprint. Two primitive arrays
+     * instead of a HashMap, so a multi-million row file costs ~12 bytes per slot.
+     */
+    private static final class RowFingerprints {
+        static final int MISSING = Integer.MIN_VALUE;
+
+        private long[] keys;
+        private int[] values;
+        private int size;
+
+        RowFingerprints(int expected) {
+            int capacity = Integer.highestOneBit(Math.max(16, expected * 2) - 1) << 1;
+            keys = new long[capacity];
+            values = new int[capacity];
+        }
+
+        int size() {
+            return size;
+        }
+
+        int get(long key) {
+            int mask = keys.length - 1;
+            for (int i = slot(key, mask); keys[i] != 0; i = (i + 1) & mask) {
+                if (keys[i] == key) {
+                    return values[i];
+                }
+            }
+            return MISSING;
+        }
+
+        void put(long key, int value) {
+            if ((size + 1) * 3 > keys.length * 2) {
+                grow();
+            }
+            int mask = keys.length - 1;
+            int i = slot(key, mask);
+            while (keys[i] != 0 && keys[i] != key) {
+                i = (i + 1) & mask;
+            }
+            if (keys[i] == 0) {
+                keys[i] = key;
+                size++;
+            }
+            values[i] = value;
+        }
+
+        void forEachKey(java.util.function.LongConsumer action) {
+            for (long key : keys) {
+                if (key != 0) {
+                    action.accept(key);
+                }
+            }
+        }
+
+        private void grow() {
+            long[] oldKeys = keys;
+            int[] oldValues = values;
+            keys = new long[oldKeys.length * 2];
+            values = new int[oldKeys.length * 2];
+            size = 0;
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldKeys[i] != 0) {
+                    put(oldKeys[i], oldValues[i]);
+                }
+            }
+        }
+
+        private static int slot(long key, int mask) {
+            return (int) (key ^ (key >>> 29)) & mask;
+        }
+    }
+}
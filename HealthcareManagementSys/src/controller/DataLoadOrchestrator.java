@@ -0,0 +1,460 @@
+package controller;
+
+import model.*;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.stream.Stream;
+
+/**
+ * DataLoadOrchestrator reads all entity files at the same time on a small worker pool.
+ *
+ * Each file gets its own task, and its rows are streamed into its controller
+ * (load*FromStream) as they are parsed, so cold start costs roughly the slowest file
+ * instead of the sum of all of them. When the CSVs have not changed since the last load
+ * or save, the controllers are filled from the binary snapshot (SnapshotStore) instead;
+ * the snapshot is only used while every data set is kept on the heap. Changes still in
+ * the mutation journal (MutationJournal) are applied to the rows on their way in, so no
+ * data set is ever copied as a whole, which keeps a disk repository off the heap. A disk
+ * repository that still holds its CSV file as it is now (Repository.isLoadedFrom()) is
+ * not filled again at all: only the journaled changes are applied to it.
+ *
+ * Each controller is only touched by the single task that loads it. Callers must wait
+ * for that task's future before reading the controller again (e.g. from the Swing EDT).
+ */
+public class DataLoadOrchestrator {
+
+    /**
+     * The entity files loaded at startup, in tab order.
+     */
+    public enum DataSet {
+        PATIENTS("patients.csv.crdownload"),
+        CLINICIANS("clinicians.csv.crdownload"),
+        APPOINTMENTS("appointments.csv.crdownload"),
+        PRESCRIPTIONS("prescriptions.csv.crdownload"),
+        REFERRALS("referrals.csv.crdownload"),
+        STAFF("staff.csv.crdownload"),
+        FACILITIES("facilities.csv.crdownload");
+
+        private final String fileName;
+
+        DataSet(String fileName) {
+            this.fileName = fileName;
+        }
+
+        public String getFileName() {
+            return fileName;
+        }
+    }
+
+    private final String pathPrefix;
+    private final PatientController patientController;
+    private final ClinicianController clinicianController;
+    private final AppointmentController appointmentController;
+    private final PrescriptionController prescriptionController;
+    private final ReferralController referralController;
+    private final StaffController staffController;
+    private final FacilityController facilityController;
+
+    private final ExecutorService pool;
+
+    // One dictionary for the whole startup load, so e.g. clinician IDs are shared across files
+    private final SymbolTable symbols = new SymbolTable();
+
+    // Binary copy of the dataset for warm starts
+    private final SnapshotStore snapshotStore;
+    // Only while every record is on the heap: the snapshot holds them all there too
+    private final boolean useSnapshot = Repositories.isAllInMemory();
+    private volatile SnapshotStore.Fingerprint[] sourcesAtLoad;
+    private final byte[][] sections = new byte[DataSet.values().length][];
+
+    public DataLoadOrchestrator(String pathPrefix,
+                                PatientController patientController,
+                                ClinicianController clinicianController,
+                                AppointmentController appointmentController,
+                                PrescriptionController prescriptionController,
+                                ReferralController referralController,
+                                StaffController staffController,
+                                FacilityController facilityController) {
+        this.pathPrefix = pathPrefix;
+        this.patientController = patientController;
+        this.clinicianController = clinicianController;
+        this.appointmentController = appointmentController;
+        this.prescriptionController = prescriptionController;
+        this.referralController = referralController;
+        this.staffController = staffController;
+        this.facilityController = facilityController;
+        this.snapshotStore = new SnapshotStore(pathPrefix);
+        this.pool = Executors.newFixedThreadPool(DataSet.values().length, new LoaderThreadFactory());
+    }
+
+    /**
+     * Start loading every file in parallel.
+     *
+     * If the binary snapshot is still fresh the controllers are filled from it instead of
+     * the CSV files. After a CSV load a new snapshot is written in the background.
+     * Journaled changes not yet folded into the files are replayed as the rows go in.
+     *
+     * Each future completes with the number of records put into the controller,
+     * or exceptionally if the file could not be read.
+     *
+     * @return One future per data set, in DataSet order
+     */
+    public Map<DataSet, CompletableFuture<Integer>> loadAll() {
+        long start = System.nanoTime();
+        CompletableFuture<SnapshotStore.Contents> snapshot = !useSnapshot
+                ? CompletableFuture.completedFuture(null)
+                : CompletableFuture.supplyAsync(() -> {
+                    SnapshotStore.Contents contents = snapshotStore.readIfFresh();
+                    if (contents == null) {
+                        sourcesAtLoad = snapshotStore.statSources(); // before any CSV is parsed
+                    }
+                    return contents;
+                }, pool);
+
+        CompletableFuture<MutationJournal.Replay> journal = CompletableFuture.supplyAsync(
+                () -> MutationJournal.readAll(pathPrefix), pool);
+
+        Map<DataSet, CompletableFuture<Integer>> futures = new EnumMap<>(DataSet.class);
+        for (DataSet set : DataSet.values()) {
+            futures.put(set, snapshot.thenCombineAsync(journal, (contents, replay) -> contents != null
+                    ? loadFromSnapshot(set, contents, replay)
+                    : loadInto(set, replay), pool));
+        }
+
+        CompletableFuture.allOf(futures.values().toArray(new CompletableFuture<?>[0]))
+                .whenComplete((ignored, error) -> {
+                    System.out.println("Startup load finished in "
+                            + (System.nanoTime() - start) / 1_000_000 + " ms"
+                            + (snapshot.join() != null ? " (from snapshot)" : ""));
+                    if (error == null && useSnapshot && snapshot.join() == null) {
+                        writeSnapshot();
+                    }
+                    pool.shutdown();
+                });
+        return futures;
+    }
+
+    // Warm start: decode this data set's section of the snapshot
+    private int loadFromSnapshot(DataSet set, SnapshotStore.Contents contents, MutationJournal.Replay replay) {
+        try {
+            switch (set) {
+                case PATIENTS: {
+                    Journaled<Patient> journaled = journaled(replay, set, CsvSchemas.PATIENTS, Patient::getUserId);
+                    patientController.loadPatientsFromStream(journaled.apply(contents.patients(symbols).stream()));
+                    journaled.mark(patientController.getChangeTracker());
+                    return patientController.getPatientCount();
+                }
+                case CLINICIANS: {
+                    Journaled<Clinician> journaled = journaled(replay, set, CsvSchemas.CLINICIANS, Clinician::getUserId);
+                    clinicianController.loadCliniciansFromStream(journaled.apply(contents.clinicians(symbols).stream()));
+                    journaled.mark(clinicianController.getChangeTracker());
+                    return clinicianController.getClinicianCount();
+                }
+                case APPOINTMENTS: {
+                    Journaled<Appointment> journaled = journaled(replay, set, CsvSchemas.APPOINTMENTS, Appointment::getAppointmentId);
+                    appointmentController.loadAppointmentsFromStream(journaled.apply(contents.appointments(symbols).stream()));
+                    journaled.mark(appointmentController.getChangeTracker());
+                    return appointmentController.getAppointmentCount();
+                }
+                case PRESCRIPTIONS: {
+                    Journaled<Prescription> journaled = journaled(replay, set, CsvSchemas.PRESCRIPTIONS, Prescription::getPrescriptionId);
+                    prescriptionController.loadPrescriptionsFromStream(journaled.apply(contents.prescriptions(symbols).stream()));
+                    journaled.mark(prescriptionController.getChangeTracker());
+                    return prescriptionController.getPrescriptionCount();
+                }
+                case REFERRALS: {
+                    Journaled<Referral> journaled = journaled(replay, set, CsvSchemas.REFERRALS, Referral::getReferralId);
+                    referralController.loadReferralsFromStream(journaled.apply(contents.referrals(symbols).stream()));
+                    journaled.mark(referralController.getChangeTracker());
+                    return referralController.getReferralCount();
+                }
+                case STAFF: {
+                    Journaled<Staff> journaled = journaled(replay, set, CsvSchemas.STAFF, Staff::getUserId);
+                    staffController.loadStaffFromStream(journaled.apply(contents.staff(symbols).stream()));
+                    journaled.mark(staffController.getChangeTracker());
+                    return staffController.getStaffCount();
+                }
+                case FACILITIES: {
+                    Journaled<Facility> journaled = journaled(replay, set, CsvSchemas.FACILITIES, Facility::getFacilityId);
+                    facilityController.loadFacilitiesFromStream(journaled.apply(contents.facilities(symbols).stream()));
+                    journaled.mark(facilityController.getChangeTracker());
+                    return facilityController.getFacilityCount();
+                }
+                default:
+                    throw new IllegalStateException("Unknown data set: " + set);
+            }
+        } catch (IOException | RuntimeException e) {
+            // A damaged section only costs us the fast path for that file
+            System.err.println("Snapshot section " + set + " unreadable, loading CSV: " + e.getMessage());
+            return loadInto(set, replay);
+        }
+    }
+
+    // Parse one file and stream its rows straight into the controller, journaled changes
+    // included. The snapshot section is encoded here too, before the GUI can touch the
+    // controller, unless the journal changed the set (the snapshot matches the CSV files).
+    private int loadInto(DataSet set, MutationJournal.Replay replay) {
+        DataLoader loader = new DataLoader(symbols);
+        String path = pathPrefix + set.getFileName();
+        // Taken before parsing, so a change made meanwhile makes the next start load again
+        File source = new File(path);
+        long size = source.length();
+        long modified = source.lastModified();
+        try {
+            switch (set) {
+                case PATIENTS: {
+                    Journaled<Patient> journaled = journaled(replay, set, CsvSchemas.PATIENTS, Patient::getUserId);
+                    if (reopen(set, patientController.getRepository(), journaled, patientController.getChangeTracker(), size, modified)) {
+                        return patientController.getPatientCount();
+                    }
+                    try (Stream<Patient> rows = loader.streamPatients(path)) {
+                        patientController.loadPatientsFromStream(journaled.apply(rows));
+                    }
+                    journaled.mark(patientController.getChangeTracker());
+                    patientController.getRepository().commit(size, modified);
+                    if (encodesSection(journaled)) {
+                        sections[set.ordinal()] = SnapshotStore.encodePatients(patientController.getPatientsView());
+                    }
+                    return patientController.getPatientCount();
+                }
+                case CLINICIANS: {
+                    Journaled<Clinician> journaled = journaled(replay, set, CsvSchemas.CLINICIANS, Clinician::getUserId);
+                    if (reopen(set, clinicianController.getRepository(), journaled, clinicianController.getChangeTracker(), size, modified)) {
+                        return clinicianController.getClinicianCount();
+                    }
+                    try (Stream<Clinician> rows = loader.streamClinicians(path)) {
+                        clinicianController.loadCliniciansFromStream(journaled.apply(rows));
+                    }
+                    journaled.mark(clinicianController.getChangeTracker());
+                    clinicianController.getRepository().commit(size, modified);
+                    if (encodesSection(journaled)) {
+                        sections[set.ordinal()] = SnapshotStore.encodeClinicians(clinicianController.getCliniciansView());
+                    }
+                    return clinicianController.getClinicianCount();
+                }
+                case APPOINTMENTS: {
+                    Journaled<Appointment> journaled = journaled(replay, set, CsvSchemas.APPOINTMENTS, Appointment::getAppointmentId);
+                    if (reopen(set, appointmentController.getRepository(), journaled, appointmentController.getChangeTracker(), size, modified)) {
+                        return appointmentController.getAppointmentCount();
+                    }
+                    if (isParallel(set, path)) {
+                        appointmentController.loadAppointmentsFromStream(journaled.apply(
+                                new MappedDataLoader(ForkJoinPool.commonPool(), symbols).loadAppointments(path).stream()));
+                    } else {
+                        try (Stream<Appointment> rows = loader.streamAppointments(path)) {
+                            appointmentController.loadAppointmentsFromStream(journaled.apply(rows));
+                        }
+                    }
+                    journaled.mark(appointmentController.getChangeTracker());
+                    appointmentController.getRepository().commit(size, modified);
+                    if (encodesSection(journaled)) {
+                        sections[set.ordinal()] = SnapshotStore.encodeAppointments(appointmentController.getAppointmentsView());
+                    }
+                    return appointmentController.getAppointmentCount();
+                }
+                case PRESCRIPTIONS: {
+                    Journaled<Prescription> journaled = journaled(replay, set, CsvSchemas.PRESCRIPTIONS, Prescription::getPrescriptionId);
+                    if (reopen(set, prescriptionController.getRepository(), journaled, prescriptionController.getChangeTracker(), size, modified)) {
+                        return prescriptionController.getPrescriptionCount();
+                    }
+                    if (isParallel(set, path)) {
+                        prescriptionController.loadPrescriptionsFromStream(journaled.apply(
+                                new MappedDataLoader(ForkJoinPool.commonPool(), symbols).loadPrescriptions(path).stream()));
+                    } else {
+                        try (Stream<Prescription> rows = loader.streamPrescriptions(path)) {
+                            prescriptionController.loadPrescriptionsFromStream(journaled.apply(rows));
+                        }
+                    }
+                    journaled.mark(prescriptionController.getChangeTracker());
+                    prescriptionController.getRepository().commit(size, modified);
+                    if (encodesSection(journaled)) {
+                        sections[set.ordinal()] = SnapshotStore.encodePrescriptions(prescriptionController.getPrescriptionsView());
+                    }
+                    return prescriptionController.getPrescriptionCount();
+                }
+                case REFERRALS: {
+                    Journaled<Referral> journaled = journaled(replay, set, CsvSchemas.REFERRALS, Referral::getReferralId);
+                    if (reopen(set, referralController.getRepository(), journaled, referralController.getChangeTracker(), size, modified)) {
+                        return referralController.getReferralCount();
+                    }
+                    try (Stream<Referral> rows = loader.streamReferrals(path)) {
+                        referralController.loadReferralsFromStream(journaled.apply(rows));
+                    }
+                    journaled.mark(referralController.getChangeTracker());
+                    referralController.getRepository().commit(size, modified);
+                    if (encodesSection(journaled)) {
+                        sections[set.ordinal()] = SnapshotStore.encodeReferrals(referralController.getReferralsView());
+                    }
+                    return referralController.getReferralCount();
+                }
+                case STAFF: {
+                    Journaled<Staff> journaled = journaled(replay, set, CsvSchemas.STAFF, Staff::getUserId);
+                    if (reopen(set, staffController.getRepository(), journaled, staffController.getChangeTracker(), size, modified)) {
+                        return staffController.getStaffCount();
+                    }
+                    try (Stream<Staff> rows = loader.streamStaff(path)) {
+                        staffController.loadStaffFromStream(journaled.apply(rows));
+                    }
+                    journaled.mark(staffController.getChangeTracker());
+                    staffController.getRepository().commit(size, modified);
+                    if (encodesSection(journaled)) {
+                        sections[set.ordinal()] = SnapshotStore.encodeStaff(staffController.getStaffView());
+                    }
+                    return staffController.getStaffCount();
+                }
+                case FACILITIES: {
+                    Journaled<Facility> journaled = journaled(replay, set, CsvSchemas.FACILITIES, Facility::getFacilityId);
+                    if (reopen(set, facilityController.getRepository(), journaled, facilityController.getChangeTracker(), size, modified)) {
+                        return facilityController.getFacilityCount();
+                    }
+                    try (Stream<Facility> rows = loader.streamFacilities(path)) {
+                        facilityController.loadFacilitiesFromStream(journaled.apply(rows));
+                    }
+                    journaled.mark(facilityController.getChangeTracker());
+                    facilityController.getRepository().commit(size, modified);
+                    if (encodesSection(journaled)) {
+                        sections[set.ordinal()] = SnapshotStore.encodeFacilities(facilityController.getFacilitiesView());
+                    }
+                    return facilityController.getFacilityCount();
+                }
+                default:
+                    throw new IllegalStateException("Unknown data set: " + set);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not load " + path, e);
+        }
+    }
+
+    // A data set kept on disk that still holds its CSV file as it is now, from an earlier
+    // run: only the journaled changes are applied to it, and the file is not parsed
+    private <T> boolean reopen(DataSet set, Repository<T> repository, Journaled<T> journaled, ChangeTracker tracker,
+                               long size, long modified) {
+        if (!repository.isLoadedFrom(size, modified)) {
+            return false;
+        }
+        journaled.applyTo(repository);
+        tracker.loaded();
+        journaled.mark(tracker);
+        System.out.println("Reopened " + repository.size() + " " + set.name().toLowerCase() + " from disk");
+        return true;
+    }
+
+    private <T> Journaled<T> journaled(MutationJournal.Replay replay, DataSet set, CsvSchema<T> schema,
+                                       Function<T, String> id) {
+        return new Journaled<>(set, replay.isEmpty() ? Collections.emptyMap() : replay.latest(set, schema, symbols), id);
+    }
+
+    private boolean encodesSection(Journaled<?> journaled) {
+        return useSnapshot && journaled.isEmpty();
+    }
+
+    /**
+     * One data set's journaled changes, applied to its rows as they stream into the
+     * controller. Same effect as the controller calls that were journaled: an update
+     * replaces the first record with that ID, an add appends, a delete removes every
+     * record with that ID.
+     */
+    private static final class Journaled<T> {
+        private final DataSet set;
+        private final Map<String, T> latest;
+        private final Function<T, String> id;
+        private final Set<String> placed = new HashSet<>();
+
+        Journaled(DataSet set, Map<String, T> latest, Function<T, String> id) {
+            this.set = set;
+            this.latest = latest;
+            this.id = id;
+        }
+
+        boolean isEmpty() {
+            return latest.isEmpty();
+        }
+
+        Stream<T> apply(Stream<T> rows) {
+            if (latest.isEmpty()) {
+                return rows;
+            }
+            Stream<T> current = rows.map(row -> {
+                String key = id.apply(row);
+                if (!latest.containsKey(key)) {
+                    return row;
+                }
+                T changed = latest.get(key);
+                if (changed == null) {
+                    return null;
+                }
+                return placed.add(key) ? changed : row; // a later duplicate of an updated ID is left as it was
+            }).filter(Objects::nonNull);
+            // Evaluated once the rows are used up, so it only adds what they did not hold
+            Stream<T> added = Stream.of(latest).flatMap(changes -> changes.entrySet().stream()
+                    .filter(change -> change.getValue() != null && placed.add(change.getKey()))
+                    .map(Map.Entry::getValue));
+            return Stream.concat(current, added);
+        }
+
+        // The same changes made to records already in the repository
+        void applyTo(Repository<T> repository) {
+            latest.forEach((key, row) -> {
+                if (row == null) {
+                    repository.remove(key);
+                } else if (!repository.update(row)) {
+                    repository.add(row);
+                }
+            });
+        }
+
+        // The changes are not in the files yet (call after the load, which marks it clean)
+        void mark(ChangeTracker tracker) {
+            if (latest.isEmpty()) {
+                return;
+            }
+            latest.forEach((key, row) -> {
+                if (row == null) {
+                    tracker.deleted(key);
+                } else {
+                    tracker.changed(key, row);
+                }
+            });
+            System.out.println("Replayed " + latest.size() + " journaled " + set.name().toLowerCase() + " changes");
+        }
+    }
+
+    private void writeSnapshot() {
+        for (byte[] section : sections) {
+            if (section == null) {
+                System.out.println("Snapshot skipped: journaled changes were replayed on top of the files");
+                return;
+            }
+        }
+        try {
+            if (!snapshotStore.write(sourcesAtLoad, sections)) {
+                System.out.println("Snapshot skipped: a data file changed while loading");
+            }
+        } catch (IOException e) {
+            System.err.println("Could not write snapshot: " + e.getMessage());
+        }
+    }
+
+    // Big regional extracts switch to the chunked, memory-mapped parser. It returns the
+    // whole file as a list, so a data set kept on disk is streamed in instead.
+    private static boolean isParallel(DataSet set, String path) {
+        return Repositories.isInMemory(set) && new File(path).length() >= MappedDataLoader.PARALLEL_THRESHOLD;
+    }
+
+    // Daemon threads so a slow file never keeps the JVM alive after the window closes
+    private static class LoaderThreadFactory implements ThreadFactory {
+        private final AtomicInteger counter = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread t = new Thread(r, "data-loader-" + counter.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        }
+    }
+}
@@ -2,35 +2,47 @@ package controller;
 
 import model.*;
 import java.io.*;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
 import java.util.*;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 
 public class DataLoader {
 
-    // Regex to split by comma ONLY if it's not inside quotes
-    private static final String CSV_SPLIT_REGEX = ",(?=(?:[^\"]*\"[^\"]*\")*[^\"]*$)";
+    // Charset of the CSV files, for every reader and writer of them
+    static final Charset CHARSET = StandardCharsets.UTF_8;
+
+    /**
+     * Turns one CSV line into an entity, or null to skip the row.
+     * Implementations share the caller's tokenizer, so they are used from one thread at a time.
+     * See CsvSchema.Compiled.
+     */
+    interface RowParser<T> {
+        T parse(CsvTokenizer csv, SymbolTable symbols, String line);
+    }
+
+    // Shared instances for repeated column values (status, clinician IDs, ...)
+    private final SymbolTable symbols;
+
+    public DataLoader() {
+        this(new SymbolTable());
+    }
+
+    /**
+     * @param symbols Dictionary shared by every file read through this loader
+     */
+    public DataLoader(SymbolTable symbols) {
+        this.symbols = symbols;
+    }
+
+
+    // ================= LIST LOADERS =================
+    // Convenience wrappers that collect the streaming readers below into a list.
 
     public List<Patient> loadPatients(String filepath) throws IOException {
         List<Patient> patients = new ArrayList<>();
-        try (BufferedReader reader = new BufferedReader(new FileReader(filepath))) {
-            String line;
-            reader.readLine(); // Skip header: userId,name,nhsNumber,email,phone
-
-            while ((line = reader.readLine()) != null) {
-                String[] parts = line.split(CSV_SPLIT_REGEX, -1); 
-                
-                // CSV columns: 0=userId, 1=name, 2=nhsNumber, 3=email, 4=phone
-                if (parts.length >= 5) {
-                    Patient p = new Patient(
-                            parts[0].trim(),  // userId
-                            parts[1].trim(),  // name
-                            parts[3].trim(),  // email
-                            parts[4].trim(),  // phone
-                            parts[2].trim()   // nhsNumber
-                    );
-                    patients.add(p);
-                }
-            }
-        }
+        forEachPatient(filepath, patients::add);
         System.out.println("Loaded " + patients.size() + " patients");
         return patients;
     }
@@ -39,21 +51,22 @@ public class DataLoader {
     // Load GPs from CSV
     public List<GP> loadGPs(String filepath) throws IOException {
         List<GP> gps = new ArrayList<>();
-        BufferedReader reader = new BufferedReader(new FileReader(filepath));
+        BufferedReader reader = new BufferedReader(new FileReader(filepath, CHARSET));
+        CsvTokenizer csv = new CsvTokenizer();
         String line;
         reader.readLine(); // Skip header
 
 
         while ((line = reader.readLine()) != null) {
-            String[] parts = line.split(",");
-            if (parts.length >= 6) {
+            int n = csv.tokenize(line);
+            if (n >= 6) {
                 GP gp = new GP(
-                        parts[0].trim(),  // userId
-                        parts[1].trim(),  // name
-                        parts[2].trim(),  // email
-                        parts[3].trim(),  // phone
-                        parts[4].trim(),  // specialty
-                        parts[5].trim()   // practiceName
+                        csv.field(0).trim(),  // userId
+                        csv.field(1).trim(),  // name
+                        csv.field(2).trim(),  // email
+                        csv.field(3).trim(),  // phone
+                        csv.field(4).trim(),  // specialty
+                        csv.field(5).trim()   // practiceName
                 );
                 gps.add(gp);
             }
@@ -67,28 +80,7 @@ public class DataLoader {
     // Load Appointments from CSV
     public List<Appointment> loadAppointments(String filepath) throws IOException {
         List<Appointment> appointments = new ArrayList<>();
-        try (BufferedReader reader = new BufferedReader(new FileReader(filepath))) {
-            String line;
-            reader.readLine(); // Skip header
-            while ((line = reader.readLine()) != null) {
-                String[] parts = line.split(CSV_SPLIT_REGEX, -1);
-                // Columns: 0=id, 1=patientId, 2=clinicianId, 3=dateTime, 4=status, 5=reason
-                if (parts.length >= 5) {
-                    Appointment app = new Appointment(
-                        parts[0].trim(),  // appointmentId
-                        parts[1].trim(),  // patientId
-                        parts[2].trim(),  // clinicianId
-                        parts[3].trim(),  // dateTime
-                        "Surgery"         // location (not in CSV, use default)
-                    );
-                    app.setStatus(parts[4].trim());  // status
-                    if (parts.length > 5 && !parts[5].trim().equals("null")) {
-                        app.setReason(parts[5].trim());
-                    }
-                    appointments.add(app);
-                }
-            }
-        }
+        forEachAppointment(filepath, appointments::add);
         System.out.println("Loaded " + appointments.size() + " appointments");
         return appointments;
     }
@@ -97,60 +89,16 @@ public class DataLoader {
     // Load Prescriptions from CSV
     public List<Prescription> loadPrescriptions(String filepath) throws IOException {
         List<Prescription> prescriptions = new ArrayList<>();
-        try (BufferedReader reader = new BufferedReader(new FileReader(filepath))) {
-            String line;
-            reader.readLine(); // Skip header
-            while ((line = reader.readLine()) != null) {
-                String[] parts = line.split(CSV_SPLIT_REGEX, -1);
-                // Columns: 0=id, 1=patientId, 2=medication, 3=dosage, 4=status
-                if (parts.length >= 4) {
-                    Prescription p = new Prescription(
-                        parts[0].trim(),  // prescriptionId
-                        parts[1].trim(),  // patientId
-                        "C001",           // clinicianId (not in CSV, use default)
-                        parts[2].trim(),  // medication
-                        parts[3].trim()   // dosage
-                    );
-                    if (parts.length > 4) {
-                        p.setStatus(parts[4].trim());  // status
-                    }
-                    prescriptions.add(p);
-                }
-            }
-        }
+        forEachPrescription(filepath, prescriptions::add);
         System.out.println("Loaded " + prescriptions.size() + " prescriptions");
         return prescriptions;
     }
 
 
-
     // Load Referrals from CSV
     public List<Referral> loadReferrals(String filepath) throws IOException {
         List<Referral> referrals = new ArrayList<>();
-        try (BufferedReader reader = new BufferedReader(new FileReader(filepath))) {
-            String line;
-            reader.readLine(); // Skip header
-            while ((line = reader.readLine()) != null) {
-                String[] parts = line.split(CSV_SPLIT_REGEX, -1);
-                // Columns: 0=id, 1=patientId, 2=fromGP, 3=toSpecialist, 4=reason, 5=status, 6=urgency
-                if (parts.length >= 5) {
-                    Referral r = new Referral(
-                        parts[0].trim(),  // referralId
-                        parts[1].trim(),  // patientId
-                        parts[2].trim(),  // fromGpId
-                        parts[3].trim(),  // toSpecialistId
-                        parts[4].trim()   // reason
-                    );
-                    if (parts.length > 6) {
-                        r.setUrgencyLevel(parts[6].trim());  // urgency
-                    }
-                    if (parts.length > 5) {
-                        r.setStatus(parts[5].trim());  // status
-                    }
-                    referrals.add(r);
-                }
-            }
-        }
+        forEachReferral(filepath, referrals::add);
         System.out.println("Loaded " + referrals.size() + " referrals");
         return referrals;
     }
@@ -159,35 +107,147 @@ public class DataLoader {
     // Load Clinician from csv
     public List<Clinician> loadClinicians(String filepath) throws IOException {
         List<Clinician> clinicians = new ArrayList<>();
-        try (BufferedReader reader = new BufferedReader(new FileReader(filepath))) {
+        forEachClinician(filepath, clinicians::add);
+        System.out.println("Loaded " + clinicians.size() + " clinicians");
+        return clinicians;
+    }
+
+
+    // Load Staff from csv
+    public List<Staff> loadStaff(String filepath) throws IOException {
+        List<Staff> staff = new ArrayList<>();
+        forEachStaff(filepath, staff::add);
+        System.out.println("Loaded " + staff.size() + " staff");
+        return staff;
+    }
+
+
+    // Load Facilities from csv
+    public List<Facility> loadFacilities(String filepath) throws IOException {
+        List<Facility> facilities = new ArrayList<>();
+        forEachFacility(filepath, facilities::add);
+        System.out.println("Loaded " + facilities.size() + " facilities");
+        return facilities;
+    }
+
+
+    // ================= STREAMING READERS =================
+    // Each parsed row goes straight to the consumer; nothing is kept by the loader,
+    // so a single pass over a huge file runs in constant memory.
+    // Columns are bound by header name through CsvSchemas, not by fixed position.
+
+    /**
+     * Parse patients.csv and hand each row to the consumer.
+     *
+     * @param filepath Path to the CSV file
+     * @param action Receives every patient, in file order
+     * @return Number of patients read
+     * @throws IOException If the file cannot be read
+     */
+    public int forEachPatient(String filepath, Consumer<? super Patient> action) throws IOException {
+        return forEachRow(filepath, CsvSchemas.PATIENTS, action);
+    }
+
+    public int forEachAppointment(String filepath, Consumer<? super Appointment> action) throws IOException {
+        return forEachRow(filepath, CsvSchemas.APPOINTMENTS, action);
+    }
+
+    public int forEachPrescription(String filepath, Consumer<? super Prescription> action) throws IOException {
+        return forEachRow(filepath, CsvSchemas.PRESCRIPTIONS, action);
+    }
+
+    public int forEachReferral(String filepath, Consumer<? super Referral> action) throws IOException {
+        return forEachRow(filepath, CsvSchemas.REFERRALS, action);
+    }
+
+    public int forEachClinician(String filepath, Consumer<? super Clinician> action) throws IOException {
+        return forEachRow(filepath, CsvSchemas.CLINICIANS, action);
+    }
+
+    public int forEachStaff(String filepath, Consumer<? super Staff> action) throws IOException {
+        return forEachRow(filepath, CsvSchemas.STAFF, action);
+    }
+
+    public int forEachFacility(String filepath, Consumer<? super Facility> action) throws IOException {
+        return forEachRow(filepath, CsvSchemas.FACILITIES, action);
+    }
+
+    /**
+     * Lazily parsed stream of patients.
+     *
+     * The stream holds the file open: use it in try-with-resources. It is sequential
+     * only (rows share one tokenizer); read errors surface as UncheckedIOException.
+     *
+     * @param filepath Path to the CSV file
+     * @return Stream of patients in file order
+     * @throws IOException If the file cannot be opened
+     */
+    public Stream<Patient> streamPatients(String filepath) throws IOException {
+        return streamRows(filepath, CsvSchemas.PATIENTS);
+    }
+
+    public Stream<Appointment> streamAppointments(String filepath) throws IOException {
+        return streamRows(filepath, CsvSchemas.APPOINTMENTS);
+    }
+
+    public Stream<Prescription> streamPrescriptions(String filepath) throws IOException {
+        return streamRows(filepath, CsvSchemas.PRESCRIPTIONS);
+    }
+
+    public Stream<Referral> streamReferrals(String filepath) throws IOException {
+        return streamRows(filepath, CsvSchemas.REFERRALS);
+    }
+
+    public Stream<Clinician> streamClinicians(String filepath) throws IOException {
+        return streamRows(filepath, CsvSchemas.CLINICIANS);
+    }
+
+    public Stream<Staff> streamStaff(String filepath) throws IOException {
+        return streamRows(filepath, CsvSchemas.STAFF);
+    }
+
+    public Stream<Facility> streamFacilities(String filepath) throws IOException {
+        return streamRows(filepath, CsvSchemas.FACILITIES);
+    }
+
+    // The header is read once and compiled into the column mapping for this file
+    private <T> int forEachRow(String filepath, CsvSchema<T> schema, Consumer<? super T> action) throws IOException {
+        int count = 0;
+        try (BufferedReader reader = new BufferedReader(new FileReader(filepath, CHARSET))) {
+            CsvTokenizer csv = new CsvTokenizer();
+            RowParser<T> parser = schema.compile(reader.readLine());
             String line;
-            reader.readLine(); // Skip header
-            // Header: clinician_id,first_name,last_name,title,speciality,gmc_number,phone_number,email,workplace_id,workplace_type,employment_status,start_date
-            //         0            1          2         3     4          5          6            7     8            9              10                11
-            
             while ((line = reader.readLine()) != null) {
-                String[] parts = line.split(CSV_SPLIT_REGEX, -1);
-                if (parts.length >= 12) {
-                    Clinician c = new Clinician(
-                        parts[0].trim(),   // clinician_id
-                        parts[1].trim(),   // first_name
-                        parts[2].trim(),   // last_name
-                        parts[3].trim(),   // title
-                        parts[4].trim(),   // speciality
-                        parts[5].trim(),   // gmc_number
-                        parts[6].trim(),   // phone_number
-                        parts[7].trim(),   // email
-                        parts[8].trim(),   // workplace_id
-                        parts[9].trim(),   // workplace_type
-                        parts[10].trim(),  // employment_status
-                        parts[11].trim()   // start_date
-                    );
-                    clinicians.add(c);
+                T row = parser.parse(csv, symbols, line);
+                if (row != null) {
+                    action.accept(row);
+                    count++;
                 }
             }
         }
-        System.out.println("Loaded " + clinicians.size() + " clinicians");
-        return clinicians;
+        return count;
+    }
+
+    private <T> Stream<T> streamRows(String filepath, CsvSchema<T> schema) throws IOException {
+        BufferedReader reader = new BufferedReader(new FileReader(filepath, CHARSET));
+        RowParser<T> parser;
+        try {
+            parser = schema.compile(reader.readLine());
+        } catch (IOException e) {
+            reader.close();
+            throw e;
+        }
+        CsvTokenizer csv = new CsvTokenizer();
+        return reader.lines()
+                .map(line -> parser.parse(csv, symbols, line))
+                .filter(Objects::nonNull)
+                .onClose(() -> {
+                    try {
+                        reader.close();
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
     }
 
 
@@ -0,0 +1,245 @@
+package controller;
+
+import java.io.*;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * DocumentArchive packs generated documents into rolling zip archives instead of one
+ * loose file each, for batch runs of tens of thousands of letters or slips.
+ *
+ * Layout in the output directory, per kind of document (e.g. "referral_letters"):
+ *   referral_letters-0001.zip, -0002.zip, ...  at most entriesPerArchive documents each,
+ *                                              entries named like the loose files
+ *   referral_letters.index                     one line per document: id, archive, entry
+ *
+ * An archive is written as "<name>.zip.tmp" and renamed when it is full or the batch
+ * closes; only then are its lines appended to the index. So the index never points into
+ * an unfinished archive. A crashed batch leaves its ".zip.tmp" behind, and the next
+ * create() for that kind deletes it (one batch per kind and directory at a time).
+ *
+ * A later batch starts a new archive and appends to the index. For an ID that was
+ * generated more than once the last index line wins; older copies stay in their
+ * archives until the directory is cleaned up.
+ */
+public class DocumentArchive implements Closeable {
+
+    public static final int DEFAULT_ENTRIES_PER_ARCHIVE = 10_000;
+
+    private static final String INDEX_SUFFIX = ".index";
+    private static final String ARCHIVE_SUFFIX = ".zip";
+    private static final String TEMP_SUFFIX = ".tmp";
+    private static final char SEPARATOR = '\t';
+
+    // Same charset FileWriter uses for the loose documents
+    private static final Charset CHARSET = Charset.defaultCharset();
+
+    private final Path dir;
+    private final String kind;
+    private final int entriesPerArchive;
+
+    private int archiveNumber;
+    private Path archivePath;                              // the .tmp file being written
+    private String archiveName;                            // its name once finished
+    private ZipOutputStream zip;
+    private Writer text;
+    private final List<String> pendingIndex = new ArrayList<>();
+    private int archives;
+
+    private DocumentArchive(Path dir, String kind, int entriesPerArchive, int lastArchive) {
+        this.dir = dir;
+        this.kind = kind;
+        this.entriesPerArchive = Math.max(1, entriesPerArchive);
+        this.archiveNumber = lastArchive;
+    }
+
+    /**
+     * Start writing documents of one kind. Archives are numbered on from those already
+     * in the directory; unfinished ones left by a crashed batch are deleted.
+     *
+     * @param outputDir Output directory (created if missing)
+     * @param kind Archive and index name, e.g. "referral_letters"
+     * @param entriesPerArchive Documents per archive before a new one is started
+     * @return The open archive
+     * @throws IOException If the directory cannot be created
+     */
+    public static DocumentArchive create(String outputDir, String kind, int entriesPerArchive) throws IOException {
+        Path dir = Paths.get(outputDir);
+        Files.createDirectories(dir);
+        int last = 0;
+        String prefix = kind + "-";
+        try (DirectoryStream<Path> existing = Files.newDirectoryStream(dir, prefix + "*" + ARCHIVE_SUFFIX)) {
+            for (Path path : existing) {
+                String name = path.getFileName().toString();
+                try {
+                    last = Math.max(last, Integer.parseInt(name.substring(prefix.length(), name.length() - ARCHIVE_SUFFIX.length())));
+                } catch (NumberFormatException e) {
+                    // Some other zip that happens to share the prefix
+                }
+            }
+        }
+        try (DirectoryStream<Path> unfinished = Files.newDirectoryStream(dir, prefix + "*" + ARCHIVE_SUFFIX + TEMP_SUFFIX)) {
+            for (Path path : unfinished) {
+                Files.deleteIfExists(path);
+            }
+        }
+        return new DocumentArchive(dir, kind, entriesPerArchive, last);
+    }
+
+    /**
+     * Add one document. Thread-safe; documents are compressed one at a time.
+     *
+     * @param id Record ID to look the document up by
+     * @param entryName File name inside the archive
+     * @param document Document text
+     * @return Size of the document in bytes, before compression
+     * @throws IOException If the archive cannot be written
+     */
+    public synchronized long add(String id, String entryName, CharSequence document) throws IOException {
+        if (zip == null) {
+            startArchive();
+        }
+        ZipEntry entry = new ZipEntry(entryName);
+        zip.putNextEntry(entry);
+        text.append(document);
+        text.flush();
+        zip.closeEntry();
+        pendingIndex.add(id + SEPARATOR + archiveName + SEPARATOR + entryName);
+        if (pendingIndex.size() >= entriesPerArchive) {
+            finishArchive();
+        }
+        return entry.getSize();
+    }
+
+    /**
+     * @return Number of archives finished so far
+     */
+    public synchronized int getArchiveCount() {
+        return archives;
+    }
+
+    /**
+     * Finish the current archive and add its documents to the index.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (zip != null) {
+            finishArchive();
+        }
+    }
+
+    private void startArchive() throws IOException {
+        archiveNumber++;
+        archiveName = String.format("%s-%04d%s", kind, archiveNumber, ARCHIVE_SUFFIX);
+        archivePath = dir.resolve(archiveName + TEMP_SUFFIX);
+        zip = new ZipOutputStream(new BufferedOutputStream(Files.newOutputStream(archivePath), 64 * 1024));
+        text = new OutputStreamWriter(zip, CHARSET);
+    }
+
+    private void finishArchive() throws IOException {
+        text.flush();
+        zip.close();
+        zip = null;
+        text = null;
+        Files.move(archivePath, dir.resolve(archiveName), StandardCopyOption.REPLACE_EXISTING);
+
+        StringBuilder lines = new StringBuilder(pendingIndex.size() * 48);
+        for (String line : pendingIndex) {
+            lines.append(line).append('\n');
+        }
+        Files.write(dir.resolve(kind + INDEX_SUFFIX), lines.toString().getBytes(StandardCharsets.UTF_8),
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        pendingIndex.clear();
+        archives++;
+    }
+
+    // ================= LOOKUP =================
+
+    /**
+     * Reads single documents back by ID. Loads the index once, and keeps each archive
+     * it touches open, so a lookup is a hash probe plus one entry read.
+     */
+    public static final class Reader implements Closeable {
+        private final Path dir;
+        private final Map<String, String[]> index = new HashMap<>();
+        private final Map<String, ZipFile> open = new HashMap<>();
+
+        private Reader(Path dir) {
+            this.dir = dir;
+        }
+
+        /**
+         * @param id Record ID
+         * @return The document text, or null if no document was archived for the ID
+         * @throws IOException If the archive cannot be read
+         */
+        public synchronized String read(String id) throws IOException {
+            String[] location = index.get(id);
+            if (location == null) {
+                return null;
+            }
+            ZipFile archive = open.get(location[0]);
+            if (archive == null) {
+                archive = new ZipFile(dir.resolve(location[0]).toFile());
+                open.put(location[0], archive);
+            }
+            ZipEntry entry = archive.getEntry(location[1]);
+            if (entry == null) {
+                throw new IOException(location[0] + " has no entry " + location[1]);
+            }
+            try (InputStream in = archive.getInputStream(entry)) {
+                return new String(in.readAllBytes(), CHARSET);
+            }
+        }
+
+        /**
+         * @return IDs with an archived document
+         */
+        public synchronized Set<String> ids() {
+            return Collections.unmodifiableSet(index.keySet());
+        }
+
+        @Override
+        public synchronized void close() throws IOException {
+            for (ZipFile archive : open.values()) {
+                archive.close();
+            }
+            open.clear();
+        }
+    }
+
+    /**
+     * Open the archives of one kind for lookups.
+     *
+     * @param outputDir Output directory
+     * @param kind Archive and index name, e.g. "referral_letters"
+     * @return A reader (empty if nothing was archived yet)
+     * @throws IOException If the index cannot be read
+     */
+    public static Reader reader(String outputDir, String kind) throws IOException {
+        Path dir = Paths.get(outputDir);
+        Reader reader = new Reader(dir);
+        Path indexFile = dir.resolve(kind + INDEX_SUFFIX);
+        if (!Files.exists(indexFile)) {
+            return reader;
+        }
+        try (BufferedReader in = Files.newBufferedReader(indexFile, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = in.readLine()) != null) {
+                int first = line.indexOf(SEPARATOR);
+                int second = line.indexOf(SEPARATOR, first + 1);
+                if (first < 0 || second < 0) {
+                    continue;
+                }
+                reader.index.put(line.substring(0, first),
+                        new String[]{line.substring(first + 1, second), line.substring(second + 1)});
+            }
+        }
+        return reader;
+    }
+}
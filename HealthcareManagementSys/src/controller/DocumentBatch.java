@@ -0,0 +1,288 @@
+package controller;
+
+import model.Prescription;
+import model.Referral;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * DocumentBatch renders referral letters or prescription slips for a whole query result
+ * (e.g. getReferralsByStatus("Pending")) in one go, for month-end runs.
+ *
+ * The batch is split between ioConcurrency writer threads. Each one takes the next
+ * record, renders its template (DocumentTemplates) into a reused buffer and encodes
+ * that straight into the file, so rendering runs in parallel
+ * too, there are never more than ioConcurrency files open at once, and only one document
+ * per writer is held in memory. Keeping render and write on the same thread matters:
+ * handing every document from a render pool to a write pool cost more in thread
+ * switches than the rendering itself. One bad record does not stop the batch: its
+ * error is kept in the report and the rest carry on.
+ *
+ * Files get the same names and content as the single-document buttons
+ * (Referral_<id>.txt, Prescription_<id>.txt). With Output.ARCHIVE they are packed into
+ * rolling zip archives instead (DocumentArchive), under the same names, so a large run
+ * creates a handful of files rather than one per record; the writers still render in
+ * parallel and take turns compressing.
+ */
+public class DocumentBatch {
+
+    public static final int DEFAULT_IO_CONCURRENCY = 4;
+
+    public static final String REFERRAL_LETTERS = "referral_letters";
+    public static final String PRESCRIPTION_SLIPS = "prescription_slips";
+
+    /**
+     * Where the documents go.
+     */
+    public enum Output {
+        FILES,      // one .txt file per document
+        ARCHIVE     // rolling zip archives plus an index, see DocumentArchive
+    }
+
+    // Same charset FileWriter uses for the single documents
+    private static final Charset CHARSET = Charset.defaultCharset();
+    private static final int BUFFER_SIZE = 8 * 1024;
+
+    private DocumentBatch() {
+    }
+
+    /**
+     * Outcome of one batch.
+     */
+    public static final class Report {
+        private final int requested;
+        private final int written;
+        private final long bytes;
+        private final long millis;
+        private final Map<String, Throwable> failures;
+
+        Report(int requested, int written, long bytes, long millis, Map<String, Throwable> failures) {
+            this.requested = requested;
+            this.written = written;
+            this.bytes = bytes;
+            this.millis = millis;
+            this.failures = failures;
+        }
+
+        public int getRequested() {
+            return requested;
+        }
+
+        public int getWritten() {
+            return written;
+        }
+
+        public long getBytesWritten() {
+            return bytes;
+        }
+
+        public long getMillis() {
+            return millis;
+        }
+
+        public long getDocumentsPerSecond() {
+            return written * 1000L / Math.max(1, millis);
+        }
+
+        /**
+         * @return Record ID to the reason its document was not written, in record order
+         */
+        public Map<String, Throwable> getFailures() {
+            return failures;
+        }
+
+        @Override
+        public String toString() {
+            return written + "/" + requested + " documents in " + millis + " ms ("
+                    + getDocumentsPerSecond() + " docs/s, " + bytes / 1024 + " KB)"
+                    + (failures.isEmpty() ? "" : ", " + failures.size() + " failed");
+        }
+    }
+
+    /**
+     * Write a referral letter for every referral given.
+     *
+     * @param referrals Query result, e.g. referralController.getReferralsByStatus("Pending")
+     * @param outputDir Directory for the letters (created if missing)
+     * @param ioConcurrency Most files written at the same time
+     * @return A future with the report, completed when every letter is done
+     */
+    public static CompletableFuture<Report> referralLetters(List<Referral> referrals, String outputDir, int ioConcurrency) {
+        return referralLetters(referrals, outputDir, Output.FILES, ioConcurrency);
+    }
+
+    /**
+     * Write a referral letter for every referral given.
+     *
+     * @param referrals Query result, e.g. referralController.getReferralsByStatus("Pending")
+     * @param outputDir Directory for the letters (created if missing)
+     * @param output Loose files, or the "referral_letters" archives
+     * @param ioConcurrency Most documents written at the same time
+     * @return A future with the report, completed when every letter is done
+     */
+    public static CompletableFuture<Report> referralLetters(List<Referral> referrals, String outputDir, Output output,
+                                                            int ioConcurrency) {
+        return generate(referrals, Referral::getReferralId, r -> "Referral_" + r.getReferralId() + ".txt",
+                DocumentTemplates::referralLetter, outputDir, output == Output.ARCHIVE ? REFERRAL_LETTERS : null,
+                ioConcurrency);
+    }
+
+    /**
+     * Write a prescription slip for every prescription given.
+     *
+     * @param prescriptions Query result, e.g. prescriptionController.getPrescriptionsByStatus("Issued")
+     * @param outputDir Directory for the slips (created if missing)
+     * @param ioConcurrency Most files written at the same time
+     * @return A future with the report, completed when every slip is done
+     */
+    public static CompletableFuture<Report> prescriptionSlips(List<Prescription> prescriptions, String outputDir, int ioConcurrency) {
+        return prescriptionSlips(prescriptions, outputDir, Output.FILES, ioConcurrency);
+    }
+
+    /**
+     * Write a prescription slip for every prescription given.
+     *
+     * @param prescriptions Query result, e.g. prescriptionController.getPrescriptionsByStatus("Issued")
+     * @param outputDir Directory for the slips (created if missing)
+     * @param output Loose files, or the "prescription_slips" archives
+     * @param ioConcurrency Most documents written at the same time
+     * @return A future with the report, completed when every slip is done
+     */
+    public static CompletableFuture<Report> prescriptionSlips(List<Prescription> prescriptions, String outputDir, Output output,
+                                                              int ioConcurrency) {
+        return generate(prescriptions, Prescription::getPrescriptionId, p -> "Prescription_" + p.getPrescriptionId() + ".txt",
+                DocumentTemplates::prescriptionSlip, outputDir, output == Output.ARCHIVE ? PRESCRIPTION_SLIPS : null,
+                ioConcurrency);
+    }
+
+    // archiveKind is null for loose files
+    private static <T> CompletableFuture<Report> generate(List<T> items, Function<T, String> id, Function<T, String> fileName,
+                                                          Supplier<DocumentTemplate<T>> layout, String outputDir,
+                                                          String archiveKind, int ioConcurrency) {
+        DocumentTemplate<T> template;
+        try {
+            template = layout.get();
+        } catch (RuntimeException e) {
+            return CompletableFuture.failedFuture(e instanceof UncheckedIOException ? e.getCause() : e);
+        }
+        List<T> batch = new ArrayList<>(items);
+        Path dir = Paths.get(outputDir);
+        int writers = Math.max(1, Math.min(ioConcurrency, batch.size()));
+        ExecutorService io = Executors.newFixedThreadPool(writers, new WriterThreadFactory());
+
+        long start = System.nanoTime();
+        AtomicInteger next = new AtomicInteger();
+        AtomicInteger written = new AtomicInteger();
+        AtomicLong bytes = new AtomicLong();
+        Throwable[] errors = new Throwable[batch.size()];
+
+        DocumentArchive archive = null;
+        try {
+            Files.createDirectories(dir);
+            if (archiveKind != null) {
+                archive = DocumentArchive.create(outputDir, archiveKind, DocumentArchive.DEFAULT_ENTRIES_PER_ARCHIVE);
+            }
+        } catch (IOException e) {
+            io.shutdown();
+            return CompletableFuture.failedFuture(e);
+        }
+        DocumentArchive packer = archive;
+
+        Runnable writer = () -> {
+            // Per writer, reused for every document
+            StringBuilder text = new StringBuilder(4096);
+            CharsetEncoder encoder = CHARSET.newEncoder()
+                    .onMalformedInput(CodingErrorAction.REPLACE)
+                    .onUnmappableCharacter(CodingErrorAction.REPLACE);
+            ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+
+            for (int i = next.getAndIncrement(); i < batch.size(); i = next.getAndIncrement()) {
+                try {
+                    text.setLength(0);
+                    template.render(batch.get(i), text);
+                    if (packer != null) {
+                        bytes.addAndGet(packer.add(id.apply(batch.get(i)), fileName.apply(batch.get(i)), text));
+                    } else {
+                        bytes.addAndGet(write(dir.resolve(fileName.apply(batch.get(i))), text, encoder, buffer));
+                    }
+                    written.incrementAndGet();
+                } catch (IOException | RuntimeException e) {
+                    errors[i] = e;
+                }
+            }
+        };
+
+        CompletableFuture<?>[] done = new CompletableFuture<?>[writers];
+        for (int w = 0; w < writers; w++) {
+            done[w] = CompletableFuture.runAsync(writer, io);
+        }
+        io.shutdown(); // the writers already queued still run
+
+        return CompletableFuture.allOf(done).thenApply(ignored -> {
+            if (packer != null) {
+                try {
+                    packer.close(); // the last archive only becomes visible here
+                } catch (IOException e) {
+                    throw new UncheckedIOException("Could not finish " + archiveKind + " archive", e);
+                }
+            }
+            Map<String, Throwable> failures = new LinkedHashMap<>();
+            for (int i = 0; i < errors.length; i++) {
+                if (errors[i] != null) {
+                    failures.put(batch.get(i) != null ? String.valueOf(id.apply(batch.get(i))) : "#" + (i + 1), errors[i]);
+                }
+            }
+            Report report = new Report(batch.size(), written.get(), bytes.get(),
+                    (System.nanoTime() - start) / 1_000_000, failures);
+            System.out.println("Document batch to " + dir + ": " + report);
+            return report;
+        });
+    }
+
+    // Encode straight from the render buffer into the file, a buffer-full at a time
+    private static long write(Path path, CharSequence text, CharsetEncoder encoder, ByteBuffer buffer) throws IOException {
+        long bytes = 0;
+        CharBuffer chars = CharBuffer.wrap(text);
+        encoder.reset();
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            boolean flushed = false;
+            while (!flushed) {
+                buffer.clear();
+                CoderResult result = encoder.encode(chars, buffer, true);
+                if (!result.isOverflow()) {
+                    result = encoder.flush(buffer);
+                    flushed = !result.isOverflow();
+                }
+                buffer.flip();
+                bytes += buffer.remaining();
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+            }
+        }
+        return bytes;
+    }
+
+    private static class WriterThreadFactory implements ThreadFactory {
+        private final AtomicInteger counter = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread t = new Thread(r, "document-writer-" + counter.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        }
+    }
+}
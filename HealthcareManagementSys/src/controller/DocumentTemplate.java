@@ -0,0 +1,138 @@
+package controller;
+
+import java.util.*;
+import java.util.function.Function;
+
+/**
+ * DocumentTemplate is a text layout with placeholders, compiled once and then rendered
+ * for any number of records.
+ *
+ * Syntax: {{field}} is replaced by the field's value, {{field|text}} by text when the
+ * value is null (otherwise null is written as "null", like string concatenation).
+ * Everything else is copied as is.
+ *
+ * compile() splits the source into literal and field segments and resolves every field
+ * name against the given accessors, so a misspelt placeholder fails at load time rather
+ * than in the middle of a batch. render() then only appends segments to the caller's
+ * buffer: no parsing, lookups or intermediate strings per document.
+ *
+ * @param <T> The record type the template renders
+ */
+public final class DocumentTemplate<T> {
+
+    private static final String OPEN = "{{";
+    private static final String CLOSE = "}}";
+
+    private final String name;
+    private final String[] literals;                       // one more than fields
+    private final Function<? super T, ?>[] fields;
+    private final String[] defaults;                       // null: write "null"
+    private final int sizeHint;
+
+    private DocumentTemplate(String name, String[] literals, Function<? super T, ?>[] fields, String[] defaults) {
+        this.name = name;
+        this.literals = literals;
+        this.fields = fields;
+        this.defaults = defaults;
+        int size = 0;
+        for (String literal : literals) {
+            size += literal.length();
+        }
+        this.sizeHint = size + fields.length * 16;
+    }
+
+    /**
+     * Compile a template.
+     *
+     * @param name Name for error messages (e.g. the file name)
+     * @param source Template text
+     * @param accessors Field name to the function reading it from a record
+     * @return The compiled template
+     * @throws IllegalArgumentException If a placeholder is unclosed or names an unknown field
+     */
+    public static <T> DocumentTemplate<T> compile(String name, String source, Map<String, Function<? super T, ?>> accessors) {
+        List<String> literals = new ArrayList<>();
+        List<Function<? super T, ?>> fields = new ArrayList<>();
+        List<String> defaults = new ArrayList<>();
+
+        int pos = 0;
+        while (true) {
+            int open = source.indexOf(OPEN, pos);
+            if (open < 0) {
+                literals.add(source.substring(pos));
+                break;
+            }
+            int close = source.indexOf(CLOSE, open + OPEN.length());
+            if (close < 0) {
+                throw new IllegalArgumentException(name + ": unclosed placeholder at " + position(source, open));
+            }
+            literals.add(source.substring(pos, open));
+
+            String placeholder = source.substring(open + OPEN.length(), close);
+            int bar = placeholder.indexOf('|');
+            String field = (bar < 0 ? placeholder : placeholder.substring(0, bar)).trim();
+            Function<? super T, ?> accessor = accessors.get(field);
+            if (accessor == null) {
+                throw new IllegalArgumentException(name + ": unknown field {{" + field + "}} at " + position(source, open)
+                        + ", expected one of " + new TreeSet<>(accessors.keySet()));
+            }
+            fields.add(accessor);
+            defaults.add(bar < 0 ? null : placeholder.substring(bar + 1));
+            pos = close + CLOSE.length();
+        }
+
+        // No generic array can be created; the list only ever held Function<? super T, ?>
+        @SuppressWarnings("unchecked")
+        Function<? super T, ?>[] accessorArray = (Function<? super T, ?>[]) fields.toArray(new Function<?, ?>[0]);
+        return new DocumentTemplate<>(name, literals.toArray(new String[0]), accessorArray,
+                defaults.toArray(new String[0]));
+    }
+
+    /**
+     * Append the document for one record.
+     *
+     * @param item The record
+     * @param out Buffer to append to (typically reused across documents)
+     */
+    public void render(T item, StringBuilder out) {
+        Function<? super T, ?>[] fields = this.fields;
+        for (int i = 0; i < fields.length; i++) {
+            out.append(literals[i]);
+            Object value = fields[i].apply(item);
+            if (value == null) {
+                out.append(defaults[i] != null ? defaults[i] : "null");
+            } else if (value instanceof String) {
+                out.append((String) value);
+            } else {
+                out.append(value);
+            }
+        }
+        out.append(literals[fields.length]);
+    }
+
+    /**
+     * @return The document for one record
+     */
+    public String render(T item) {
+        StringBuilder out = new StringBuilder(sizeHint);
+        render(item, out);
+        return out.toString();
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    // "line 3, column 7" for error messages
+    private static String position(String source, int index) {
+        int line = 1;
+        int lineStart = 0;
+        for (int i = 0; i < index; i++) {
+            if (source.charAt(i) == '\n') {
+                line++;
+                lineStart = i + 1;
+            }
+        }
+        return "line " + line + ", column " + (index - lineStart + 1);
+    }
+}
@@ -0,0 +1,115 @@
+package controller;
+
+import model.Prescription;
+import model.Referral;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * The document layouts, kept as template files outside the code so they can be
+ * changed without a rebuild:
+ *
+ *   templates/referral_letter.txt    - fields of Referral (see REFERRAL_FIELDS)
+ *   templates/prescription_slip.txt  - fields of Prescription (see PRESCRIPTION_FIELDS)
+ *
+ * The directory is found like the data directory ("templates/", else "../templates/"),
+ * or set with -Dtemplates.dir. Files are read as UTF-8 with line breaks normalised to
+ * "\n", and used exactly as they are otherwise, including whether the last line ends
+ * with a line break.
+ *
+ * Each template is compiled on first use and then shared (DocumentTemplate is immutable).
+ */
+public final class DocumentTemplates {
+
+    public static final String REFERRAL_LETTER = "referral_letter.txt";
+    public static final String PRESCRIPTION_SLIP = "prescription_slip.txt";
+
+    private static final Map<String, Function<? super Referral, ?>> REFERRAL_FIELDS = new LinkedHashMap<>();
+    private static final Map<String, Function<? super Prescription, ?>> PRESCRIPTION_FIELDS = new LinkedHashMap<>();
+
+    static {
+        REFERRAL_FIELDS.put("referralId", Referral::getReferralId);
+        REFERRAL_FIELDS.put("patientId", Referral::getPatientId);
+        REFERRAL_FIELDS.put("fromGpId", Referral::getFromGpId);
+        REFERRAL_FIELDS.put("toSpecialistId", Referral::getToSpecialistId);
+        REFERRAL_FIELDS.put("reason", Referral::getReason);
+        REFERRAL_FIELDS.put("status", Referral::getStatus);
+        REFERRAL_FIELDS.put("urgency", Referral::getUrgencyLevel);
+        REFERRAL_FIELDS.put("referralDate", Referral::getReferralDate);
+        REFERRAL_FIELDS.put("clinicalSummary", Referral::getClinicalSummary);
+
+        PRESCRIPTION_FIELDS.put("prescriptionId", Prescription::getPrescriptionId);
+        PRESCRIPTION_FIELDS.put("patientId", Prescription::getPatientId);
+        PRESCRIPTION_FIELDS.put("clinicianId", Prescription::getClinicianId);
+        PRESCRIPTION_FIELDS.put("medication", Prescription::getMedication);
+        PRESCRIPTION_FIELDS.put("dosage", Prescription::getDosage);
+        PRESCRIPTION_FIELDS.put("duration", Prescription::getDuration);
+        PRESCRIPTION_FIELDS.put("status", Prescription::getStatus);
+        PRESCRIPTION_FIELDS.put("issuedDate", Prescription::getIssuedDate);
+        PRESCRIPTION_FIELDS.put("notes", Prescription::getNotes);
+    }
+
+    private static DocumentTemplate<Referral> referralLetter;
+    private static DocumentTemplate<Prescription> prescriptionSlip;
+
+    private DocumentTemplates() {
+    }
+
+    /**
+     * @return The compiled referral letter template
+     * @throws UncheckedIOException If the template file cannot be read
+     * @throws IllegalArgumentException If the template does not compile
+     */
+    public static synchronized DocumentTemplate<Referral> referralLetter() {
+        if (referralLetter == null) {
+            referralLetter = DocumentTemplate.compile(REFERRAL_LETTER, read(REFERRAL_LETTER), REFERRAL_FIELDS);
+        }
+        return referralLetter;
+    }
+
+    /**
+     * @return The compiled prescription slip template
+     * @throws UncheckedIOException If the template file cannot be read
+     * @throws IllegalArgumentException If the template does not compile
+     */
+    public static synchronized DocumentTemplate<Prescription> prescriptionSlip() {
+        if (prescriptionSlip == null) {
+            prescriptionSlip = DocumentTemplate.compile(PRESCRIPTION_SLIP, read(PRESCRIPTION_SLIP), PRESCRIPTION_FIELDS);
+        }
+        return prescriptionSlip;
+    }
+
+    /**
+     * Forget the compiled templates, so edited files are picked up on next use.
+     */
+    public static synchronized void reload() {
+        referralLetter = null;
+        prescriptionSlip = null;
+    }
+
+    private static String read(String fileName) {
+        String path = resolveDirectory() + fileName;
+        try {
+            String text = new String(Files.readAllBytes(Paths.get(path)), StandardCharsets.UTF_8);
+            return text.replace("\r\n", "\n");
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not read template " + path, e);
+        }
+    }
+
+    private static String resolveDirectory() {
+        String configured = System.getProperty("templates.dir");
+        if (configured != null) {
+            return configured.endsWith("/") ? configured : configured + "/";
+        }
+        // Same fallback as the data directory, for IntelliJ working directory differences
+        return new File("templates/" + REFERRAL_LETTER).exists() ? "templates/" : "../templates/";
+    }
+}
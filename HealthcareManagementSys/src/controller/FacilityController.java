@@ -0,0 +1,114 @@
+package controller;
+
+import model.Facility;
+import java.util.*;
+import java.util.stream.Stream;
+
+/**
+ * FacilityController manages all Facility operations (CRUD).
+ *
+ * @version 1.0
+ */
+public class FacilityController {
+
+    private final Repository<Facility> facilities;
+    private final ChangeTracker changes = new ChangeTracker();
+
+    public FacilityController() {
+        this(Repositories.create(DataLoadOrchestrator.DataSet.FACILITIES, CsvSchemas.FACILITIES, Facility::getFacilityId));
+    }
+
+    public FacilityController(Repository<Facility> facilities) {
+        this.facilities = facilities;
+    }
+
+    public boolean addFacility(Facility facility) {
+        if (facility == null) return false;
+        facilities.add(facility);
+        changes.changed(facility.getFacilityId(), facility);
+        System.out.println("Facility added: " + facility.getFacilityName());
+        return true;
+    }
+
+    public Facility getFacility(String facilityId) {
+        return facilities.get(facilityId);
+    }
+
+    public List<Facility> getFacilitiesByType(String facilityType) {
+        return facilities.stream()
+                .filter(f -> f.getFacilityType().equalsIgnoreCase(facilityType))
+                .toList();
+    }
+
+    public boolean updateFacility(Facility facility) {
+        Facility existing = getFacility(facility.getFacilityId());
+        if (existing != null) {
+            existing.setFacilityName(facility.getFacilityName());
+            existing.setAddress(facility.getAddress());
+            existing.setPhone(facility.getPhone());
+            existing.setOpeningHours(facility.getOpeningHours());
+            facilities.update(existing);
+            changes.changed(existing.getFacilityId(), existing);
+            return true;
+        }
+        return false;
+    }
+
+    // Put a new facility in place of the stored one with the same ID, keeping its position
+    public boolean replaceFacility(Facility facility) {
+        if (!facilities.update(facility)) {
+            return false;
+        }
+        changes.changed(facility.getFacilityId(), facility);
+        return true;
+    }
+
+    public boolean deleteFacility(String facilityId) {
+        boolean removed = facilities.remove(facilityId);
+        if (removed) {
+            changes.deleted(facilityId);
+        }
+        return removed;
+    }
+
+    public List<Facility> getAllFacilities() {
+        return facilities.list();
+    }
+
+    public List<Facility> getFacilitiesView() {
+        return facilities.view();
+    }
+
+    public List<Facility> getFacilitiesPage(int offset, int limit) {
+        return facilities.page(offset, limit);
+    }
+
+    public Iterable<Facility> getFacilitiesToSave() {
+        return facilities.toSave();
+    }
+
+    public void loadFacilitiesFromData(List<Facility> loadedFacilities) {
+        facilities.load(loadedFacilities != null ? loadedFacilities.stream() : Stream.empty());
+        changes.loaded();
+        System.out.println("Loaded " + facilities.size() + " facilities into controller");
+    }
+
+    public void loadFacilitiesFromStream(Stream<Facility> loadedFacilities) {
+        facilities.load(loadedFacilities);
+        changes.loaded();
+        System.out.println("Loaded " + facilities.size() + " facilities into controller");
+    }
+
+    public ChangeTracker getChangeTracker() {
+        return changes;
+    }
+
+    // The loader and the compactor reopen and commit a disk repository through this
+    Repository<Facility> getRepository() {
+        return facilities;
+    }
+
+    public int getFacilityCount() {
+        return facilities.size();
+    }
+}
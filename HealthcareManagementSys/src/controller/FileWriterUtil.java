@@ -7,102 +7,157 @@ import java.util.*;
 public class FileWriterUtil {
 
     // write prescriptions to file
-    public static void writePrescriptionsToFile(List<Prescription> prescriptions, String filepath) throws IOException {
-        FileWriter writer = new FileWriter(filepath);
-        writer.write("prescriptionId,patientId,medication,dosage,status\n");
-
-        for (Prescription p : prescriptions) {
-            writer.write(p.getPrescriptionId() + "," +
-                    p.getPatientId() + "," +
-                    p.getMedication() + "," +
-                    p.getDosage() + "," +
-                    p.getStatus() + "\n");
+    public static long writePrescriptionsToFile(Iterable<? extends Prescription> prescriptions, String filepath) throws IOException {
+        try (CsvWriter csv = CsvWriter.open(filepath, "prescriptionId,patientId,medication,dosage,status")) {
+            for (Prescription p : prescriptions) {
+                csv.field(p.getPrescriptionId())
+                        .field(p.getPatientId())
+                        .field(p.getMedication())
+                        .field(p.getDosage())
+                        .field(p.getStatus())
+                        .endRow();
+            }
+            csv.commit();
+            System.out.println("Prescriptions written to " + filepath + summary(csv));
+            return csv.getRowCount();
         }
-        writer.close();
-        System.out.println("Prescriptions written to " + filepath);
     }
 
 
     // write referrals to file
-    public static void writeReferralsToFile(List<Referral> referrals, String filepath) throws IOException {
-        FileWriter writer = new FileWriter(filepath);
-        writer.write("referralId,patientId,fromGP,toSpecialist,reason,status,urgency\n");
-
-        for (Referral r : referrals) {
-            writer.write(r.getReferralId() + "," +
-                    r.getPatientId() + "," +
-                    r.getFromGpId() + "," +
-                    r.getToSpecialistId() + "," +
-                    r.getReason() + "," +
-                    r.getStatus() + "," +
-                    r.getUrgencyLevel() + "\n");
+    public static long writeReferralsToFile(Iterable<? extends Referral> referrals, String filepath) throws IOException {
+        try (CsvWriter csv = CsvWriter.open(filepath, "referralId,patientId,fromGP,toSpecialist,reason,status,urgency")) {
+            for (Referral r : referrals) {
+                csv.field(r.getReferralId())
+                        .field(r.getPatientId())
+                        .field(r.getFromGpId())
+                        .field(r.getToSpecialistId())
+                        .field(r.getReason())
+                        .field(r.getStatus())
+                        .field(r.getUrgencyLevel())
+                        .endRow();
+            }
+            csv.commit();
+            System.out.println("Referrals written to " + filepath + summary(csv));
+            return csv.getRowCount();
         }
-        writer.close();
-        System.out.println("Referrals written to " + filepath);
     }
 
 
 
     // write patients to file
-    public static void writePatientsToFile(List<Patient> patients, String filepath) throws IOException {
-        FileWriter writer = new FileWriter(filepath);
-        writer.write("userId,name,nhsNumber,email,phone\n");
-
-        for (Patient p : patients) {
-            writer.write(p.getUserId() + "," +
-                    p.getName() + "," +
-                    p.getNhsNumber() + "," +
-                    p.getEmail() + "," +
-                    p.getPhone() + "\n");
+    public static long writePatientsToFile(Iterable<? extends Patient> patients, String filepath) throws IOException {
+        try (CsvWriter csv = CsvWriter.open(filepath, "userId,name,nhsNumber,email,phone")) {
+            for (Patient p : patients) {
+                csv.field(p.getUserId())
+                        .field(p.getName())
+                        .field(p.getNhsNumber())
+                        .field(p.getEmail())
+                        .field(p.getPhone())
+                        .endRow();
+            }
+            csv.commit();
+            System.out.println("Patients written to " + filepath + summary(csv));
+            return csv.getRowCount();
         }
-        writer.close();
-        System.out.println("Patients written to " + filepath);
     }
 
 
     // write appointments to file
-    public static void writeAppointmentsToFile(List<Appointment> appointments, String filepath) throws IOException {
-        FileWriter writer = new FileWriter(filepath);
-        writer.write("appointmentId,patientId,clinicianId,dateTime,status,reason\n");
-
-        for (Appointment a : appointments) {
-            writer.write(a.getAppointmentId() + "," +
-                    a.getPatientId() + "," +
-                    a.getClinicianId() + "," +
-                    a.getDateTime() + "," +
-                    a.getStatus() + "," +
-                    a.getReason() + "\n");
+    public static long writeAppointmentsToFile(Iterable<? extends Appointment> appointments, String filepath) throws IOException {
+        try (CsvWriter csv = CsvWriter.open(filepath, "appointmentId,patientId,clinicianId,dateTime,status,reason")) {
+            for (Appointment a : appointments) {
+                csv.field(a.getAppointmentId())
+                        .field(a.getPatientId())
+                        .field(a.getClinicianId())
+                        .field(a.getDateTime())
+                        .field(a.getStatus())
+                        .field(a.getReason())
+                        .endRow();
+            }
+            csv.commit();
+            System.out.println("Appointments written to " + filepath + summary(csv));
+            return csv.getRowCount();
         }
-        writer.close();
-        System.out.println("Appointments written to " + filepath);
     }
 
 
 
     // write clinicians to file
-    public static void writeCliniciansToFile(List<Clinician> clinicians, String filepath) throws IOException {
-        FileWriter writer = new FileWriter(filepath);
+    public static long writeCliniciansToFile(Iterable<? extends Clinician> clinicians, String filepath) throws IOException {
         // Match original CSV header exactly
-        writer.write("clinician_id,first_name,last_name,title,speciality,gmc_number,phone_number,email,workplace_id,workplace_type,employment_status,start_date\n");
-
-        for (Clinician c : clinicians) {
-            writer.write(
-                c.getClinicianId() + "," +
-                c.getFirstName() + "," +
-                c.getLastName() + "," +
-                c.getTitle() + "," +
-                c.getSpeciality() + "," +
-                c.getGmcNumber() + "," +
-                c.getPhone() + "," +
-                c.getEmail() + "," +
-                c.getWorkplaceId() + "," +
-                c.getWorkplaceType() + "," +
-                c.getEmploymentStatus() + "," +
-                c.getStartDate() + "\n"
-            );
+        try (CsvWriter csv = CsvWriter.open(filepath, "clinician_id,first_name,last_name,title,speciality,gmc_number,phone_number,email,workplace_id,workplace_type,employment_status,start_date")) {
+            for (Clinician c : clinicians) {
+                csv.field(c.getClinicianId())
+                        .field(c.getFirstName())
+                        .field(c.getLastName())
+                        .field(c.getTitle())
+                        .field(c.getSpeciality())
+                        .field(c.getGmcNumber())
+                        .field(c.getPhone())
+                        .field(c.getEmail())
+                        .field(c.getWorkplaceId())
+                        .field(c.getWorkplaceType())
+                        .field(c.getEmploymentStatus())
+                        .field(c.getStartDate())
+                        .endRow();
+            }
+            csv.commit();
+            System.out.println("Clinicians written to " + filepath + summary(csv));
+            return csv.getRowCount();
         }
-        writer.close();
-        System.out.println("Clinicians written to " + filepath);
+    }
+
+    // write staff to file
+    public static long writeStaffToFile(Iterable<? extends Staff> staff, String filepath) throws IOException {
+        try (CsvWriter csv = CsvWriter.open(filepath, "staff_id,first_name,last_name,role,department,facility_id,phone_number,email,employment_status,start_date,line_manager,access_level")) {
+            for (Staff s : staff) {
+                csv.field(s.getStaffId())
+                        .field(s.getFirstName())
+                        .field(s.getLastName())
+                        .field(s.getRole())
+                        .field(s.getDepartment())
+                        .field(s.getFacilityId())
+                        .field(s.getPhone())
+                        .field(s.getEmail())
+                        .field(s.getEmploymentStatus())
+                        .field(s.getStartDate())
+                        .field(s.getLineManager())
+                        .field(s.getAccessLevel())
+                        .endRow();
+            }
+            csv.commit();
+            System.out.println("Staff written to " + filepath + summary(csv));
+            return csv.getRowCount();
+        }
+    }
+
+    // write facilities to file
+    public static long writeFacilitiesToFile(Iterable<? extends Facility> facilities, String filepath) throws IOException {
+        try (CsvWriter csv = CsvWriter.open(filepath, "facility_id,facility_name,facility_type,address,postcode,phone_number,email,opening_hours,manager_name,capacity,specialities_offered")) {
+            for (Facility f : facilities) {
+                csv.field(f.getFacilityId())
+                        .field(f.getFacilityName())
+                        .field(f.getFacilityType())
+                        .field(f.getAddress())
+                        .field(f.getPostcode())
+                        .field(f.getPhone())
+                        .field(f.getEmail())
+                        .field(f.getOpeningHours())
+                        .field(f.getManagerName())
+                        .field(f.getCapacity())
+                        .field(f.getSpecialitiesOffered())
+                        .endRow();
+            }
+            csv.commit();
+            System.out.println("Facilities written to " + filepath + summary(csv));
+            return csv.getRowCount();
+        }
+    }
+
+    // e.g. " (12 rows, 250000 rows/s)"
+    private static String summary(CsvWriter csv) {
+        return " (" + csv.getRowCount() + " rows, " + csv.getRowsPerSecond() + " rows/s)";
     }
 
 
@@ -110,65 +165,48 @@ public class FileWriterUtil {
     //Generates a readable text referral letter (Requirement: output text content)
     
     public static void generateReferralLetter(Referral r, String filepath) throws IOException {
-        FileWriter writer = new FileWriter(filepath);
-        writer.write("================================================\n");
-        writer.write("              NHS REFERRAL LETTER               \n");
-        writer.write("================================================\n\n");
-        writer.write("Date: " + r.getReferralDate() + "\n");
-        writer.write("Urgency: " + r.getUrgencyLevel() + "\n\n");
-        
-        writer.write("FROM: GP ID " + r.getFromGpId() + "\n");
-        writer.write("TO:   Specialist ID " + r.getToSpecialistId() + "\n\n");
-        
-        writer.write("RE:   PATIENT " + r.getPatientId() + "\n\n");
-        
-        writer.write("Dear Colleague,\n\n");
-        writer.write("I would appreciate your assessment of this patient.\n");
-        writer.write("Reason for referral: " + r.getReason() + "\n\n");
-        
-        writer.write("Clinical Summary:\n");
-        writer.write(r.getClinicalSummary() != null ? r.getClinicalSummary() : "No summary provided.");
-        writer.write("\n\nSincerely,\nNHS GP Service");
-        
-        writer.close();
+        String text;
+        try {
+            text = renderReferralLetter(r);
+        } catch (UncheckedIOException e) {
+            throw e.getCause(); // template file missing
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Malformed template " + e.getMessage(), e); // message starts with the file name
+        }
+        try (FileWriter writer = new FileWriter(filepath)) {
+            writer.write(text);
+        }
         System.out.println("Referral letter generated: " + filepath);
     }
 
+    // Text of a referral letter (layout: templates/referral_letter.txt)
+    public static String renderReferralLetter(Referral r) {
+        return DocumentTemplates.referralLetter().render(r);
+    }
+
 
     // Generates a readable prescription slip (Requirement: output text content)
 
     public static void generatePrescriptionSlip(Prescription p, String filepath) throws IOException {
-        FileWriter writer = new FileWriter(filepath);
-        writer.write("================================================\n");
-        writer.write("              NHS PRESCRIPTION SLIP             \n");
-        writer.write("================================================\n\n");
-        writer.write("Date Issued: " + p.getIssuedDate() + "\n");
-        writer.write("Prescription ID: " + p.getPrescriptionId() + "\n\n");
-        
-        writer.write("PATIENT ID: " + p.getPatientId() + "\n");
-        writer.write("PRESCRIBER: " + p.getClinicianId() + "\n\n");
-        
-        writer.write("------------------------------------------------\n");
-        writer.write("MEDICATION DETAILS\n");
-        writer.write("------------------------------------------------\n");
-        writer.write("Drug:    " + p.getMedication() + "\n");
-        writer.write("Dosage:  " + p.getDosage() + "\n");
-        writer.write("Status:  " + p.getStatus() + "\n\n");
-        
-        writer.write("------------------------------------------------\n");
-        writer.write("INSTRUCTIONS\n");
-        writer.write("------------------------------------------------\n");
-        writer.write("Take as directed by your healthcare provider.\n");
-        writer.write("Complete the full course of medication.\n\n");
-        
-        writer.write("================================================\n");
-        writer.write("        NHS Healthcare Management System        \n");
-        writer.write("================================================\n");
-        
-        writer.close();
+        String text;
+        try {
+            text = renderPrescriptionSlip(p);
+        } catch (UncheckedIOException e) {
+            throw e.getCause(); // template file missing
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Malformed template " + e.getMessage(), e); // message starts with the file name
+        }
+        try (FileWriter writer = new FileWriter(filepath)) {
+            writer.write(text);
+        }
         System.out.println("Prescription slip generated: " + filepath);
     }
 
+    // Text of a prescription slip (layout: templates/prescription_slip.txt)
+    public static String renderPrescriptionSlip(Prescription p) {
+        return DocumentTemplates.prescriptionSlip().render(p);
+    }
+
 
 
 }
@@ -0,0 +1,445 @@
+package controller;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * InMemoryRepository keeps the records in a list on the heap, in the order they were
+ * added or loaded: the behaviour the controllers always had.
+ *
+ * A hash index from ID to list position makes get(), update() and remove() O(1)
+ * instead of a scan of the list. Removing leaves a null in the list, and the list is
+ * compacted (and the indexes rebuilt) once more than half of it is removed records.
+ *
+ * Records are held by reference, so get() returns the stored object itself. IDs are
+ * expected to be unique, but a file holding the same ID twice keeps both records, as
+ * before: the index points at the first, which get() and update() use, and remove()
+ * falls back to a scan to take out every record with that ID.
+ *
+ * Secondary indexes (index()) map a field such as the patient ID to the ascending list
+ * positions of the records holding it, so findBy() costs the size of one bucket,
+ * findByAny() merges its buckets by position to keep the list order, and countBy() is
+ * the size of one bucket. Each index remembers the key it filed a record under, which
+ * is how update() moves a record whose field was changed on the object itself before
+ * it was passed back. The controllers pass every change to update(), so the buckets
+ * and their sizes always hold the current keys. A sorted index (indexSorted()) keeps
+ * its buckets in a TreeMap instead, so findRange() walks just the buckets in its range.
+ *
+ * @param <T> The model class stored
+ */
+public class InMemoryRepository<T> implements Repository<T> {
+
+    private static final int MIN_COMPACT = 64;
+
+    private final List<T> items = new ArrayList<>();
+    private final Map<String, Integer> positions = new HashMap<>();
+    private final Map<Function<? super T, String>, Index> indexes = new HashMap<>();
+    private final Function<? super T, String> idOf;
+    private final List<T> view = new LiveView();
+    private int removed;
+    private boolean duplicates;
+    private int layout; // changes whenever a position may hold a different record
+    private int seekLayout = -1;
+    private int seekIndex;
+    private int seekSlot;
+
+    /**
+     * @param idOf Reads a record's ID
+     */
+    public InMemoryRepository(Function<? super T, String> idOf) {
+        this.idOf = idOf;
+    }
+
+    @Override
+    public T get(String id) {
+        Integer position = positions.get(id);
+        return position != null ? items.get(position) : null;
+    }
+
+    @Override
+    public void add(T item) {
+        items.add(item);
+        layout++;
+        int position = items.size() - 1;
+        if (positions.putIfAbsent(idOf.apply(item), position) != null) {
+            duplicates = true;
+        }
+        for (Index index : indexes.values()) {
+            index.file(position, item);
+        }
+    }
+
+    @Override
+    public boolean update(T item) {
+        Integer position = positions.get(idOf.apply(item));
+        if (position == null) {
+            return false;
+        }
+        items.set(position, item);
+        for (Index index : indexes.values()) {
+            index.refile(position, item);
+        }
+        return true;
+    }
+
+    @Override
+    public boolean remove(String id) {
+        Integer position = positions.remove(id);
+        if (position == null) {
+            return false;
+        }
+        discard(position);
+        if (duplicates) {
+            for (int i = position + 1; i < items.size(); i++) {
+                T item = items.get(i);
+                if (item != null && idOf.apply(item).equals(id)) {
+                    discard(i);
+                }
+            }
+        }
+        if (removed >= MIN_COMPACT && removed * 2 > items.size()) {
+            compact();
+        }
+        return true;
+    }
+
+    @Override
+    public void load(Stream<? extends T> loaded) {
+        clear();
+        loaded.forEachOrdered(this::add);
+    }
+
+    @Override
+    public int size() {
+        return items.size() - removed;
+    }
+
+    @Override
+    public Stream<T> stream() {
+        return removed == 0 ? items.stream() : items.stream().filter(Objects::nonNull);
+    }
+
+    @Override
+    public void index(Function<? super T, String> key) {
+        index(key, false);
+    }
+
+    @Override
+    public void indexSorted(Function<? super T, String> key) {
+        index(key, true);
+    }
+
+    @Override
+    public List<T> findRange(Function<? super T, String> key, String from, String to) {
+        Index index = indexes.get(key);
+        return index != null && index.sorted ? index.findRange(from, to) : Repository.super.findRange(key, from, to);
+    }
+
+    @Override
+    public List<T> findBy(Function<? super T, String> key, String value) {
+        Index index = indexes.get(key);
+        return index != null ? index.find(value) : Repository.super.findBy(key, value);
+    }
+
+    @Override
+    public List<T> findByAny(Function<? super T, String> key, Collection<String> values) {
+        Index index = indexes.get(key);
+        return index != null ? index.findAny(values) : Repository.super.findByAny(key, values);
+    }
+
+    @Override
+    public int countBy(Function<? super T, String> key, String value) {
+        Index index = indexes.get(key);
+        return index != null ? index.count(value) : Repository.super.countBy(key, value);
+    }
+
+    @Override
+    public List<T> list() {
+        return removed == 0 ? new ArrayList<>(items) : stream().collect(Collectors.toCollection(ArrayList::new));
+    }
+
+    /**
+     * A read-only list over the list itself that skips removed records, so it follows
+     * later changes and never holds a null. Going through it in order, by iterator or
+     * by get(0), get(1) and so on, costs O(1) a record; see slotOf().
+     */
+    @Override
+    public List<T> view() {
+        return view;
+    }
+
+    /**
+     * A copy of one slice of the list, read from the live slots without compacting:
+     * O(limit) plus the removed records in the slice, and the skip to offset walks on
+     * from the last page read, so paging forward never rescans the list.
+     */
+    @Override
+    public List<T> page(int offset, int limit) {
+        if (offset < 0 || limit < 0) {
+            throw new IllegalArgumentException("Negative offset or limit: " + offset + ", " + limit);
+        }
+        int from = Math.min(offset, size());
+        int count = (int) Math.min((long) from + limit, size()) - from;
+        List<T> page = new ArrayList<>(count);
+        for (int slot = count > 0 ? slotOf(from) : 0; page.size() < count; slot++) {
+            T item = items.get(slot);
+            if (item != null) {
+                page.add(item);
+            }
+        }
+        return page;
+    }
+
+    // List position of the record at a live index (0 <= index < size()). With removed
+    // records in the list this walks, from the last position found when that is at or
+    // before the index and nothing was added or removed since, or else from the start
+    private int slotOf(int index) {
+        if (removed == 0) {
+            return index;
+        }
+        int at = 0;
+        int slot = 0;
+        if (seekLayout == layout && seekIndex <= index) {
+            at = seekIndex;
+            slot = seekSlot;
+        }
+        while (true) {
+            while (items.get(slot) == null) {
+                slot++;
+            }
+            if (at == index) {
+                break;
+            }
+            at++;
+            slot++;
+        }
+        seekLayout = layout;
+        seekIndex = index;
+        seekSlot = slot;
+        return slot;
+    }
+
+    // A sorted index answers everything a hash index does, so it replaces one on the same key
+    private void index(Function<? super T, String> key, boolean sorted) {
+        Index existing = indexes.get(key);
+        if (existing == null || sorted && !existing.sorted) {
+            Index index = new Index(key, sorted);
+            for (int i = 0; i < items.size(); i++) {
+                index.file(i, items.get(i));
+            }
+            indexes.put(key, index);
+        }
+    }
+
+    // Drop the removed records' nulls and renumber the indexes
+    private void compact() {
+        List<T> live = stream().collect(Collectors.toList());
+        clear();
+        live.forEach(this::add);
+    }
+
+    private void clear() {
+        items.clear();
+        positions.clear();
+        layout++;
+        removed = 0;
+        duplicates = false;
+        for (Index index : indexes.values()) {
+            index.clear();
+        }
+    }
+
+    private void discard(int position) {
+        items.set(position, null);
+        removed++;
+        layout++;
+        for (Index index : indexes.values()) {
+            index.unfile(position);
+        }
+    }
+
+    // The records of the list without its gaps; AbstractList iterates through get()
+    private final class LiveView extends AbstractList<T> {
+        @Override
+        public T get(int index) {
+            return items.get(slotOf(Objects.checkIndex(index, size())));
+        }
+
+        @Override
+        public int size() {
+            return InMemoryRepository.this.size();
+        }
+    }
+
+    // Secondary index on one field: key value -> positions of the records holding it.
+    // A sorted index keeps the values in a TreeMap and leaves out records whose value is null.
+    private final class Index {
+        private final Function<? super T, String> key;
+        private final boolean sorted;
+        private final List<String> filedUnder = new ArrayList<>(); // per position; null once removed
+        private final Map<String, Positions> buckets;
+
+        Index(Function<? super T, String> key, boolean sorted) {
+            this.key = key;
+            this.sorted = sorted;
+            this.buckets = sorted ? new TreeMap<>() : new HashMap<>();
+        }
+
+        void file(int position, T item) {
+            String value = item != null ? key.apply(item) : null;
+            filedUnder.add(value);
+            if (item != null) {
+                put(value, position);
+            }
+        }
+
+        void refile(int position, T item) {
+            String old = filedUnder.get(position);
+            String value = key.apply(item);
+            if (!Objects.equals(old, value)) {
+                take(old, position);
+                put(value, position);
+                filedUnder.set(position, value);
+            }
+        }
+
+        void unfile(int position) {
+            take(filedUnder.get(position), position);
+            filedUnder.set(position, null);
+        }
+
+        // Every value from one up to the other, each bucket in list order
+        List<T> findRange(String from, String to) {
+            List<T> found = new ArrayList<>();
+            if (from.compareTo(to) >= 0) {
+                return found;
+            }
+            for (Positions bucket : ((NavigableMap<String, Positions>) buckets).subMap(from, true, to, false).values()) {
+                for (int i = 0; i < bucket.size; i++) {
+                    found.add(items.get(bucket.values[i]));
+                }
+            }
+            return found;
+        }
+
+        // A record changed without update() is skipped rather than returned under a stale key
+        List<T> find(String value) {
+            Positions bucket = bucket(value);
+            if (bucket == null) {
+                return new ArrayList<>();
+            }
+            List<T> found = new ArrayList<>(bucket.size);
+            for (int i = 0; i < bucket.size; i++) {
+                T item = items.get(bucket.values[i]);
+                if (Objects.equals(key.apply(item), value)) {
+                    found.add(item);
+                }
+            }
+            return found;
+        }
+
+        // Every bucket's positions are ascending, so taking the lowest head each time
+        // gives list order; there are only ever a few values
+        List<T> findAny(Collection<String> values) {
+            List<String> keys = new ArrayList<>();
+            List<Positions> found = new ArrayList<>();
+            int total = 0;
+            for (String value : new LinkedHashSet<>(values)) {
+                Positions bucket = bucket(value);
+                if (bucket != null) {
+                    keys.add(value);
+                    found.add(bucket);
+                    total += bucket.size;
+                }
+            }
+            List<T> result = new ArrayList<>(total);
+            int[] next = new int[found.size()];
+            while (true) {
+                int lowest = -1;
+                for (int b = 0; b < next.length; b++) {
+                    if (next[b] < found.get(b).size && (lowest < 0
+                            || found.get(b).values[next[b]] < found.get(lowest).values[next[lowest]])) {
+                        lowest = b;
+                    }
+                }
+                if (lowest < 0) {
+                    return result;
+                }
+                T item = items.get(found.get(lowest).values[next[lowest]++]);
+                if (Objects.equals(key.apply(item), keys.get(lowest))) {
+                    result.add(item);
+                }
+            }
+        }
+
+        int count(String value) {
+            Positions bucket = bucket(value);
+            return bucket != null ? bucket.size : 0;
+        }
+
+        void clear() {
+            filedUnder.clear();
+            buckets.clear();
+        }
+
+        private void put(String value, int position) {
+            if (value != null || !sorted) {
+                buckets.computeIfAbsent(value, v -> new Positions()).add(position);
+            }
+        }
+
+        private Positions bucket(String value) {
+            return value != null || !sorted ? buckets.get(value) : null;
+        }
+
+        private void take(String value, int position) {
+            Positions bucket = bucket(value);
+            if (bucket != null && bucket.remove(position) && bucket.size == 0) {
+                buckets.remove(value);
+            }
+        }
+    }
+
+    // Ascending list positions; appends are the common case, so they cost O(1)
+    private static final class Positions {
+        int[] values = new int[2];
+        int size;
+
+        void add(int position) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            int at = size == 0 || values[size - 1] < position ? size : insertionPoint(position);
+            System.arraycopy(values, at, values, at + 1, size - at);
+            values[at] = position;
+            size++;
+        }
+
+        boolean remove(int position) {
+            int at = Arrays.binarySearch(values, 0, size, position);
+            if (at < 0) {
+                return false;
+            }
+            System.arraycopy(values, at + 1, values, at, size - at - 1);
+            size--;
+            return true;
+        }
+
+        private int insertionPoint(int position) {
+            int at = Arrays.binarySearch(values, 0, size, position);
+            return at < 0 ? -at - 1 : at;
+        }
+    }
+}
@@ -0,0 +1,422 @@
+package controller;
+
+import model.*;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.Supplier;
+
+/**
+ * JournalCompactor folds the mutation journal into the CSV files, so the journal stays
+ * short and the files stay the primary copy of the data.
+ *
+ * A compaction takes the data to save on the thread that owns the controllers (the EDT)
+ * and rotates the journal at that same moment. Everything else happens on background
+ * threads: the files whose ChangeTracker is dirty are written in parallel, then the
+ * snapshot is refreshed and the journal segments now contained in the files are
+ * deleted. It runs every interval, and on demand for Save All (saveAsync()), which
+ * reports how each file went without blocking the EDT.
+ *
+ * For records on the heap the data taken is each record's stored columns
+ * (SnapshotStore.columns()), copied on the EDT, so the writers never read an object the
+ * EDT may be changing; they bind the columns back into new records to write them. A
+ * disk repository hands out new objects on every read, so it is streamed from its file
+ * during the write (Repository.toSave()) instead of being copied. A record changed on
+ * the EDT after the capture may then be written before or after the change, but the
+ * change has a newer version than the one taken and is in the journal segment after the
+ * rotation, so it stays dirty (and journaled) until the next save writes it. Segments
+ * are only deleted up to the rotation, once every file written from the capture is on
+ * disk, so each change they hold is in a file.
+ *
+ * The snapshot section of a data set is encoded from the same capture as its file and
+ * kept with the set's version, so a later compaction only encodes the sets that changed
+ * since and reuses the other sections.
+ *
+ * Once its file is written, a disk repository is committed with the file's new size and
+ * time, so the next start reopens it instead of loading the file again.
+ *
+ * Saves are written one after another, in the order they were taken, so an older copy
+ * never overwrites a newer one.
+ *
+ * Only the data sets it is given are written. A set that failed to load is left out, so
+ * its file is never replaced by an empty collection; the journal may still hold changes
+ * to it, so then the journal segments and the snapshot are kept as they are.
+ */
+public class JournalCompactor implements Closeable {
+
+    public static final long DEFAULT_INTERVAL_MILLIS = 60_000;
+
+    private static final DataLoadOrchestrator.DataSet[] SETS = DataLoadOrchestrator.DataSet.values();
+
+    private final String pathPrefix;
+    private final MutationJournal journal;
+    private final Executor applyOn;
+    private final DataFileWatcher watcher;
+    private final boolean[] managed = new boolean[SETS.length];
+    private final boolean complete;
+    private final ChangeTracker[] trackers = new ChangeTracker[SETS.length];
+    private final List<Supplier<Iterable<?>>> sources = new ArrayList<>();
+    private final Repository<?>[] repositories = new Repository<?>[SETS.length];
+    // The snapshot holds every record on the heap, so it is only kept up when they all are
+    private final boolean snapshot;
+    private final ScheduledExecutorService scheduler;
+    private final ExecutorService writers;
+
+    // Encoded snapshot sections and the version each was taken at (writer threads only,
+    // one save after another); the versions are read on the applyOn thread too
+    private final byte[][] sections = new byte[SETS.length][];
+    private final AtomicLongArray sectionVersions = new AtomicLongArray(SETS.length);
+
+    // The save taken last; the next one starts when it is done (applyOn thread only)
+    private CompletableFuture<?> lastSave = CompletableFuture.completedFuture(null);
+
+    /**
+     * The data to write, taken in one go on the applyOn thread.
+     */
+    private static final class Capture {
+        final long[] versions = new long[SETS.length];
+        final boolean[] dirty = new boolean[SETS.length];
+        // Heap sets: the columns of every record, copied on the applyOn thread
+        final String[][][] columns = new String[SETS.length][][];
+        // Disk sets: the repository's own stream, read during the write
+        final Iterable<?>[] rows = new Iterable<?>[SETS.length];
+        CompletableFuture<Integer> segment;
+    }
+
+    /**
+     * How writing one file went.
+     */
+    public static final class FileResult {
+        private final DataLoadOrchestrator.DataSet dataSet;
+        private final int rows;
+        private final long millis;
+        private final Throwable error;
+
+        FileResult(DataLoadOrchestrator.DataSet dataSet, int rows, long millis, Throwable error) {
+            this.dataSet = dataSet;
+            this.rows = rows;
+            this.millis = millis;
+            this.error = error;
+        }
+
+        public DataLoadOrchestrator.DataSet getDataSet() {
+            return dataSet;
+        }
+
+        public int getRows() {
+            return rows;
+        }
+
+        /**
+         * @return Time spent writing the file, in milliseconds
+         */
+        public long getMillis() {
+            return millis;
+        }
+
+        /**
+         * @return Why the file could not be written, or null if it was
+         */
+        public Throwable getError() {
+            return error;
+        }
+
+        public boolean isSaved() {
+            return error == null;
+        }
+    }
+
+    /**
+     * @param pathPrefix Data directory
+     * @param journal The journal to fold in, or null to only save changed files
+     * @param applyOn Executor of the thread that changes the controllers (e.g. the EDT)
+     * @param watcher Data file watcher to pause while writing, or null
+     * @param sets The data sets to write: those that loaded
+     */
+    public JournalCompactor(String pathPrefix, MutationJournal journal, Executor applyOn, DataFileWatcher watcher,
+                            Set<DataLoadOrchestrator.DataSet> sets,
+                            PatientController patientController,
+                            ClinicianController clinicianController,
+                            AppointmentController appointmentController,
+                            PrescriptionController prescriptionController,
+                            ReferralController referralController,
+                            StaffController staffController,
+                            FacilityController facilityController) {
+        this.pathPrefix = pathPrefix;
+        this.journal = journal;
+        this.applyOn = applyOn;
+        this.watcher = watcher;
+        for (DataLoadOrchestrator.DataSet set : sets) {
+            managed[set.ordinal()] = true;
+        }
+        this.complete = sets.size() == SETS.length;
+        this.snapshot = complete && Repositories.isAllInMemory();
+
+        // Same order as DataLoadOrchestrator.DataSet
+        trackers[0] = patientController.getChangeTracker();
+        trackers[1] = clinicianController.getChangeTracker();
+        trackers[2] = appointmentController.getChangeTracker();
+        trackers[3] = prescriptionController.getChangeTracker();
+        trackers[4] = referralController.getChangeTracker();
+        trackers[5] = staffController.getChangeTracker();
+        trackers[6] = facilityController.getChangeTracker();
+        sources.add(patientController::getPatientsToSave);
+        sources.add(clinicianController::getCliniciansToSave);
+        sources.add(appointmentController::getAppointmentsToSave);
+        sources.add(prescriptionController::getPrescriptionsToSave);
+        sources.add(referralController::getReferralsToSave);
+        sources.add(staffController::getStaffToSave);
+        sources.add(facilityController::getFacilitiesToSave);
+        repositories[0] = patientController.getRepository();
+        repositories[1] = clinicianController.getRepository();
+        repositories[2] = appointmentController.getRepository();
+        repositories[3] = prescriptionController.getRepository();
+        repositories[4] = referralController.getRepository();
+        repositories[5] = staffController.getRepository();
+        repositories[6] = facilityController.getRepository();
+        for (int i = 0; i < SETS.length; i++) {
+            sectionVersions.set(i, -1);
+        }
+
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "journal-compactor");
+            t.setDaemon(true);
+            return t;
+        });
+        AtomicInteger counter = new AtomicInteger();
+        this.writers = Executors.newFixedThreadPool(SETS.length, r -> {
+            Thread t = new Thread(r, "data-saver-" + counter.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * Compact in the background whenever there is something to fold in.
+     *
+     * @param intervalMillis Time between checks
+     */
+    public void start(long intervalMillis) {
+        scheduler.scheduleWithFixedDelay(this::compactInBackground, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Save now: take the data, then write every changed file in parallel in the
+     * background and fold the journal in. Must be called on the applyOn thread,
+     * and returns as soon as the data is taken.
+     *
+     * @return A future with one result per file written (empty if nothing had changed).
+     *         Files that failed keep their changes pending for the next save.
+     */
+    public CompletableFuture<List<FileResult>> saveAsync() {
+        Capture capture = capture();
+        CompletableFuture<List<FileResult>> save = lastSave
+                .handle((ignored, error) -> null)
+                .thenComposeAsync(ignored -> write(capture), writers);
+        lastSave = save;
+        return save;
+    }
+
+    @Override
+    public void close() {
+        scheduler.shutdownNow();
+        writers.shutdown();
+    }
+
+    private void compactInBackground() {
+        if (!needsCompaction()) {
+            return;
+        }
+        try {
+            List<FileResult> results = CompletableFuture.supplyAsync(this::saveAsync, applyOn)
+                    .thenCompose(save -> save)
+                    .get();
+            for (FileResult result : results) {
+                if (!result.isSaved()) {
+                    System.err.println("Journal compaction could not write " + result.getDataSet()
+                            + ", will retry: " + result.getError().getMessage());
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            System.err.println("Journal compaction failed, will retry: " + e.getCause().getMessage());
+        }
+    }
+
+    private boolean needsCompaction() {
+        // Without every set the journal is never emptied, so only changed files count
+        if (complete && journal != null && journal.isUncompacted()) {
+            return true;
+        }
+        for (int i = 0; i < SETS.length; i++) {
+            if (managed[i] && trackers[i].isDirty()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Runs on the applyOn thread, so no change can slip in between taking the data and the rotation
+    private Capture capture() {
+        Capture capture = new Capture();
+        for (int i = 0; i < SETS.length; i++) {
+            if (managed[i]) {
+                capture.versions[i] = trackers[i].getVersion();
+                capture.dirty[i] = trackers[i].isDirty();
+                boolean encodes = snapshot && sectionVersions.get(i) != capture.versions[i];
+                if (!capture.dirty[i] && !encodes) {
+                    continue;
+                }
+                if (Repositories.isInMemory(SETS[i])) {
+                    capture.columns[i] = columns(SETS[i], repositories[i].view());
+                } else {
+                    capture.rows[i] = sources.get(i).get();
+                }
+            }
+        }
+        if (journal != null && complete) {
+            capture.segment = journal.rotate();
+        }
+        return capture;
+    }
+
+    // Runs on a writer thread, after the previous save finished
+    private CompletableFuture<List<FileResult>> write(Capture capture) {
+        // Our own writes must not come back in as external changes
+        if (watcher != null) {
+            watcher.beginSave();
+        }
+        List<CompletableFuture<FileResult>> files = new ArrayList<>();
+        for (int i = 0; i < SETS.length; i++) {
+            if (capture.dirty[i]) {
+                int set = i;
+                files.add(CompletableFuture.supplyAsync(() -> writeFile(capture, set), writers));
+            }
+        }
+        return CompletableFuture.allOf(files.toArray(new CompletableFuture<?>[0]))
+                .thenApplyAsync(ignored -> {
+                    List<FileResult> results = new ArrayList<>();
+                    Set<DataLoadOrchestrator.DataSet> written = EnumSet.noneOf(DataLoadOrchestrator.DataSet.class);
+                    for (CompletableFuture<FileResult> file : files) {
+                        FileResult result = file.join();
+                        results.add(result);
+                        written.add(result.getDataSet());
+                    }
+                    try {
+                        finish(capture, results);
+                    } finally {
+                        if (watcher != null) {
+                            watcher.endSave(written);
+                        }
+                    }
+                    return results;
+                }, writers);
+    }
+
+    private FileResult writeFile(Capture capture, int set) {
+        long start = System.nanoTime();
+        try {
+            long rows = writeFile(SETS[set], capture.columns[set] != null
+                    ? records(SETS[set], capture.columns[set]) : capture.rows[set]);
+            trackers[set].markSaved(capture.versions[set]);
+            // A disk repository now matches the new file, so the next start can reopen it
+            File file = new File(pathPrefix + SETS[set].getFileName());
+            repositories[set].commit(file.length(), file.lastModified());
+            return new FileResult(SETS[set], (int) rows, (System.nanoTime() - start) / 1_000_000, null);
+        } catch (IOException | RuntimeException e) {
+            System.err.println("Could not write " + SETS[set].getFileName() + ": " + e.getMessage());
+            return new FileResult(SETS[set], 0, (System.nanoTime() - start) / 1_000_000, e);
+        }
+    }
+
+    // Once every file is on disk: refresh the snapshot and drop the journal segments
+    private void finish(Capture capture, List<FileResult> results) {
+        for (FileResult result : results) {
+            if (!result.isSaved()) {
+                return; // its changes are only in the journal, keep it
+            }
+        }
+        if (snapshot) {
+            writeSnapshot(capture);
+        }
+        if (capture.segment != null) {
+            try {
+                journal.deleteSegmentsBefore(capture.segment.get());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (ExecutionException e) {
+                System.err.println("Journal rotation failed, keeping its segments: " + e.getCause().getMessage());
+            }
+        }
+    }
+
+    // Returns the number of rows written
+    @SuppressWarnings("unchecked")
+    private long writeFile(DataLoadOrchestrator.DataSet set, Iterable<?> rows) throws IOException {
+        String path = pathPrefix + set.getFileName();
+        switch (set) {
+            case PATIENTS:
+                return FileWriterUtil.writePatientsToFile((Iterable<Patient>) rows, path);
+            case CLINICIANS:
+                return FileWriterUtil.writeCliniciansToFile((Iterable<Clinician>) rows, path);
+            case APPOINTMENTS:
+                return FileWriterUtil.writeAppointmentsToFile((Iterable<Appointment>) rows, path);
+            case PRESCRIPTIONS:
+                return FileWriterUtil.writePrescriptionsToFile((Iterable<Prescription>) rows, path);
+            case REFERRALS:
+                return FileWriterUtil.writeReferralsToFile((Iterable<Referral>) rows, path);
+            case STAFF:
+                return FileWriterUtil.writeStaffToFile((Iterable<Staff>) rows, path);
+            case FACILITIES:
+                return FileWriterUtil.writeFacilitiesToFile((Iterable<Facility>) rows, path);
+            default:
+                throw new IllegalStateException("Unknown data set: " + set);
+        }
+    }
+
+    // Refresh the binary snapshot so the next start can skip CSV parsing, encoding only
+    // the sets captured. Only called when every set is on the heap.
+    private void writeSnapshot(Capture capture) {
+        boolean changed = false;
+        for (int i = 0; i < SETS.length; i++) {
+            if (capture.columns[i] != null) {
+                sections[i] = SnapshotStore.encodeColumns(capture.columns[i]);
+                changed = true;
+            }
+        }
+        if (!changed) {
+            return; // the snapshot already holds every section as it is
+        }
+        try {
+            new SnapshotStore(pathPrefix).writeCurrent(sections);
+            // Only now: after a failure the next compaction captures the sets again
+            for (int i = 0; i < SETS.length; i++) {
+                if (capture.columns[i] != null) {
+                    sectionVersions.set(i, capture.versions[i]);
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("Could not write snapshot: " + e.getMessage());
+        }
+    }
+
+    // Each record's stored columns, a copy no other thread changes
+    private static String[][] columns(DataLoadOrchestrator.DataSet set, List<?> records) {
+        String[][] columns = new String[records.size()][];
+        int i = 0;
+        for (Object record : records) {
+            columns[i++] = SnapshotStore.columns(set, record);
+        }
+        return columns;
+    }
+
+    // New records bound from the columns as the writer gets to them
+    private static Iterable<?> records(DataLoadOrchestrator.DataSet set, String[][] columns) {
+        return () -> Arrays.stream(columns).map(fields -> SnapshotStore.bind(set, fields)).iterator();
+    }
+}
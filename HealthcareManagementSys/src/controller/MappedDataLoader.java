@@ -0,0 +1,244 @@
+package controller;
+
+import model.*;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * MappedDataLoader is the large-file mode of DataLoader for appointments and prescriptions.
+ *
+ * The file is memory-mapped, cut into newline-aligned chunks, and the chunks are parsed
+ * in parallel with fork/join. Results are merged back in file order, and each row goes
+ * through the same compiled CsvSchemas mapping as the BufferedReader path, so both modes
+ * return identical objects.
+ *
+ * Like DataLoader, records are line based (no newlines inside quoted fields), and a
+ * line ends at "\n", "\r\n" or a bare "\r", as BufferedReader.readLine() has it.
+ */
+public class MappedDataLoader {
+
+    // Files smaller than this are not worth splitting; DataLoadOrchestrator uses it too
+    public static final long PARALLEL_THRESHOLD = 32L << 20;
+
+    private static final long MIN_CHUNK = 1L << 20;
+    private static final long MAX_CHUNK = 64L << 20;
+    private static final int SCAN_WINDOW = 8192;
+
+    private static final Charset CHARSET = DataLoader.CHARSET;
+
+    private final ForkJoinPool pool;
+    private final SymbolTable symbols;
+
+    public MappedDataLoader() {
+        this(ForkJoinPool.commonPool(), new SymbolTable());
+    }
+
+    /**
+     * @param pool Fork/join pool that parses the chunks
+     * @param symbols Dictionary shared by all chunks (and any other loader in the same load)
+     */
+    public MappedDataLoader(ForkJoinPool pool, SymbolTable symbols) {
+        this.pool = pool;
+        this.symbols = symbols;
+    }
+
+    // Load Appointments from CSV (parallel, memory-mapped)
+    public List<Appointment> loadAppointments(String filepath) throws IOException {
+        List<Appointment> appointments = load(filepath, CsvSchemas.APPOINTMENTS);
+        System.out.println("Loaded " + appointments.size() + " appointments");
+        return appointments;
+    }
+
+    // Load Prescriptions from CSV (parallel, memory-mapped)
+    public List<Prescription> loadPrescriptions(String filepath) throws IOException {
+        List<Prescription> prescriptions = load(filepath, CsvSchemas.PRESCRIPTIONS);
+        System.out.println("Loaded " + prescriptions.size() + " prescriptions");
+        return prescriptions;
+    }
+
+    private <T> List<T> load(String filepath, CsvSchema<T> schema) throws IOException {
+        try (FileChannel channel = FileChannel.open(Path.of(filepath), StandardOpenOption.READ)) {
+            long[] bounds = chunkBounds(channel);
+            int chunks = bounds.length - 1;
+            CsvSchema<T>.Compiled parser = schema.compile(readHeader(channel, bounds[0]));
+
+            List<List<T>> results = new ArrayList<>(Collections.nCopies(chunks, null));
+            try {
+                pool.invoke(new ParseTask<>(channel, bounds, results, 0, chunks, parser, symbols));
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+
+            // Merge in file order
+            int total = 0;
+            for (List<T> part : results) {
+                total += part.size();
+            }
+            List<T> merged = new ArrayList<>(total);
+            for (List<T> part : results) {
+                merged.addAll(part);
+            }
+            return merged;
+        }
+    }
+
+    private static String readHeader(FileChannel channel, long headerEnd) throws IOException {
+        if (headerEnd == 0) {
+            return null;
+        }
+        ByteBuffer header = ByteBuffer.allocate((int) headerEnd);
+        while (header.hasRemaining() && channel.read(header, header.position()) > 0) {
+            // keep reading until the whole header line is in
+        }
+        int len = header.position();
+        while (len > 0 && (header.get(len - 1) == '\n' || header.get(len - 1) == '\r')) {
+            len--;
+        }
+        return new String(header.array(), 0, len, CHARSET);
+    }
+
+    // Chunk start offsets plus the file size; the header line is never part of a chunk
+    private long[] chunkBounds(FileChannel channel) throws IOException {
+        long size = channel.size();
+        long start = nextLineStart(channel, 0, size);
+
+        long chunkSize = (size - start) / (pool.getParallelism() * 4L);
+        chunkSize = Math.max(MIN_CHUNK, Math.min(MAX_CHUNK, chunkSize));
+
+        List<Long> bounds = new ArrayList<>();
+        bounds.add(start);
+        long pos = start;
+        while (pos < size) {
+            long next = pos + chunkSize;
+            pos = next >= size ? size : nextLineStart(channel, next, size);
+            bounds.add(pos);
+        }
+
+        long[] result = new long[bounds.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = bounds.get(i);
+        }
+        return result;
+    }
+
+    // Offset just after the first line break at or after pos (or the file size if there is
+    // none). A "\r\n" is never split, so no chunk starts with the '\n' of one.
+    private static long nextLineStart(FileChannel channel, long pos, long size) throws IOException {
+        ByteBuffer window = ByteBuffer.allocate(SCAN_WINDOW);
+        while (pos < size) {
+            window.clear();
+            int read = channel.read(window, pos);
+            if (read <= 0) {
+                break;
+            }
+            for (int i = 0; i < read; i++) {
+                byte b = window.get(i);
+                if (b == '\n') {
+                    return pos + i + 1;
+                }
+                if (b == '\r') {
+                    long next = pos + i + 1;
+                    return next < size && byteAt(channel, next, window, pos, read) == '\n' ? next + 1 : next;
+                }
+            }
+            pos += read;
+        }
+        return size;
+    }
+
+    // The byte at an offset, from the window if it holds it
+    private static byte byteAt(FileChannel channel, long offset, ByteBuffer window, long windowStart, int windowLength)
+            throws IOException {
+        if (offset < windowStart + windowLength) {
+            return window.get((int) (offset - windowStart));
+        }
+        ByteBuffer one = ByteBuffer.allocate(1);
+        return channel.read(one, offset) == 1 ? one.get(0) : -1;
+    }
+
+    // Splits the chunk range in half until one chunk is left, then parses it
+    private static class ParseTask<T> extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final FileChannel channel;
+        private final long[] bounds;
+        private final List<List<T>> results;
+        private final int from;
+        private final int to;
+        private final CsvSchema<T>.Compiled parser;
+        private final SymbolTable symbols;
+
+        ParseTask(FileChannel channel, long[] bounds, List<List<T>> results, int from, int to,
+                  CsvSchema<T>.Compiled parser, SymbolTable symbols) {
+            this.channel = channel;
+            this.bounds = bounds;
+            this.results = results;
+            this.from = from;
+            this.to = to;
+            this.parser = parser;
+            this.symbols = symbols;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > 1) {
+                int mid = (from + to) >>> 1;
+                invokeAll(new ParseTask<>(channel, bounds, results, from, mid, parser, symbols),
+                          new ParseTask<>(channel, bounds, results, mid, to, parser, symbols));
+                return;
+            }
+            if (to > from) {
+                try {
+                    results.set(from, parseChunk(bounds[from], bounds[from + 1])); // each task its own index
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+        }
+
+        private List<T> parseChunk(long start, long end) throws IOException {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, start, end - start);
+            int limit = buffer.limit();
+            CsvTokenizer csv = new CsvTokenizer();
+            CsvSchema<T>.Compiled rowParser = parser.copy(); // own slot buffer per chunk
+            List<T> rows = new ArrayList<>();
+            byte[] bytes = new byte[256];
+
+            // Chunks start at a line start and end after a line break (or at the end of the
+            // file), so every line, the last one without a break included, is whole here
+            int lineStart = 0;
+            for (int i = 0; i <= limit; i++) {
+                byte b = i < limit ? buffer.get(i) : (byte) '\n';
+                if (b != '\n' && b != '\r') {
+                    continue;
+                }
+                if (i == limit && i == lineStart) {
+                    break; // nothing after the last line break
+                }
+                int len = i - lineStart;
+                if (len > bytes.length) {
+                    bytes = new byte[Math.max(len, bytes.length * 2)];
+                }
+                buffer.get(lineStart, bytes, 0, len);
+                T row = rowParser.parse(csv, symbols, new String(bytes, 0, len, CHARSET));
+                if (row != null) {
+                    rows.add(row);
+                }
+                if (b == '\r' && i + 1 < limit && buffer.get(i + 1) == '\n') {
+                    i++;
+                }
+                lineStart = i + 1;
+            }
+            return rows;
+        }
+    }
+}
@@ -0,0 +1,576 @@
+package controller;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.zip.CRC32C;
+
+/**
+ * MutationJournal is a write-ahead log of every change made to the controllers, so
+ * nothing entered since the last save is lost if the application dies.
+ *
+ * Each add/update appends the record's stored columns (a PUT), each delete its ID
+ * (a DELETE). Records are encoded on the thread that made the change and handed to
+ * one writer thread, which group-commits them: everything that arrives within
+ * syncMillis of the first pending record (up to syncBatch records) is written and
+ * made durable with a single fsync. A crash loses at most that window.
+ *
+ * The journal is split into numbered segment files (dataset.journal.1, .2, ...), a new
+ * one per run and per compaction. On startup DataLoadOrchestrator replays all of them,
+ * oldest first, on top of the snapshot or CSV files; JournalCompactor folds them into the
+ * CSV files and deletes them. Replay is idempotent: a PUT or DELETE sets a record to its
+ * state at that point, so replaying a segment that was already folded in changes nothing.
+ *
+ * Segment layout (big-endian): magic, version, then per record
+ *   int body length, int CRC32C of the body, body:
+ *   byte op, byte data set, then PUT: short field count + fields, DELETE: the ID
+ *   (strings are an int byte length, -1 for null, then UTF-8 bytes)
+ * A record that is cut short or fails its checksum ends the segment (torn write).
+ */
+public class MutationJournal implements Closeable {
+
+    public static final String FILE_PREFIX = "dataset.journal.";
+
+    public static final int DEFAULT_SYNC_BATCH = 256;
+    public static final long DEFAULT_SYNC_MILLIS = 20;
+
+    private static final int MAGIC = 0x4E48534A; // "NHSJ"
+    private static final int VERSION = 1;
+    private static final byte PUT = 1;
+    private static final byte DELETE = 2;
+    private static final int MAX_RECORD = 16 * 1024 * 1024;
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    // Queue entries without a record tell the writer thread to do something else
+    private enum Control { SYNC, ROTATE, STOP }
+
+    private static final class Entry {
+        final byte[] record;
+        final Control control;
+        final CompletableFuture<Integer> done;
+
+        Entry(byte[] record, Control control, CompletableFuture<Integer> done) {
+            this.record = record;
+            this.control = control;
+            this.done = done;
+        }
+    }
+
+    private final String pathPrefix;
+    private final int syncBatch;
+    private final long syncMillis;
+    private final BlockingQueue<Entry> queue = new LinkedBlockingQueue<>();
+    private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+    private final Thread writer;
+
+    // Only touched by the writer thread
+    private FileChannel channel;
+    private int segment;
+
+    // Records appended since the last rotate(), plus segments left over from earlier runs
+    private volatile boolean uncompacted;
+    private volatile boolean closed;
+    // Last failed write since the last rotate(): those changes are only in the controllers
+    private volatile Exception writeFailure;
+
+    private MutationJournal(String pathPrefix, int syncBatch, long syncMillis, int segment, boolean older) throws IOException {
+        this.pathPrefix = pathPrefix;
+        this.syncBatch = Math.max(1, syncBatch);
+        this.syncMillis = Math.max(0, syncMillis);
+        this.segment = segment;
+        this.uncompacted = older;
+        this.channel = createSegment(segment);
+        this.writer = new Thread(this::writeLoop, "journal-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * Start a new journal segment after the ones already on disk. Replay those first
+     * (DataLoadOrchestrator does), as they stay in place until the next compaction.
+     *
+     * @param pathPrefix Data directory
+     * @param syncBatch Most records made durable by one fsync
+     * @param syncMillis How long the first pending record waits for others to share its fsync
+     * @return The open journal
+     * @throws IOException If the segment file cannot be created
+     */
+    public static MutationJournal open(String pathPrefix, int syncBatch, long syncMillis) throws IOException {
+        List<Integer> existing = segments(pathPrefix);
+        int next = existing.isEmpty() ? 1 : existing.get(existing.size() - 1) + 1;
+        return new MutationJournal(pathPrefix, syncBatch, syncMillis, next, !existing.isEmpty());
+    }
+
+    /**
+     * Journal every change recorded by the tracker from now on.
+     *
+     * @param set Data set the tracker belongs to
+     * @param tracker The controller's change tracker
+     */
+    public void attach(DataLoadOrchestrator.DataSet set, ChangeTracker tracker) {
+        tracker.setListener((id, row) -> append(set, id, row));
+    }
+
+    /**
+     * Queue one change. Returns straight away; the record is durable once the
+     * writer thread's next fsync is done (see sync()).
+     *
+     * @param set Data set of the record
+     * @param id ID of the record
+     * @param row The record after the change, or null if it was deleted
+     */
+    public void append(DataLoadOrchestrator.DataSet set, String id, Object row) {
+        if (closed) {
+            System.err.println("Journal closed, change to " + set + " " + id + " not journaled");
+            return;
+        }
+        uncompacted = true;
+        queue.add(new Entry(encode(set, id, row), null, null));
+    }
+
+    /**
+     * @return A future that completes once everything appended so far is on disk
+     */
+    public CompletableFuture<Integer> sync() {
+        return control(Control.SYNC);
+    }
+
+    /**
+     * @return true if there are journaled changes a compaction has not folded in yet
+     */
+    public boolean isUncompacted() {
+        return uncompacted;
+    }
+
+    /**
+     * @return Why the last journal write failed, or null if none has since the last
+     *         compaction. Changes in a failed write are only safe once saved to the files.
+     */
+    public Exception getWriteFailure() {
+        return writeFailure;
+    }
+
+    /**
+     * Close the current segment once everything appended so far is on disk, and send
+     * later changes to a new one. Call it at the moment the data to be folded into the
+     * CSV files is copied, so the older segments hold nothing beyond that copy.
+     *
+     * @return A future with the number of the new segment
+     */
+    CompletableFuture<Integer> rotate() {
+        uncompacted = false;
+        writeFailure = null;
+        return control(Control.ROTATE);
+    }
+
+    /**
+     * Delete the segments folded into the CSV files.
+     *
+     * @param segment First segment to keep (as returned by rotate())
+     */
+    void deleteSegmentsBefore(int segment) {
+        for (int number : segments(pathPrefix)) {
+            if (number >= segment) {
+                break;
+            }
+            try {
+                Files.deleteIfExists(segmentPath(pathPrefix, number));
+            } catch (IOException e) {
+                uncompacted = true;
+                System.err.println("Could not delete journal segment " + number + ": " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Write out and fsync what is queued, then stop the writer thread.
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        CompletableFuture<Integer> stopped = new CompletableFuture<>();
+        queue.add(new Entry(null, Control.STOP, stopped));
+        try {
+            stopped.get(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException | TimeoutException e) {
+            throw new IOException("Journal did not close cleanly", e);
+        }
+    }
+
+    private CompletableFuture<Integer> control(Control control) {
+        CompletableFuture<Integer> done = new CompletableFuture<>();
+        if (closed) {
+            done.completeExceptionally(new IOException("Journal closed"));
+        } else {
+            queue.add(new Entry(null, control, done));
+        }
+        return done;
+    }
+
+    // ================= WRITER THREAD =================
+
+    private void writeLoop() {
+        List<Entry> batch = new ArrayList<>();
+        while (true) {
+            try {
+                batch.add(queue.take());
+                gather(batch);
+            } catch (InterruptedException e) {
+                return;
+            }
+
+            try {
+                Exception error = null;
+                try {
+                    write(batch);
+                } catch (IOException | RuntimeException e) {
+                    error = e;
+                    // The compactor saves the files, which still hold these changes
+                    writeFailure = e;
+                    uncompacted = true;
+                    System.err.println("Journal write failed: " + e.getMessage());
+                    startNextSegment();
+                }
+                for (Entry entry : batch) {
+                    if (entry.control == null) {
+                        continue;
+                    }
+                    if (error != null) {
+                        entry.done.completeExceptionally(error);
+                    }
+                    // STOP still closes the file after a failed write
+                    if (error == null || entry.control == Control.STOP) {
+                        runControl(entry);
+                    }
+                    if (entry.control == Control.STOP) {
+                        return;
+                    }
+                }
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private void runControl(Entry entry) {
+        try {
+            if (entry.control == Control.ROTATE) {
+                FileChannel next = createSegment(segment + 1);
+                channel.close();
+                channel = next;
+                segment++;
+            } else if (entry.control == Control.STOP) {
+                channel.close();
+            }
+            entry.done.complete(segment);
+        } catch (IOException | RuntimeException e) {
+            entry.done.completeExceptionally(e);
+        }
+    }
+
+    // A half-written record would end the segment on replay and hide everything after it
+    private void startNextSegment() {
+        try {
+            FileChannel next = createSegment(segment + 1);
+            channel.close();
+            channel = next;
+            segment++;
+        } catch (IOException e) {
+            System.err.println("Could not start a new journal segment: " + e.getMessage());
+        }
+    }
+
+    // Group commit: collect what else arrives within the sync window. Control entries
+    // are acted on at once, so sync() and rotate() never wait for the window.
+    private void gather(List<Entry> batch) throws InterruptedException {
+        if (batch.get(0).control != null) {
+            return;
+        }
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(syncMillis);
+        int records = 1;
+        while (records < syncBatch) {
+            long wait = deadline - System.nanoTime();
+            Entry next = wait > 0 ? queue.poll(wait, TimeUnit.NANOSECONDS) : queue.poll();
+            if (next == null) {
+                return;
+            }
+            batch.add(next);
+            if (next.control != null) {
+                return;
+            }
+            records++;
+        }
+    }
+
+    private void write(List<Entry> batch) throws IOException {
+        boolean wrote = false;
+        for (Entry entry : batch) {
+            byte[] record = entry.record;
+            if (record == null) {
+                continue;
+            }
+            if (record.length > buffer.remaining()) {
+                flush();
+            }
+            if (record.length > buffer.capacity()) {
+                writeFully(ByteBuffer.wrap(record));
+            } else {
+                buffer.put(record);
+            }
+            wrote = true;
+        }
+        flush();
+        if (wrote) {
+            channel.force(false);
+        }
+    }
+
+    // A failed write drops what was buffered rather than writing it again in front of the next batch
+    private void flush() throws IOException {
+        buffer.flip();
+        try {
+            writeFully(buffer);
+        } finally {
+            buffer.clear();
+        }
+    }
+
+    private void writeFully(ByteBuffer bytes) throws IOException {
+        while (bytes.hasRemaining()) {
+            channel.write(bytes);
+        }
+    }
+
+    private FileChannel createSegment(int number) throws IOException {
+        FileChannel created = FileChannel.open(segmentPath(pathPrefix, number),
+                StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        ByteBuffer header = ByteBuffer.allocate(8).putInt(MAGIC).putInt(VERSION);
+        header.flip();
+        while (header.hasRemaining()) {
+            created.write(header);
+        }
+        return created;
+    }
+
+    // ================= ENCODING =================
+
+    private static byte[] encode(DataLoadOrchestrator.DataSet set, String id, Object row) {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(128);
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeInt(0); // body length and checksum, filled in below
+            out.writeInt(0);
+            out.writeByte(row == null ? DELETE : PUT);
+            out.writeByte(set.ordinal());
+            if (row == null) {
+                writeString(out, id);
+            } else {
+                String[] fields = SnapshotStore.columns(set, row);
+                out.writeShort(fields.length);
+                for (String field : fields) {
+                    writeString(out, field);
+                }
+            }
+            out.flush();
+            byte[] record = bytes.toByteArray();
+            CRC32C crc = new CRC32C();
+            crc.update(record, 8, record.length - 8);
+            ByteBuffer.wrap(record).putInt(record.length - 8).putInt((int) crc.getValue());
+            return record;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e); // cannot happen with a ByteArrayOutputStream
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] utf8 = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(utf8.length);
+        out.write(utf8);
+    }
+
+    private static String readString(ByteBuffer in) {
+        int length = in.getInt();
+        if (length < 0) {
+            return null;
+        }
+        String value = new String(in.array(), in.position(), length, StandardCharsets.UTF_8);
+        in.position(in.position() + length);
+        return value;
+    }
+
+    // ================= REPLAY =================
+
+    /**
+     * One journaled change: the stored columns of a PUT, or just the ID of a DELETE.
+     */
+    static final class Op {
+        final String id;
+        final String[] fields; // null for a DELETE
+
+        Op(String id, String[] fields) {
+            this.id = id;
+            this.fields = fields;
+        }
+    }
+
+    /**
+     * Every change in the journal segments on disk, per data set, oldest first.
+     */
+    static final class Replay {
+        private final List<List<Op>> ops = new ArrayList<>();
+
+        Replay() {
+            for (int i = 0; i < DataLoadOrchestrator.DataSet.values().length; i++) {
+                ops.add(new ArrayList<>());
+            }
+        }
+
+        boolean isEmpty() {
+            return ops.stream().allMatch(List::isEmpty);
+        }
+
+        /**
+         * The final state of each record the journal touched, in journal order.
+         *
+         * @return ID to record, or to null if the record ends up deleted
+         */
+        <T> Map<String, T> latest(DataLoadOrchestrator.DataSet set, CsvSchema<T> schema, SymbolTable symbols) {
+            Map<String, T> latest = new LinkedHashMap<>();
+            for (Op op : ops.get(set.ordinal())) {
+                if (op.fields == null) {
+                    latest.put(op.id, null);
+                    continue;
+                }
+                String[] fields = op.fields.clone();
+                for (int i = 0; i < fields.length && i < schema.size(); i++) {
+                    if (fields[i] != null && schema.isSymbol(i)) {
+                        fields[i] = symbols.intern(fields[i]);
+                    }
+                }
+                latest.put(op.id, schema.bind(fields));
+            }
+            return latest;
+        }
+    }
+
+    /**
+     * Read every journal segment in the data directory. An unreadable segment, or the
+     * torn end of one, is reported and skipped; what was read before it still counts.
+     *
+     * @param pathPrefix Data directory
+     * @return The journaled changes (empty if there is no journal)
+     */
+    static Replay readAll(String pathPrefix) {
+        Replay replay = new Replay();
+        for (int number : segments(pathPrefix)) {
+            Path path = segmentPath(pathPrefix, number);
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path), BUFFER_SIZE))) {
+                if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                    System.err.println("Journal segment " + path + " ignored: unknown format");
+                    continue;
+                }
+                int records = 0;
+                while (readRecord(in, replay)) {
+                    records++;
+                }
+                System.out.println("Journal segment " + path.getFileName() + ": " + records + " changes");
+            } catch (EOFException e) {
+                // Crashed while writing the header: nothing in it was acknowledged
+            } catch (IOException e) {
+                System.err.println("Journal segment " + path + " unreadable: " + e.getMessage());
+            }
+        }
+        return replay;
+    }
+
+    // false at the end of the segment, including a torn or damaged last record
+    private static boolean readRecord(DataInputStream in, Replay replay) throws IOException {
+        int length;
+        try {
+            length = in.readInt();
+        } catch (EOFException e) {
+            return false;
+        }
+        byte[] body;
+        int checksum;
+        try {
+            checksum = in.readInt();
+            if (length < 2 || length > MAX_RECORD) {
+                throw new IOException("bad record length " + length);
+            }
+            body = new byte[length];
+            in.readFully(body);
+        } catch (EOFException e) {
+            System.err.println("Journal ends in a torn record, ignoring it");
+            return false;
+        } catch (IOException e) {
+            System.err.println("Journal ends in a damaged record, ignoring the rest: " + e.getMessage());
+            return false;
+        }
+        CRC32C crc = new CRC32C();
+        crc.update(body, 0, body.length);
+        if ((int) crc.getValue() != checksum) {
+            System.err.println("Journal record fails its checksum, ignoring the rest");
+            return false;
+        }
+
+        try {
+            ByteBuffer buffer = ByteBuffer.wrap(body);
+            byte op = buffer.get();
+            int set = buffer.get();
+            if (set < 0 || set >= replay.ops.size()) {
+                throw new IOException("unknown data set " + set);
+            }
+            if (op == DELETE) {
+                replay.ops.get(set).add(new Op(readString(buffer), null));
+            } else if (op == PUT) {
+                String[] fields = new String[buffer.getShort() & 0xFFFF];
+                for (int i = 0; i < fields.length; i++) {
+                    fields[i] = readString(buffer);
+                }
+                replay.ops.get(set).add(new Op(fields[0], fields));
+            } else {
+                throw new IOException("unknown operation " + op);
+            }
+            return true;
+        } catch (RuntimeException e) {
+            throw new IOException("Corrupt journal record", e);
+        }
+    }
+
+    // ================= FILES =================
+
+    private static Path segmentPath(String pathPrefix, int number) {
+        return Paths.get(pathPrefix + FILE_PREFIX + number);
+    }
+
+    // Segment numbers on disk, ascending
+    private static List<Integer> segments(String pathPrefix) {
+        List<Integer> numbers = new ArrayList<>();
+        File[] files = new File(pathPrefix).listFiles((dir, name) -> name.startsWith(FILE_PREFIX));
+        if (files != null) {
+            for (File file : files) {
+                try {
+                    numbers.add(Integer.parseInt(file.getName().substring(FILE_PREFIX.length())));
+                } catch (NumberFormatException e) {
+                    // Not a segment (e.g. a backup copy)
+                }
+            }
+        }
+        Collections.sort(numbers);
+        return numbers;
+    }
+}
@@ -0,0 +1,335 @@
+package controller;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * PageFile is a file of fixed-size pages read and written through a bounded page cache.
+ *
+ * Page 0 is the header: magic, version, page size, page count, free list head, and a
+ * few slots for the structure stored in the file (BPlusTree keeps its root and record
+ * count there). Freed pages are chained into a free list and reused before the file
+ * grows.
+ *
+ * The cache holds at most cachePages pages and evicts with the clock algorithm: each
+ * access sets a frame's reference bit, and the hand clears bits until it finds a frame
+ * that was not used since its last pass; that frame is written back if dirty and
+ * reused. Pages handed out by page() or allocate() are pinned until release(), so a
+ * page being changed is never evicted under the caller. Not thread-safe: the owner
+ * serialises access.
+ */
+final class PageFile implements Closeable {
+
+    static final int PAGE_SIZE = 8192;
+    static final int MIN_CACHE_PAGES = 16;
+
+    private static final int MAGIC = 0x4E485350; // "NHSP"
+    private static final int VERSION = 1;
+
+    // Header layout
+    private static final int H_MAGIC = 0;
+    private static final int H_VERSION = 4;
+    private static final int H_PAGE_SIZE = 8;
+    private static final int H_PAGE_COUNT = 12;
+    private static final int H_FREE_HEAD = 20;
+    private static final int H_SLOTS = 28;
+    static final int SLOT_COUNT = 16;
+
+    // Free page layout: the next free page right after the type byte
+    static final byte TYPE_FREE = 4;
+    private static final int FREE_NEXT = 1;
+
+    private static final class Frame {
+        long page = -1;
+        final ByteBuffer buffer = ByteBuffer.allocate(PAGE_SIZE);
+        boolean dirty;
+        boolean referenced;
+        int pins;
+    }
+
+    private final FileChannel channel;
+    private final Frame[] frames;
+    private final Map<Long, Frame> cached = new HashMap<>();
+    private final List<Frame> pinned = new ArrayList<>();
+    private final ByteBuffer header = ByteBuffer.allocate(PAGE_SIZE);
+    private int hand;
+    private int used;
+
+    private long pageCount;
+    private long freeHead;
+    private boolean headerDirty;
+
+    private long reads;
+    private long writes;
+
+    private PageFile(FileChannel channel, int cachePages) {
+        this.channel = channel;
+        this.frames = new Frame[Math.max(MIN_CACHE_PAGES, cachePages)];
+    }
+
+    /**
+     * Open a page file, creating it if missing.
+     *
+     * @param path The file
+     * @param cachePages Most pages kept in memory
+     * @return The open file
+     * @throws IOException If the file cannot be opened or is not a page file
+     */
+    static PageFile open(Path path, int cachePages) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        PageFile file = new PageFile(channel, cachePages);
+        try {
+            if (channel.size() == 0) {
+                file.format();
+            } else {
+                file.readHeader(path);
+            }
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+        return file;
+    }
+
+    /**
+     * Throw everything away: the file is cut back to an empty header.
+     *
+     * @throws IOException If the file cannot be truncated
+     */
+    void format() throws IOException {
+        for (Frame frame : frames) {
+            if (frame != null) {
+                frame.page = -1;
+                frame.dirty = false;
+                frame.pins = 0;
+            }
+        }
+        cached.clear();
+        pinned.clear();
+        channel.truncate(0);
+        header.clear();
+        while (header.hasRemaining()) {
+            header.put((byte) 0);
+        }
+        header.putInt(H_MAGIC, MAGIC);
+        header.putInt(H_VERSION, VERSION);
+        header.putInt(H_PAGE_SIZE, PAGE_SIZE);
+        pageCount = 1;
+        freeHead = 0;
+        writeHeader();
+    }
+
+    /**
+     * Read a page, pinning it until release().
+     *
+     * @param page Page number (1 or more)
+     * @return The page's buffer; changes must be followed by dirty(page)
+     * @throws IOException If the page cannot be read
+     */
+    ByteBuffer page(long page) throws IOException {
+        if (page <= 0 || page >= pageCount) {
+            throw new IOException("Page " + page + " out of range (file has " + pageCount + " pages)");
+        }
+        Frame frame = cached.get(page);
+        if (frame == null) {
+            frame = victim();
+            frame.buffer.clear();
+            while (frame.buffer.hasRemaining()) {
+                if (channel.read(frame.buffer, page * PAGE_SIZE + frame.buffer.position()) < 0) {
+                    throw new IOException("Page " + page + " is past the end of the file");
+                }
+            }
+            reads++;
+            frame.page = page;
+            cached.put(page, frame);
+        }
+        pin(frame);
+        return frame.buffer;
+    }
+
+    /**
+     * Mark a page as changed, so it is written back before it leaves the cache.
+     */
+    void dirty(long page) {
+        Frame frame = cached.get(page);
+        if (frame == null) {
+            throw new IllegalStateException("Page " + page + " is not in the cache");
+        }
+        frame.dirty = true;
+    }
+
+    /**
+     * Get a free page (reused from the free list, or added to the end), zeroed and pinned.
+     *
+     * @return Page number
+     */
+    long allocate() throws IOException {
+        long page;
+        if (freeHead != 0) {
+            page = freeHead;
+            freeHead = page(page).getLong(FREE_NEXT);
+        } else {
+            page = pageCount++;
+            Frame frame = victim();
+            frame.page = page;
+            cached.put(page, frame);
+            pin(frame);
+        }
+        headerDirty = true;
+        ByteBuffer buffer = cached.get(page).buffer;
+        buffer.clear();
+        while (buffer.hasRemaining()) {
+            buffer.put((byte) 0);
+        }
+        dirty(page);
+        return page;
+    }
+
+    /**
+     * Put a page on the free list.
+     */
+    void free(long page) throws IOException {
+        ByteBuffer buffer = page(page);
+        buffer.put(0, TYPE_FREE);
+        buffer.putLong(FREE_NEXT, freeHead);
+        dirty(page);
+        freeHead = page;
+        headerDirty = true;
+    }
+
+    /**
+     * Unpin every page handed out since the last release().
+     */
+    void release() {
+        for (Frame frame : pinned) {
+            frame.pins--;
+        }
+        pinned.clear();
+    }
+
+    long getSlot(int slot) {
+        return header.getLong(H_SLOTS + slot * 8);
+    }
+
+    void setSlot(int slot, long value) {
+        header.putLong(H_SLOTS + slot * 8, value);
+        headerDirty = true;
+    }
+
+    /**
+     * Write every changed page and the header, and force them to disk.
+     */
+    void flush() throws IOException {
+        for (Frame frame : frames) {
+            if (frame != null && frame.dirty) {
+                writeBack(frame);
+            }
+        }
+        if (headerDirty) {
+            writeHeader();
+        }
+        channel.force(false);
+    }
+
+    long getPageCount() {
+        return pageCount;
+    }
+
+    /**
+     * @return Pages read from disk (cache misses) since the file was opened
+     */
+    long getReads() {
+        return reads;
+    }
+
+    long getWrites() {
+        return writes;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            flush();
+        } finally {
+            channel.close();
+        }
+    }
+
+    private void pin(Frame frame) {
+        frame.pins++;
+        frame.referenced = true;
+        pinned.add(frame);
+    }
+
+    // A frame to load a page into: an unused one while the cache fills, then the clock's choice
+    private Frame victim() throws IOException {
+        if (used < frames.length) {
+            Frame frame = new Frame();
+            frames[used++] = frame;
+            return frame;
+        }
+        for (int sweep = 0; sweep < frames.length * 2; sweep++) {
+            Frame frame = frames[hand];
+            hand = (hand + 1) % frames.length;
+            if (frame.pins > 0) {
+                continue;
+            }
+            if (frame.referenced) {
+                frame.referenced = false;
+                continue;
+            }
+            if (frame.dirty) {
+                writeBack(frame);
+            }
+            cached.remove(frame.page);
+            frame.page = -1;
+            return frame;
+        }
+        throw new IllegalStateException("Page cache of " + frames.length + " pages is full of pinned pages");
+    }
+
+    private void writeBack(Frame frame) throws IOException {
+        ByteBuffer buffer = frame.buffer.duplicate();
+        buffer.clear();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer, frame.page * PAGE_SIZE + buffer.position());
+        }
+        frame.dirty = false;
+        writes++;
+    }
+
+    private void readHeader(Path path) throws IOException {
+        header.clear();
+        while (header.hasRemaining()) {
+            if (channel.read(header, header.position()) < 0) {
+                throw new IOException(path + " is not a page file (header cut short)");
+            }
+        }
+        if (header.getInt(H_MAGIC) != MAGIC || header.getInt(H_VERSION) != VERSION
+                || header.getInt(H_PAGE_SIZE) != PAGE_SIZE) {
+            throw new IOException(path + " is not a version " + VERSION + " page file");
+        }
+        pageCount = header.getLong(H_PAGE_COUNT);
+        freeHead = header.getLong(H_FREE_HEAD);
+    }
+
+    private void writeHeader() throws IOException {
+        header.putLong(H_PAGE_COUNT, pageCount);
+        header.putLong(H_FREE_HEAD, freeHead);
+        ByteBuffer buffer = header.duplicate();
+        buffer.clear();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer, buffer.position());
+        }
+        headerDirty = false;
+    }
+}
@@ -0,0 +1,593 @@
+package controller;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Function;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * PageFileRepository keeps the records on disk, in a file of fixed-size pages (PageFile)
+ * with only a bounded page cache on the heap. The file holds three B+trees (BPlusTree):
+ * one from a sequence number, given out as records are added, to the encoded record,
+ * one from record ID to the sequence number, and one holding the entries of every
+ * secondary index. A lookup by ID reads the few pages on the path from each root, most
+ * of them from the cache; memory use depends on the cache size, not on the number of
+ * records.
+ *
+ * Records are stored encoded (Codec) and decoded on every read, so get() and stream()
+ * return new objects: a changed record must be written back with update(). Records come
+ * back in the order they were added, as they do from InMemoryRepository, so a save
+ * writes the rows in the order they were loaded. Duplicate IDs behave as they do there
+ * too: add() keeps both records, get() and update() use the first, and remove() takes
+ * out every record with the ID (with a scan of the file, only once there are duplicates).
+ *
+ * Secondary indexes (index() and indexSorted(), which are the same here) are numbered
+ * in the order they are asked for, so the controllers must ask in the same order on
+ * every run. An entry's key is the index number, the field (its 0 bytes escaped, then
+ * ended by two 0 bytes, so entries sort by field and no field runs into the next) and
+ * the record's sequence number, with an empty value. findBy(), countBy() and
+ * findRange() read one run of entries, in field order and then in the order the records
+ * were added, and decode only the records found. Records whose field is null are left
+ * out, and findBy() with a null value scans.
+ *
+ * The file survives restarts. commit() records the size and modification time of the
+ * CSV file the records match and forces the file out, marked clean; the first change
+ * after that marks it unclean on disk before anything else is written, and close()
+ * marks it clean again. The next run calls isLoadedFrom() and, if the CSV file is the
+ * same and the file was left clean, skips load() and only replays the journal over what
+ * the file holds. After a crash, or once the CSV file changed, load() rebuilds the file
+ * from scratch. The CSV files (and the journal) stay the primary copy. Failures of the
+ * file surface as UncheckedIOException, since the controllers' methods do not throw
+ * IOException.
+ *
+ * @param <T> The model class stored
+ */
+public class PageFileRepository<T> implements Repository<T> {
+
+    /**
+     * Turns records into bytes and back.
+     */
+    public interface Codec<T> {
+        String id(T item);
+
+        byte[] encode(T item);
+
+        T decode(byte[] bytes);
+    }
+
+    private static final int SCAN_BATCH = 256;
+    private static final int MAX_INDEXES = Long.SIZE;
+    private static final byte[] NO_VALUE = new byte[0];
+
+    // Header slots: the three trees, the next sequence number, the duplicates flag, the
+    // layout, which indexes are built, and the source file the records match
+    private static final int SLOT_RECORDS = 0;
+    private static final int SLOT_IDS = SLOT_RECORDS + BPlusTree.SLOTS;
+    private static final int SLOT_NEXT = SLOT_IDS + BPlusTree.SLOTS;
+    private static final int SLOT_DUPLICATES = SLOT_NEXT + 1;
+    private static final int SLOT_LAYOUT = SLOT_DUPLICATES + 1;
+    private static final int SLOT_INDEX = SLOT_LAYOUT + 1;
+    private static final int SLOT_INDEXED = SLOT_INDEX + BPlusTree.SLOTS;
+    private static final int SLOT_SOURCE_SIZE = SLOT_INDEXED + 1;
+    private static final int SLOT_SOURCE_MODIFIED = SLOT_SOURCE_SIZE + 1;
+    private static final int SLOT_CLEAN = SLOT_SOURCE_MODIFIED + 1;
+    private static final long LAYOUT = 3;
+
+    private final Path path;
+    private final PageFile file;
+    private final BPlusTree records;
+    private final BPlusTree ids;
+    private final BPlusTree indexEntries;
+    private final Codec<T> codec;
+    private final List<Function<? super T, String>> indexKeys = new ArrayList<>();
+
+    private PageFileRepository(Path path, PageFile file, Codec<T> codec) throws IOException {
+        this.path = path;
+        this.file = file;
+        if (file.getSlot(SLOT_LAYOUT) != LAYOUT) {
+            // Written by an older version; load() fills it again
+            file.format();
+            file.setSlot(SLOT_LAYOUT, LAYOUT);
+        }
+        this.records = new BPlusTree(file, SLOT_RECORDS);
+        this.ids = new BPlusTree(file, SLOT_IDS);
+        this.indexEntries = new BPlusTree(file, SLOT_INDEX);
+        this.codec = codec;
+    }
+
+    /**
+     * Open (or create) a repository file.
+     *
+     * @param path The page file
+     * @param cachePages Most pages kept in memory (PageFile.PAGE_SIZE bytes each)
+     * @param codec Record encoding
+     * @return The repository, with whatever the file already holds
+     * @throws IOException If the file cannot be opened
+     */
+    public static <T> PageFileRepository<T> open(Path path, int cachePages, Codec<T> codec) throws IOException {
+        PageFile file = PageFile.open(path, cachePages);
+        try {
+            return new PageFileRepository<>(path, file, codec);
+        } catch (IOException | RuntimeException e) {
+            file.close();
+            throw e;
+        }
+    }
+
+    @Override
+    public synchronized T get(String id) {
+        try {
+            byte[] sequence = ids.get(key(id));
+            if (sequence == null) {
+                return null;
+            }
+            byte[] bytes = records.get(sequence);
+            return bytes == null ? null : codec.decode(bytes);
+        } catch (IOException e) {
+            throw failed(e);
+        }
+    }
+
+    @Override
+    public synchronized void add(T item) {
+        try {
+            changing();
+            insert(item);
+        } catch (IOException e) {
+            throw failed(e);
+        }
+    }
+
+    @Override
+    public synchronized boolean update(T item) {
+        try {
+            byte[] sequence = ids.get(key(codec.id(item)));
+            if (sequence == null) {
+                return false;
+            }
+            changing();
+            byte[] bytes = codec.encode(item);
+            if (!indexKeys.isEmpty()) {
+                T old = codec.decode(records.get(sequence));
+                T stored = codec.decode(bytes);
+                for (int i = 0; i < indexKeys.size(); i++) {
+                    String before = indexKeys.get(i).apply(old);
+                    String after = indexKeys.get(i).apply(stored);
+                    if (!Objects.equals(before, after)) {
+                        unindex(i, before, sequence);
+                        index(i, after, sequence);
+                    }
+                }
+            }
+            records.put(sequence, bytes);
+            return true;
+        } catch (IOException e) {
+            throw failed(e);
+        }
+    }
+
+    @Override
+    public synchronized boolean remove(String id) {
+        try {
+            byte[] key = key(id);
+            byte[] sequence = ids.get(key);
+            if (sequence == null) {
+                return false;
+            }
+            changing();
+            ids.remove(key);
+            unindex(codec.decode(records.get(sequence)), sequence);
+            records.remove(sequence);
+            if (file.getSlot(SLOT_DUPLICATES) != 0) {
+                removeDuplicates(id, sequence);
+            }
+            return true;
+        } catch (IOException e) {
+            throw failed(e);
+        }
+    }
+
+    @Override
+    public synchronized void load(Stream<? extends T> items) {
+        try {
+            file.format();
+            file.setSlot(SLOT_LAYOUT, LAYOUT);
+            records.create();
+            ids.create();
+            indexEntries.create();
+            file.setSlot(SLOT_INDEXED, indexKeys.isEmpty() ? 0 : -1L >>> (Long.SIZE - indexKeys.size()));
+            Iterator<? extends T> it = items.iterator();
+            while (it.hasNext()) {
+                insert(it.next());
+            }
+            file.flush();
+        } catch (IOException e) {
+            throw failed(e);
+        }
+    }
+
+    @Override
+    public synchronized int size() {
+        return (int) records.size();
+    }
+
+    /**
+     * Keep an index on the key, building it from the records if the file does not hold
+     * it yet.
+     */
+    @Override
+    public synchronized void index(Function<? super T, String> key) {
+        if (indexKeys.contains(key)) {
+            return;
+        }
+        if (indexKeys.size() == MAX_INDEXES) {
+            throw new IllegalStateException("More than " + MAX_INDEXES + " indexes on " + path);
+        }
+        int number = indexKeys.size();
+        indexKeys.add(key);
+        long built = file.getSlot(SLOT_INDEXED);
+        if ((built & 1L << number) != 0) {
+            return;
+        }
+        try {
+            changing();
+            List<byte[]> keys = new ArrayList<>(SCAN_BATCH);
+            List<byte[]> values = new ArrayList<>(SCAN_BATCH);
+            byte[] after = null;
+            do {
+                keys.clear();
+                values.clear();
+                records.scan(after, SCAN_BATCH, keys, values);
+                for (int i = 0; i < keys.size(); i++) {
+                    index(number, key.apply(codec.decode(values.get(i))), keys.get(i));
+                }
+                if (!keys.isEmpty()) {
+                    after = keys.get(keys.size() - 1);
+                }
+            } while (keys.size() == SCAN_BATCH);
+            file.setSlot(SLOT_INDEXED, built | 1L << number);
+        } catch (IOException e) {
+            throw failed(e);
+        }
+    }
+
+    // Every index entry is in key order already
+    @Override
+    public void indexSorted(Function<? super T, String> key) {
+        index(key);
+    }
+
+    @Override
+    public synchronized List<T> findBy(Function<? super T, String> key, String value) {
+        int number = indexKeys.indexOf(key);
+        if (number < 0 || value == null) {
+            return Repository.super.findBy(key, value);
+        }
+        try {
+            return decode(sequences(indexKey(number, value, null), end(number, value)));
+        } catch (IOException e) {
+            throw failed(e);
+        }
+    }
+
+    // Each value's records, merged back into the order they were added
+    @Override
+    public synchronized List<T> findByAny(Function<? super T, String> key, Collection<String> values) {
+        int number = indexKeys.indexOf(key);
+        if (number < 0 || values.contains(null)) {
+            return Repository.super.findByAny(key, values);
+        }
+        try {
+            List<byte[]> sequences = new ArrayList<>();
+            for (String value : new LinkedHashSet<>(values)) {
+                sequences.addAll(sequences(indexKey(number, value, null), end(number, value)));
+            }
+            sequences.sort(Arrays::compareUnsigned);
+            return decode(sequences);
+        } catch (IOException e) {
+            throw failed(e);
+        }
+    }
+
+    @Override
+    public synchronized int countBy(Function<? super T, String> key, String value) {
+        int number = indexKeys.indexOf(key);
+        if (number < 0 || value == null) {
+            return Repository.super.countBy(key, value);
+        }
+        try {
+            return sequences(indexKey(number, value, null), end(number, value)).size();
+        } catch (IOException e) {
+            throw failed(e);
+        }
+    }
+
+    @Override
+    public synchronized List<T> findRange(Function<? super T, String> key, String from, String to) {
+        int number = indexKeys.indexOf(key);
+        if (number < 0) {
+            return Repository.super.findRange(key, from, to);
+        }
+        try {
+            return from.compareTo(to) >= 0 ? new ArrayList<>()
+                    : decode(sequences(indexKey(number, from, null), indexKey(number, to, null)));
+        } catch (IOException e) {
+            throw failed(e);
+        }
+    }
+
+    /**
+     * Records in the order they were added, read SCAN_BATCH at a time. Each batch
+     * continues after the last sequence number of the one before, so the stream stays
+     * valid while the repository changes: records added meanwhile come at the end.
+     */
+    @Override
+    public Stream<T> stream() {
+        Iterator<T> batches = new Iterator<T>() {
+            private final List<byte[]> keys = new ArrayList<>(SCAN_BATCH);
+            private final List<byte[]> values = new ArrayList<>(SCAN_BATCH);
+            private int next;
+            private byte[] after;
+            private boolean done;
+
+            @Override
+            public boolean hasNext() {
+                if (next < values.size()) {
+                    return true;
+                }
+                if (done) {
+                    return false;
+                }
+                keys.clear();
+                values.clear();
+                next = 0;
+                synchronized (PageFileRepository.this) {
+                    try {
+                        records.scan(after, SCAN_BATCH, keys, values);
+                    } catch (IOException e) {
+                        throw failed(e);
+                    }
+                }
+                done = keys.size() < SCAN_BATCH;
+                if (!keys.isEmpty()) {
+                    after = keys.get(keys.size() - 1);
+                }
+                return !values.isEmpty();
+            }
+
+            @Override
+            public T next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return codec.decode(values.get(next++));
+            }
+        };
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(batches,
+                Spliterator.ORDERED | Spliterator.DISTINCT | Spliterator.NONNULL), false);
+    }
+
+    /**
+     * The stream itself: it reads the file in batches under the repository's lock, so
+     * a background save can go through it without a copy of every record.
+     */
+    @Override
+    public Iterable<T> toSave() {
+        return () -> stream().iterator();
+    }
+
+    /**
+     * True if the file was left clean after holding the records of the source file as
+     * it is now, with the changes made since.
+     */
+    @Override
+    public synchronized boolean isLoadedFrom(long size, long modified) {
+        return file.getSlot(SLOT_CLEAN) != 0 && file.getSlot(SLOT_SOURCE_MODIFIED) != 0
+                && file.getSlot(SLOT_SOURCE_SIZE) == size && file.getSlot(SLOT_SOURCE_MODIFIED) == modified;
+    }
+
+    @Override
+    public synchronized void commit(long size, long modified) throws IOException {
+        file.setSlot(SLOT_SOURCE_SIZE, size);
+        file.setSlot(SLOT_SOURCE_MODIFIED, modified);
+        markClean();
+    }
+
+    @Override
+    public synchronized void flush() throws IOException {
+        file.flush();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        try {
+            markClean();
+        } finally {
+            file.close();
+        }
+    }
+
+    /**
+     * @return Pages read from disk so far (page cache misses)
+     */
+    public synchronized long getPageReads() {
+        return file.getReads();
+    }
+
+    /**
+     * @return Size of the file in pages
+     */
+    public synchronized long getPageCount() {
+        return file.getPageCount();
+    }
+
+    // Every page out and forced first, then the clean mark, so a clean file is whole
+    private void markClean() throws IOException {
+        file.flush();
+        file.setSlot(SLOT_CLEAN, 1);
+        file.flush();
+    }
+
+    // Before the first change after a commit: the file on disk stops being clean before
+    // any page of the change can reach it
+    private void changing() throws IOException {
+        if (file.getSlot(SLOT_CLEAN) != 0) {
+            file.setSlot(SLOT_CLEAN, 0);
+            file.flush();
+        }
+    }
+
+    // The record goes at the end; the ID tree keeps pointing at the first record with its ID.
+    // Indexes take the fields as stored, so they agree with the records get() decodes.
+    private void insert(T item) throws IOException {
+        long next = file.getSlot(SLOT_NEXT);
+        byte[] sequence = sequence(next);
+        file.setSlot(SLOT_NEXT, next + 1);
+        byte[] bytes = codec.encode(item);
+        records.put(sequence, bytes);
+        byte[] key = key(codec.id(item));
+        if (ids.get(key) == null) {
+            ids.put(key, sequence);
+        } else {
+            file.setSlot(SLOT_DUPLICATES, 1);
+        }
+        if (!indexKeys.isEmpty()) {
+            T stored = codec.decode(bytes);
+            for (int i = 0; i < indexKeys.size(); i++) {
+                index(i, indexKeys.get(i).apply(stored), sequence);
+            }
+        }
+    }
+
+    private void index(int number, String field, byte[] sequence) throws IOException {
+        if (field != null) {
+            indexEntries.put(indexKey(number, field, sequence), NO_VALUE);
+        }
+    }
+
+    private void unindex(int number, String field, byte[] sequence) throws IOException {
+        if (field != null) {
+            indexEntries.remove(indexKey(number, field, sequence));
+        }
+    }
+
+    private void unindex(T item, byte[] sequence) throws IOException {
+        for (int i = 0; i < indexKeys.size(); i++) {
+            unindex(i, indexKeys.get(i).apply(item), sequence);
+        }
+    }
+
+    // Sequence numbers of the index entries after 'from' and before 'to', in key order
+    private List<byte[]> sequences(byte[] from, byte[] to) throws IOException {
+        List<byte[]> found = new ArrayList<>();
+        List<byte[]> keys = new ArrayList<>(SCAN_BATCH);
+        List<byte[]> values = new ArrayList<>(SCAN_BATCH);
+        byte[] after = from;
+        while (true) {
+            keys.clear();
+            values.clear();
+            indexEntries.scan(after, SCAN_BATCH, keys, values);
+            for (byte[] key : keys) {
+                if (Arrays.compareUnsigned(key, to) >= 0) {
+                    return found;
+                }
+                found.add(Arrays.copyOfRange(key, key.length - Long.BYTES, key.length));
+            }
+            if (keys.size() < SCAN_BATCH) {
+                return found;
+            }
+            after = keys.get(keys.size() - 1);
+        }
+    }
+
+    private List<T> decode(List<byte[]> sequences) throws IOException {
+        List<T> found = new ArrayList<>(sequences.size());
+        for (byte[] sequence : sequences) {
+            byte[] bytes = records.get(sequence);
+            if (bytes != null) {
+                found.add(codec.decode(bytes));
+            }
+        }
+        return found;
+    }
+
+    // Index number, the field with 0 escaped as 0 1 and ended by 0 0, then the sequence
+    // number if there is one: without it, the key sorts before every entry of the field
+    private static byte[] indexKey(int number, String field, byte[] sequence) {
+        byte[] bytes = field.getBytes(StandardCharsets.UTF_8);
+        ByteArrayOutputStream key = new ByteArrayOutputStream(bytes.length + 12);
+        key.write(number);
+        for (byte b : bytes) {
+            key.write(b);
+            if (b == 0) {
+                key.write(1);
+            }
+        }
+        key.write(0);
+        key.write(0);
+        if (sequence != null) {
+            key.write(sequence, 0, sequence.length);
+        }
+        return key.toByteArray();
+    }
+
+    // Sorts after every entry of the field and before those of any longer field
+    private static byte[] end(int number, String field) {
+        byte[] start = indexKey(number, field, null);
+        start[start.length - 1] = 1;
+        return start;
+    }
+
+    // Remove the other records with the ID of the one just removed (they all come after it)
+    private void removeDuplicates(String id, byte[] after) throws IOException {
+        List<byte[]> keys = new ArrayList<>(SCAN_BATCH);
+        List<byte[]> values = new ArrayList<>(SCAN_BATCH);
+        List<byte[]> matches = new ArrayList<>();
+        do {
+            keys.clear();
+            values.clear();
+            records.scan(after, SCAN_BATCH, keys, values);
+            for (int i = 0; i < keys.size(); i++) {
+                T item = codec.decode(values.get(i));
+                if (id.equals(codec.id(item))) {
+                    matches.add(keys.get(i));
+                    unindex(item, keys.get(i));
+                }
+            }
+            if (!keys.isEmpty()) {
+                after = keys.get(keys.size() - 1);
+            }
+        } while (keys.size() == SCAN_BATCH);
+        for (byte[] match : matches) {
+            records.remove(match);
+        }
+    }
+
+    // Big-endian, so the tree's unsigned byte order is the order records were added in
+    private static byte[] sequence(long number) {
+        return ByteBuffer.allocate(Long.BYTES).putLong(number).array();
+    }
+
+    private static byte[] key(String id) {
+        return id.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private UncheckedIOException failed(IOException e) {
+        return new UncheckedIOException("Repository file " + path + ": " + e.getMessage(), e);
+    }
+}
@@ -2,6 +2,7 @@ package controller;
 
 import model.Patient;
 import java.util.*;
+import java.util.stream.Stream;
 
 /**
  * PatientController manages all Patient operations (CRUD).
@@ -11,12 +12,20 @@ import java.util.*;
  */
 public class PatientController {
 
-    private List<Patient> patients;
+    private final Repository<Patient> patients;
+    private final ChangeTracker changes = new ChangeTracker();
 
 
     // Constructor
     public PatientController() {
-        this.patients = new ArrayList<>();
+        this(Repositories.create(DataLoadOrchestrator.DataSet.PATIENTS, CsvSchemas.PATIENTS, Patient::getUserId));
+    }
+
+    /**
+     * @param patients Where the patients are kept (see Repositories)
+     */
+    public PatientController(Repository<Patient> patients) {
+        this.patients = patients;
     }
 
     /**
@@ -28,6 +37,7 @@ public class PatientController {
     public boolean addPatient(Patient p) {
 
         patients.add(p);
+        changes.changed(p.getUserId(), p);
         System.out.println(" Patient added: " + p.getName() + " (ID: " + p.getUserId() + ")");
         return true;
     }
@@ -40,10 +50,7 @@ public class PatientController {
      */
     public Patient getPatient(String patientId) {
 
-        return patients.stream()
-                .filter(p -> p.getUserId().equals(patientId))
-                .findFirst()
-                .orElse(null);
+        return patients.get(patientId);
     }
 
     /**
@@ -59,6 +66,9 @@ public class PatientController {
         if (existing != null) {
 
             existing.setName(p.getName());
+            existing.setEmail(p.getEmail());
+            patients.update(existing);
+            changes.changed(p.getUserId(), existing);
 
             System.out.println(" Patient updated: " + p.getUserId() + " → " + p.getName());
         } else {
@@ -66,6 +76,21 @@ public class PatientController {
         }
     }
 
+    /**
+     * UPDATE: Put a new patient object in place of the stored one with the same ID,
+     * keeping its position (e.g. a row changed in the file by another program).
+     *
+     * @param patient The new patient
+     * @return true if replaced, false if not found
+     */
+    public boolean replacePatient(Patient patient) {
+        if (!patients.update(patient)) {
+            return false;
+        }
+        changes.changed(patient.getUserId(), patient);
+        return true;
+    }
+
     /**
      * DELETE: Remove a patient from the system
      *
@@ -74,9 +99,10 @@ public class PatientController {
      */
     public boolean deletePatient(String patientId) {
 
-        boolean wasRemoved = patients.removeIf(p -> p.getUserId().equals(patientId));
+        boolean wasRemoved = patients.remove(patientId);
 
         if (wasRemoved) {
+            changes.deleted(patientId);
             System.out.println(" Patient deleted: " + patientId);
         } else {
             System.err.println("ERROR: Patient " + patientId + " not found. Cannot delete.");
@@ -90,7 +116,41 @@ public class PatientController {
      */
     public List<Patient> getAllPatients() {
 
-        return new ArrayList<>(patients);
+        return patients.list();
+    }
+
+    /**
+     * READ: All patients as a read-only view, without copying the list.
+     *
+     * The view follows later changes, so it suits one pass on the thread that owns the
+     * controller (filling a table, encoding a snapshot). Use getAllPatients() for a copy.
+     *
+     * @return Unmodifiable view of the patients
+     */
+    public List<Patient> getPatientsView() {
+        return patients.view();
+    }
+
+    /**
+     * READ: One screenful of patients, in the same order as getAllPatients().
+     *
+     * @param offset Patients to skip
+     * @param limit Most patients to return
+     * @return Up to limit patients from position offset on
+     */
+    public List<Patient> getPatientsPage(int offset, int limit) {
+        return patients.page(offset, limit);
+    }
+
+    /**
+     * READ: The patients for a background save, taken on the thread that owns the controller.
+     * In memory this is a copy of the list; a disk repository streams from its file
+     * during the save instead of copying (see Repository.toSave()).
+     *
+     * @return The patients, in the same order as getPatientsView()
+     */
+    public Iterable<Patient> getPatientsToSave() {
+        return patients.toSave();
     }
 
     /**
@@ -109,11 +169,38 @@ public class PatientController {
      */
     public void loadPatientsFromData(List<Patient> loadedPatients) {
 
-       patients.clear();
-        patients.addAll(loadedPatients);
+       patients.load(loadedPatients.stream());
+        changes.loaded();
         System.out.println(" Loaded " + patients.size() + " patients from CSV into controller");
     }
 
+    /**
+     * POPULATE FROM CSV DATA (streaming)
+     *
+     * Rows are added as they are parsed, so no intermediate list of the whole file is built.
+     *
+     * @param loadedPatients Stream of patients, e.g. from DataLoader.streamPatients
+     */
+    public void loadPatientsFromStream(Stream<Patient> loadedPatients) {
+        patients.load(loadedPatients);
+        changes.loaded();
+        System.out.println(" Loaded " + patients.size() + " patients from CSV into controller");
+    }
+
+    /**
+     * Changes since the last load or save (Save All skips this file when clean)
+     *
+     * @return The change tracker of this collection
+     */
+    public ChangeTracker getChangeTracker() {
+        return changes;
+    }
+
+    // The loader and the compactor reopen and commit a disk repository through this
+    Repository<Patient> getRepository() {
+        return patients;
+    }
+
     /**
      * ADVANCED: Get patients by NHS number
      *
@@ -2,6 +2,8 @@ package controller;
 
 import model.Prescription;
 import java.util.*;
+import java.util.function.Function;
+import java.util.stream.Stream;
 import java.time.LocalDate;
 
 /**
@@ -12,12 +14,28 @@ import java.time.LocalDate;
  */
 public class PrescriptionController {
 
+    // Secondary index keys (see Repository.index)
+    private static final Function<Prescription, String> BY_PATIENT = Prescription::getPatientId;
+    private static final Function<Prescription, String> BY_CLINICIAN = Prescription::getClinicianId;
+    private static final Function<Prescription, String> BY_STATUS = Prescription::getStatus;
+
     //INSTANCE VARIABLES ===
-    private List<Prescription> prescriptions;
+    private final Repository<Prescription> prescriptions;
+    private final ChangeTracker changes = new ChangeTracker();
 
     // Constructor
     public PrescriptionController() {
-        this.prescriptions = new ArrayList<>();
+        this(Repositories.create(DataLoadOrchestrator.DataSet.PRESCRIPTIONS, CsvSchemas.PRESCRIPTIONS, Prescription::getPrescriptionId));
+    }
+
+    /**
+     * @param prescriptions Where the prescriptions are kept (see Repositories)
+     */
+    public PrescriptionController(Repository<Prescription> prescriptions) {
+        this.prescriptions = prescriptions;
+        prescriptions.index(BY_PATIENT);
+        prescriptions.index(BY_CLINICIAN);
+        prescriptions.index(BY_STATUS);
     }
 
     /**
@@ -35,6 +53,7 @@ public class PrescriptionController {
         }
 
         prescriptions.add(prescription);
+        changes.changed(prescription.getPrescriptionId(), prescription);
 
         System.out.println(" Prescription added: " + prescription.getPrescriptionId()
                 + " - " + prescription.getMedication()
@@ -51,10 +70,7 @@ public class PrescriptionController {
      * @return Prescription if found, otherwise null
      */
     public Prescription getPrescription(String prescriptionId) {
-        return prescriptions.stream()
-                .filter(p -> p.getPrescriptionId().equals(prescriptionId))
-                .findFirst()
-                .orElse(null);
+        return prescriptions.get(prescriptionId);
     }
 
     /**
@@ -63,9 +79,7 @@ public class PrescriptionController {
      * @return List of prescriptions for that patient
      */
     public List<Prescription> getPrescriptionsByPatient(String patientId) {
-        return prescriptions.stream()
-                .filter(p -> p.getPatientId().equals(patientId))
-                .toList();
+        return prescriptions.findBy(BY_PATIENT, patientId);
     }
 
     /**
@@ -75,9 +89,7 @@ public class PrescriptionController {
      * @return List of prescriptions issued by that clinician
      */
     public List<Prescription> getPrescriptionsByClinician(String clinicianId) {
-        return prescriptions.stream()
-                .filter(p -> p.getClinicianId().equals(clinicianId))
-                .toList();
+        return prescriptions.findBy(BY_CLINICIAN, clinicianId);
     }
 
     /**
@@ -92,9 +104,17 @@ public class PrescriptionController {
      * @return List of prescriptions with that status
      */
     public List<Prescription> getPrescriptionsByStatus(String status) {
-        return prescriptions.stream()
-                .filter(p -> p.getStatus().equals(status))
-                .toList();
+        return prescriptions.findBy(BY_STATUS, status);
+    }
+
+    /**
+     * READ: Count the prescriptions with a given status, without going through them.
+     *
+     * @param status Status to count
+     * @return Number of prescriptions with that status
+     */
+    public int countPrescriptionsByStatus(String status) {
+        return prescriptions.countBy(BY_STATUS, status);
     }
 
     /**
@@ -126,6 +146,8 @@ public class PrescriptionController {
 
         if (newStatus != null && !newStatus.isBlank()) {
             existing.setStatus(newStatus);
+            prescriptions.update(existing);
+            changes.changed(prescriptionId, existing);
         }
 
         System.out.println(" Prescription status updated: " + prescriptionId + " → " + existing.getStatus());
@@ -171,10 +193,27 @@ public class PrescriptionController {
             existing.setNotes(newNotes);
         }
 
+        prescriptions.update(existing);
+        changes.changed(prescriptionId, existing);
         System.out.println(" Prescription updated: " + prescriptionId);
         return true;
     }
 
+    /**
+     * UPDATE: Put a new prescription object in place of the stored one with the same ID,
+     * keeping its position (e.g. a row changed in the file by another program).
+     *
+     * @param prescription The new prescription
+     * @return true if replaced, false if not found
+     */
+    public boolean replacePrescription(Prescription prescription) {
+        if (!prescriptions.update(prescription)) {
+            return false;
+        }
+        changes.changed(prescription.getPrescriptionId(), prescription);
+        return true;
+    }
+
     /**
      * DELETE: Remove a prescription by ID.
      *
@@ -182,9 +221,10 @@ public class PrescriptionController {
      * @return true if deleted, false if not found
      */
     public boolean deletePrescription(String prescriptionId) {
-        boolean removed = prescriptions.removeIf(p -> p.getPrescriptionId().equals(prescriptionId));
+        boolean removed = prescriptions.remove(prescriptionId);
 
         if (removed) {
+            changes.deleted(prescriptionId);
             System.out.println(" Prescription deleted: " + prescriptionId);
         } else {
             System.err.println("ERROR: Prescription " + prescriptionId + " not found");
@@ -199,7 +239,41 @@ public class PrescriptionController {
      * @return Copy of prescriptions list
      */
     public List<Prescription> getAllPrescriptions() {
-        return new ArrayList<>(prescriptions);
+        return prescriptions.list();
+    }
+
+    /**
+     * READ: All prescriptions as a read-only view, without copying the list.
+     *
+     * The view follows later changes, so it suits one pass on the thread that owns the
+     * controller (filling a table, encoding a snapshot). Use getAllPrescriptions() for a copy.
+     *
+     * @return Unmodifiable view of the prescriptions
+     */
+    public List<Prescription> getPrescriptionsView() {
+        return prescriptions.view();
+    }
+
+    /**
+     * READ: One screenful of prescriptions, in the same order as getAllPrescriptions().
+     *
+     * @param offset Prescriptions to skip
+     * @param limit Most prescriptions to return
+     * @return Up to limit prescriptions from position offset on
+     */
+    public List<Prescription> getPrescriptionsPage(int offset, int limit) {
+        return prescriptions.page(offset, limit);
+    }
+
+    /**
+     * READ: The prescriptions for a background save, taken on the thread that owns the controller.
+     * In memory this is a copy of the list; a disk repository streams from its file
+     * during the save instead of copying (see Repository.toSave()).
+     *
+     * @return The prescriptions, in the same order as getPrescriptionsView()
+     */
+    public Iterable<Prescription> getPrescriptionsToSave() {
+        return prescriptions.toSave();
     }
 
     /**
@@ -208,9 +282,7 @@ public class PrescriptionController {
      * @return List of prescriptions with status "Issued"
      */
     public List<Prescription> getIssuedPrescriptions() {
-        return prescriptions.stream()
-                .filter(p -> "Issued".equals(p.getStatus()))
-                .toList();
+        return prescriptions.findBy(BY_STATUS, "Issued");
     }
 
     /**
@@ -229,12 +301,36 @@ public class PrescriptionController {
      * @param loadedPrescriptions prescriptions loaded from file
      */
     public void loadPrescriptionsFromData(List<Prescription> loadedPrescriptions) {
-        prescriptions.clear();
+        prescriptions.load(loadedPrescriptions != null ? loadedPrescriptions.stream() : Stream.empty());
+        changes.loaded();
 
-        if (loadedPrescriptions != null) {
-            prescriptions.addAll(loadedPrescriptions);
-        }
+        System.out.println(" Loaded " + prescriptions.size() + " prescriptions into controller");
+    }
 
+    /**
+     * POPULATE FROM CSV DATA (streaming)
+     *
+     * Rows are added as they are parsed, so no intermediate list of the whole file is built.
+     *
+     * @param loadedPrescriptions Stream of prescriptions, e.g. from DataLoader.streamPrescriptions
+     */
+    public void loadPrescriptionsFromStream(Stream<Prescription> loadedPrescriptions) {
+        prescriptions.load(loadedPrescriptions);
+        changes.loaded();
         System.out.println(" Loaded " + prescriptions.size() + " prescriptions into controller");
     }
+
+    /**
+     * Changes since the last load or save (Save All skips this file when clean)
+     *
+     * @return The change tracker of this collection
+     */
+    public ChangeTracker getChangeTracker() {
+        return changes;
+    }
+
+    // The loader and the compactor reopen and commit a disk repository through this
+    Repository<Prescription> getRepository() {
+        return prescriptions;
+    }
 }
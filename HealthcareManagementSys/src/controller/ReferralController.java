@@ -4,6 +4,8 @@ import model.Referral;
 import main.ReferralManager;
 import java.io.IOException;
 import java.util.*;
+import java.util.function.Function;
+import java.util.stream.Stream;
 
 /**
  * ReferralController manages all Referral operations using the Singleton ReferralManager.
@@ -14,14 +16,35 @@ import java.util.*;
  */
 public class ReferralController {
 
-    private List<Referral> referrals;
+    // Secondary index keys (see Repository.index)
+    private static final Function<Referral, String> BY_PATIENT = Referral::getPatientId;
+    private static final Function<Referral, String> BY_GP = Referral::getFromGpId;
+    private static final Function<Referral, String> BY_SPECIALIST = Referral::getToSpecialistId;
+    private static final Function<Referral, String> BY_STATUS = Referral::getStatus;
+    private static final Function<Referral, String> BY_URGENCY = Referral::getUrgencyLevel;
+
+    private static final List<String> URGENT_LEVELS = List.of("Urgent", "Emergency");
+
+    private final Repository<Referral> referrals;
+    private final ChangeTracker changes = new ChangeTracker();
 
     private ReferralManager referralManager;
 
     // Constructor
     public ReferralController() {
-        this.referrals = new ArrayList<>();
+        this(Repositories.create(DataLoadOrchestrator.DataSet.REFERRALS, CsvSchemas.REFERRALS, Referral::getReferralId));
+    }
 
+    /**
+     * @param referrals Where the referrals are kept (see Repositories)
+     */
+    public ReferralController(Repository<Referral> referrals) {
+        this.referrals = referrals;
+        referrals.index(BY_PATIENT);
+        referrals.index(BY_GP);
+        referrals.index(BY_SPECIALIST);
+        referrals.index(BY_STATUS);
+        referrals.index(BY_URGENCY);
         this.referralManager = ReferralManager.getInstance();
     }
 
@@ -41,6 +64,7 @@ public class ReferralController {
 
         // Add to local list (for GUI to display)
         referrals.add(referral);
+        changes.changed(referral.getReferralId(), referral);
 
         // Send to ReferralManager Singleton for OFFICIAL processing
         referralManager.createReferral(referral);
@@ -57,10 +81,7 @@ public class ReferralController {
      * @return The Referral object, or null if not found
      */
     public Referral getReferral(String referralId) {
-        return referrals.stream()
-                .filter(ref -> ref.getReferralId().equals(referralId))
-                .findFirst()
-                .orElse(null);
+        return referrals.get(referralId);
     }
 
     /**
@@ -70,9 +91,7 @@ public class ReferralController {
      * @return List of all referrals for that patient
      */
     public List<Referral> getReferralsByPatient(String patientId) {
-        return referrals.stream()
-                .filter(ref -> ref.getPatientId().equals(patientId))
-                .toList();
+        return referrals.findBy(BY_PATIENT, patientId);
     }
 
     /**
@@ -82,9 +101,7 @@ public class ReferralController {
      * @return List of all referrals sent by that GP
      */
     public List<Referral> getReferralsByGP(String gpId) {
-        return referrals.stream()
-                .filter(ref -> ref.getFromGpId().equals(gpId))
-                .toList();
+        return referrals.findBy(BY_GP, gpId);
     }
 
     /**
@@ -95,9 +112,7 @@ public class ReferralController {
      * @return List of all referrals received by that specialist
      */
     public List<Referral> getReferralsBySpecialist(String specialistId) {
-        return referrals.stream()
-                .filter(ref -> ref.getToSpecialistId().equals(specialistId))
-                .toList();
+        return referrals.findBy(BY_SPECIALIST, specialistId);
     }
 
     /**
@@ -114,20 +129,45 @@ public class ReferralController {
      * @return List of referrals with that status
      */
     public List<Referral> getReferralsByStatus(String status) {
-        return referrals.stream()
-                .filter(ref -> ref.getStatus().equals(status))
-                .toList();
+        return referrals.findBy(BY_STATUS, status);
+    }
+
+    /**
+     * READ: Count the referrals with a given status, without going through them
+     *
+     * @param status The status to count
+     * @return Number of referrals with that status
+     */
+    public int countReferralsByStatus(String status) {
+        return referrals.countBy(BY_STATUS, status);
     }
 
     /**
-     * READ: Get all URGENT referrals
+     * READ: Get all URGENT referrals (Urgent or Emergency), in the order they were added
      *
      * @return List of all urgent referrals
      */
     public List<Referral> getUrgentReferrals() {
-        return referrals.stream()
-                .filter(ref -> ref.getUrgencyLevel().equals("Urgent") || ref.getUrgencyLevel().equals("Emergency"))
-                .toList();
+        return referrals.findByAny(BY_URGENCY, URGENT_LEVELS);
+    }
+
+    /**
+     * READ: Count the urgent (Urgent or Emergency) referrals
+     *
+     * @return Number of urgent referrals
+     */
+    public int getUrgentReferralCount() {
+        return referrals.countBy(BY_URGENCY, "Emergency") + referrals.countBy(BY_URGENCY, "Urgent");
+    }
+
+    /**
+     * READ: Count the referrals with a given urgency level
+     *
+     * @param urgencyLevel Routine, Urgent or Emergency
+     * @return Number of referrals with that urgency
+     */
+    public int countReferralsByUrgency(String urgencyLevel) {
+        return referrals.countBy(BY_URGENCY, urgencyLevel);
     }
 
     /**
@@ -148,12 +188,37 @@ public class ReferralController {
 
         // Update status
         existing.setStatus(newStatus);
+        referrals.update(existing);
+        changes.changed(referralId, existing);
+        referralManager.updateReferral(existing);
 
         System.out.println(" Referral status updated: " + referralId + " → " + newStatus);
 
         return true;
     }
 
+    /**
+     * UPDATE: Copy the editable fields of a changed referral onto the stored one
+     *
+     * @param changed Referral with the new values (matched by ID)
+     * @return true if updated, false if not found
+     */
+    public boolean updateReferral(Referral changed) {
+        Referral existing = getReferral(changed.getReferralId());
+        if (existing == null) {
+            return false;
+        }
+
+        existing.setToSpecialistId(changed.getToSpecialistId());
+        existing.setReason(changed.getReason());
+        existing.setStatus(changed.getStatus());
+        existing.setUrgencyLevel(changed.getUrgencyLevel());
+        referrals.update(existing);
+        changes.changed(existing.getReferralId(), existing);
+        referralManager.updateReferral(existing);
+        return true;
+    }
+
     /**
      * DELETE: Remove a referral from the system
      *
@@ -161,9 +226,10 @@ public class ReferralController {
      * @return true if deleted, false if not found
      */
     public boolean deleteReferral(String referralId) {
-        boolean removed = referrals.removeIf(ref -> ref.getReferralId().equals(referralId));
+        boolean removed = referrals.remove(referralId);
 
         if (removed) {
+            changes.deleted(referralId);
             System.out.println(" Referral deleted: " + referralId);
         } else {
             System.err.println("ERROR: Referral " + referralId + " not found");
@@ -178,7 +244,41 @@ public class ReferralController {
      * @return Copy of all referrals
      */
     public List<Referral> getAllReferrals() {
-        return new ArrayList<>(referrals);
+        return referrals.list();
+    }
+
+    /**
+     * READ: All referrals as a read-only view, without copying the list.
+     *
+     * The view follows later changes, so it suits one pass on the thread that owns the
+     * controller (filling a table, encoding a snapshot). Use getAllReferrals() for a copy.
+     *
+     * @return Unmodifiable view of the referrals
+     */
+    public List<Referral> getReferralsView() {
+        return referrals.view();
+    }
+
+    /**
+     * READ: One screenful of referrals, in the same order as getAllReferrals().
+     *
+     * @param offset Referrals to skip
+     * @param limit Most referrals to return
+     * @return Up to limit referrals from position offset on
+     */
+    public List<Referral> getReferralsPage(int offset, int limit) {
+        return referrals.page(offset, limit);
+    }
+
+    /**
+     * READ: The referrals for a background save, taken on the thread that owns the controller.
+     * In memory this is a copy of the list; a disk repository streams from its file
+     * during the save instead of copying (see Repository.toSave()).
+     *
+     * @return The referrals, in the same order as getReferralsView()
+     */
+    public Iterable<Referral> getReferralsToSave() {
+        return referrals.toSave();
     }
 
     /**
@@ -191,6 +291,25 @@ public class ReferralController {
         return referralManager.getReferralQueue();
     }
 
+    /**
+     * SINGLETON ACCESS: Reload the ReferralManager queue and keep persisting it
+     *
+     * @param filepath The queue's persistence file
+     * @throws IOException If the file cannot be read or opened
+     */
+    public void openReferralQueue(String filepath) throws IOException {
+        referralManager.open(filepath);
+    }
+
+    /**
+     * SINGLETON ACCESS: Flush and close the queue's persistence file
+     *
+     * @throws IOException If the last changes cannot be written
+     */
+    public void closeReferralQueue() throws IOException {
+        referralManager.close();
+    }
+
     /**
      * SAVE ALL REFERRALS TO CSV FILE
      *
@@ -223,8 +342,35 @@ public class ReferralController {
      * @param loadedReferrals List of referrals from CSV
      */
     public void loadReferralsFromData(List<Referral> loadedReferrals) {
-        referrals.clear();
-        referrals.addAll(loadedReferrals);
+        referrals.load(loadedReferrals.stream());
+        changes.loaded();
         System.out.println(" Loaded " + referrals.size() + " referrals into controller");
     }
+
+    /**
+     * POPULATE FROM CSV DATA (streaming)
+     *
+     * Rows are added as they are parsed, so no intermediate list of the whole file is built.
+     *
+     * @param loadedReferrals Stream of referrals, e.g. from DataLoader.streamReferrals
+     */
+    public void loadReferralsFromStream(Stream<Referral> loadedReferrals) {
+        referrals.load(loadedReferrals);
+        changes.loaded();
+        System.out.println(" Loaded " + referrals.size() + " referrals into controller");
+    }
+
+    /**
+     * Changes since the last load or save (Save All skips this file when clean)
+     *
+     * @return The change tracker of this collection
+     */
+    public ChangeTracker getChangeTracker() {
+        return changes;
+    }
+
+    // The loader and the compactor reopen and commit a disk repository through this
+    Repository<Referral> getRepository() {
+        return referrals;
+    }
 }
\ No newline at end of file
@@ -0,0 +1,177 @@
+package controller;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.util.Locale;
+import java.util.function.Function;
+
+/**
+ * Repositories picks the storage behind the controllers, for the whole run:
+ *
+ *   -Drepository=memory     (default) every record on the heap, InMemoryRepository
+ *   -Drepository=pagefile   records in <data dir>/<set>.pages, PageFileRepository
+ *   -Drepository.dir=...    where the page files go (default: the data directory)
+ *   -Drepository.cachePages=N   page cache per file (default 1024 pages = 8 MB)
+ *   -Drepository.<set>=...  the same choice for one data set, e.g. -Drepository.appointments=mapped
+ *
+ * Appointments can also use "mapped": AppointmentStore, fixed-width records in
+ * <data dir>/appointments.store that are changed in place.
+ *
+ * Page files encode a record as the same columns the CSV file and the snapshot hold,
+ * rebuilt through the file's CsvSchema, so a record read back has exactly the fields
+ * a reload from CSV would give it.
+ */
+public final class Repositories {
+
+    public static final String MEMORY = "memory";
+    public static final String PAGE_FILE = "pagefile";
+    public static final String MAPPED = "mapped";
+    public static final int DEFAULT_CACHE_PAGES = 1024;
+
+    private Repositories() {
+    }
+
+    /**
+     * Create the repository for one data set, as configured.
+     *
+     * @param set The data set
+     * @param schema Its column schema
+     * @param idOf Reads a record's ID
+     * @return The repository
+     * @throws UncheckedIOException If a repository file cannot be opened
+     */
+    public static <T> Repository<T> create(DataLoadOrchestrator.DataSet set, CsvSchema<T> schema,
+                                           Function<? super T, String> idOf) {
+        String name = set.name().toLowerCase(Locale.ROOT);
+        String kind = kind(set);
+        String path = resolveDirectory() + name;
+        try {
+            if (kind.equals(MAPPED) && set == DataLoadOrchestrator.DataSet.APPOINTMENTS) {
+                @SuppressWarnings("unchecked")
+                Repository<T> store = (Repository<T>) AppointmentStore.open(Paths.get(path));
+                return closeOnExit(store, path + ".store");
+            }
+            if (kind.equals(PAGE_FILE)) {
+                return closeOnExit(PageFileRepository.open(Paths.get(path + ".pages"),
+                        Integer.getInteger("repository.cachePages", DEFAULT_CACHE_PAGES), codec(set, schema, idOf)),
+                        path + ".pages");
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not open repository file for " + name, e);
+        }
+        if (!kind.equals(MEMORY)) {
+            System.err.println("Repository " + kind + " is not available for " + name + ", keeping it in memory");
+        }
+        return new InMemoryRepository<>(idOf);
+    }
+
+    /**
+     * @param set The data set
+     * @return true if its records are kept on the heap, as configured; the binary
+     *         snapshot and the parallel loader only pay off (and only fit) then
+     */
+    public static boolean isInMemory(DataLoadOrchestrator.DataSet set) {
+        String kind = kind(set);
+        return !kind.equals(PAGE_FILE) && !(kind.equals(MAPPED) && set == DataLoadOrchestrator.DataSet.APPOINTMENTS);
+    }
+
+    /**
+     * @return true if every data set is kept on the heap
+     */
+    public static boolean isAllInMemory() {
+        for (DataLoadOrchestrator.DataSet set : DataLoadOrchestrator.DataSet.values()) {
+            if (!isInMemory(set)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static String kind(DataLoadOrchestrator.DataSet set) {
+        return System.getProperty("repository." + set.name().toLowerCase(Locale.ROOT),
+                System.getProperty("repository", MEMORY)).toLowerCase(Locale.ROOT);
+    }
+
+    private static <T> Repository<T> closeOnExit(Repository<T> repository, String path) {
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            try {
+                repository.close();
+            } catch (IOException e) {
+                System.err.println("Could not close " + path + ": " + e.getMessage());
+            }
+        }, "repository-close"));
+        return repository;
+    }
+
+    /**
+     * Encoding of one data set's records: per column, a varint of length + 1 (0 for
+     * null) followed by the UTF-8 bytes.
+     */
+    public static <T> PageFileRepository.Codec<T> codec(DataLoadOrchestrator.DataSet set, CsvSchema<T> schema,
+                                                        Function<? super T, String> idOf) {
+        return new PageFileRepository.Codec<T>() {
+            @Override
+            public String id(T item) {
+                return idOf.apply(item);
+            }
+
+            @Override
+            public byte[] encode(T item) {
+                String[] fields = SnapshotStore.columns(set, item);
+                ByteArrayOutputStream out = new ByteArrayOutputStream(128);
+                for (String field : fields) {
+                    if (field == null) {
+                        out.write(0);
+                        continue;
+                    }
+                    byte[] bytes = field.getBytes(StandardCharsets.UTF_8);
+                    writeVarint(out, bytes.length + 1);
+                    out.write(bytes, 0, bytes.length);
+                }
+                return out.toByteArray();
+            }
+
+            @Override
+            public T decode(byte[] bytes) {
+                String[] fields = new String[schema.size()];
+                int pos = 0;
+                for (int i = 0; i < fields.length && pos < bytes.length; i++) {
+                    int length = 0;
+                    int shift = 0;
+                    byte b;
+                    do {
+                        b = bytes[pos++];
+                        length |= (b & 0x7F) << shift;
+                        shift += 7;
+                    } while (b < 0);
+                    if (length > 0) {
+                        fields[i] = new String(bytes, pos, length - 1, StandardCharsets.UTF_8);
+                        pos += length - 1;
+                    }
+                }
+                return schema.bind(fields);
+            }
+        };
+    }
+
+    private static void writeVarint(ByteArrayOutputStream out, int value) {
+        while ((value & ~0x7F) != 0) {
+            out.write((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+
+    private static String resolveDirectory() {
+        String configured = System.getProperty("repository.dir");
+        if (configured != null) {
+            return configured.endsWith("/") ? configured : configured + "/";
+        }
+        // Same fallback as the data directory, for IntelliJ working directory differences
+        return new File("data/patients.csv.crdownload").exists() ? "data/" : "../data/";
+    }
+}
@@ -0,0 +1,240 @@
+package controller;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Objects;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Repository is where a controller keeps its records, found by record ID.
+ *
+ * Implementations:
+ * - InMemoryRepository: a list on the heap, as the controllers always had
+ * - PageFileRepository: records on disk in a B+tree page file, with only a bounded
+ *   page cache on the heap, for data sets larger than memory
+ * - AppointmentStore: appointments only, as fixed-width records in a memory-mapped
+ *   file that are changed in place
+ *
+ * Records handed out by a repository may be copies (the disk repositories decode a new
+ * object on every read), so a controller that changes a record must pass it back to
+ * update() for the change to stick.
+ *
+ * @param <T> The model class stored
+ */
+public interface Repository<T> extends Closeable {
+
+    /**
+     * @param id Record ID
+     * @return The record, or null if there is none with that ID
+     */
+    T get(String id);
+
+    /**
+     * Store a new record.
+     *
+     * @param item The record
+     */
+    void add(T item);
+
+    /**
+     * Store the changes made to a record, found by its ID.
+     *
+     * @param item The changed record
+     * @return false if no record has that ID
+     */
+    boolean update(T item);
+
+    /**
+     * @param id Record ID
+     * @return true if a record was removed
+     */
+    boolean remove(String id);
+
+    /**
+     * Replace everything with the given records (e.g. a freshly parsed file).
+     *
+     * @param items The new contents, consumed in order
+     */
+    void load(Stream<? extends T> items);
+
+    /**
+     * @return Number of records
+     */
+    int size();
+
+    /**
+     * @return Every record, lazily (a disk repository reads page by page)
+     */
+    Stream<T> stream();
+
+    /**
+     * @param filter Condition to match
+     * @return Records matching the condition, in repository order
+     */
+    default List<T> find(Predicate<? super T> filter) {
+        return stream().filter(filter).collect(Collectors.toList());
+    }
+
+    /**
+     * Ask the repository to keep a secondary index on a key (e.g. patient ID), so that
+     * findBy() with the same key function does not scan. Repositories without secondary
+     * indexes ignore this.
+     *
+     * @param key Reads the indexed field of a record; pass the same instance to findBy()
+     */
+    default void index(Function<? super T, String> key) {
+    }
+
+    /**
+     * Ask the repository to keep a sorted index on a key (e.g. a clinician's appointment
+     * times), so that findRange() with the same key function does not scan. A sorted
+     * index also answers findBy() and countBy(). Repositories without secondary indexes
+     * ignore this.
+     *
+     * @param key Reads the indexed field of a record, or null to leave the record out of
+     *            every range; pass the same instance to findRange()
+     */
+    default void indexSorted(Function<? super T, String> key) {
+    }
+
+    /**
+     * @param key Reads a field of a record
+     * @param from Lowest key of the range (inclusive)
+     * @param to End of the range (exclusive)
+     * @return Records whose field is in the range, in String order of the field and in
+     *         repository order among equal fields
+     */
+    default List<T> findRange(Function<? super T, String> key, String from, String to) {
+        List<T> found = find(item -> {
+            String field = key.apply(item);
+            return field != null && field.compareTo(from) >= 0 && field.compareTo(to) < 0;
+        });
+        found.sort(Comparator.comparing(key));
+        return found;
+    }
+
+    /**
+     * @param key Reads a field of a record
+     * @param value Value to match
+     * @return Records whose field equals the value, in repository order
+     */
+    default List<T> findBy(Function<? super T, String> key, String value) {
+        return find(item -> Objects.equals(key.apply(item), value));
+    }
+
+    /**
+     * @param key Reads a field of a record
+     * @param values Values to match
+     * @return Records whose field equals any of the values, in repository order
+     */
+    default List<T> findByAny(Function<? super T, String> key, Collection<String> values) {
+        return find(item -> {
+            String field = key.apply(item);
+            return values.stream().anyMatch(value -> Objects.equals(value, field));
+        });
+    }
+
+    /**
+     * @param key Reads a field of a record
+     * @param value Value to match
+     * @return Number of records whose field equals the value
+     */
+    default int countBy(Function<? super T, String> key, String value) {
+        return (int) stream().filter(item -> Objects.equals(key.apply(item), value)).count();
+    }
+
+    /**
+     * @return A copy of every record, in repository order
+     */
+    default List<T> list() {
+        return stream().collect(Collectors.toCollection(ArrayList::new));
+    }
+
+    /**
+     * Read-only view of every record, in repository order, without copying. The default
+     * reads through stream() as it is iterated (RepositoryView), so a disk repository
+     * never has every record on the heap at once. The view may follow later changes: do
+     * not change the repository while going through it, and take list() for a copy that
+     * must stay as it is.
+     *
+     * @return The records, unmodifiable
+     */
+    default List<T> view() {
+        return new RepositoryView<>(this);
+    }
+
+    /**
+     * Every record, for writing out on another thread (a background save) while this
+     * one goes on changing the repository. Take it on the thread that changes the
+     * repository. The default is a copy of the list; a repository that is safe to
+     * stream from another thread returns its stream instead, which may show changes made
+     * during the save.
+     *
+     * @return The records, in repository order
+     */
+    default Iterable<T> toSave() {
+        return list();
+    }
+
+    /**
+     * One page of records, in repository order.
+     *
+     * @param offset Records to skip
+     * @param limit Most records to return
+     * @return Up to limit records from position offset on (empty past the end)
+     */
+    default List<T> page(int offset, int limit) {
+        if (offset < 0 || limit < 0) {
+            throw new IllegalArgumentException("Negative offset or limit: " + offset + ", " + limit);
+        }
+        return stream().skip(offset).limit(limit).collect(Collectors.toList());
+    }
+
+    /**
+     * Whether the repository still holds the records of a source file as it is now,
+     * with the changes made since, from an earlier run: if so, the caller can skip
+     * load() and only apply the changes journaled after the source file was written.
+     * Memory never does.
+     *
+     * @param size Size of the source file in bytes
+     * @param modified Its last modification time, in milliseconds
+     * @return true if it was commit()ed with the same size and time and nothing changed
+     *         it since without being written out
+     */
+    default boolean isLoadedFrom(long size, long modified) {
+        return false;
+    }
+
+    /**
+     * Record that the repository now matches a source file (just loaded from it or just
+     * written to it), and write everything out so that isLoadedFrom() can find it after a
+     * restart.
+     *
+     * @param size Size of the source file in bytes
+     * @param modified Its last modification time, in milliseconds
+     * @throws IOException If it cannot be written
+     */
+    default void commit(long size, long modified) throws IOException {
+        flush();
+    }
+
+    /**
+     * Write out anything still buffered. Nothing to do for memory.
+     *
+     * @throws IOException If it cannot be written
+     */
+    default void flush() throws IOException {
+    }
+
+    @Override
+    default void close() throws IOException {
+        flush();
+    }
+}
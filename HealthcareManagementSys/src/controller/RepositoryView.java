@@ -0,0 +1,97 @@
+package controller;
+
+import java.util.AbstractSequentialList;
+import java.util.Iterator;
+import java.util.ListIterator;
+import java.util.NoSuchElementException;
+
+/**
+ * RepositoryView is the default Repository.view(): a read-only list that reads the
+ * repository's stream() as it is iterated instead of copying it, for repositories that
+ * do not keep their records in a list. One pass in order costs one pass over the
+ * stream; get(i), and every step back with previous(), start a new stream and skip to
+ * the position first.
+ *
+ * @param <T> The model class stored
+ */
+final class RepositoryView<T> extends AbstractSequentialList<T> {
+
+    private final Repository<T> repository;
+
+    RepositoryView(Repository<T> repository) {
+        this.repository = repository;
+    }
+
+    @Override
+    public int size() {
+        return repository.size();
+    }
+
+    @Override
+    public ListIterator<T> listIterator(int index) {
+        if (index < 0 || index > size()) {
+            throw new IndexOutOfBoundsException("Index " + index + " out of range for size " + size());
+        }
+        return new ListIterator<T>() {
+            private Iterator<T> records = from(index);
+            private int position = index;
+
+            @Override
+            public boolean hasNext() {
+                return records.hasNext();
+            }
+
+            @Override
+            public T next() {
+                T item = records.next();
+                position++;
+                return item;
+            }
+
+            @Override
+            public boolean hasPrevious() {
+                return position > 0;
+            }
+
+            @Override
+            public T previous() {
+                if (position == 0) {
+                    throw new NoSuchElementException();
+                }
+                position--;
+                T item = from(position).next();
+                records = from(position);
+                return item;
+            }
+
+            @Override
+            public int nextIndex() {
+                return position;
+            }
+
+            @Override
+            public int previousIndex() {
+                return position - 1;
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException("Repository views are read-only");
+            }
+
+            @Override
+            public void set(T item) {
+                throw new UnsupportedOperationException("Repository views are read-only");
+            }
+
+            @Override
+            public void add(T item) {
+                throw new UnsupportedOperationException("Repository views are read-only");
+            }
+        };
+    }
+
+    private Iterator<T> from(int position) {
+        return repository.stream().skip(position).iterator();
+    }
+}
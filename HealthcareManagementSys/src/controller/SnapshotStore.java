@@ -0,0 +1,461 @@
+package controller;
+
+import model.*;
+import java.io.*;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.function.BiConsumer;
+import java.util.zip.CRC32C;
+
+/**
+ * SnapshotStore keeps a compact binary copy of the whole dataset next to the CSV files,
+ * so a warm start does not have to re-parse any text.
+ *
+ * File layout (all numbers big-endian, as written by DataOutputStream):
+ *   header   : magic, version, source count, then per source CSV: name, size, mtime, CRC32C
+ *   sections : count, then per data set: tag, byte length, section bytes
+ *   section  : string table (count + length-prefixed UTF-8 strings),
+ *              record count, then per record: field count + one string index per field (-1 = null)
+ *
+ * A snapshot is only used when every source CSV still matches its header entry: same size
+ * and either the same mtime or the same content hash. Otherwise the caller falls back to CSV.
+ *
+ * Each section stores exactly the columns of its CSV file, in CsvSchemas slot order, and is
+ * decoded through the same schema as a CSV load, so both produce the same data.
+ */
+public class SnapshotStore {
+
+    public static final String FILE_NAME = "dataset.snapshot";
+
+    private static final int MAGIC = 0x4E485353; // "NHSS"
+    private static final int VERSION = 2;
+    private static final int HASH_BUFFER = 64 * 1024;
+
+    private final String pathPrefix;
+
+    public SnapshotStore(String pathPrefix) {
+        this.pathPrefix = pathPrefix;
+    }
+
+    /**
+     * Size, modification time and content hash of one source CSV.
+     * A hash of -1 means "not computed yet".
+     */
+    static final class Fingerprint {
+        final String fileName;
+        final long size;
+        final long modified;
+        final long hash;
+
+        Fingerprint(String fileName, long size, long modified, long hash) {
+            this.fileName = fileName;
+            this.size = size;
+            this.modified = modified;
+            this.hash = hash;
+        }
+
+        boolean sameStat(Fingerprint other) {
+            return other != null && size == other.size && modified == other.modified;
+        }
+    }
+
+    // ================= FINGERPRINTS =================
+
+    /**
+     * Cheap size + mtime check of every source CSV (no hashing).
+     *
+     * @return One fingerprint per data set, in DataSet order
+     */
+    Fingerprint[] statSources() {
+        DataLoadOrchestrator.DataSet[] sets = DataLoadOrchestrator.DataSet.values();
+        Fingerprint[] result = new Fingerprint[sets.length];
+        for (int i = 0; i < sets.length; i++) {
+            File f = new File(pathPrefix + sets[i].getFileName());
+            result[i] = new Fingerprint(sets[i].getFileName(), f.length(), f.lastModified(), -1);
+        }
+        return result;
+    }
+
+    private long hash(String fileName) throws IOException {
+        CRC32C crc = new CRC32C();
+        byte[] buffer = new byte[HASH_BUFFER];
+        try (InputStream in = new FileInputStream(pathPrefix + fileName)) {
+            int read;
+            while ((read = in.read(buffer)) > 0) {
+                crc.update(buffer, 0, read);
+            }
+        }
+        return crc.getValue();
+    }
+
+    // ================= WRITE =================
+
+    /**
+     * Write a snapshot of the current controller contents.
+     * Used after Save All, once the CSV files on disk match the sections.
+     *
+     * @param sections Encoded sections in DataSet order
+     * @throws IOException If the snapshot could not be written
+     */
+    void writeCurrent(byte[][] sections) throws IOException {
+        write(statSources(), sections);
+    }
+
+    /**
+     * Write pre-encoded sections, provided the source CSVs still look like they did
+     * when the data was read (expected). Hashes are taken now.
+     *
+     * @param expected Fingerprints taken before the data was loaded
+     * @param sections Encoded sections in DataSet order
+     * @return true if written, false if a source changed in the meantime
+     * @throws IOException If the snapshot could not be written
+     */
+    boolean write(Fingerprint[] expected, byte[][] sections) throws IOException {
+        Fingerprint[] now = statSources();
+        Fingerprint[] hashed = new Fingerprint[now.length];
+        for (int i = 0; i < now.length; i++) {
+            if (!now[i].sameStat(expected[i])) {
+                return false;
+            }
+            hashed[i] = new Fingerprint(now[i].fileName, now[i].size, now[i].modified, hash(now[i].fileName));
+        }
+
+        Path target = Paths.get(pathPrefix + FILE_NAME);
+        Path temp = Paths.get(pathPrefix + FILE_NAME + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp), HASH_BUFFER))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(hashed.length);
+            for (Fingerprint f : hashed) {
+                out.writeUTF(f.fileName);
+                out.writeLong(f.size);
+                out.writeLong(f.modified);
+                out.writeLong(f.hash);
+            }
+            out.writeInt(sections.length);
+            for (int i = 0; i < sections.length; i++) {
+                out.writeByte(i);
+                out.writeInt(sections[i].length);
+                out.write(sections[i]);
+            }
+        }
+        try {
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+        System.out.println("Snapshot written to " + target);
+        return true;
+    }
+
+    // Column extractors, one per data set. Fields are filled in CsvSchemas slot order, and
+    // only the columns the CSV file actually stores are kept (others stay null and get the
+    // same defaults on decode as a CSV load would give them).
+
+    private static final BiConsumer<Patient, String[]> PATIENT_COLUMNS = (p, f) -> {
+        f[0] = p.getUserId(); f[1] = p.getName(); f[2] = p.getNhsNumber(); f[3] = p.getEmail(); f[4] = p.getPhone();
+    };
+
+    private static final BiConsumer<Clinician, String[]> CLINICIAN_COLUMNS = (c, f) -> {
+        f[0] = c.getClinicianId(); f[1] = c.getFirstName(); f[2] = c.getLastName(); f[3] = c.getTitle();
+        f[4] = c.getSpeciality(); f[5] = c.getGmcNumber(); f[6] = c.getPhone(); f[7] = c.getEmail();
+        f[8] = c.getWorkplaceId(); f[9] = c.getWorkplaceType(); f[10] = c.getEmploymentStatus(); f[11] = c.getStartDate();
+    };
+
+    private static final BiConsumer<Appointment, String[]> APPOINTMENT_COLUMNS = (a, f) -> {
+        f[0] = a.getAppointmentId(); f[1] = a.getPatientId(); f[2] = a.getClinicianId();
+        f[3] = a.getDateTime(); f[4] = a.getStatus(); f[5] = a.getReason();
+    };
+
+    private static final BiConsumer<Prescription, String[]> PRESCRIPTION_COLUMNS = (p, f) -> {
+        f[0] = p.getPrescriptionId(); f[1] = p.getPatientId(); f[2] = p.getMedication();
+        f[3] = p.getDosage(); f[4] = p.getStatus();
+    };
+
+    private static final BiConsumer<Referral, String[]> REFERRAL_COLUMNS = (r, f) -> {
+        f[0] = r.getReferralId(); f[1] = r.getPatientId(); f[2] = r.getFromGpId(); f[3] = r.getToSpecialistId();
+        f[4] = r.getReason(); f[5] = r.getStatus(); f[6] = r.getUrgencyLevel();
+    };
+
+    private static final BiConsumer<Staff, String[]> STAFF_COLUMNS = (s, f) -> {
+        f[0] = s.getStaffId(); f[1] = s.getFirstName(); f[2] = s.getLastName(); f[3] = s.getRole();
+        f[4] = s.getDepartment(); f[5] = s.getFacilityId(); f[6] = s.getPhone(); f[7] = s.getEmail();
+        f[8] = s.getEmploymentStatus(); f[9] = s.getStartDate(); f[10] = s.getLineManager(); f[11] = s.getAccessLevel();
+    };
+
+    private static final BiConsumer<Facility, String[]> FACILITY_COLUMNS = (fac, f) -> {
+        f[0] = fac.getFacilityId(); f[1] = fac.getFacilityName(); f[2] = fac.getFacilityType(); f[3] = fac.getAddress();
+        f[4] = fac.getPostcode(); f[5] = fac.getPhone(); f[6] = fac.getEmail(); f[7] = fac.getOpeningHours();
+        f[8] = fac.getManagerName(); f[9] = String.valueOf(fac.getCapacity()); f[10] = fac.getSpecialitiesOffered();
+    };
+
+    static byte[] encodePatients(List<Patient> patients) {
+        return encode(patients, CsvSchemas.PATIENTS, PATIENT_COLUMNS);
+    }
+
+    static byte[] encodeClinicians(List<Clinician> clinicians) {
+        return encode(clinicians, CsvSchemas.CLINICIANS, CLINICIAN_COLUMNS);
+    }
+
+    static byte[] encodeAppointments(List<Appointment> appointments) {
+        return encode(appointments, CsvSchemas.APPOINTMENTS, APPOINTMENT_COLUMNS);
+    }
+
+    static byte[] encodePrescriptions(List<Prescription> prescriptions) {
+        return encode(prescriptions, CsvSchemas.PRESCRIPTIONS, PRESCRIPTION_COLUMNS);
+    }
+
+    static byte[] encodeReferrals(List<Referral> referrals) {
+        return encode(referrals, CsvSchemas.REFERRALS, REFERRAL_COLUMNS);
+    }
+
+    static byte[] encodeStaff(List<Staff> staff) {
+        return encode(staff, CsvSchemas.STAFF, STAFF_COLUMNS);
+    }
+
+    static byte[] encodeFacilities(List<Facility> facilities) {
+        return encode(facilities, CsvSchemas.FACILITIES, FACILITY_COLUMNS);
+    }
+
+    /**
+     * The stored columns of one record, in CsvSchemas slot order (as in a snapshot
+     * section). Binding them through the data set's schema gives the record back.
+     */
+    static String[] columns(DataLoadOrchestrator.DataSet set, Object row) {
+        switch (set) {
+            case PATIENTS: return columns(CsvSchemas.PATIENTS, PATIENT_COLUMNS, (Patient) row);
+            case CLINICIANS: return columns(CsvSchemas.CLINICIANS, CLINICIAN_COLUMNS, (Clinician) row);
+            case APPOINTMENTS: return columns(CsvSchemas.APPOINTMENTS, APPOINTMENT_COLUMNS, (Appointment) row);
+            case PRESCRIPTIONS: return columns(CsvSchemas.PRESCRIPTIONS, PRESCRIPTION_COLUMNS, (Prescription) row);
+            case REFERRALS: return columns(CsvSchemas.REFERRALS, REFERRAL_COLUMNS, (Referral) row);
+            case STAFF: return columns(CsvSchemas.STAFF, STAFF_COLUMNS, (Staff) row);
+            default: return columns(CsvSchemas.FACILITIES, FACILITY_COLUMNS, (Facility) row);
+        }
+    }
+
+    /**
+     * A new record from its stored columns, as columns() gives them.
+     */
+    static Object bind(DataLoadOrchestrator.DataSet set, String[] fields) {
+        switch (set) {
+            case PATIENTS: return CsvSchemas.PATIENTS.bind(fields);
+            case CLINICIANS: return CsvSchemas.CLINICIANS.bind(fields);
+            case APPOINTMENTS: return CsvSchemas.APPOINTMENTS.bind(fields);
+            case PRESCRIPTIONS: return CsvSchemas.PRESCRIPTIONS.bind(fields);
+            case REFERRALS: return CsvSchemas.REFERRALS.bind(fields);
+            case STAFF: return CsvSchemas.STAFF.bind(fields);
+            default: return CsvSchemas.FACILITIES.bind(fields);
+        }
+    }
+
+    /**
+     * A section from records already split into their stored columns (columns()).
+     */
+    static byte[] encodeColumns(String[][] rows) {
+        int fieldCount = rows.length == 0 ? 0 : rows[0].length;
+        return encode(Arrays.asList(rows), fieldCount, (row, fields) -> System.arraycopy(row, 0, fields, 0, fieldCount));
+    }
+
+    private static <T> String[] columns(CsvSchema<T> schema, BiConsumer<T, String[]> columns, T row) {
+        String[] fields = new String[schema.size()];
+        columns.accept(row, fields);
+        return fields;
+    }
+
+    private static <T> byte[] encode(List<T> rows, CsvSchema<T> schema, BiConsumer<T, String[]> columns) {
+        return encode(rows, schema.size(), columns);
+    }
+
+    private static <T> byte[] encode(List<T> rows, int fieldCount, BiConsumer<T, String[]> columns) {
+        Map<String, Integer> index = new HashMap<>();
+        List<String> table = new ArrayList<>();
+        int[] refs = new int[rows.size() * fieldCount];
+        String[] fields = new String[fieldCount];
+
+        int r = 0;
+        for (T row : rows) {
+            Arrays.fill(fields, null);
+            columns.accept(row, fields);
+            for (String value : fields) {
+                int ref = -1;
+                if (value != null) {
+                    Integer existing = index.get(value);
+                    if (existing == null) {
+                        existing = table.size();
+                        index.put(value, existing);
+                        table.add(value);
+                    }
+                    ref = existing;
+                }
+                refs[r++] = ref;
+            }
+        }
+
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(refs.length * 4 + table.size() * 16);
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeInt(table.size());
+            for (String value : table) {
+                byte[] utf8 = value.getBytes(StandardCharsets.UTF_8);
+                out.writeInt(utf8.length);
+                out.write(utf8);
+            }
+            out.writeInt(rows.size());
+            for (int i = 0; i < refs.length; i += fieldCount) {
+                out.writeShort(fieldCount);
+                for (int j = 0; j < fieldCount; j++) {
+                    out.writeInt(refs[i + j]);
+                }
+            }
+            out.flush();
+            return bytes.toByteArray();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e); // cannot happen with a ByteArrayOutputStream
+        }
+    }
+
+    // ================= READ =================
+
+    /**
+     * Raw, still encoded sections of a fresh snapshot. Each section is decoded
+     * on demand so the data sets can be decoded in parallel.
+     */
+    static final class Contents {
+        private final byte[][] sections;
+
+        Contents(byte[][] sections) {
+            this.sections = sections;
+        }
+
+        List<Patient> patients(SymbolTable symbols) throws IOException {
+            return decode(section(DataLoadOrchestrator.DataSet.PATIENTS), symbols, CsvSchemas.PATIENTS);
+        }
+
+        List<Clinician> clinicians(SymbolTable symbols) throws IOException {
+            return decode(section(DataLoadOrchestrator.DataSet.CLINICIANS), symbols, CsvSchemas.CLINICIANS);
+        }
+
+        List<Appointment> appointments(SymbolTable symbols) throws IOException {
+            return decode(section(DataLoadOrchestrator.DataSet.APPOINTMENTS), symbols, CsvSchemas.APPOINTMENTS);
+        }
+
+        List<Prescription> prescriptions(SymbolTable symbols) throws IOException {
+            return decode(section(DataLoadOrchestrator.DataSet.PRESCRIPTIONS), symbols, CsvSchemas.PRESCRIPTIONS);
+        }
+
+        List<Referral> referrals(SymbolTable symbols) throws IOException {
+            return decode(section(DataLoadOrchestrator.DataSet.REFERRALS), symbols, CsvSchemas.REFERRALS);
+        }
+
+        List<Staff> staff(SymbolTable symbols) throws IOException {
+            return decode(section(DataLoadOrchestrator.DataSet.STAFF), symbols, CsvSchemas.STAFF);
+        }
+
+        List<Facility> facilities(SymbolTable symbols) throws IOException {
+            return decode(section(DataLoadOrchestrator.DataSet.FACILITIES), symbols, CsvSchemas.FACILITIES);
+        }
+
+        private byte[] section(DataLoadOrchestrator.DataSet set) throws IOException {
+            byte[] section = sections[set.ordinal()];
+            if (section == null) {
+                throw new IOException("Snapshot has no " + set + " section");
+            }
+            return section;
+        }
+    }
+
+    /**
+     * Read the snapshot if it exists and every source CSV is unchanged.
+     *
+     * @return The snapshot contents, or null if the caller must load from CSV
+     */
+    Contents readIfFresh() {
+        File file = new File(pathPrefix + FILE_NAME);
+        if (!file.isFile()) {
+            return null;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), HASH_BUFFER))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                System.out.println("Snapshot ignored: unknown format");
+                return null;
+            }
+            Fingerprint[] current = statSources();
+            int sources = in.readInt();
+            if (sources != current.length) {
+                return null;
+            }
+            for (Fingerprint now : current) {
+                Fingerprint saved = new Fingerprint(in.readUTF(), in.readLong(), in.readLong(), in.readLong());
+                if (!saved.fileName.equals(now.fileName) || saved.size != now.size) {
+                    System.out.println("Snapshot stale: " + now.fileName + " changed");
+                    return null;
+                }
+                // Same size but touched: only trust it if the content is identical
+                if (saved.modified != now.modified && saved.hash != hash(now.fileName)) {
+                    System.out.println("Snapshot stale: " + now.fileName + " changed");
+                    return null;
+                }
+            }
+
+            int count = in.readInt();
+            if (count != current.length) {
+                return null;
+            }
+            byte[][] sections = new byte[count][];
+            for (int i = 0; i < count; i++) {
+                int tag = in.readUnsignedByte();
+                byte[] bytes = new byte[in.readInt()];
+                in.readFully(bytes);
+                if (tag >= count) {
+                    return null;
+                }
+                sections[tag] = bytes;
+            }
+            return new Contents(sections);
+        } catch (IOException e) {
+            System.err.println("Snapshot ignored: " + e.getMessage());
+            return null;
+        }
+    }
+
+    private static <T> List<T> decode(byte[] section, SymbolTable symbols, CsvSchema<T> schema) throws IOException {
+        try {
+            ByteBuffer in = ByteBuffer.wrap(section);
+
+            // Each distinct string is decoded once; the ones in symbol columns are also
+            // interned once, the first time a row uses them there
+            String[] table = new String[in.getInt()];
+            boolean[] interned = new boolean[table.length];
+            for (int i = 0; i < table.length; i++) {
+                int length = in.getInt();
+                table[i] = new String(section, in.position(), length, StandardCharsets.UTF_8);
+                in.position(in.position() + length);
+            }
+
+            int rows = in.getInt();
+            List<T> result = new ArrayList<>(rows);
+            String[] fields = new String[0];
+            for (int r = 0; r < rows; r++) {
+                int fieldCount = in.getShort() & 0xFFFF;
+                if (fields.length != fieldCount) {
+                    fields = new String[fieldCount];
+                }
+                for (int j = 0; j < fieldCount; j++) {
+                    int ref = in.getInt();
+                    if (ref >= 0 && !interned[ref] && j < schema.size() && schema.isSymbol(j)) {
+                        table[ref] = symbols.intern(table[ref]);
+                        interned[ref] = true;
+                    }
+                    fields[j] = ref < 0 ? null : table[ref];
+                }
+                result.add(schema.bind(fields));
+            }
+            return result;
+        } catch (BufferUnderflowException | IndexOutOfBoundsException e) {
+            throw new IOException("Corrupt snapshot section", e);
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package controller;
+
+import model.Staff;
+import java.util.*;
+import java.util.stream.Stream;
+
+/**
+ * StaffController manages all Staff operations (CRUD).
+ *
+ * @version 1.0
+ */
+public class StaffController {
+
+    private final Repository<Staff> staff;
+    private final ChangeTracker changes = new ChangeTracker();
+
+    public StaffController() {
+        this(Repositories.create(DataLoadOrchestrator.DataSet.STAFF, CsvSchemas.STAFF, Staff::getUserId));
+    }
+
+    public StaffController(Repository<Staff> staff) {
+        this.staff = staff;
+    }
+
+    public boolean addStaff(Staff member) {
+        if (member == null) return false;
+        staff.add(member);
+        changes.changed(member.getUserId(), member);
+        System.out.println("Staff added: " + member.getName());
+        return true;
+    }
+
+    public Staff getStaff(String staffId) {
+        return staff.get(staffId);
+    }
+
+    public List<Staff> getStaffByFacility(String facilityId) {
+        return staff.stream()
+                .filter(s -> s.getFacilityId().equals(facilityId))
+                .toList();
+    }
+
+    public boolean updateStaff(Staff member) {
+        Staff existing = getStaff(member.getUserId());
+        if (existing != null) {
+            existing.setName(member.getName());
+            existing.setEmail(member.getEmail());
+            existing.setRole(member.getRole());
+            existing.setDepartment(member.getDepartment());
+            staff.update(existing);
+            changes.changed(existing.getUserId(), existing);
+            return true;
+        }
+        return false;
+    }
+
+    // Put a new staff member in place of the stored one with the same ID, keeping its position
+    public boolean replaceStaff(Staff member) {
+        if (!staff.update(member)) {
+            return false;
+        }
+        changes.changed(member.getUserId(), member);
+        return true;
+    }
+
+    public boolean deleteStaff(String staffId) {
+        boolean removed = staff.remove(staffId);
+        if (removed) {
+            changes.deleted(staffId);
+        }
+        return removed;
+    }
+
+    public List<Staff> getAllStaff() {
+        return staff.list();
+    }
+
+    public List<Staff> getStaffView() {
+        return staff.view();
+    }
+
+    public List<Staff> getStaffPage(int offset, int limit) {
+        return staff.page(offset, limit);
+    }
+
+    public Iterable<Staff> getStaffToSave() {
+        return staff.toSave();
+    }
+
+    public void loadStaffFromData(List<Staff> loadedStaff) {
+        staff.load(loadedStaff != null ? loadedStaff.stream() : Stream.empty());
+        changes.loaded();
+        System.out.println("Loaded " + staff.size() + " staff into controller");
+    }
+
+    public void loadStaffFromStream(Stream<Staff> loadedStaff) {
+        staff.load(loadedStaff);
+        changes.loaded();
+        System.out.println("Loaded " + staff.size() + " staff into controller");
+    }
+
+    public ChangeTracker getChangeTracker() {
+        return changes;
+    }
+
+    // The loader and the compactor reopen and commit a disk repository through this
+    Repository<Staff> getRepository() {
+        return staff;
+    }
+
+    public int getStaffCount() {
+        return staff.size();
+    }
+}
@@ -0,0 +1,59 @@
+package controller;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * SymbolTable is a load-scoped dictionary for low-cardinality CSV columns
+ * (status, urgency, clinician IDs, medication, ...).
+ *
+ * Every equal value read during a load maps to ONE shared String instance, so millions
+ * of rows holding "Scheduled" or "C001" keep a single copy. The table is pre-seeded with
+ * the status/urgency literals used across the code, which means loaded values are the
+ * very same instances as those literals and equals() on them returns on the identity check.
+ *
+ * Safe to share between the parallel loader threads.
+ */
+public class SymbolTable {
+
+    // Values the controllers and GUI compare against as string literals
+    private static final String[] KNOWN_VALUES = {
+            "Scheduled", "Completed", "Cancelled",
+            "Issued", "Collected", "Expired",
+            "Pending", "Accepted", "Rejected", "In Progress", "Received",
+            "Routine", "Urgent", "Emergency",
+            "Surgery", "C001"
+    };
+
+    private final ConcurrentHashMap<String, String> symbols = new ConcurrentHashMap<>();
+
+    public SymbolTable() {
+        for (String value : KNOWN_VALUES) {
+            symbols.put(value, value);
+        }
+    }
+
+    /**
+     * Get the shared instance for a value, registering it on first sight.
+     *
+     * @param value The value read from the file (may be null)
+     * @return The canonical instance equal to value
+     */
+    public String intern(String value) {
+        if (value == null) {
+            return null;
+        }
+        String existing = symbols.get(value);
+        if (existing != null) {
+            return existing;
+        }
+        existing = symbols.putIfAbsent(value, value);
+        return existing != null ? existing : value;
+    }
+
+    /**
+     * @return Number of distinct values seen so far
+     */
+    public int size() {
+        return symbols.size();
+    }
+}
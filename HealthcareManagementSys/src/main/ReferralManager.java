@@ -2,8 +2,16 @@ package main;
 
 import model.Referral;
 import java.util.*;
-import java.io.FileWriter;
+import java.util.zip.CRC32;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
 import java.io.IOException;
+import java.io.Writer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
 
 /**
  * ReferralManager - Singleton pattern for managing referral queue.
@@ -11,15 +19,36 @@ import java.io.IOException;
  * Responsibilities:
  * - Maintain single referral queue across entire system
  * - Process referrals (queue & update EHR)
- * - Persist referrals to CSV file
+ * - Persist referrals to file
+ *
+ * Persistence is an append-only file kept open once open() (or persistReferralsToFile())
+ * has been called: every created or updated referral is appended as one line, so the
+ * cost of persisting a referral does not depend on the size of the queue. A line is
+ *
+ *   R  id  patient  fromGp  toSpecialist  reason  status  urgency  date  summary  crc
+ *
+ * tab separated, with tabs, line breaks and backslashes escaped and null written as \0.
+ * The CRC32 covers the rest of the line, so a line cut short by a crash is ignored.
+ * On open() the file is replayed (the last line per ID wins) to rebuild the queue.
+ * When superseded lines outnumber the live ones, and on open() if there are any, the
+ * file is rewritten with one line per referral and swapped in atomically.
  *
  * @author Hrithik Chandra
  * @version 1.0
  */
 public class ReferralManager {
 
+    private static final String RECORD = "R";
+    private static final int FIELDS = 11;                 // RECORD + 9 referral fields + crc
+    private static final int MIN_COMPACT_LINES = 1024;
+
     private static ReferralManager instance;
     private List<Referral> referralQueue;
+    private final Map<String, Integer> positions = new HashMap<>();   // referral ID -> index in referralQueue
+
+    private Path persistFile;
+    private Writer persistWriter;
+    private long persistedLines;
 
     private ReferralManager() {
         this.referralQueue = new ArrayList<>();
@@ -37,11 +66,32 @@ public class ReferralManager {
      *
      * @param referral The referral to process
      */
-    public void createReferral(Referral referral) {
-        referralQueue.add(referral);
+    public synchronized void createReferral(Referral referral) {
+        Integer position = positions.get(referral.getReferralId());
+        if (position != null) {
+            referralQueue.set(position, referral);
+        } else {
+            positions.put(referral.getReferralId(), referralQueue.size());
+            referralQueue.add(referral);
+        }
+        append(referral);
         updateEHR(referral);
     }
 
+    /**
+     * Record a change to a queued referral (e.g. its status)
+     *
+     * @param referral The changed referral; ignored if it was never queued
+     */
+    public synchronized void updateReferral(Referral referral) {
+        Integer position = positions.get(referral.getReferralId());
+        if (position == null) {
+            return;
+        }
+        referralQueue.set(position, referral);
+        append(referral);
+    }
+
     /**
      * Update the patient's Electronic Health Record with referral info
      *
@@ -56,30 +106,254 @@ public class ReferralManager {
      *
      * @return Copy of referralQueue
      */
-    public List<Referral> getReferralQueue() {
+    public synchronized List<Referral> getReferralQueue() {
         return new ArrayList<>(referralQueue);
     }
 
     /**
-     * Persist all referrals to a CSV file
+     * Load the queue from a persistence file and keep appending to it from now on.
+     * Referrals already queued that the file does not know are added to it.
+     *
+     * @param filepath Persistence file (created if missing)
+     * @throws IOException If the file cannot be read or opened
+     */
+    public synchronized void open(String filepath) throws IOException {
+        closeWriter();
+        Path path = Paths.get(filepath);
+        boolean onlyFromFile = referralQueue.isEmpty();
+        long lines = 0;
+        long damaged = 0;
+
+        if (Files.exists(path)) {
+            try (BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    lines++;
+                    Referral referral = parse(line);
+                    if (referral == null) {
+                        damaged++;
+                        continue;
+                    }
+                    Integer position = positions.get(referral.getReferralId());
+                    if (position != null) {
+                        referralQueue.set(position, referral);
+                    } else {
+                        positions.put(referral.getReferralId(), referralQueue.size());
+                        referralQueue.add(referral);
+                    }
+                }
+            }
+        }
+        if (damaged > 0) {
+            System.err.println("WARNING: Skipped " + damaged + " unreadable lines in " + filepath);
+        }
+        if (damaged > 1) {
+            // More than a torn last line (e.g. a file in the old multi-line format): keep a copy before compacting
+            Files.copy(path, path.resolveSibling(path.getFileName() + ".bak"), StandardCopyOption.REPLACE_EXISTING);
+        }
+
+        persistFile = path;
+        if (!onlyFromFile || lines != referralQueue.size()) {
+            compact(); // drop superseded and damaged lines, add what was only in memory
+        } else {
+            persistWriter = openWriter(path);
+            persistedLines = lines;
+        }
+        System.out.println("Referral queue: " + referralQueue.size() + " referrals from " + filepath);
+    }
+
+    /**
+     * Persist all referrals to file
+     *
+     * Once the file is open every change is already appended, so this only forces it
+     * to disk. A different path becomes the new persistence file.
      *
-     * @param filepath Path where to save the CSV
+     * @param filepath Path where to save the referrals
      * @throws IOException If file writing fails
      */
-    public void persistReferralsToFile(String filepath) throws IOException {
-        FileWriter writer = new FileWriter(filepath);
+    public synchronized void persistReferralsToFile(String filepath) throws IOException {
+        Path path = Paths.get(filepath);
+        if (persistWriter == null || !path.equals(persistFile)) {
+            closeWriter();
+            persistFile = path;
+            compact();
+        }
+        persistWriter.flush();
+        try (FileChannel channel = FileChannel.open(persistFile, StandardOpenOption.WRITE)) {
+            channel.force(true);
+        }
+    }
+
+    /**
+     * Rewrite the persistence file with one line per queued referral
+     *
+     * @throws IOException If the file cannot be rewritten (the old one is kept)
+     */
+    public synchronized void compact() throws IOException {
+        if (persistFile == null) {
+            return;
+        }
+        Path temp = persistFile.resolveSibling(persistFile.getFileName() + ".tmp");
+        try (BufferedWriter writer = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+            StringBuilder line = new StringBuilder(256);
+            for (Referral referral : referralQueue) {
+                line.setLength(0);
+                format(referral, line);
+                writer.append(line);
+            }
+        }
+        // The old file stays open for appends until the new one is in place
+        closeWriter();
+        try {
+            Files.move(temp, persistFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            persistedLines = referralQueue.size();
+        } finally {
+            persistWriter = openWriter(persistFile);
+        }
+    }
+
+    /**
+     * Flush and close the persistence file
+     *
+     * @throws IOException If the last lines cannot be written
+     */
+    public synchronized void close() throws IOException {
+        closeWriter();
+        persistFile = null;
+    }
+
+    // ================= FILE FORMAT =================
+
+    private void append(Referral referral) {
+        if (persistWriter == null) {
+            return;
+        }
+        try {
+            StringBuilder line = new StringBuilder(256);
+            format(referral, line);
+            persistWriter.append(line);
+            persistWriter.flush();
+            persistedLines++;
+            if (persistedLines >= MIN_COMPACT_LINES && persistedLines >= 2L * referralQueue.size()) {
+                compact();
+            }
+        } catch (IOException e) {
+            System.err.println("ERROR: Could not persist referral " + referral.getReferralId() + ": " + e.getMessage());
+        }
+    }
+
+    private static Writer openWriter(Path path) throws IOException {
+        return Files.newBufferedWriter(path, StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+    }
+
+    private void closeWriter() throws IOException {
+        if (persistWriter != null) {
+            Writer writer = persistWriter;
+            persistWriter = null;
+            writer.close();
+        }
+    }
+
+    private static void format(Referral r, StringBuilder line) {
+        int start = line.length();
+        line.append(RECORD);
+        field(line, r.getReferralId());
+        field(line, r.getPatientId());
+        field(line, r.getFromGpId());
+        field(line, r.getToSpecialistId());
+        field(line, r.getReason());
+        field(line, r.getStatus());
+        field(line, r.getUrgencyLevel());
+        field(line, r.getReferralDate() == null ? null : r.getReferralDate().toString());
+        field(line, r.getClinicalSummary());
+        long crc = crc(line, start, line.length());
+        line.append('\t').append(Long.toHexString(crc)).append('\n');
+    }
+
+    private static void field(StringBuilder line, String value) {
+        line.append('\t');
+        if (value == null) {
+            line.append("\\0");
+            return;
+        }
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '\\': line.append("\\\\"); break;
+                case '\t': line.append("\\t"); break;
+                case '\n': line.append("\\n"); break;
+                case '\r': line.append("\\r"); break;
+                default: line.append(c);
+            }
+        }
+    }
 
-        for (Referral r : referralQueue) {
-            writer.write("ID: " + r.getReferralId() + "\n");
-            writer.write("Patient: " + r.getPatientId() + "\n");
-            writer.write("From GP: " + r.getFromGpId() + "\n");
-            writer.write("To Specialist: " + r.getToSpecialistId() + "\n");
-            writer.write("Reason: " + r.getReason() + "\n");
-            writer.write("Status: " + r.getStatus() + "\n");
-            writer.write("Urgency: " + r.getUrgencyLevel() + "\n");
-            writer.write("Referral Date: " + r.getReferralDate() + "\n\n");
+    // null if the line is damaged or not a referral record
+    private static Referral parse(String line) {
+        int lastTab = line.lastIndexOf('\t');
+        if (lastTab < 0 || !line.startsWith(RECORD + "\t")) {
+            return null;
+        }
+        try {
+            if (Long.parseLong(line.substring(lastTab + 1), 16) != crc(line, 0, lastTab)) {
+                return null;
+            }
+        } catch (NumberFormatException e) {
+            return null;
+        }
+
+        List<String> fields = new ArrayList<>(FIELDS);
+        int from = 0;
+        while (from <= lastTab) {
+            int tab = line.indexOf('\t', from);
+            fields.add(unescape(line, from, tab));
+            from = tab + 1;
+        }
+        if (fields.size() != FIELDS - 1) {
+            return null;
         }
 
-        writer.close();
+        Referral referral = new Referral(fields.get(1), fields.get(2), fields.get(3), fields.get(4), fields.get(5));
+        referral.setStatus(fields.get(6));
+        referral.setUrgencyLevel(fields.get(7));
+        try {
+            referral.setReferralDate(fields.get(8) == null ? null : LocalDate.parse(fields.get(8)));
+        } catch (DateTimeParseException e) {
+            return null;
+        }
+        referral.setClinicalSummary(fields.get(9));
+        return referral;
+    }
+
+    private static String unescape(String line, int from, int to) {
+        int backslash = line.indexOf('\\', from);
+        if (backslash < 0 || backslash >= to) {
+            return line.substring(from, to);
+        }
+        if (to - from == 2 && line.charAt(from + 1) == '0') {
+            return null;
+        }
+        StringBuilder value = new StringBuilder(to - from);
+        for (int i = from; i < to; i++) {
+            char c = line.charAt(i);
+            if (c == '\\' && i + 1 < to) {
+                char next = line.charAt(++i);
+                switch (next) {
+                    case 't': value.append('\t'); break;
+                    case 'n': value.append('\n'); break;
+                    case 'r': value.append('\r'); break;
+                    default: value.append(next);
+                }
+            } else {
+                value.append(c);
+            }
+        }
+        return value.toString();
+    }
+
+    private static long crc(CharSequence line, int from, int to) {
+        CRC32 crc = new CRC32();
+        crc.update(line.subSequence(from, to).toString().getBytes(StandardCharsets.UTF_8));
+        return crc.getValue();
     }
 }
@@ -0,0 +1,135 @@
+package model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Facility class representing a GP surgery, hospital or clinic.
+ *
+ * @version 1.0
+ */
+public class Facility {
+
+    // === ATTRIBUTES ===
+    private String facilityId;
+    private String facilityName;
+    private String facilityType;          // "GP Surgery", "Hospital", ...
+    private String address;
+    private String postcode;
+    private String phone;
+    private String email;
+    private String openingHours;
+    private String managerName;
+    private int capacity;
+    private String specialitiesOffered;   // Pipe separated, e.g. "General Practice|Vaccinations"
+
+    // === CONSTRUCTOR ===
+    public Facility(String facilityId, String facilityName, String facilityType, String address, String postcode) {
+        this.facilityId = facilityId;
+        this.facilityName = facilityName;
+        this.facilityType = facilityType;
+        this.address = address;
+        this.postcode = postcode;
+    }
+
+    // === METHODS ===
+
+    /**
+     * Split specialitiesOffered into a list.
+     *
+     * @return List of specialities (empty if none)
+     */
+    public List<String> getSpecialitiesList() {
+        if (specialitiesOffered == null || specialitiesOffered.isBlank()) {
+            return new ArrayList<>();
+        }
+        return new ArrayList<>(Arrays.asList(specialitiesOffered.split("\\|")));
+    }
+
+    // === GETTERS & SETTERS ===
+
+    public String getFacilityId() {
+        return facilityId;
+    }
+
+    public String getFacilityName() {
+        return facilityName;
+    }
+
+    public void setFacilityName(String facilityName) {
+        this.facilityName = facilityName;
+    }
+
+    public String getFacilityType() {
+        return facilityType;
+    }
+
+    public void setFacilityType(String facilityType) {
+        this.facilityType = facilityType;
+    }
+
+    public String getAddress() {
+        return address;
+    }
+
+    public void setAddress(String address) {
+        this.address = address;
+    }
+
+    public String getPostcode() {
+        return postcode;
+    }
+
+    public void setPostcode(String postcode) {
+        this.postcode = postcode;
+    }
+
+    public String getPhone() {
+        return phone;
+    }
+
+    public void setPhone(String phone) {
+        this.phone = phone;
+    }
+
+    public String getEmail() {
+        return email;
+    }
+
+    public void setEmail(String email) {
+        this.email = email;
+    }
+
+    public String getOpeningHours() {
+        return openingHours;
+    }
+
+    public void setOpeningHours(String openingHours) {
+        this.openingHours = openingHours;
+    }
+
+    public String getManagerName() {
+        return managerName;
+    }
+
+    public void setManagerName(String managerName) {
+        this.managerName = managerName;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public void setCapacity(int capacity) {
+        this.capacity = capacity;
+    }
+
+    public String getSpecialitiesOffered() {
+        return specialitiesOffered;
+    }
+
+    public void setSpecialitiesOffered(String specialitiesOffered) {
+        this.specialitiesOffered = specialitiesOffered;
+    }
+}
@@ -90,6 +90,10 @@ public class Referral {
         return referralDate;
     }
 
+    public void setReferralDate(LocalDate referralDate) {
+        this.referralDate = referralDate;
+    }
+
     public String getUrgencyLevel() {
         return urgencyLevel;
     }
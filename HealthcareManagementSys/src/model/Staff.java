@@ -0,0 +1,85 @@
+package model;
+
+/**
+ * Staff class representing non-clinical practice staff (managers, receptionists, admin).
+ * Extends User class for common attributes.
+ *
+ * @version 1.0
+ */
+public class Staff extends User {
+
+    // === STAFF-SPECIFIC ATTRIBUTES ===
+    private String firstName;
+    private String lastName;
+    private String role;                // e.g. "Practice Manager", "Receptionist"
+    private String department;
+    private String facilityId;          // Facility this member of staff works at
+    private String employmentStatus;    // Full-time, Part-time
+    private String startDate;           // YYYY-MM-DD format
+    private String lineManager;
+    private String accessLevel;         // e.g. "Manager", "Standard", "Basic"
+
+    /**
+     * Full constructor matching all 12 CSV columns.
+     */
+    public Staff(String staffId, String firstName, String lastName,
+                 String role, String department, String facilityId,
+                 String phone, String email,
+                 String employmentStatus, String startDate,
+                 String lineManager, String accessLevel) {
+        // Call User constructor with combined name
+        super(staffId, firstName + " " + lastName, email, phone);
+
+        this.firstName = firstName;
+        this.lastName = lastName;
+        this.role = role;
+        this.department = department;
+        this.facilityId = facilityId;
+        this.employmentStatus = employmentStatus;
+        this.startDate = startDate;
+        this.lineManager = lineManager;
+        this.accessLevel = accessLevel;
+    }
+
+    @Override
+    public void performRole() {
+        System.out.println(firstName + " " + lastName + " (" + role + ", " + department
+                + ") is working at facility " + facilityId);
+    }
+
+    // === GETTERS ===
+    // Inherited: getUserId(), getName(), getEmail(), getPhone()
+
+    public String getStaffId() { return getUserId(); }  // Alias for clarity
+    public String getFirstName() { return firstName; }
+    public String getLastName() { return lastName; }
+    public String getRole() { return role; }
+    public String getDepartment() { return department; }
+    public String getFacilityId() { return facilityId; }
+    public String getEmploymentStatus() { return employmentStatus; }
+    public String getStartDate() { return startDate; }
+    public String getLineManager() { return lineManager; }
+    public String getAccessLevel() { return accessLevel; }
+
+    // === SETTERS ===
+    // Inherited: setName(), setEmail()
+
+    public void setFirstName(String firstName) {
+        this.firstName = firstName;
+        setName(firstName + " " + lastName);  // Update inherited name field
+    }
+
+    public void setLastName(String lastName) {
+        this.lastName = lastName;
+        setName(firstName + " " + lastName);  // Update inherited name field
+    }
+
+    public void setRole(String role) { this.role = role; }
+    public void setDepartment(String department) { this.department = department; }
+    public void setFacilityId(String facilityId) { this.facilityId = facilityId; }
+    public void setPhone(String phone) { this.phone = phone; }
+    public void setEmploymentStatus(String employmentStatus) { this.employmentStatus = employmentStatus; }
+    public void setStartDate(String startDate) { this.startDate = startDate; }
+    public void setLineManager(String lineManager) { this.lineManager = lineManager; }
+    public void setAccessLevel(String accessLevel) { this.accessLevel = accessLevel; }
+}
@@ -6,15 +6,24 @@ import javax.swing.*;
 import javax.swing.table.DefaultTableModel;
 import java.awt.*;
 import java.io.IOException;
+import java.util.EnumSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 public class HealthcareGUI extends JFrame {
 
+    private static final String REFERRAL_QUEUE_FILE = "referral_queue.txt";
+
     private PatientController patientController;
     private AppointmentController appointmentController;
     private PrescriptionController prescriptionController;
     private ReferralController referralController;
     private ClinicianController clinicianController;  // FIX 1: Add missing field
+    private StaffController staffController;
+    private FacilityController facilityController;
 
     private JTabbedPane tabbedPane;
     private JTable patientTable;
@@ -22,6 +31,22 @@ public class HealthcareGUI extends JFrame {
     private JTable prescriptionTable;
     private JTable referralTable;
     private JTable clinicianTable;  
+    private JTable staffTable;
+    private JTable facilityTable;
+
+    // Completes once every startup file has finished loading (or failed)
+    private CompletableFuture<Void> dataLoaded;
+
+    // The data sets whose file loaded; only these are watched, journaled and saved (EDT only)
+    private final Set<DataLoadOrchestrator.DataSet> loadedSets = EnumSet.noneOf(DataLoadOrchestrator.DataSet.class);
+
+    // Applies changes other programs make to the data files (null until loading finished)
+    private DataFileWatcher dataFileWatcher;
+
+    // Write-ahead log of every change, and the job that folds it into the CSV files
+    // (both null until loading finished; journal stays null if it could not be opened)
+    private MutationJournal journal;
+    private JournalCompactor journalCompactor;
 
     public HealthcareGUI() {
         // Initialize Controllers
@@ -30,9 +55,8 @@ public class HealthcareGUI extends JFrame {
         prescriptionController = new PrescriptionController();
         referralController = new ReferralController();
         clinicianController = new ClinicianController();  
-
-        // Load Data
-        loadData();
+        staffController = new StaffController();
+        facilityController = new FacilityController();
 
         // Setup Frame
         setTitle("NHS Healthcare Management System");
@@ -40,77 +64,342 @@ public class HealthcareGUI extends JFrame {
         setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
         setLocationRelativeTo(null);
 
-        // UI Initialization
+        // UI Initialization - every tab shows a loading indicator until its file is ready
         tabbedPane = new JTabbedPane();
-        tabbedPane.addTab("Patients", createPatientPanel());
-        tabbedPane.addTab("Clinicians", createClinicianPanel());  
-        tabbedPane.addTab("Appointments", createAppointmentPanel());
-        tabbedPane.addTab("Prescriptions", createPrescriptionPanel());
-        tabbedPane.addTab("Referrals", createReferralPanel());
+        for (DataLoadOrchestrator.DataSet set : DataLoadOrchestrator.DataSet.values()) {
+            tabbedPane.addTab(tabTitle(set), createLoadingPanel(set));
+        }
 
         add(tabbedPane);
+
+        // Load Data (in the background, the window opens straight away)
+        loadData();
+    }
+
+    private static String tabTitle(DataLoadOrchestrator.DataSet set) {
+        switch (set) {
+            case PATIENTS: return "Patients";
+            case CLINICIANS: return "Clinicians";
+            case APPOINTMENTS: return "Appointments";
+            case PRESCRIPTIONS: return "Prescriptions";
+            case REFERRALS: return "Referrals";
+            case STAFF: return "Staff";
+            default: return "Facilities";
+        }
+    }
+
+    private JPanel createLoadingPanel(DataLoadOrchestrator.DataSet set) {
+        JPanel panel = new JPanel(new GridBagLayout());
+        JPanel box = new JPanel(new BorderLayout(0, 8));
+        box.add(new JLabel("Loading " + tabTitle(set).toLowerCase() + "...", SwingConstants.CENTER), BorderLayout.NORTH);
+        JProgressBar bar = new JProgressBar();
+        bar.setIndeterminate(true);
+        box.add(bar, BorderLayout.CENTER);
+        panel.add(box);
+        return panel;
+    }
+
+    private JPanel createPanel(DataLoadOrchestrator.DataSet set) {
+        switch (set) {
+            case PATIENTS: return createPatientPanel();
+            case CLINICIANS: return createClinicianPanel();
+            case APPOINTMENTS: return createAppointmentPanel();
+            case PRESCRIPTIONS: return createPrescriptionPanel();
+            case REFERRALS: return createReferralPanel();
+            case STAFF: return createStaffPanel();
+            default: return createFacilityPanel();
+        }
+    }
+
+    private static String resolvePathPrefix() {
+        // Adjust paths if needed depending on execution context
+        String pathPrefix = "data/";
+        // Fallback for IntelliJ working directory differences
+        if (!new java.io.File(pathPrefix + "patients.csv.crdownload").exists()) {
+            pathPrefix = "../data/";
+        }
+        return pathPrefix;
     }
 
 
     private void loadData() {
-        DataLoader loader = new DataLoader();
+        DataLoadOrchestrator orchestrator = new DataLoadOrchestrator(resolvePathPrefix(),
+                patientController, clinicianController, appointmentController,
+                prescriptionController, referralController, staffController, facilityController);
+
+        // Load CSVs in parallel; each tab is swapped in on the EDT once its own file is done
+        Map<DataLoadOrchestrator.DataSet, CompletableFuture<Integer>> futures = orchestrator.loadAll();
+        futures.forEach((set, future) -> future.whenComplete((count, error) ->
+                SwingUtilities.invokeLater(() -> onDataSetLoaded(set, error))));
+
+        // Once every file is done, loaded or not: a file that failed must not stop the others
+        // from being watched and saved, so only its own set is left out
+        dataLoaded = CompletableFuture.allOf(futures.values().toArray(new CompletableFuture<?>[0]));
+        dataLoaded.whenComplete((ignored, error) -> SwingUtilities.invokeLater(() -> {
+            futures.forEach((set, future) -> {
+                if (!future.isCompletedExceptionally()) {
+                    loadedSets.add(set);
+                }
+            });
+            startWatchingDataFiles();
+            startJournal();
+        }));
+        openReferralQueue();
+    }
+
+    // The ReferralManager queue has its own append-only file next to the CSV files
+    private void openReferralQueue() {
         try {
-            // Load CSVs
-            // Adjust paths if needed depending on execution context
-            String pathPrefix = "data/";
-            // Fallback for IntelliJ working directory differences
-            if (!new java.io.File(pathPrefix + "patients.csv.crdownload").exists()) {
-                pathPrefix = "../data/";
+            referralController.openReferralQueue(resolvePathPrefix() + REFERRAL_QUEUE_FILE);
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                try {
+                    referralController.closeReferralQueue();
+                } catch (IOException e) {
+                    System.err.println("Could not close referral queue: " + e.getMessage());
+                }
+            }, "referral-queue-close"));
+        } catch (IOException e) {
+            System.err.println("Could not open referral queue, it will not be persisted: " + e.getMessage());
+        }
+    }
+
+    // From here on every change is journaled, and the journal is folded into the CSV files
+    // in the background. Tuning: -Djournal.syncBatch, -Djournal.syncMillis, -Djournal.compactMillis
+    private void startJournal() {
+        String pathPrefix = resolvePathPrefix();
+        try {
+            MutationJournal opened = MutationJournal.open(pathPrefix,
+                    Integer.getInteger("journal.syncBatch", MutationJournal.DEFAULT_SYNC_BATCH),
+                    Long.getLong("journal.syncMillis", MutationJournal.DEFAULT_SYNC_MILLIS));
+            for (DataLoadOrchestrator.DataSet set : loadedSets) {
+                opened.attach(set, changeTrackerFor(set));
             }
+            journal = opened;
 
-            List<Patient> patients = loader.loadPatients(pathPrefix + "patients.csv.crdownload");
-            patientController.loadPatientsFromData(patients);
+            // Flush the last group commit when the window closes
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                try {
+                    opened.close();
+                } catch (IOException e) {
+                    System.err.println("Could not close journal: " + e.getMessage());
+                }
+            }, "journal-close"));
+        } catch (IOException e) {
+            System.err.println("Could not open journal, changes are only kept by Save All: " + e.getMessage());
+        }
 
-            List<Clinician> clinicians = loader.loadClinicians(pathPrefix + "clinicians.csv.crdownload");
-            clinicianController.loadCliniciansFromData(clinicians);
+        journalCompactor = new JournalCompactor(pathPrefix, journal, SwingUtilities::invokeLater, dataFileWatcher, loadedSets,
+                patientController, clinicianController, appointmentController,
+                prescriptionController, referralController, staffController, facilityController);
+        journalCompactor.start(Long.getLong("journal.compactMillis", JournalCompactor.DEFAULT_INTERVAL_MILLIS));
+    }
 
-            List<Appointment> appointments = loader.loadAppointments(pathPrefix + "appointments.csv.crdownload");
-            appointmentController.loadAppointmentsFromData(appointments);
+    private void startWatchingDataFiles() {
+        DataFileWatcher watcher = new DataFileWatcher(resolvePathPrefix(), SwingUtilities::invokeLater, this::onDataFilesChanged,
+                loadedSets, patientController, clinicianController, appointmentController,
+                prescriptionController, referralController, staffController, facilityController);
+        try {
+            watcher.start();
+            dataFileWatcher = watcher;
+        } catch (IOException e) {
+            System.err.println("Could not watch data files: " + e.getMessage());
+        }
+    }
 
-            List<Prescription> prescriptions = loader.loadPrescriptions(pathPrefix + "prescriptions.csv.crdownload");
-            prescriptionController.loadPrescriptionsFromData(prescriptions);
-            
-            List<Referral> referrals = loader.loadReferrals(pathPrefix + "referrals.csv.crdownload");
-            referralController.loadReferralsFromData(referrals);
+    // Runs on the EDT after the watcher has updated the controller: patch the matching table rows
+    private void onDataFilesChanged(DataFileWatcher.Changes changes) {
+        JTable table = tableFor(changes.getDataSet());
+        if (table == null) {
+            return;
+        }
+        DefaultTableModel model = (DefaultTableModel) table.getModel();
+        for (String id : changes.getDeleted()) {
+            int row = findRow(model, id);
+            if (row >= 0) {
+                model.removeRow(row);
+            }
+        }
+        for (Object updated : changes.getUpdated()) {
+            Object[] values = toTableRow(updated);
+            int row = findRow(model, values[0]);
+            if (row < 0) {
+                model.addRow(values);
+                continue;
+            }
+            for (int col = 0; col < values.length; col++) {
+                model.setValueAt(values[col], row, col);
+            }
+        }
+        for (Object added : changes.getAdded()) {
+            model.addRow(toTableRow(added));
+        }
+    }
+
+    private JTable tableFor(DataLoadOrchestrator.DataSet set) {
+        switch (set) {
+            case PATIENTS: return patientTable;
+            case CLINICIANS: return clinicianTable;
+            case APPOINTMENTS: return appointmentTable;
+            case PRESCRIPTIONS: return prescriptionTable;
+            case REFERRALS: return referralTable;
+            case STAFF: return staffTable;
+            default: return facilityTable;
+        }
+    }
+
+    private ChangeTracker changeTrackerFor(DataLoadOrchestrator.DataSet set) {
+        switch (set) {
+            case PATIENTS: return patientController.getChangeTracker();
+            case CLINICIANS: return clinicianController.getChangeTracker();
+            case APPOINTMENTS: return appointmentController.getChangeTracker();
+            case PRESCRIPTIONS: return prescriptionController.getChangeTracker();
+            case REFERRALS: return referralController.getChangeTracker();
+            case STAFF: return staffController.getChangeTracker();
+            default: return facilityController.getChangeTracker();
+        }
+    }
 
-        } catch (Exception e) {
-            System.err.println("Error loading data: " + e.getMessage());
-            JOptionPane.showMessageDialog(this, "Error loading data: " + e.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
+    private static int findRow(DefaultTableModel model, Object id) {
+        for (int row = 0; row < model.getRowCount(); row++) {
+            if (id.equals(model.getValueAt(row, 0))) {
+                return row;
+            }
         }
+        return -1;
+    }
+
+    // One table row per entity, in the column order of its panel
+    private static Object[] toTableRow(Object entity) {
+        if (entity instanceof Patient) {
+            Patient p = (Patient) entity;
+            return new Object[]{p.getUserId(), p.getName(), p.getNhsNumber(), p.getEmail(), p.getPhone()};
+        }
+        if (entity instanceof Appointment) {
+            Appointment a = (Appointment) entity;
+            return new Object[]{a.getAppointmentId(), a.getPatientId(), a.getClinicianId(), a.getDateTime(), a.getStatus(), a.getReason()};
+        }
+        if (entity instanceof Prescription) {
+            Prescription p = (Prescription) entity;
+            return new Object[]{p.getPrescriptionId(), p.getPatientId(), p.getClinicianId(), p.getMedication(), p.getDosage(), p.getStatus()};
+        }
+        if (entity instanceof Referral) {
+            Referral r = (Referral) entity;
+            return new Object[]{r.getReferralId(), r.getPatientId(), r.getFromGpId(), r.getToSpecialistId(), r.getUrgencyLevel(), r.getStatus()};
+        }
+        if (entity instanceof Clinician) {
+            Clinician c = (Clinician) entity;
+            return new Object[]{c.getClinicianId(), c.getFirstName(), c.getLastName(), c.getTitle(),
+                    c.getSpeciality(), c.getGmcNumber(), c.getPhone(), c.getEmail(),
+                    c.getWorkplaceType(), c.getEmploymentStatus(), c.getStartDate()};
+        }
+        if (entity instanceof Staff) {
+            Staff s = (Staff) entity;
+            return new Object[]{s.getStaffId(), s.getFirstName(), s.getLastName(), s.getRole(), s.getDepartment(), s.getFacilityId(),
+                    s.getPhone(), s.getEmail(), s.getEmploymentStatus(), s.getStartDate(), s.getLineManager(), s.getAccessLevel()};
+        }
+        Facility f = (Facility) entity;
+        return new Object[]{f.getFacilityId(), f.getFacilityName(), f.getFacilityType(), f.getAddress(), f.getPostcode(), f.getPhone(),
+                f.getEmail(), f.getOpeningHours(), f.getManagerName(), f.getCapacity(), f.getSpecialitiesOffered()};
+    }
+
+    private void onDataSetLoaded(DataLoadOrchestrator.DataSet set, Throwable error) {
+        int index = set.ordinal();
+        if (error != null) {
+            Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+            System.err.println("Error loading data: " + cause.getMessage());
+            tabbedPane.setComponentAt(index, new JLabel("Could not load " + tabTitle(set).toLowerCase() + ": " + cause.getMessage(), SwingConstants.CENTER));
+            JOptionPane.showMessageDialog(this, "Error loading data: " + cause.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
+            return;
+        }
+        tabbedPane.setComponentAt(index, createPanel(set));
     }
 
     /**
      * Requirement: Data Persistence.
      */
     private void saveAllData() {
-        try {
-            // Determine path (similar logic to loadData)
-            String pathPrefix = "data/";
-            if (!new java.io.File(pathPrefix + "patients.csv.crdownload").exists()) {
-                pathPrefix = "../data/";
+        // Saving while a file is still loading would overwrite it with a half-empty controller
+        if (!dataLoaded.isDone() || journalCompactor == null) {
+            JOptionPane.showMessageDialog(this, "Data is still loading. Please try again in a moment.");
+            return;
+        }
+        // A file that failed to load is never written (the compactor only has the sets that
+        // loaded), so its controller, empty or partial, cannot replace what is on disk
+        if (dataLoaded.isCompletedExceptionally()) {
+            StringBuilder skipped = new StringBuilder();
+            for (DataLoadOrchestrator.DataSet set : DataLoadOrchestrator.DataSet.values()) {
+                if (!loadedSets.contains(set)) {
+                    skipped.append("\n  ").append(tabTitle(set)).append(" (").append(set.getFileName()).append(")");
+                }
             }
+            JOptionPane.showMessageDialog(this, "These files could not be loaded at startup and will not be saved:"
+                    + skipped, "Save", JOptionPane.WARNING_MESSAGE);
+        }
+        // Only files whose collection changed since the last load/save are rewritten, in
+        // parallel and off the EDT, so the window stays usable while a large save runs
+        // Read before saving: the save takes the failed journal writes' changes into the files
+        Exception journalFailure = journal != null ? journal.getWriteFailure() : null;
+        journalCompactor.saveAsync().whenComplete((results, error) ->
+                SwingUtilities.invokeLater(() -> showSaveResults(results, error, journalFailure)));
+    }
 
-            // We write to new files to avoid corrupting the original downloads, 
-            // or overwrite if that is the strict requirement. 
-            // Here we overwrite for "Persistent" requirement.
-            
-            FileWriterUtil.writePatientsToFile(patientController.getAllPatients(), pathPrefix + "patients.csv.crdownload");
-            FileWriterUtil.writeCliniciansToFile(clinicianController.getAllClinicians(), pathPrefix + "clinicians.csv.crdownload");  // FIX 5: Add clinician save
-            FileWriterUtil.writeAppointmentsToFile(appointmentController.getAllAppointments(), pathPrefix + "appointments.csv.crdownload");
-            FileWriterUtil.writePrescriptionsToFile(prescriptionController.getAllPrescriptions(), pathPrefix + "prescriptions.csv.crdownload");
-            FileWriterUtil.writeReferralsToFile(referralController.getAllReferrals(), pathPrefix + "referrals.csv.crdownload");
-            
-            JOptionPane.showMessageDialog(this, "All changes saved to disk successfully.");
-            
-        } catch (IOException e) {
-            e.printStackTrace();
-            JOptionPane.showMessageDialog(this, "Error saving data: " + e.getMessage(), "Save Error", JOptionPane.ERROR_MESSAGE);
+    private void showSaveResults(List<JournalCompactor.FileResult> results, Throwable error, Exception journalFailure) {
+        if (journalFailure != null) {
+            JOptionPane.showMessageDialog(this, "The journal could not be written (" + journalFailure.getMessage()
+                    + "), so changes since the last save were not protected against a crash.",
+                    "Journal Error", JOptionPane.WARNING_MESSAGE);
         }
+        if (error != null) {
+            error.printStackTrace();
+            JOptionPane.showMessageDialog(this, "Error saving data: " + error.getMessage(), "Save Error", JOptionPane.ERROR_MESSAGE);
+            return;
+        }
+        if (results.isEmpty()) {
+            JOptionPane.showMessageDialog(this, "No changes to save.");
+            return;
+        }
+
+        StringBuilder message = new StringBuilder();
+        boolean failed = false;
+        for (JournalCompactor.FileResult result : results) {
+            message.append(tabTitle(result.getDataSet())).append(": ");
+            if (result.isSaved()) {
+                message.append(result.getRows()).append(" rows saved in ").append(result.getMillis()).append(" ms\n");
+            } else {
+                failed = true;
+                message.append("NOT saved (").append(result.getError().getMessage()).append(")\n");
+            }
+        }
+        if (failed) {
+            message.append("\nUnsaved changes are kept and will be saved again with the next save.");
+            JOptionPane.showMessageDialog(this, message.toString(), "Save Error", JOptionPane.ERROR_MESSAGE);
+        } else {
+            JOptionPane.showMessageDialog(this, "Changes saved to disk:\n" + message);
+        }
+    }
+
+
+
+    // Report a document batch once it is done; the window stays usable meanwhile
+    // Batches go into zip archives unless started with -Ddocuments.output=files
+    private DocumentBatch.Output batchOutput() {
+        return "files".equalsIgnoreCase(System.getProperty("documents.output"))
+                ? DocumentBatch.Output.FILES : DocumentBatch.Output.ARCHIVE;
+    }
+
+    private void runDocumentBatch(CompletableFuture<DocumentBatch.Report> batch, String what) {
+        batch.whenComplete((report, error) -> SwingUtilities.invokeLater(() -> {
+            if (error != null) {
+                JOptionPane.showMessageDialog(this, "Error: " + error.getMessage(), what, JOptionPane.ERROR_MESSAGE);
+                return;
+            }
+            StringBuilder message = new StringBuilder(what + (batchOutput() == DocumentBatch.Output.ARCHIVE
+                    ? " archived in output/: " : " written to output/: ") + report);
+            report.getFailures().entrySet().stream().limit(10).forEach(failure ->
+                    message.append("\n  ").append(failure.getKey()).append(": ").append(failure.getValue().getMessage()));
+            JOptionPane.showMessageDialog(this, message.toString(), what,
+                    report.getFailures().isEmpty() ? JOptionPane.INFORMATION_MESSAGE : JOptionPane.WARNING_MESSAGE);
+        }));
     }
 
 
@@ -125,8 +414,8 @@ public class HealthcareGUI extends JFrame {
         };
 
         // Populate
-        for (Patient p : patientController.getAllPatients()) {
-            model.addRow(new Object[]{p.getUserId(), p.getName(), p.getNhsNumber(), p.getEmail(), p.getPhone()});
+        for (Patient p : patientController.getPatientsView()) {
+            model.addRow(toTableRow(p));
         }
 
         patientTable = new JTable(model);
@@ -228,10 +517,8 @@ public class HealthcareGUI extends JFrame {
             public boolean isCellEditable(int row, int column) { return false; }
         };
 
-        for (Appointment a : appointmentController.getAllAppointments()) {
-            model.addRow(new Object[]{
-                a.getAppointmentId(), a.getPatientId(), a.getClinicianId(), a.getDateTime(), a.getStatus(), a.getReason()
-            });
+        for (Appointment a : appointmentController.getAppointmentsView()) {
+            model.addRow(toTableRow(a));
         }
 
         appointmentTable = new JTable(model);
@@ -324,10 +611,8 @@ public class HealthcareGUI extends JFrame {
             public boolean isCellEditable(int row, int column) { return false; }
         };
 
-        for (Prescription p : prescriptionController.getAllPrescriptions()) {
-            model.addRow(new Object[]{
-                p.getPrescriptionId(), p.getPatientId(), p.getClinicianId(), p.getMedication(), p.getDosage(), p.getStatus()
-            });
+        for (Prescription p : prescriptionController.getPrescriptionsView()) {
+            model.addRow(toTableRow(p));
         }
 
         prescriptionTable = new JTable(model);
@@ -442,6 +727,18 @@ public class HealthcareGUI extends JFrame {
             }
         });
 
+        // --- BATCH SLIPS (every prescription with one status) ---
+        JButton batchSlipBtn = new JButton("Batch Slips");
+        batchSlipBtn.addActionListener(e -> {
+            String[] statuses = {"Issued", "Collected", "Expired"};
+            String status = (String) JOptionPane.showInputDialog(this, "Generate slips for all prescriptions with status:",
+                    "Batch Slips", JOptionPane.QUESTION_MESSAGE, null, statuses, statuses[0]);
+            if (status != null) {
+                runDocumentBatch(DocumentBatch.prescriptionSlips(prescriptionController.getPrescriptionsByStatus(status),
+                        "output", batchOutput(), DocumentBatch.DEFAULT_IO_CONCURRENCY), "Prescription slips");
+            }
+        });
+
         JButton saveBtn = new JButton("Save All");
         saveBtn.addActionListener(e -> saveAllData());
 
@@ -450,6 +747,7 @@ public class HealthcareGUI extends JFrame {
         btnPanel.add(deleteBtn);
         btnPanel.add(changeStatusBtn);
         btnPanel.add(slipBtn);  // ADD THIS
+        btnPanel.add(batchSlipBtn);
         btnPanel.add(new JSeparator(SwingConstants.VERTICAL));
         btnPanel.add(saveBtn);
         panel.add(btnPanel, BorderLayout.SOUTH);
@@ -468,12 +766,8 @@ public class HealthcareGUI extends JFrame {
             public boolean isCellEditable(int row, int column) { return false; }
         };
 
-        for (Clinician c : clinicianController.getAllClinicians()) {
-            model.addRow(new Object[]{
-                c.getClinicianId(), c.getFirstName(), c.getLastName(), c.getTitle(),
-                c.getSpeciality(), c.getGmcNumber(), c.getPhone(), c.getEmail(),
-                c.getWorkplaceType(), c.getEmploymentStatus(), c.getStartDate()
-            });
+        for (Clinician c : clinicianController.getCliniciansView()) {
+            model.addRow(toTableRow(c));
         }
 
         clinicianTable = new JTable(model);
@@ -630,10 +924,8 @@ public class HealthcareGUI extends JFrame {
             public boolean isCellEditable(int row, int column) { return false; }
         };
 
-        for (Referral r : referralController.getAllReferrals()) {
-            model.addRow(new Object[]{
-                r.getReferralId(), r.getPatientId(), r.getFromGpId(), r.getToSpecialistId(), r.getUrgencyLevel(), r.getStatus()
-            });
+        for (Referral r : referralController.getReferralsView()) {
+            model.addRow(toTableRow(r));
         }
 
         referralTable = new JTable(model);
@@ -715,6 +1007,18 @@ public class HealthcareGUI extends JFrame {
         });
         
 
+        // --- BATCH LETTERS (every referral with one status) ---
+        JButton batchLetterBtn = new JButton("Batch Letters");
+        batchLetterBtn.addActionListener(e -> {
+            String[] statuses = {"Pending", "Approved", "In Progress", "Completed", "Rejected"};
+            String status = (String) JOptionPane.showInputDialog(this, "Generate letters for all referrals with status:",
+                    "Batch Letters", JOptionPane.QUESTION_MESSAGE, null, statuses, statuses[0]);
+            if (status != null) {
+                runDocumentBatch(DocumentBatch.referralLetters(referralController.getReferralsByStatus(status),
+                        "output", batchOutput(), DocumentBatch.DEFAULT_IO_CONCURRENCY), "Referral letters");
+            }
+        });
+
         // SAVE
         JButton saveBtn = new JButton("Save All Data");
         saveBtn.addActionListener(e -> saveAllData());
@@ -723,6 +1027,7 @@ public class HealthcareGUI extends JFrame {
         btnPanel.add(updateBtn);
         btnPanel.add(deleteBtn);
         btnPanel.add(letterBtn);
+        btnPanel.add(batchLetterBtn);
         btnPanel.add(new JSeparator(SwingConstants.VERTICAL));  // Separator for clarity
         btnPanel.add(saveBtn);
         panel.add(btnPanel, BorderLayout.SOUTH);
@@ -730,4 +1035,44 @@ public class HealthcareGUI extends JFrame {
 
         return panel;
     }
-}
\ No newline at end of file
+
+
+
+    // ================= STAFF PANEL (read only) =================
+    private JPanel createStaffPanel() {
+        JPanel panel = new JPanel(new BorderLayout());
+        String[] columns = {"ID", "First Name", "Last Name", "Role", "Department", "Facility", "Phone", "Email", "Status", "Start Date", "Line Manager", "Access"};
+        DefaultTableModel model = new DefaultTableModel(columns, 0) {
+            @Override
+            public boolean isCellEditable(int row, int column) { return false; }
+        };
+
+        for (Staff s : staffController.getStaffView()) {
+            model.addRow(toTableRow(s));
+        }
+
+        staffTable = new JTable(model);
+        panel.add(new JScrollPane(staffTable), BorderLayout.CENTER);
+        return panel;
+    }
+
+
+
+    // ================= FACILITY PANEL (read only) =================
+    private JPanel createFacilityPanel() {
+        JPanel panel = new JPanel(new BorderLayout());
+        String[] columns = {"ID", "Name", "Type", "Address", "Postcode", "Phone", "Email", "Opening Hours", "Manager", "Capacity", "Specialities"};
+        DefaultTableModel model = new DefaultTableModel(columns, 0) {
+            @Override
+            public boolean isCellEditable(int row, int column) { return false; }
+        };
+
+        for (Facility f : facilityController.getFacilitiesView()) {
+            model.addRow(toTableRow(f));
+        }
+
+        facilityTable = new JTable(model);
+        panel.add(new JScrollPane(facilityTable), BorderLayout.CENTER);
+        return panel;
+    }
+}
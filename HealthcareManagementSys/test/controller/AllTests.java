@@ -0,0 +1,20 @@
+package controller;
+
+/**
+ * AllTests runs every test class; the first failure stops the run with its AssertionError.
+ *
+ * From the module directory:
+ *   javac -d out $(find src test -name '*.java') && java -cp out controller.AllTests
+ */
+public class AllTests {
+
+    public static void main(String[] args) throws Exception {
+        BPlusTreeTest.main(args);
+        PageFileTest.main(args);
+        PageFileRepositoryTest.main(args);
+        MutationJournalTest.main(args);
+        AppointmentStoreTest.main(args);
+        InMemoryRepositoryTest.main(args);
+        System.out.println("All tests passed");
+    }
+}
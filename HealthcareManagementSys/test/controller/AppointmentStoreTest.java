@@ -0,0 +1,255 @@
+package controller;
+
+import model.Appointment;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+/**
+ * AppointmentStoreTest checks the mapped store: records and their order survive a
+ * reopen, removing a record takes it out of the ID table without breaking the probe
+ * chains of the IDs after it, a removed ID can be added again, and shared strings are
+ * reused rather than appended to the heap again. Duplicate IDs are kept as the list
+ * keeps them, and the store only claims to hold the source file it was committed with
+ * while it was left clean.
+ */
+public class AppointmentStoreTest {
+
+    public static void main(String[] args) throws Exception {
+        reopen();
+        unindexKeepsOtherLookups();
+        removedIdCanBeReused();
+        sharedStringsAreReused();
+        duplicateIdsAreKept();
+        reopenWhenClean();
+        System.out.println("AppointmentStoreTest: all tests passed");
+    }
+
+    static void reopen() throws IOException {
+        Path directory = Files.createTempDirectory("appointments");
+        Path base = directory.resolve("appointments");
+        try {
+            Map<String, String> expected = new LinkedHashMap<>();
+            try (AppointmentStore store = AppointmentStore.open(base)) {
+                for (int i = 0; i < 3000; i++) {
+                    Appointment appointment = appointment(i);
+                    if (i % 7 == 0) {
+                        appointment.setDateTime("after lunch"); // not "yyyy-MM-dd HH:mm": kept as text
+                    }
+                    if (i % 5 == 0) {
+                        appointment.setReason("Follow-up " + i);
+                    }
+                    store.add(appointment);
+                    expected.put(appointment.getAppointmentId(), describe(appointment));
+                }
+                for (int i = 0; i < 3000; i += 3) {
+                    Appointment appointment = store.get("A" + i);
+                    appointment.checkIn();
+                    Check.that(store.update(appointment), "update A" + i);
+                    expected.put(appointment.getAppointmentId(), describe(appointment));
+                }
+                for (int i = 1; i < 3000; i += 10) {
+                    store.remove("A" + i);
+                    expected.remove("A" + i);
+                }
+            }
+
+            try (AppointmentStore store = AppointmentStore.open(base)) {
+                Check.equal(expected.size(), store.size(), "size after reopen");
+                Check.equal(new ArrayList<>(expected.values()),
+                        store.stream().map(AppointmentStoreTest::describe).collect(Collectors.toList()),
+                        "records and order after reopen");
+                for (Map.Entry<String, String> entry : expected.entrySet()) {
+                    Check.equal(entry.getValue(), describe(store.get(entry.getKey())), "get " + entry.getKey());
+                }
+                Check.equal(null, store.get("A1"), "removed record after reopen");
+            }
+        } finally {
+            Check.delete(directory);
+        }
+    }
+
+    // Enough IDs to fill long probe runs; removing every other one must leave the rest
+    // reachable, before and after the table is rebuilt on open
+    static void unindexKeepsOtherLookups() throws IOException {
+        Path directory = Files.createTempDirectory("appointments");
+        Path base = directory.resolve("appointments");
+        try {
+            try (AppointmentStore store = AppointmentStore.open(base)) {
+                for (int i = 0; i < 5000; i++) {
+                    store.add(appointment(i));
+                }
+                Random random = new Random(5);
+                List<Integer> removed = new ArrayList<>();
+                for (int i = 0; i < 2500; i++) {
+                    int id = random.nextInt(5000);
+                    if (store.remove("A" + id)) {
+                        removed.add(id);
+                    }
+                }
+                checkLookups(store, removed);
+                store.flush();
+            }
+            try (AppointmentStore store = AppointmentStore.open(base)) {
+                List<Integer> removed = new ArrayList<>();
+                for (int i = 0; i < 5000; i++) {
+                    if (store.get("A" + i) == null) {
+                        removed.add(i);
+                    }
+                }
+                Check.equal(5000 - removed.size(), store.size(), "size after reopen");
+                checkLookups(store, removed);
+            }
+        } finally {
+            Check.delete(directory);
+        }
+    }
+
+    static void removedIdCanBeReused() throws IOException {
+        Path directory = Files.createTempDirectory("appointments");
+        Path base = directory.resolve("appointments");
+        try {
+            try (AppointmentStore store = AppointmentStore.open(base)) {
+                for (int i = 0; i < 100; i++) {
+                    store.add(appointment(i));
+                }
+                for (int round = 0; round < 3; round++) {
+                    for (int i = 0; i < 100; i += 4) {
+                        Check.that(store.remove("A" + i), "remove A" + i + " in round " + round);
+                        Check.that(!store.remove("A" + i), "second remove A" + i);
+                        Check.that(!store.update(appointment(i)), "update of removed A" + i);
+                        Appointment again = appointment(i);
+                        again.setLocation("Room " + round);
+                        store.add(again);
+                    }
+                }
+                Check.equal(100, store.size(), "size");
+                Check.equal("Room 2", store.get("A0").getLocation(), "the last add wins");
+
+                // A record added again goes after the ones that stayed, as with the list
+                List<String> ids = store.stream().map(Appointment::getAppointmentId).collect(Collectors.toList());
+                Check.equal("A1", ids.get(0), "first untouched record");
+                Check.equal("A96", ids.get(ids.size() - 1), "last re-added record");
+                Check.equal(100, (int) ids.stream().distinct().count(), "each ID once");
+            }
+            try (AppointmentStore store = AppointmentStore.open(base)) {
+                Check.equal(100, store.size(), "size after reopen");
+                Check.equal("Room 2", store.get("A96").getLocation(), "re-added record after reopen");
+            }
+        } finally {
+            Check.delete(directory);
+        }
+    }
+
+    static void sharedStringsAreReused() throws IOException {
+        Path directory = Files.createTempDirectory("appointments");
+        try (AppointmentStore store = AppointmentStore.open(directory.resolve("appointments"))) {
+            store.add(appointment(0));
+            int heap = store.getHeapSize();
+            for (int i = 1; i <= 1000; i++) {
+                store.add(new Appointment("A" + i, "P0", "C0", "2026-04-01 10:00", "Room 0"));
+            }
+
+            // Only the IDs are new: about 4 + 4 bytes a record, nowhere near the full strings
+            Check.that(store.getHeapSize() - heap < 1000 * 12, "heap grew by " + (store.getHeapSize() - heap));
+
+            // A status change is stored in the record, not on the heap
+            heap = store.getHeapSize();
+            Appointment appointment = store.get("A500");
+            appointment.checkIn();
+            store.update(appointment);
+            Check.equal(heap, store.getHeapSize(), "heap after check-in");
+            Check.equal("Completed", store.get("A500").getStatus(), "status");
+        } finally {
+            Check.delete(directory);
+        }
+    }
+
+    static void duplicateIdsAreKept() throws IOException {
+        Path directory = Files.createTempDirectory("appointments");
+        Path base = directory.resolve("appointments");
+        try {
+            try (AppointmentStore store = AppointmentStore.open(base)) {
+                for (int i = 0; i < 10; i++) {
+                    store.add(appointment(i));
+                }
+                Appointment second = appointment(3);
+                second.setLocation("Room 9");
+                store.add(second);
+                Check.equal(11, store.size(), "size with a duplicate");
+                Check.equal("Room 3", store.get("A3").getLocation(), "get finds the first");
+
+                Appointment moved = store.get("A3");
+                moved.setLocation("Room 5");
+                Check.that(store.update(moved), "update A3");
+                List<String> locations = store.find(a -> a.getAppointmentId().equals("A3")).stream()
+                        .map(Appointment::getLocation).collect(Collectors.toList());
+                Check.equal(List.of("Room 5", "Room 9"), locations, "update changes the first");
+            }
+            try (AppointmentStore store = AppointmentStore.open(base)) {
+                Check.equal(11, store.size(), "size after reopen");
+                Check.equal("Room 5", store.get("A3").getLocation(), "get finds the first after reopen");
+                Check.that(store.remove("A3"), "remove A3");
+                Check.equal(9, store.size(), "every A3 removed");
+                Check.equal(0, store.find(a -> a.getAppointmentId().equals("A3")).size(), "no A3 left");
+                Check.equal("A4", store.get("A4").getAppointmentId(), "others still found");
+            }
+        } finally {
+            Check.delete(directory);
+        }
+    }
+
+    static void reopenWhenClean() throws IOException {
+        Path directory = Files.createTempDirectory("appointments");
+        Path base = directory.resolve("appointments");
+        try {
+            try (AppointmentStore store = AppointmentStore.open(base)) {
+                Check.that(!store.isLoadedFrom(0, 0), "new store is not loaded");
+                store.load(IntStream.range(0, 100).mapToObj(AppointmentStoreTest::appointment));
+                store.commit(2000, 5678);
+                Check.that(store.isLoadedFrom(2000, 5678), "loaded after commit");
+                Check.that(!store.isLoadedFrom(2000, 5679), "other time");
+                store.remove("A5");
+                Check.that(!store.isLoadedFrom(2000, 5678), "changed since the commit");
+            }
+            try (AppointmentStore store = AppointmentStore.open(base)) {
+                Check.that(store.isLoadedFrom(2000, 5678), "loaded after reopen");
+                Check.equal(99, store.size(), "size after reopen");
+                store.load(Stream.of(appointment(1)));
+                Check.that(!store.isLoadedFrom(2000, 5678), "a load forgets the source file");
+            }
+        } finally {
+            Check.delete(directory);
+        }
+    }
+
+    private static void checkLookups(AppointmentStore store, List<Integer> removed) {
+        for (int i = 0; i < 5000; i++) {
+            Appointment appointment = store.get("A" + i);
+            if (removed.contains(i)) {
+                Check.equal(null, appointment, "removed A" + i);
+            } else {
+                Check.equal(describe(appointment(i)), describe(appointment), "kept A" + i);
+            }
+        }
+    }
+
+    private static Appointment appointment(int i) {
+        return new Appointment("A" + i, "P" + i % 50, "C" + i % 7,
+                String.format("2026-%02d-%02d %02d:%02d", 1 + i % 12, 1 + i % 28, 8 + i % 10, i % 60), "Room " + i % 4);
+    }
+
+    private static String describe(Appointment a) {
+        return a == null ? null : String.join("|", a.getAppointmentId(), a.getPatientId(), a.getClinicianId(),
+                String.valueOf(a.getDateTime()), a.getLocation(), String.valueOf(a.getStatus()),
+                String.valueOf(a.getReason()));
+    }
+}
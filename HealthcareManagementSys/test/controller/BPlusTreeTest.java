@@ -0,0 +1,264 @@
+package controller;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * BPlusTreeTest checks the tree against a TreeMap: splits of leaves and internal pages,
+ * values on overflow pages, removing and reinserting keys, and scans that carry on after
+ * the tree changed under them.
+ */
+public class BPlusTreeTest {
+
+    public static void main(String[] args) throws Exception {
+        splitsLeavesAndInternalPages();
+        sortedLoadPacksLeaves();
+        overflowValues();
+        removeThenReinsert();
+        scanAfterMutation();
+        System.out.println("BPlusTreeTest: all tests passed");
+    }
+
+    // Long keys leave room for only a few dozen children per internal page, so a few
+    // thousand keys split the leaves, the root, and the internal level under it
+    static void splitsLeavesAndInternalPages() throws IOException {
+        Path directory = Files.createTempDirectory("bplustree");
+        try {
+            Path path = directory.resolve("tree.pages");
+            TreeMap<String, byte[]> expected = new TreeMap<>();
+            Random random = new Random(1);
+            try (PageFile file = PageFile.open(path, PageFile.MIN_CACHE_PAGES)) {
+                BPlusTree tree = new BPlusTree(file, 0);
+                List<Integer> order = shuffled(6000, random);
+                for (int i : order) {
+                    String key = longKey(i);
+                    byte[] value = bytes(random, 40);
+                    Check.that(tree.put(utf8(key), value), "new key " + key);
+                    expected.put(key, value);
+                }
+                Check.that(file.getPageCount() > 200, "the tree spans many pages, pages=" + file.getPageCount());
+                verify(tree, expected);
+            }
+
+            // Everything must survive a reopen through the header slots
+            try (PageFile file = PageFile.open(path, PageFile.MIN_CACHE_PAGES)) {
+                verify(new BPlusTree(file, 0), expected);
+            }
+        } finally {
+            Check.delete(directory);
+        }
+    }
+
+    static void sortedLoadPacksLeaves() throws IOException {
+        Path directory = Files.createTempDirectory("bplustree");
+        try (PageFile file = PageFile.open(directory.resolve("tree.pages"), PageFile.MIN_CACHE_PAGES)) {
+            BPlusTree tree = new BPlusTree(file, 0);
+            TreeMap<String, byte[]> expected = new TreeMap<>();
+            for (int i = 0; i < 20000; i++) {
+                String key = String.format("A%06d", i);
+                byte[] value = utf8("value " + i);
+                tree.put(utf8(key), value);
+                expected.put(key, value);
+            }
+            verify(tree, expected);
+
+            // About 27 bytes an entry: half-full leaves would need well over 130 pages
+            Check.that(file.getPageCount() < 100, "ascending keys fill each leaf, pages=" + file.getPageCount());
+        } finally {
+            Check.delete(directory);
+        }
+    }
+
+    static void overflowValues() throws IOException {
+        Path directory = Files.createTempDirectory("bplustree");
+        try (PageFile file = PageFile.open(directory.resolve("tree.pages"), PageFile.MIN_CACHE_PAGES)) {
+            BPlusTree tree = new BPlusTree(file, 0);
+            Random random = new Random(2);
+            TreeMap<String, byte[]> expected = new TreeMap<>();
+            for (int i = 0; i < 200; i++) {
+                expected.put("K" + i, bytes(random, 100));
+                tree.put(utf8("K" + i), expected.get("K" + i));
+            }
+
+            byte[] onePage = bytes(random, 2000);
+            byte[] manyPages = bytes(random, 5 * PageFile.PAGE_SIZE + 123);
+            tree.put(utf8("K1"), onePage);
+            tree.put(utf8("K2"), manyPages);
+            expected.put("K1", onePage);
+            expected.put("K2", manyPages);
+            verify(tree, expected);
+
+            // Inline to overflow and back, in both directions
+            byte[] small = bytes(random, 10);
+            tree.put(utf8("K1"), small);
+            tree.put(utf8("K3"), manyPages);
+            expected.put("K1", small);
+            expected.put("K3", manyPages);
+            verify(tree, expected);
+
+            // Removing an overflow value frees its pages for the next one
+            long pages = file.getPageCount();
+            Check.that(tree.remove(utf8("K2")), "remove K2");
+            Check.that(!tree.put(utf8("K3"), bytes(random, 10)), "K3 replaced");
+            expected.remove("K2");
+            expected.put("K3", tree.get(utf8("K3")));
+            byte[] again = bytes(random, 6 * PageFile.PAGE_SIZE);
+            tree.put(utf8("K4"), again);
+            expected.put("K4", again);
+            Check.equal(pages, file.getPageCount(), "freed overflow pages are reused");
+            verify(tree, expected);
+        } finally {
+            Check.delete(directory);
+        }
+    }
+
+    static void removeThenReinsert() throws IOException {
+        Path directory = Files.createTempDirectory("bplustree");
+        Path path = directory.resolve("tree.pages");
+        try {
+            TreeMap<String, byte[]> expected = new TreeMap<>();
+            Random random = new Random(3);
+            try (PageFile file = PageFile.open(path, PageFile.MIN_CACHE_PAGES)) {
+                BPlusTree tree = new BPlusTree(file, 0);
+                for (int i = 0; i < 5000; i++) {
+                    tree.put(utf8(longKey(i)), utf8("first " + i));
+                    expected.put(longKey(i), utf8("first " + i));
+                }
+                for (int i = 0; i < 5000; i += 2) {
+                    Check.that(tree.remove(utf8(longKey(i))), "remove " + i);
+                    Check.that(!tree.remove(utf8(longKey(i))), "second remove " + i);
+                    expected.remove(longKey(i));
+                }
+                Check.equal(null, tree.get(utf8(longKey(0))), "removed key");
+                verify(tree, expected);
+
+                // Every leaf has holes now; the same keys go back with new values, some overflowing
+                for (int i = 0; i < 5000; i += 2) {
+                    byte[] value = i % 50 == 0 ? bytes(random, 3000) : utf8("second " + i);
+                    Check.that(tree.put(utf8(longKey(i)), value), "reinsert " + i);
+                    expected.put(longKey(i), value);
+                }
+                verify(tree, expected);
+            }
+            try (PageFile file = PageFile.open(path, PageFile.MIN_CACHE_PAGES)) {
+                verify(new BPlusTree(file, 0), expected);
+            }
+        } finally {
+            Check.delete(directory);
+        }
+    }
+
+    // A scan resumed by key returns keys in order, none twice, and every key that was in
+    // the tree for the whole scan
+    static void scanAfterMutation() throws IOException {
+        Path directory = Files.createTempDirectory("bplustree");
+        try (PageFile file = PageFile.open(directory.resolve("tree.pages"), PageFile.MIN_CACHE_PAGES)) {
+            BPlusTree tree = new BPlusTree(file, 0);
+            TreeMap<String, byte[]> expected = new TreeMap<>();
+            for (int i = 0; i < 4000; i += 2) {
+                tree.put(utf8(String.format("K%05d", i)), utf8("v" + i));
+                expected.put(String.format("K%05d", i), utf8("v" + i));
+            }
+            Set<String> untouched = new HashSet<>(expected.keySet());
+
+            List<String> seen = new ArrayList<>();
+            byte[] after = null;
+            Random random = new Random(4);
+            while (true) {
+                List<byte[]> keys = new ArrayList<>();
+                List<byte[]> values = new ArrayList<>();
+                tree.scan(after, 100, keys, values);
+                if (keys.isEmpty()) {
+                    break;
+                }
+                for (byte[] key : keys) {
+                    seen.add(new String(key, StandardCharsets.UTF_8));
+                }
+                after = keys.get(keys.size() - 1);
+
+                // Change the tree ahead of and behind the scan: inserts split leaves, removes empty them
+                for (int j = 0; j < 50; j++) {
+                    String key = String.format("K%05d", random.nextInt(4000));
+                    untouched.remove(key);
+                    if (random.nextBoolean()) {
+                        byte[] value = bytes(random, 150);
+                        tree.put(utf8(key), value);
+                        expected.put(key, value);
+                    } else {
+                        tree.remove(utf8(key));
+                        expected.remove(key);
+                    }
+                }
+            }
+
+            List<String> sorted = new ArrayList<>(new TreeSet<>(seen));
+            Check.equal(sorted, seen, "scan order, each key once");
+            Check.that(seen.containsAll(untouched), "scan skipped a key that was there throughout");
+            verify(tree, expected);
+        } finally {
+            Check.delete(directory);
+        }
+    }
+
+    private static void verify(BPlusTree tree, TreeMap<String, byte[]> expected) throws IOException {
+        Check.equal((long) expected.size(), tree.size(), "size");
+        for (Map.Entry<String, byte[]> entry : expected.entrySet()) {
+            Check.that(Arrays.equals(entry.getValue(), tree.get(utf8(entry.getKey()))), "get " + entry.getKey());
+        }
+
+        Iterator<Map.Entry<String, byte[]>> expectedEntries = expected.entrySet().iterator();
+        byte[] after = null;
+        while (true) {
+            List<byte[]> keys = new ArrayList<>();
+            List<byte[]> values = new ArrayList<>();
+            tree.scan(after, 97, keys, values);
+            if (keys.isEmpty()) {
+                break;
+            }
+            for (int i = 0; i < keys.size(); i++) {
+                Check.that(expectedEntries.hasNext(), "scan returns more than was stored");
+                Map.Entry<String, byte[]> entry = expectedEntries.next();
+                Check.equal(entry.getKey(), new String(keys.get(i), StandardCharsets.UTF_8), "scan key");
+                Check.that(Arrays.equals(entry.getValue(), values.get(i)), "scan value of " + entry.getKey());
+            }
+            after = keys.get(keys.size() - 1);
+        }
+        Check.that(!expectedEntries.hasNext(), "scan stops short");
+    }
+
+    private static String longKey(int i) {
+        return String.format("%0200d", i);
+    }
+
+    private static List<Integer> shuffled(int count, Random random) {
+        List<Integer> order = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            order.add(i);
+        }
+        Collections.shuffle(order, random);
+        return order;
+    }
+
+    private static byte[] bytes(Random random, int length) {
+        byte[] bytes = new byte[length];
+        random.nextBytes(bytes);
+        return bytes;
+    }
+
+    private static byte[] utf8(String s) {
+        return s.getBytes(StandardCharsets.UTF_8);
+    }
+}
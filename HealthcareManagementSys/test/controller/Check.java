@@ -0,0 +1,55 @@
+package controller;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.Objects;
+import java.util.stream.Stream;
+
+/**
+ * Check holds the few assertions the tests need, so they run with nothing but the JDK.
+ * A failed check throws AssertionError whether or not the JVM was started with -ea.
+ */
+final class Check {
+
+    private Check() {
+    }
+
+    static void that(boolean condition, String what) {
+        if (!condition) {
+            throw new AssertionError(what);
+        }
+    }
+
+    static void equal(Object expected, Object actual, String what) {
+        if (!Objects.equals(expected, actual)) {
+            throw new AssertionError(what + ": expected " + expected + " but was " + actual);
+        }
+    }
+
+    static void fails(Class<? extends Throwable> expected, Action action, String what) {
+        try {
+            action.run();
+        } catch (Throwable e) {
+            if (expected.isInstance(e)) {
+                return;
+            }
+            throw new AssertionError(what + ": expected " + expected.getSimpleName() + " but got " + e, e);
+        }
+        throw new AssertionError(what + ": expected " + expected.getSimpleName());
+    }
+
+    // Remove a scratch directory and everything in it
+    static void delete(Path directory) throws IOException {
+        try (Stream<Path> paths = Files.walk(directory)) {
+            for (Path path : (Iterable<Path>) paths.sorted(Comparator.reverseOrder())::iterator) {
+                Files.deleteIfExists(path);
+            }
+        }
+    }
+
+    interface Action {
+        void run() throws Exception;
+    }
+}
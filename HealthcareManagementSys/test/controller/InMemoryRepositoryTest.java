@@ -0,0 +1,218 @@
+package controller;
+
+import model.Appointment;
+import model.Prescription;
+import model.Referral;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * InMemoryRepositoryTest checks the secondary indexes: countBy() keeps agreeing with a
+ * count over every record as records are added, changed through update() and removed,
+ * across the compactions that renumber them, and through the controllers that use the
+ * counts for the dashboard. It also checks that a view held across removals follows
+ * them without showing a gap, that pages read around removed records match it, and that
+ * the appointment time ranges follow reschedules, replacements and removals.
+ */
+public class InMemoryRepositoryTest {
+
+    private static final Function<Referral, String> BY_URGENCY = Referral::getUrgencyLevel;
+    private static final Function<Referral, String> BY_STATUS = Referral::getStatus;
+    private static final String[] LEVELS = {"Routine", "Urgent", "Emergency"};
+    private static final String[] STATUSES = {"Pending", "Accepted", "Completed"};
+
+    public static void main(String[] args) {
+        countsFollowUpdates();
+        controllerCountsFollowUpdates();
+        viewFollowsRemovals();
+        pagesSkipRemovedRecords();
+        rangesFollowReschedules();
+        System.out.println("InMemoryRepositoryTest: all tests passed");
+    }
+
+    static void countsFollowUpdates() {
+        InMemoryRepository<Referral> repository = new InMemoryRepository<>(Referral::getReferralId);
+        repository.index(BY_URGENCY);
+        repository.index(BY_STATUS);
+        Random random = new Random(6);
+        for (int i = 0; i < 2000; i++) {
+            Referral referral = new Referral("R" + i, "P" + i % 40, "G1", "S1", "Reason " + i);
+            referral.setUrgencyLevel(LEVELS[random.nextInt(LEVELS.length)]);
+            repository.add(referral);
+        }
+        checkCounts(repository, "after loading");
+
+        // Change fields on the stored objects and pass them back, as the controllers do;
+        // removing most of the records on the way compacts the list more than once
+        for (int round = 0; round < 5; round++) {
+            for (int j = 0; j < 500; j++) {
+                Referral referral = repository.get("R" + random.nextInt(2000));
+                if (referral == null) {
+                    continue;
+                }
+                referral.setUrgencyLevel(LEVELS[random.nextInt(LEVELS.length)]);
+                referral.setStatus(STATUSES[random.nextInt(STATUSES.length)]);
+                Check.that(repository.update(referral), "update " + referral.getReferralId());
+            }
+            for (int j = 0; j < 300; j++) {
+                repository.remove("R" + random.nextInt(2000));
+            }
+            checkCounts(repository, "after round " + round);
+        }
+    }
+
+    static void controllerCountsFollowUpdates() {
+        PrescriptionController controller = new PrescriptionController(
+                new InMemoryRepository<>(Prescription::getPrescriptionId));
+        for (int i = 0; i < 100; i++) {
+            controller.addPrescription(new Prescription("RX" + i, "P" + i, "C1", "Medicine " + i, "10mg"));
+        }
+        Check.equal(100, controller.countPrescriptionsByStatus("Issued"), "issued");
+        for (int i = 0; i < 100; i += 4) {
+            controller.updatePrescriptionStatus("RX" + i, "Collected");
+        }
+        controller.updatePrescriptionStatus("RX0", "Expired");
+        controller.updatePrescriptionDetails("RX4", "Other medicine", null, null, null);
+        Check.equal(75, controller.countPrescriptionsByStatus("Issued"), "issued after updates");
+        Check.equal(24, controller.countPrescriptionsByStatus("Collected"), "collected after updates");
+        Check.equal(1, controller.countPrescriptionsByStatus("Expired"), "expired after updates");
+        Check.equal(24, controller.getPrescriptionsByStatus("Collected").size(), "found like counted");
+    }
+
+    static void viewFollowsRemovals() {
+        InMemoryRepository<Referral> repository = referrals(200);
+        List<Referral> view = repository.view();
+        for (int i = 0; i < 200; i += 3) {
+            repository.remove("R" + i);
+        }
+        repository.add(new Referral("R200", "P0", "G1", "S1", "Reason 200"));
+
+        List<String> expected = ids(repository.list());
+        Check.equal(expected.size(), view.size(), "view size after removals");
+        Check.equal(expected, ids(view), "view iterated after removals");
+        for (int i = view.size() - 1; i >= 0; i -= 7) {
+            Check.equal(expected.get(i), view.get(i).getReferralId(), "view.get(" + i + ") going back");
+        }
+        Check.equal("R200", view.get(view.size() - 1).getReferralId(), "record added after the removals");
+        Check.fails(IndexOutOfBoundsException.class, () -> view.get(view.size()), "past the end");
+
+        // Removing more than half compacts the list; the same view carries on over it
+        for (int i = 1; i < 200; i += 3) {
+            repository.remove("R" + i);
+        }
+        Check.equal(ids(repository.list()), ids(view), "view after compaction");
+    }
+
+    static void pagesSkipRemovedRecords() {
+        InMemoryRepository<Referral> repository = referrals(1000);
+        Random random = new Random(7);
+        for (int i = 0; i < 200; i++) {
+            repository.remove("R" + random.nextInt(1000));
+        }
+        List<String> expected = ids(repository.list());
+        for (int limit : new int[] {1, 7, 50, 1000}) {
+            List<String> paged = new ArrayList<>();
+            for (int offset = 0; offset < expected.size() + limit; offset += limit) {
+                paged.addAll(ids(repository.page(offset, limit)));
+            }
+            Check.equal(expected, paged, "pages of " + limit);
+        }
+        Check.equal(expected.subList(500, 510), ids(repository.page(500, 10)), "a page read on its own");
+        Check.equal(0, repository.page(expected.size(), 10).size(), "page past the end");
+    }
+
+    static void rangesFollowReschedules() {
+        AppointmentController controller = new AppointmentController(
+                new InMemoryRepository<>(Appointment::getAppointmentId));
+        for (int i = 0; i < 300; i++) {
+            controller.addAppointment(new Appointment("A" + i, "P" + i, "C" + i % 3,
+                    String.format("2026-03-%02d %02d:%02d", 1 + i % 10, 8 + i % 9, i % 4 * 15), "Room 1"));
+        }
+        controller.addAppointment(new Appointment("A300", "P1", "C0", "some time in March", "Room 1"));
+        checkRanges(controller, "after loading");
+
+        Random random = new Random(8);
+        for (int j = 0; j < 200; j++) {
+            String id = "A" + random.nextInt(300);
+            String time = String.format("2026-03-%02d %02d:%02d", 1 + random.nextInt(10), 8 + random.nextInt(9), 0);
+            if (j % 3 == 0) {
+                // A new object for the same ID, as the file watcher passes on
+                Appointment replacement = new Appointment(id, "P0", "C" + random.nextInt(3), time, "Room 2");
+                if (controller.getAppointment(id) != null) {
+                    Check.that(controller.replaceAppointment(replacement), "replace " + id);
+                }
+            } else if (j % 7 == 0) {
+                controller.deleteAppointment(id);
+            } else {
+                controller.updateAppointment(id, time, null, null, null);
+            }
+        }
+        checkRanges(controller, "after rescheduling");
+    }
+
+    // Every range matches a filter over all the appointments, sorted by time
+    private static void checkRanges(AppointmentController controller, String when) {
+        LocalDateTime from = LocalDateTime.of(2026, 3, 3, 9, 0);
+        LocalDateTime to = LocalDateTime.of(2026, 3, 7, 12, 0);
+        Check.equal(expectedRange(controller, null, from, to),
+                ids(controller.getAppointmentsBetween(from, to)), "everyone's range " + when);
+        for (String clinician : new String[] {"C0", "C1", "C2", "C9"}) {
+            Check.equal(expectedRange(controller, clinician, from, to),
+                    ids(controller.getAppointmentsBetween(clinician, from, to)), clinician + " range " + when);
+        }
+        Check.equal(0, controller.getAppointmentsBetween(to, from).size(), "backwards range " + when);
+    }
+
+    private static List<String> expectedRange(AppointmentController controller, String clinician,
+                                              LocalDateTime from, LocalDateTime to) {
+        return controller.getAllAppointments().stream()
+                .filter(a -> clinician == null || clinician.equals(a.getClinicianId()))
+                .filter(a -> a.getDateTime().matches("\\d{4}-\\d{2}-\\d{2} \\d{2}:\\d{2}"))
+                .filter(a -> !LocalDateTime.parse(a.getDateTime().replace(' ', 'T')).isBefore(from)
+                        && LocalDateTime.parse(a.getDateTime().replace(' ', 'T')).isBefore(to))
+                .sorted(Comparator.comparing(Appointment::getDateTime))
+                .map(Appointment::getAppointmentId)
+                .collect(Collectors.toList());
+    }
+
+    private static List<String> ids(Collection<Appointment> appointments) {
+        return appointments.stream().map(Appointment::getAppointmentId).collect(Collectors.toList());
+    }
+
+    private static InMemoryRepository<Referral> referrals(int count) {
+        InMemoryRepository<Referral> repository = new InMemoryRepository<>(Referral::getReferralId);
+        for (int i = 0; i < count; i++) {
+            repository.add(new Referral("R" + i, "P" + i % 40, "G1", "S1", "Reason " + i));
+        }
+        return repository;
+    }
+
+    private static List<String> ids(List<Referral> records) {
+        return records.stream().map(Referral::getReferralId).collect(Collectors.toList());
+    }
+
+    private static void checkCounts(InMemoryRepository<Referral> repository, String when) {
+        checkCounts(repository, BY_URGENCY, LEVELS, when);
+        checkCounts(repository, BY_STATUS, STATUSES, when);
+    }
+
+    private static void checkCounts(InMemoryRepository<Referral> repository, Function<Referral, String> key,
+                                    String[] values, String when) {
+        Map<String, Long> expected = repository.stream()
+                .collect(Collectors.groupingBy(key, HashMap::new, Collectors.counting()));
+        for (String value : values) {
+            long count = expected.getOrDefault(value, 0L);
+            Check.equal((int) count, repository.countBy(key, value), value + " count " + when);
+            List<Referral> found = repository.findBy(key, value);
+            Check.equal((int) count, found.size(), value + " found " + when);
+        }
+    }
+}
@@ -0,0 +1,176 @@
+package controller;
+
+import model.Appointment;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * MutationJournalTest checks journal replay when a segment ends in a torn record or
+ * holds a record whose checksum does not match: the changes before the damage are
+ * replayed, the damaged record and the rest of its segment are not, and later segments
+ * and later runs still count.
+ */
+public class MutationJournalTest {
+
+    private static final DataLoadOrchestrator.DataSet SET = DataLoadOrchestrator.DataSet.APPOINTMENTS;
+
+    public static void main(String[] args) throws Exception {
+        replaysEveryChange();
+        tornRecord();
+        badChecksum();
+        damageStaysInItsSegment();
+        System.out.println("MutationJournalTest: all tests passed");
+    }
+
+    static void replaysEveryChange() throws Exception {
+        Path directory = Files.createTempDirectory("journal");
+        try {
+            String prefix = directory + "/";
+            writeFourChanges(prefix);
+            Map<String, Appointment> latest = replay(prefix);
+            Check.equal(Arrays.asList("A1", "A2", "A3"), new ArrayList<>(latest.keySet()), "journal order");
+            Check.equal("P1", latest.get("A1").getPatientId(), "A1 patient");
+            Check.equal("Check-up 2", latest.get("A2").getReason(), "A2 reason");
+            Check.equal(null, latest.get("A3"), "A3 ends up deleted");
+        } finally {
+            Check.delete(directory);
+        }
+    }
+
+    static void tornRecord() throws Exception {
+        Path directory = Files.createTempDirectory("journal");
+        try {
+            String prefix = directory + "/";
+            writeFourChanges(prefix);
+            Path segment = onlySegment(directory);
+            List<Long> starts = recordStarts(segment);
+
+            // Cut the last record off halfway, as a crash during its write would
+            try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.WRITE)) {
+                channel.truncate(starts.get(3) + 6);
+            }
+            Map<String, Appointment> latest = replay(prefix);
+            Check.equal(Arrays.asList("A1", "A2", "A3"), new ArrayList<>(latest.keySet()), "changes before the tear");
+            Check.that(latest.get("A3") != null, "the torn delete of A3 is not replayed");
+
+            // The next run journals after the torn segment, and both are replayed
+            MutationJournal journal = MutationJournal.open(prefix, 1, 1);
+            journal.append(SET, "A1", null);
+            journal.close();
+            latest = replay(prefix);
+            Check.equal(null, latest.get("A1"), "a change from the next run");
+            Check.that(latest.get("A2") != null, "changes from the torn segment still count");
+        } finally {
+            Check.delete(directory);
+        }
+    }
+
+    static void badChecksum() throws Exception {
+        Path directory = Files.createTempDirectory("journal");
+        try {
+            String prefix = directory + "/";
+            writeFourChanges(prefix);
+            Path segment = onlySegment(directory);
+            List<Long> starts = recordStarts(segment);
+
+            // Flip one byte in the second record's body: its length still reads fine
+            flip(segment, starts.get(1) + 8 + 4);
+            Map<String, Appointment> latest = replay(prefix);
+            Check.equal(Arrays.asList("A1"), new ArrayList<>(latest.keySet()),
+                    "only the change before the bad record");
+            Check.equal("Check-up 1", latest.get("A1").getReason(), "A1 reason");
+        } finally {
+            Check.delete(directory);
+        }
+    }
+
+    static void damageStaysInItsSegment() throws Exception {
+        Path directory = Files.createTempDirectory("journal");
+        try {
+            String prefix = directory + "/";
+            MutationJournal journal = MutationJournal.open(prefix, 1, 1);
+            journal.append(SET, "A1", appointment("A1", "Check-up 1"));
+            journal.append(SET, "A2", appointment("A2", "Check-up 2"));
+            journal.sync().get();
+            journal.rotate().get();
+            journal.append(SET, "A3", appointment("A3", "Check-up 3"));
+            journal.close();
+
+            List<Path> segments = segments(directory);
+            Check.equal(2, segments.size(), "segments");
+            flip(segments.get(0), recordStarts(segments.get(0)).get(1) + 8 + 4);
+            Check.equal(Arrays.asList("A1", "A3"), new ArrayList<>(replay(prefix).keySet()),
+                    "the later segment is replayed past the damage");
+        } finally {
+            Check.delete(directory);
+        }
+    }
+
+    // A1, A2 and A3 put, then A3 deleted: four records, the last a delete
+    private static void writeFourChanges(String prefix) throws Exception {
+        MutationJournal journal = MutationJournal.open(prefix, 1, 1);
+        journal.append(SET, "A1", appointment("A1", "Check-up 1"));
+        journal.append(SET, "A2", appointment("A2", "Check-up 2"));
+        journal.append(SET, "A3", appointment("A3", "Check-up 3"));
+        journal.sync().get();
+        journal.append(SET, "A3", null);
+        journal.close();
+        Check.equal(4, recordStarts(onlySegment(Path.of(prefix))).size(), "records written");
+    }
+
+    private static Appointment appointment(String id, String reason) {
+        Appointment appointment = new Appointment(id, "P" + id.substring(1), "C1", "2026-03-01 09:00", "Surgery");
+        appointment.setReason(reason);
+        return appointment;
+    }
+
+    private static Map<String, Appointment> replay(String prefix) {
+        return MutationJournal.readAll(prefix).latest(SET, CsvSchemas.APPOINTMENTS, new SymbolTable());
+    }
+
+    private static List<Path> segments(Path directory) throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(p -> p.getFileName().toString().startsWith(MutationJournal.FILE_PREFIX))
+                    .sorted((a, b) -> Integer.compare(number(a), number(b)))
+                    .collect(Collectors.toList());
+        }
+    }
+
+    private static int number(Path segment) {
+        return Integer.parseInt(segment.getFileName().toString().substring(MutationJournal.FILE_PREFIX.length()));
+    }
+
+    private static Path onlySegment(Path directory) throws IOException {
+        List<Path> segments = segments(directory);
+        Check.equal(1, segments.size(), "segments");
+        return segments.get(0);
+    }
+
+    // Offsets of the records after the 8-byte segment header: int length, int crc, body
+    private static List<Long> recordStarts(Path segment) throws IOException {
+        ByteBuffer bytes = ByteBuffer.wrap(Files.readAllBytes(segment));
+        List<Long> starts = new ArrayList<>();
+        int at = 8;
+        while (at + 8 <= bytes.limit()) {
+            starts.add((long) at);
+            at += 8 + bytes.getInt(at);
+        }
+        return starts;
+    }
+
+    private static void flip(Path segment, long offset) throws IOException {
+        byte[] bytes = Files.readAllBytes(segment);
+        bytes[(int) offset] ^= 0x20;
+        Files.write(segment, bytes);
+    }
+}
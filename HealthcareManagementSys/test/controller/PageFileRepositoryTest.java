@@ -0,0 +1,153 @@
+package controller;
+
+import model.Referral;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * PageFileRepositoryTest checks the secondary indexes kept in the file: findBy(),
+ * countBy(), findByAny() and findRange() keep agreeing with a scan as records are
+ * added, updated and removed, duplicates included. It also checks that a file committed
+ * and closed is reopened as it was, indexes and all, and that it only claims to hold the
+ * source file it was committed with, and not while a change after the commit is unsaved.
+ */
+public class PageFileRepositoryTest {
+
+    private static final Function<Referral, String> BY_URGENCY = Referral::getUrgencyLevel;
+    private static final Function<Referral, String> BY_PATIENT = Referral::getPatientId;
+    private static final String[] LEVELS = {"Routine", "Urgent", "Emergency"};
+    private static final int CACHE_PAGES = 16;
+
+    public static void main(String[] args) throws Exception {
+        indexesFollowChanges();
+        reopenWhenClean();
+        System.out.println("PageFileRepositoryTest: all tests passed");
+    }
+
+    static void indexesFollowChanges() throws IOException {
+        Path directory = Files.createTempDirectory("pagefile");
+        try (PageFileRepository<Referral> repository = open(directory)) {
+            repository.index(BY_URGENCY);
+            repository.indexSorted(BY_PATIENT);
+            Random random = new Random(9);
+            repository.load(Stream.iterate(0, i -> i + 1).limit(3000).map(i -> referral(i, random)));
+            checkIndexes(repository, "after loading");
+
+            for (int round = 0; round < 4; round++) {
+                for (int j = 0; j < 400; j++) {
+                    Referral referral = repository.get("R" + random.nextInt(3000));
+                    if (referral == null) {
+                        continue;
+                    }
+                    referral.setUrgencyLevel(LEVELS[random.nextInt(LEVELS.length)]);
+                    if (j % 5 == 0) {
+                        referral.setUrgencyLevel(null); // stored as the default level, indexed as such
+                    }
+                    Check.that(repository.update(referral), "update " + referral.getReferralId());
+                }
+                for (int j = 0; j < 150; j++) {
+                    repository.remove("R" + random.nextInt(3000));
+                }
+                // A second record with an ID already there; remove() takes out both
+                repository.add(referral(random.nextInt(3000), random));
+                repository.add(referral(3000 + round, random));
+                checkIndexes(repository, "after round " + round);
+            }
+        } finally {
+            Check.delete(directory);
+        }
+    }
+
+    static void reopenWhenClean() throws IOException {
+        Path directory = Files.createTempDirectory("pagefile");
+        try {
+            Random random = new Random(10);
+            try (PageFileRepository<Referral> repository = open(directory)) {
+                repository.index(BY_URGENCY);
+                Check.that(!repository.isLoadedFrom(0, 0), "new file is not loaded");
+                repository.load(Stream.iterate(0, i -> i + 1).limit(500).map(i -> referral(i, random)));
+                repository.commit(1000, 1234);
+                Check.that(repository.isLoadedFrom(1000, 1234), "loaded after commit");
+                Check.that(!repository.isLoadedFrom(1001, 1234), "other size");
+                Check.that(!repository.isLoadedFrom(1000, 1235), "other time");
+
+                // Changes after the commit stay in the file, which is clean again once closed
+                repository.remove("R7");
+                Check.that(!repository.isLoadedFrom(1000, 1234), "changed since the commit");
+                Referral referral = repository.get("R8");
+                referral.setUrgencyLevel("Emergency");
+                repository.update(referral);
+            }
+
+            List<String> expected;
+            try (PageFileRepository<Referral> repository = open(directory)) {
+                Check.that(repository.isLoadedFrom(1000, 1234), "loaded after reopen");
+                Check.equal(499, repository.size(), "size after reopen");
+                Check.equal(null, repository.get("R7"), "removed record after reopen");
+                Check.equal("Emergency", repository.get("R8").getUrgencyLevel(), "updated record after reopen");
+                repository.index(BY_URGENCY);
+                repository.index(BY_PATIENT); // not in the file yet: built from the records
+                checkIndexes(repository, "after reopen");
+                expected = ids(repository.list());
+            }
+
+            try (PageFileRepository<Referral> repository = open(directory)) {
+                repository.index(BY_URGENCY);
+                repository.index(BY_PATIENT);
+                Check.equal(expected, ids(repository.list()), "records after the second reopen");
+                checkIndexes(repository, "after the second reopen");
+            }
+        } finally {
+            Check.delete(directory);
+        }
+    }
+
+    // Every index answers as a scan over the records does
+    private static void checkIndexes(PageFileRepository<Referral> repository, String when) {
+        List<Referral> all = repository.list();
+        Map<String, List<String>> byUrgency = all.stream().filter(r -> r.getUrgencyLevel() != null)
+                .collect(Collectors.groupingBy(BY_URGENCY, HashMap::new,
+                        Collectors.mapping(Referral::getReferralId, Collectors.toList())));
+        for (String level : LEVELS) {
+            List<String> expected = byUrgency.getOrDefault(level, List.of());
+            Check.equal(expected, ids(repository.findBy(BY_URGENCY, level)), level + " found " + when);
+            Check.equal(expected.size(), repository.countBy(BY_URGENCY, level), level + " count " + when);
+        }
+        Check.equal(0, repository.countBy(BY_URGENCY, "Rout"), "prefix of a value " + when);
+        Check.equal(ids(all.stream().filter(r -> r.getUrgencyLevel() == null).collect(Collectors.toList())),
+                ids(repository.findBy(BY_URGENCY, null)), "null found " + when);
+
+        List<String> patients = Arrays.asList("P3", "P17", "P30");
+        Check.equal(ids(all.stream().filter(r -> patients.contains(r.getPatientId())).collect(Collectors.toList())),
+                ids(repository.findByAny(BY_PATIENT, patients)), "any of " + patients + " " + when);
+        Check.equal(ids(all.stream()
+                        .filter(r -> r.getPatientId().compareTo("P2") >= 0 && r.getPatientId().compareTo("P3") < 0)
+                        .sorted((a, b) -> a.getPatientId().compareTo(b.getPatientId()))
+                        .collect(Collectors.toList())),
+                ids(repository.findRange(BY_PATIENT, "P2", "P3")), "range of patients " + when);
+    }
+
+    private static PageFileRepository<Referral> open(Path directory) throws IOException {
+        return PageFileRepository.open(directory.resolve("referrals.pages"), CACHE_PAGES,
+                Repositories.codec(DataLoadOrchestrator.DataSet.REFERRALS, CsvSchemas.REFERRALS, Referral::getReferralId));
+    }
+
+    private static Referral referral(int i, Random random) {
+        Referral referral = new Referral("R" + i, "P" + random.nextInt(40), "G1", "S1", "Reason " + i);
+        referral.setUrgencyLevel(LEVELS[random.nextInt(LEVELS.length)]);
+        return referral;
+    }
+
+    private static List<String> ids(List<Referral> records) {
+        return records.stream().map(Referral::getReferralId).collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,139 @@
+package controller;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * PageFileTest checks the page cache: clock eviction never takes a pinned frame, a cache
+ * full of pinned frames is an error rather than a silent eviction, and pages written
+ * back on eviction read the same after a reopen.
+ */
+public class PageFileTest {
+
+    private static final int CACHE = PageFile.MIN_CACHE_PAGES;
+
+    public static void main(String[] args) throws Exception {
+        evictionSkipsPinnedFrames();
+        fullOfPinnedFrames();
+        evictedPagesAreWrittenBack();
+        freedPagesAreReused();
+        System.out.println("PageFileTest: all tests passed");
+    }
+
+    static void evictionSkipsPinnedFrames() throws IOException {
+        Path directory = Files.createTempDirectory("pagefile");
+        try (PageFile file = PageFile.open(directory.resolve("test.pages"), CACHE)) {
+            long[] pages = allocate(file, CACHE * 2);
+
+            // Fill the cache with the first CACHE pages, then pin half of them
+            for (int i = 0; i < CACHE; i++) {
+                file.page(pages[i]);
+                file.release();
+            }
+            ByteBuffer[] held = new ByteBuffer[CACHE / 2];
+            for (int i = 0; i < held.length; i++) {
+                held[i] = file.page(pages[i]);
+                held[i].putLong(100, -pages[i]);
+                file.dirty(pages[i]);
+            }
+
+            // Each new page (pinned too, as nothing is released) must evict an unpinned frame
+            long reads = file.getReads();
+            for (int i = CACHE; i < CACHE + held.length; i++) {
+                Check.equal(pages[i], file.page(pages[i]).getLong(0), "page " + pages[i]);
+            }
+            Check.equal(reads + held.length, file.getReads(), "one read per new page");
+            for (int i = 0; i < held.length; i++) {
+                Check.equal(pages[i], held[i].getLong(0), "pinned page " + pages[i] + " kept its frame");
+                Check.equal(-pages[i], held[i].getLong(100), "pinned page " + pages[i] + " kept its change");
+            }
+            file.release();
+
+            reads = file.getReads();
+            for (int i = 0; i < held.length; i++) {
+                Check.equal(-pages[i], file.page(pages[i]).getLong(100), "pinned page " + pages[i] + " still cached");
+                file.release();
+            }
+            Check.equal(reads, file.getReads(), "pinned pages were not evicted");
+        } finally {
+            Check.delete(directory);
+        }
+    }
+
+    static void fullOfPinnedFrames() throws IOException {
+        Path directory = Files.createTempDirectory("pagefile");
+        try (PageFile file = PageFile.open(directory.resolve("test.pages"), CACHE)) {
+            long[] pages = allocate(file, CACHE + 1);
+            for (int i = 0; i < CACHE; i++) {
+                file.page(pages[i]);
+            }
+            Check.fails(IllegalStateException.class, () -> file.page(pages[CACHE]), "no frame to evict");
+
+            // Once released, the same read succeeds by evicting one of them
+            file.release();
+            Check.equal(pages[CACHE], file.page(pages[CACHE]).getLong(0), "read after release");
+            file.release();
+        } finally {
+            Check.delete(directory);
+        }
+    }
+
+    static void evictedPagesAreWrittenBack() throws IOException {
+        Path directory = Files.createTempDirectory("pagefile");
+        Path path = directory.resolve("test.pages");
+        try {
+            long[] pages;
+            try (PageFile file = PageFile.open(path, CACHE)) {
+                pages = allocate(file, CACHE * 3);
+                for (long page : pages) {
+                    file.page(page).putLong(8, page * 31);
+                    file.dirty(page);
+                    file.release();
+                }
+                Check.that(file.getWrites() > 0, "dirty pages were evicted");
+                file.setSlot(0, 42);
+            }
+            try (PageFile file = PageFile.open(path, CACHE)) {
+                Check.equal((long) pages.length + 1, file.getPageCount(), "page count");
+                Check.equal(42L, file.getSlot(0), "header slot");
+                for (long page : pages) {
+                    ByteBuffer buffer = file.page(page);
+                    Check.equal(page, buffer.getLong(0), "page " + page);
+                    Check.equal(page * 31, buffer.getLong(8), "change to page " + page);
+                    file.release();
+                }
+            }
+        } finally {
+            Check.delete(directory);
+        }
+    }
+
+    static void freedPagesAreReused() throws IOException {
+        Path directory = Files.createTempDirectory("pagefile");
+        try (PageFile file = PageFile.open(directory.resolve("test.pages"), CACHE)) {
+            long[] pages = allocate(file, 10);
+            file.free(pages[3]);
+            file.free(pages[7]);
+            file.release();
+            Check.equal(pages[7], file.allocate(), "last freed page first");
+            Check.equal(pages[3], file.allocate(), "then the one before");
+            Check.equal(pages[9] + 1, file.allocate(), "then the end of the file");
+            file.release();
+        } finally {
+            Check.delete(directory);
+        }
+    }
+
+    // Allocate pages, each holding its own number, and release them
+    private static long[] allocate(PageFile file, int count) throws IOException {
+        long[] pages = new long[count];
+        for (int i = 0; i < count; i++) {
+            pages[i] = file.allocate();
+            file.page(pages[i]).putLong(0, pages[i]);
+            file.release();
+        }
+        return pages;
+    }
+}